@@ -0,0 +1,8 @@
+#!/bin/bash
+# Runs the NDEx task processor as a long running daemon (see NdexTaskServiceManager)
+# instead of starting a new JVM for every cron invocation.
+export JAVA_HOME=/usr/lib/jvm/java-7-oracle
+echo "Java Home is $JAVA_HOME"
+export CLASSPATH=.:..:$CLASSPATH:
+echo "CLASSPATH  is $CLASSPATH"
+$JAVA_HOME/bin/java -cp /opt/ndex/scripts/ndex-task-0.0.1-SNAPSHOT-jar-with-dependencies.jar org.ndexbio.task.NdexTaskServiceManager
@@ -4,4 +4,16 @@ echo "Java Home is $JAVA_HOME"
 export CLASSPATH=.:..:$CLASSPATH:
 echo "Path is is $PATH"
 echo "CLASSPATH  is $CLASSPATH"
-$JAVA_HOME/bin/java -jar /opt/ndex/scripts/ndex-task-0.0.1-SNAPSHOT-jar-with-dependencies.jar
+# the class data sharing archive of the fast-start build (mvn -Pfast-start package)
+# is used when installed next to the jar; it needs a JDK 13+, the one that built it.
+# The JVM is probed first, an older one (e.g. Java 7) does not start with these options.
+CDS_ARCHIVE=/opt/ndex/scripts/ndex-task.jsa
+JAVA_OPTS=""
+if [ -f "$CDS_ARCHIVE" ]; then
+	if $JAVA_HOME/bin/java -XX:SharedArchiveFile=$CDS_ARCHIVE -Xshare:auto -version > /dev/null 2>&1; then
+		JAVA_OPTS="-XX:SharedArchiveFile=$CDS_ARCHIVE -Xshare:auto"
+	else
+		echo "$JAVA_HOME does not support class data sharing archives, starting without $CDS_ARCHIVE"
+	fi
+fi
+$JAVA_HOME/bin/java $JAVA_OPTS -jar /opt/ndex/scripts/ndex-task-0.0.1-SNAPSHOT-jar-with-dependencies.jar
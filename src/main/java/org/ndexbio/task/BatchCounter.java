@@ -0,0 +1,36 @@
+package org.ndexbio.task;
+
+/*
+ * Counts the elements a parser processed since its last commit. The commit
+ * batch size is read from the TaskEngineSettings when a batch starts, so a
+ * reloaded configuration applies to the running imports from their next batch.
+ * An instance is used by a single parser thread.
+ */
+public final class BatchCounter {
+
+	private int batchSize = TaskEngineSettings.current().getCommitBatchSize();
+	private int count;
+	private int completedBatchSize;
+
+	/*
+	 * count one element; returns true when it completes the current batch,
+	 * which the caller is expected to commit
+	 */
+	public boolean increment() {
+		if (++this.count < this.batchSize) {
+			return false;
+		}
+		this.completedBatchSize = this.count;
+		this.count = 0;
+		this.batchSize = TaskEngineSettings.current().getCommitBatchSize();
+		return true;
+	}
+
+	/*
+	 * the number of elements of the batch completed last
+	 */
+	public int getCompletedBatchSize() {
+		return this.completedBatchSize;
+	}
+
+}
@@ -0,0 +1,84 @@
+package org.ndexbio.task;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/*
+ * Represents how often and after which delay an import resumes from its last
+ * checkpoint when a batch failed to commit on a transient database conflict
+ * (see RetryableImportException); only SIF imports record checkpoints and are
+ * retried. The policy is taken from the TaskEngineSettings
+ * (Task-Batch-Retry-Attempts and Task-Batch-Retry-Base-Millis).
+ *
+ * The delay before the n-th retry is drawn uniformly from the upper half of
+ * base * 2^(n-1) milliseconds, capped at MAX_DELAY_MILLIS, so imports that
+ * conflicted with each other do not retry in lock step. A task waiting for
+ * its retry checks for cancellation at least once a second.
+ */
+final class BatchRetryPolicy {
+
+	static final long MAX_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30L);
+
+	private static final long WAIT_SLICE_MILLIS = 1000L;
+
+	private final int attempts;
+	private final long baseMillis;
+
+	BatchRetryPolicy(int attempts, long baseMillis) {
+		Preconditions.checkArgument(attempts >= 0, 
+				TaskEngineSettings.BATCH_RETRY_ATTEMPTS_PROPERTY + " must be >= 0");
+		Preconditions.checkArgument(baseMillis > 0, 
+				TaskEngineSettings.BATCH_RETRY_BASE_MILLIS_PROPERTY + " must be > 0");
+		this.attempts = attempts;
+		this.baseMillis = baseMillis;
+	}
+
+	/*
+	 * the policy of the given settings
+	 */
+	static BatchRetryPolicy fromSettings(TaskEngineSettings settings) {
+		return new BatchRetryPolicy(settings.getBatchRetryAttempts(), settings.getBatchRetryBaseMillis());
+	}
+
+	/*
+	 * whether the given retry, counted from 1, may be made
+	 */
+	boolean allows(int retry) {
+		return retry <= this.attempts;
+	}
+
+	/*
+	 * the delay before the given retry, counted from 1
+	 */
+	long delayMillis(int retry, Random random) {
+		Preconditions.checkArgument(retry > 0, "The retry must be > 0");
+		long ceiling = this.baseMillis << Math.min(retry - 1, 30);
+		if (ceiling <= 0 || ceiling > MAX_DELAY_MILLIS) {
+			ceiling = MAX_DELAY_MILLIS;
+		}
+		long floor = ceiling / 2;
+		return floor + (long) (random.nextDouble() * (ceiling - floor));
+	}
+
+	/*
+	 * wait before the given retry of the task running on the current thread;
+	 * throws TaskCancelledException if the task is cancelled while waiting
+	 */
+	void awaitRetry(int retry) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+				this.delayMillis(retry, ThreadLocalRandom.current()));
+		for (long remaining = deadline - System.nanoTime(); remaining > 0; remaining = deadline - System.nanoTime()) {
+			TaskExecutionContext.checkCancelled();
+			try {
+				TimeUnit.NANOSECONDS.sleep(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(WAIT_SLICE_MILLIS)));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				TaskExecutionContext.checkCancelled();
+			}
+		}
+	}
+
+}
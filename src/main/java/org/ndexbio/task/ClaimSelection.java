@@ -0,0 +1,78 @@
+package org.ndexbio.task;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.ndexbio.model.object.Task;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/*
+ * Chooses which of the claimable tasks a claim batch takes, so the scheduling
+ * of the task queue (see TaskLane and OwnerFairShare) applies across instances
+ * and not only to the tasks an instance already claimed. The lanes are served
+ * in priority order and the owners of a lane in turn, oldest task first; an
+ * owner gets at most its equal share of the batch while other owners have
+ * candidates, the batch is then filled with what is left. One owner's backlog
+ * therefore cannot take every claim while others have tasks queued.
+ */
+final class ClaimSelection {
+
+	private ClaimSelection() {
+	}
+
+	/*
+	 * the ids of up to limit of the candidates, given oldest first, in the
+	 * order they should be claimed
+	 */
+	static List<UUID> select(List<Task> candidates, int limit, Function<Task, TaskLane> lanes) {
+		Preconditions.checkArgument(limit >= 0, "The limit must be >= 0");
+		Map<TaskLane, Map<String, Deque<Task>>> queues = Maps.newEnumMap(TaskLane.class);
+		for (TaskLane lane : TaskLane.values()) {
+			queues.put(lane, Maps.<String, Deque<Task>>newLinkedHashMap());
+		}
+		Map<String, Integer> taken = Maps.newHashMap();
+		for (Task task : candidates) {
+			String owner = OwnerFairShare.ownerOf(task);
+			Map<String, Deque<Task>> owners = queues.get(lanes.apply(task));
+			if (!owners.containsKey(owner)) {
+				owners.put(owner, new ArrayDeque<Task>());
+			}
+			owners.get(owner).add(task);
+			taken.put(owner, 0);
+		}
+		List<UUID> selected = Lists.newArrayList();
+		if (taken.isEmpty()) {
+			return selected;
+		}
+		int share = (limit + taken.size() - 1) / taken.size();
+		// the first pass keeps every owner to its share, the second fills the batch
+		for (int cap : new int[] { share, Integer.MAX_VALUE }) {
+			for (TaskLane lane : TaskLane.values()) {
+				boolean taking = true;
+				while (taking && selected.size() < limit) {
+					taking = false;
+					for (Map.Entry<String, Deque<Task>> owner : queues.get(lane).entrySet()) {
+						if (owner.getValue().isEmpty() || taken.get(owner.getKey()) >= cap) {
+							continue;
+						}
+						selected.add(owner.getValue().poll().getExternalId());
+						taken.put(owner.getKey(), taken.get(owner.getKey()) + 1);
+						taking = true;
+						if (selected.size() == limit) {
+							break;
+						}
+					}
+				}
+			}
+		}
+		return selected;
+	}
+
+}
@@ -0,0 +1,70 @@
+package org.ndexbio.task;
+
+import javax.xml.bind.JAXBException;
+
+import org.ndexbio.xbel.XbelJAXBContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Represents the training run of the fast-start build profile
+ * (mvn -Pfast-start package). The JVM of the training run dumps the classes it
+ * loaded into a class data sharing archive, which the short lived task runner
+ * maps at startup instead of parsing and verifying those classes again.
+ * The run loads, without initializing them, the classes of the task processor
+ * and of every format stack (POI, paxtools, openbel, JAXB, OrientDB) and builds
+ * the XBEL JAXBContext; it needs neither a configuration nor a database.
+ * A class of the archive costs nothing until a task actually loads it, so a
+ * cron run that only imports SIF files still skips the other stacks.
+ */
+public class ClassDataSharingTraining {
+
+	private static final Logger logger = LoggerFactory.getLogger(ClassDataSharingTraining.class);
+
+	static final String[] CLASSES = {
+		// the task processor
+		"org.ndexbio.task.Configuration",
+		"org.ndexbio.task.TaskEngineSettings",
+		"org.ndexbio.task.NdexQueuedTaskProcessor",
+		"org.ndexbio.task.NdexTaskExecutor",
+		"org.ndexbio.task.NdexTaskServiceManager",
+		"org.ndexbio.task.FileUploadTask",
+		"org.ndexbio.task.XbelExporterTask",
+		"org.ndexbio.task.XGMMLExporterTask",
+		"org.ndexbio.task.utility.NetworkFileLoader",
+		"org.ndexbio.task.utility.DatabaseInitializer",
+		// the format stacks
+		"org.ndexbio.task.parsingengines.SifParser",
+		"org.ndexbio.task.parsingengines.XgmmlParser",
+		"org.ndexbio.task.parsingengines.XbelParser",
+		"org.ndexbio.task.parsingengines.ExcelParser",
+		"org.ndexbio.task.parsingengines.BioPAXParser",
+		"org.apache.poi.hssf.usermodel.HSSFWorkbook",
+		"org.biopax.paxtools.io.SimpleIOHandler",
+		"org.openbel.framework.common.xbel.parser.XBELValidator",
+		// the database
+		"com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx",
+		"com.orientechnologies.orient.core.sql.OCommandSQL",
+		"com.orientechnologies.orient.core.record.impl.ODocument"
+	};
+
+	public static void main(String[] args) {
+		ClassLoader loader = ClassDataSharingTraining.class.getClassLoader();
+		int loaded = 0;
+		for (String className : CLASSES) {
+			try {
+				Class.forName(className, false, loader);
+				loaded++;
+			} catch (ClassNotFoundException | LinkageError e) {
+				logger.warn("Class " + className + " is not archived. " + e.getMessage());
+			}
+		}
+		try {
+			XbelJAXBContext.getInstance();
+		} catch (JAXBException e) {
+			logger.warn("The XBEL JAXBContext is not archived. " + e.getMessage());
+		}
+		logger.info("Loaded " + loaded + " of " + CLASSES.length + " classes for the class data sharing archive");
+	}
+
+}
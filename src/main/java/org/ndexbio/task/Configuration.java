@@ -1,8 +1,12 @@
 package org.ndexbio.task;
 
+import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -11,13 +15,26 @@ import org.ndexbio.model.exceptions.NdexException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Joiner;
+
+/*
+ * The ndex configuration file. The instance is created on first use and can be
+ * reloaded while the task engine runs (see ConfigurationReloadService): the
+ * properties and the TaskEngineSettings are replaced as a whole once the new
+ * file is validated, so a reader sees either the old or the new configuration.
+ * The database, host and system user settings are only read at startup.
+ */
 public class Configuration
 {
     public static final String UPLOADED_NETWORKS_PATH_PROPERTY = "Uploaded-Networks-Path";
+    static final String CONFIGURATION_PATH_PROPERTY = "ndexConfigurationPath";
     
     private static Configuration INSTANCE = null;
     private static final Logger _logger = LoggerFactory.getLogger(Configuration.class);
-    private Properties _configurationProperties;
+    private volatile Properties _configurationProperties;
+    private volatile TaskEngineSettings settings;
+    private File configurationFile;
+    private long configurationFileModified;
     
 	private String dbURL;
 	private static final String dbUserPropName 	   = "OrientDB-Username";
@@ -31,13 +48,20 @@ public class Configuration
     
     /**************************************************************************
     * Default constructor. Made private to prevent instantiation. 
+    * The configuration file is located by the ndexConfigurationPath system
+    * property, environment variable or JNDI entry, in that order; the JNDI
+    * lookup is only made when the command line and environment do not set it.
      * @throws NdexException 
     **************************************************************************/
     private Configuration() throws NdexException
     {
         try
         {
-        	String configFilePath = System.getenv("ndexConfigurationPath");
+        	String configFilePath = System.getProperty(CONFIGURATION_PATH_PROPERTY);
+        	
+        	if ( configFilePath == null) {
+        		configFilePath = System.getenv(CONFIGURATION_PATH_PROPERTY);
+        	}
         	
         	if ( configFilePath == null) {
         		InitialContext ic = new InitialContext();
@@ -51,10 +75,9 @@ public class Configuration
         	
         	_logger.info("Loadinging ndex configuration from " + configFilePath);
         	
-        	_configurationProperties = new Properties();
-        	FileReader reader = new FileReader(configFilePath);
-        	_configurationProperties.load(reader);
-        	reader.close();
+        	this.configurationFile = new File(configFilePath);
+        	this.configurationFileModified = this.configurationFile.lastModified();
+        	_configurationProperties = loadProperties(this.configurationFile);
             
             dbURL 	= getRequiredProperty("OrientDB-URL");
             hostURI = getRequiredProperty("HostURI");
@@ -64,7 +87,9 @@ public class Configuration
 
             this.ndexRoot = getRequiredProperty("NdexRoot");
             
-            
+            this.settings = TaskEngineSettings.fromProperties(_configurationProperties, this.ndexRoot);
+            TaskEngineSettings.publish(this.settings);
+            _logger.info("Task engine settings: " + this.settings);
         }
         catch (Exception e)
         {
@@ -74,6 +99,15 @@ public class Configuration
     }
     
     
+    private static Properties loadProperties(File file) throws IOException {
+    	Properties properties = new Properties();
+    	try (FileReader reader = new FileReader(file)) {
+    		properties.load(reader);
+    	}
+    	return properties;
+    }
+    
+    
     private String getRequiredProperty (String propertyName ) throws NdexException {
     	String result = _configurationProperties.getProperty(propertyName);
         if ( result == null) {
@@ -87,7 +121,7 @@ public class Configuration
     * Gets the singleton instance. 
      * @throws NdexException 
     **************************************************************************/
-    public static Configuration getInstance() throws NdexException
+    public static synchronized Configuration getInstance() throws NdexException
     {
     	if ( INSTANCE == null)  { 
     		INSTANCE = new Configuration();
@@ -108,6 +142,35 @@ public class Configuration
         return _configurationProperties.getProperty(propertyName);
     }
     
+    /**************************************************************************
+    * Gets an integer property.
+    *
+    * @param propertyName
+    *            The property name.
+    * @param defaultValue
+    *            The value returned when the property is not defined.
+     * @throws NdexException if the property value is not an integer.
+    **************************************************************************/
+    public int getIntProperty(String propertyName, int defaultValue) throws NdexException
+    {
+        String value = _configurationProperties.getProperty(propertyName);
+        if ( value == null || value.trim().isEmpty())
+        	return defaultValue;
+        try {
+        	return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+        	throw new NdexException ("property " + propertyName + " is not an integer: " + value);
+        }
+    }
+
+    /**************************************************************************
+    * Gets the names of all the properties in the configuration file.
+    **************************************************************************/
+    public Set<String> getPropertyNames()
+    {
+        return _configurationProperties.stringPropertyNames();
+    }
+
     /**************************************************************************
     * Gets the singleton instance. 
     * 
@@ -121,6 +184,48 @@ public class Configuration
         _configurationProperties.setProperty(propertyName, propertyValue);
     }
     
+    /**************************************************************************
+    * Gets the task engine settings of the configuration loaded last.
+    **************************************************************************/
+    public TaskEngineSettings getSettings()
+    {
+        return this.settings;
+    }
+    
+    /**************************************************************************
+    * Reloads the configuration file if it was modified since it was loaded.
+    * The new file is validated before any of it is applied; on error the
+    * current configuration is kept. Properties set with setProperty are 
+    * replaced by the file content.
+    *
+    * @return true if a modified configuration was applied.
+     * @throws NdexException if the modified file is invalid.
+    **************************************************************************/
+    public synchronized boolean reload() throws NdexException
+    {
+        long modified = this.configurationFile.lastModified();
+        if ( modified == this.configurationFileModified)
+        	return false;
+        Properties properties;
+        try {
+        	properties = loadProperties(this.configurationFile);
+        } catch (IOException e) {
+        	throw new NdexException ("Failed to reload the configuration file. " + e.getMessage());
+        }
+        TaskEngineSettings newSettings = TaskEngineSettings.fromProperties(properties, this.ndexRoot);
+        this.configurationFileModified = modified;
+        List<String> restartRequired = newSettings.restartRequiredChanges(this.settings);
+        if ( !restartRequired.isEmpty())
+        	_logger.warn("The changes to " + Joiner.on(", ").join(restartRequired)
+        			+ " only apply after a restart.");
+        _configurationProperties = properties;
+        this.settings = newSettings;
+        TaskEngineSettings.publish(newSettings);
+        _logger.info("Reloaded ndex configuration from " + this.configurationFile 
+        		+ ", task engine settings: " + newSettings);
+        return true;
+    }
+    
     public String getDBURL () { return dbURL; }
     public String getDBUser() { return _configurationProperties.getProperty(dbUserPropName); }
     public String getDBPasswd () { return _configurationProperties.getProperty(dbPasswordPropName); }
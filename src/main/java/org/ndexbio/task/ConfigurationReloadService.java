@@ -0,0 +1,54 @@
+package org.ndexbio.task;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ndexbio.model.exceptions.NdexException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.AbstractScheduledService;
+
+/*
+ * Represents a scheduled task that reloads the ndex configuration file when it
+ * was modified, every Task-Configuration-Reload-Seconds (default 30). The
+ * TaskEngineSettings of the new file are picked up by the running services and
+ * parsers at their next iteration or batch, and the WriteRateGovernor is
+ * reconfigured; an invalid file is logged and the current configuration kept.
+ * This service is invoked by registering an instance of this class with a Google
+ * Service Manager
+ */
+public class ConfigurationReloadService extends AbstractScheduledService {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConfigurationReloadService.class);
+
+	private final int intervalSeconds;
+
+	public ConfigurationReloadService(int intervalSeconds) {
+		Preconditions.checkArgument(intervalSeconds > 0, "The reload interval must be > 0");
+		this.intervalSeconds = intervalSeconds;
+	}
+
+	@Override
+	protected void startUp() {
+		logger.info("ConfigurationReloadService started, checking every " + this.intervalSeconds + " seconds");
+	}
+
+	@Override
+	protected void runOneIteration() {
+		try {
+			if (Configuration.getInstance().reload()) {
+				WriteRateGovernor.INSTANCE.configure(TaskEngineSettings.current());
+			}
+		} catch (NdexException e) {
+			// retried once the file is modified again
+			logger.error("Ignoring the modified configuration. " + e.getMessage());
+		}
+	}
+
+	@Override
+	protected Scheduler scheduler() {
+		return Scheduler.newFixedDelaySchedule(this.intervalSeconds, this.intervalSeconds, TimeUnit.SECONDS);
+	}
+
+}
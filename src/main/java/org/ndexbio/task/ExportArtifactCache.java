@@ -0,0 +1,295 @@
+package org.ndexbio.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.ndexbio.common.NdexClasses;
+import org.ndexbio.model.exceptions.NdexException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.SettableFuture;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+
+/*
+ * A singleton implemented as an enum that caches exported network files. An
+ * artifact is keyed by the network UUID, the modification time of the network
+ * and the export format, so a cached artifact is valid until the network is
+ * modified. The exports read the network without a snapshot (see
+ * ExportConnectionPool), so the modification time is read again once an
+ * artifact was generated: if the network was modified meanwhile, the artifact
+ * may mix both versions and is discarded, and the network is exported again.
+ * A network that is still modified after EXPORT_ATTEMPTS exports fails the
+ * export task. Export tasks for an artifact that is already being generated
+ * are coalesced: they wait for the running export instead of repeating it,
+ * and export the network again if that artifact was discarded.
+ * The artifact is then hard linked, or copied when links are not supported,
+ * to the file of every export task.
+ *
+ * The artifacts are kept in Task-Export-Cache-Path (default <NdexRoot>/export-cache)
+ * and evicted in least recently used order by the ExportCacheHousekeepingService
+ * once they exceed Task-Export-Cache-Max-MB (default 1024). A hit touches the
+ * last modified time of the artifact, which keeps the LRU order across restarts.
+ */
+enum ExportArtifactCache {
+	INSTANCE;
+
+	static final String CACHE_PATH_PROPERTY = "Task-Export-Cache-Path";
+	static final String TEMP_SUFFIX = ".tmp";
+	// a temporary file this old was left behind by a crashed export
+	static final long ABANDONED_TEMP_MILLIS = TimeUnit.HOURS.toMillis(6);
+	private static final long COALESCED_WAIT_MILLIS = 1000L;
+	// exports of a network that keeps being modified before the task fails
+	static final int EXPORT_ATTEMPTS = 3;
+
+	private static final Logger logger = LoggerFactory.getLogger(ExportArtifactCache.class);
+
+	/*
+	 * generates an export artifact into the given file
+	 */
+	interface Exporter {
+		void export(File target) throws Exception;
+	}
+
+	/*
+	 * reads the current modification time of the exported network
+	 */
+	interface NetworkVersion {
+		long getModificationTime() throws NdexException;
+	}
+
+	private final ConcurrentMap<String, SettableFuture<File>> inFlight = Maps.newConcurrentMap();
+	private File directory;
+	private long maxBytes;
+
+	synchronized void configure(File directory, long maxBytes) {
+		Preconditions.checkArgument(null != directory, "A cache directory is required");
+		Preconditions.checkArgument(maxBytes >= 0, "The cache size must be >= 0");
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	synchronized File getDirectory() throws NdexException {
+		if (null == this.directory) {
+			Configuration configuration = Configuration.getInstance();
+			String path = configuration.getProperty(CACHE_PATH_PROPERTY);
+			this.configure(path != null ? new File(path)
+					: new File(configuration.getNdexRoot(), "export-cache"),
+					configuration.getSettings().getExportCacheMaxMb() * 1024L * 1024L);
+		}
+		if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+			throw new NdexException("Unable to create the export cache " + this.directory);
+		}
+		return this.directory;
+	}
+
+	synchronized long getMaxBytes() throws NdexException {
+		this.getDirectory();
+		return this.maxBytes;
+	}
+
+	static String keyOf(UUID networkId, long modificationTime, String format) {
+		return networkId + "." + modificationTime + "." + format.toLowerCase();
+	}
+
+	/*
+	 * the version of a network read through the given database
+	 */
+	static NetworkVersion versionOf(final ODatabaseDocumentTx db, final UUID networkId) {
+		return new NetworkVersion() {
+			@Override
+			public long getModificationTime() throws NdexException {
+				return getNetworkModificationTime(db, networkId);
+			}
+		};
+	}
+
+	/*
+	 * the modification time of a network in milliseconds
+	 */
+	static long getNetworkModificationTime(ODatabaseDocumentTx db, UUID networkId) throws NdexException {
+		List<ODocument> networks = db.query(new OSQLSynchQuery<ODocument>(
+				"SELECT " + NdexClasses.ExternalObj_mTime + " FROM " + NdexClasses.Network
+				+ " WHERE " + NdexClasses.ExternalObj_ID + " = ?"), networkId.toString());
+		if (networks.isEmpty()) {
+			throw new NdexException("Network " + networkId + " not found.");
+		}
+		Date modificationTime = networks.get(0).field(NdexClasses.ExternalObj_mTime);
+		return null == modificationTime ? 0L : modificationTime.getTime();
+	}
+
+	/*
+	 * provide the export of the network in the destination file: from the
+	 * cache if the artifact is valid, from a concurrent export of the same
+	 * artifact or by running the exporter. Returns true if the exporter ran.
+	 */
+	boolean export(UUID networkId, NetworkVersion version, String format, File destination,
+			Exporter exporter) throws Exception {
+		for (int attempt = 1; attempt <= EXPORT_ATTEMPTS; attempt++) {
+			Boolean exported = this.tryExport(networkId, version, format, destination, exporter);
+			if (null != exported) {
+				return exported.booleanValue();
+			}
+			TaskExecutionContext.checkCancelled();
+			logger.info("Network " + networkId + " was modified during its export as " + format
+					+ " (attempt " + attempt + " of " + EXPORT_ATTEMPTS + ")");
+		}
+		throw new NdexException("Network " + networkId + " was modified during each of its "
+				+ EXPORT_ATTEMPTS + " exports as " + format + ", try the export again later.");
+	}
+
+	/*
+	 * one attempt of export; returns null if the network was modified during
+	 * the export, by this task or by the one it waited for
+	 */
+	private Boolean tryExport(UUID networkId, NetworkVersion version, String format, File destination,
+			Exporter exporter) throws Exception {
+		long modificationTime = version.getModificationTime();
+		String key = keyOf(networkId, modificationTime, format);
+		File artifact = new File(this.getDirectory(), key);
+		if (artifact.isFile()) {
+			try {
+				artifact.setLastModified(System.currentTimeMillis());
+				link(artifact, destination);
+				logger.info("Served the export of network " + networkId + " from the cache");
+				return false;
+			} catch (NoSuchFileException e) {
+				logger.info("Export artifact " + key + " was evicted meanwhile, exporting it again");
+			}
+		}
+		SettableFuture<File> export = SettableFuture.create();
+		SettableFuture<File> running = this.inFlight.putIfAbsent(key, export);
+		if (null != running) {
+			logger.info("Waiting for the running export of network " + networkId + " as " + format);
+			File coalesced = awaitExport(running, key);
+			if (null == coalesced) {
+				return null;
+			}
+			link(coalesced, destination);
+			return false;
+		}
+		try {
+			// another task may have finished the export since the check above
+			if (!artifact.isFile()) {
+				File tmpFile = new File(artifact.getPath() + "." + UUID.randomUUID() + TEMP_SUFFIX);
+				try {
+					exporter.export(tmpFile);
+					if (version.getModificationTime() != modificationTime) {
+						// the export may mix both versions of the network
+						export.set(null);
+						return null;
+					}
+					Files.move(tmpFile.toPath(), artifact.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				} finally {
+					tmpFile.delete();
+				}
+			}
+			export.set(artifact);
+		} catch (Exception e) {
+			export.setException(e);
+			throw e;
+		} finally {
+			this.inFlight.remove(key, export);
+		}
+		link(artifact, destination);
+		return true;
+	}
+
+	/*
+	 * wait for a coalesced export, null if its artifact was not cached; the
+	 * waiting task can still be cancelled
+	 */
+	private static File awaitExport(SettableFuture<File> running, String key) throws NdexException {
+		while (true) {
+			try {
+				return running.get(COALESCED_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				TaskExecutionContext.checkCancelled();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new NdexException("Interrupted while waiting for the export of " + key);
+			} catch (ExecutionException e) {
+				throw new NdexException("The export of " + key + " failed. " + e.getCause().getMessage());
+			}
+		}
+	}
+
+	private static void link(File artifact, File destination) throws IOException {
+		Files.deleteIfExists(destination.toPath());
+		try {
+			Files.createLink(destination.toPath(), artifact.toPath());
+		} catch (IOException | UnsupportedOperationException e) {
+			Files.copy(artifact.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/*
+	 * delete the least recently used artifacts until the cache fits in its
+	 * budget and remove abandoned temporary files; returns the number of
+	 * bytes freed
+	 */
+	long evict(long now) throws NdexException {
+		File[] files = this.getDirectory().listFiles();
+		if (null == files) {
+			return 0L;
+		}
+		long maxBytes = this.getMaxBytes();
+		long freed = 0L;
+		long totalBytes = 0L;
+		// the last use is read once, a hit may touch an artifact during the sort
+		final Map<File, Long> lastUsed = Maps.newHashMap();
+		for (File file : files) {
+			if (file.getName().endsWith(TEMP_SUFFIX)) {
+				long length = file.length();
+				if (now - file.lastModified() > ABANDONED_TEMP_MILLIS && file.delete()) {
+					freed += length;
+				}
+				continue;
+			}
+			lastUsed.put(file, file.lastModified());
+			totalBytes += file.length();
+		}
+		if (totalBytes <= maxBytes) {
+			return freed;
+		}
+		List<File> artifacts = Lists.newArrayList(lastUsed.keySet());
+		Collections.sort(artifacts, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.compare(lastUsed.get(a), lastUsed.get(b));
+			}
+		});
+		for (File file : artifacts) {
+			if (totalBytes <= maxBytes) {
+				break;
+			}
+			long length = file.length();
+			// the files of the export tasks linked to the artifact are not affected
+			if (file.delete()) {
+				totalBytes -= length;
+				freed += length;
+				logger.info("Evicted export artifact " + file.getName() + " from the cache");
+			}
+		}
+		return freed;
+	}
+
+}
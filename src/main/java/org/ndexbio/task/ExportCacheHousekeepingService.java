@@ -0,0 +1,53 @@
+package org.ndexbio.task;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ndexbio.model.exceptions.NdexException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+
+/*
+ * Represents a scheduled service that keeps the ExportArtifactCache within its
+ * disk budget by evicting the least recently used export artifacts, and that
+ * removes the temporary files of exports that never finished.
+ * This service is invoked by registering an instance of this class with a Google
+ * Service Manager
+ */
+public class ExportCacheHousekeepingService extends AbstractScheduledService {
+
+	private static final Logger logger = LoggerFactory.getLogger(ExportCacheHousekeepingService.class);
+
+	static final long EVICTION_INTERVAL_MINUTES = 5L;
+
+	@Override
+	protected void startUp() {
+		logger.info("ExportCacheHousekeepingService started");
+	}
+
+	@Override
+	protected void shutDown() {
+		logger.info("ExportCacheHousekeepingService stopped");
+	}
+
+	@Override
+	protected void runOneIteration() {
+		try {
+			long freed = ExportArtifactCache.INSTANCE.evict(System.currentTimeMillis());
+			if (freed > 0) {
+				logger.info("Freed " + freed / 1024L + " KB of the export cache");
+			}
+		} catch (NdexException e) {
+			// retried on the next iteration
+			logger.error("Failed to evict from the export cache. " + e.getMessage());
+		}
+	}
+
+	@Override
+	protected Scheduler scheduler() {
+		return Scheduler.newFixedDelaySchedule(EVICTION_INTERVAL_MINUTES, EVICTION_INTERVAL_MINUTES,
+				TimeUnit.MINUTES);
+	}
+
+}
@@ -0,0 +1,118 @@
+package org.ndexbio.task;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.ndexbio.common.access.NdexAOrientDBConnectionPool;
+import org.ndexbio.model.exceptions.NdexException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.orientechnologies.orient.core.db.OPartitionedDatabasePool;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+
+/*
+ * A singleton implemented as an enum holding the connections the export
+ * tasks read the networks through, apart from the NdexAOrientDBConnectionPool
+ * the imports write through, so slow exports cannot take the connections of
+ * the imports. The pool is sized with Task-Export-Connection-Pool-Size
+ * (default 2); an export waits for a free connection, checking for
+ * cancellation while it waits.
+ * A ReadSession reads without a transaction: a transaction would keep every
+ * record of the exported network on the heap until the export ends, and
+ * OrientDB gives no snapshot of the network either way. An export may thus
+ * see the writes other tasks make meanwhile and mix two versions of the
+ * network. Such an export is never handed out: the ExportArtifactCache
+ * detects a network modified during its export, discards the artifact and
+ * exports the network again, failing the task if the network keeps changing.
+ * When the pool is not opened, e.g. when an exporter is run by a utility, the
+ * sessions are taken from the NdexAOrientDBConnectionPool.
+ */
+public enum ExportConnectionPool {
+	INSTANCE;
+
+	// a waiting export checks for cancellation at least this often
+	private static final long WAIT_SLICE_MILLIS = 1000L;
+
+	private static final Logger logger = LoggerFactory.getLogger(ExportConnectionPool.class);
+
+	private OPartitionedDatabasePool pool;
+	private Semaphore connections;
+
+	/*
+	 * the connection an export reads through, to be closed by the export
+	 */
+	public static final class ReadSession implements AutoCloseable {
+		private final ODatabaseDocumentTx db;
+		private final Semaphore connections;
+
+		private ReadSession(ODatabaseDocumentTx db, Semaphore connections) {
+			this.db = db;
+			this.connections = connections;
+		}
+
+		public ODatabaseDocumentTx getDatabase() {
+			return this.db;
+		}
+
+		@Override
+		public void close() {
+			try {
+				this.db.close();
+			} finally {
+				if (this.connections != null) {
+					this.connections.release();
+				}
+			}
+		}
+	}
+
+	synchronized void open(String url, String user, String password, int size) {
+		Preconditions.checkArgument(size > 0, TaskEngineSettings.EXPORT_POOL_SIZE_PROPERTY + " must be > 0");
+		Preconditions.checkState(this.pool == null, "The export connection pool is already open");
+		this.pool = new OPartitionedDatabasePool(url, user, password, size);
+		this.connections = new Semaphore(size, true);
+		logger.info("Export connection pool opened with " + size + " connections");
+	}
+
+	synchronized void close() {
+		if (this.pool != null) {
+			this.pool.close();
+			this.pool = null;
+			this.connections = null;
+		}
+	}
+
+	/*
+	 * open a read session for the task running on the current thread; throws
+	 * TaskCancelledException if the task is cancelled while waiting for a
+	 * connection
+	 */
+	public ReadSession openSession() throws NdexException {
+		OPartitionedDatabasePool readPool;
+		Semaphore permits;
+		synchronized (this) {
+			readPool = this.pool;
+			permits = this.connections;
+		}
+		if (readPool == null) {
+			return new ReadSession(NdexAOrientDBConnectionPool.getInstance().acquire(), null);
+		}
+		try {
+			while (!permits.tryAcquire(WAIT_SLICE_MILLIS, TimeUnit.MILLISECONDS)) {
+				TaskExecutionContext.checkCancelled();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NdexException("Interrupted while waiting for an export connection");
+		}
+		try {
+			return new ReadSession(readPool.acquire(), permits);
+		} catch (RuntimeException e) {
+			permits.release();
+			throw new NdexException("Failed to open an export connection. " + e.getMessage());
+		}
+	}
+
+}
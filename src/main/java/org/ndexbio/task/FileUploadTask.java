@@ -6,6 +6,7 @@ import org.ndexbio.common.access.NdexDatabase;
 import org.ndexbio.model.exceptions.NdexException;
 import org.ndexbio.model.object.Task;
 import org.ndexbio.model.object.Status;
+import org.ndexbio.task.metrics.TaskMetrics;
 import org.ndexbio.task.parsingengines.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,6 +19,14 @@ import com.google.common.io.Files;
  * orientdb. A particular file parser is selected based on the file type.
  * Since this class is invoked based on a Task registered in the orientdb 
  * database, no user authentication is required.
+ * SIF imports are checkpointed, so a task restarted after the process died
+ * continues the partially loaded network. A SIF batch failing to commit on a
+ * transient database conflict is replayed from the last checkpoint, with
+ * the delays of the BatchRetryPolicy. Only the SIF parser records
+ * checkpoints: an XGMML, XBEL or Excel import failing on such a conflict
+ * is not retried, it is removed and the task completes with errors.
+ * A SIF import suspended by a draining processor after its first checkpoint
+ * leaves the staged file in place and is requeued.
  * 
  */
 
@@ -33,7 +42,12 @@ public class FileUploadTask extends NdexTask {
 	
 	public FileUploadTask(Task itask, NdexDatabase db) throws IllegalArgumentException,
 			SecurityException, NdexException {
-		super(itask);
+		this(itask, db, new TaskSession());
+	}
+
+	FileUploadTask(Task itask, NdexDatabase db, TaskSession session) throws IllegalArgumentException,
+			SecurityException, NdexException {
+		super(itask, session);
 		this.filename = this.getTask().getResource();
 		// this.filename = this.getTask().getResource();
 		if (!(new File(this.filename).isFile())) {
@@ -68,13 +82,15 @@ public class FileUploadTask extends NdexTask {
 				.getFileExtension(this.getFilename()).toUpperCase().trim();
 		logger.info("File extension = " + fileExtension);
 		String networkName = Files.getNameWithoutExtension(this.getTask().getDescription());
+		try (TaskTrace.Span span = TaskTrace.span("upload.parse")) {
 		switch (fileExtension) {
 		case ("SIF"):
 			try {
-				final SifParser sifParser = new SifParser(
-						file.getAbsolutePath(), this.getTaskOwnerAccount(),db, networkName);
-				sifParser.parseFile();
+				this.parseSifFile(file, networkName);
 				this.taskStatus = Status.COMPLETED;
+			} catch (TaskCancelledException e) {
+				// suspended after a checkpoint, the staged file is kept for the instance resuming the import
+				throw e;
 			} catch (Exception e) {
 				this.taskStatus = Status.COMPLETED_WITH_ERRORS;
 				logger.error(e.getMessage());
@@ -127,10 +143,42 @@ public class FileUploadTask extends NdexTask {
 			logger.error("The uploaded file type is not supported; must be SIF, XGMML, XBEL, XLS or XLSX.");
 			this.taskStatus = Status.COMPLETED_WITH_ERRORS;
 
+		}
 		}
 		logger.info("Network upload file: " + file.getName() +" deleted from staging area");			
 		file.delete(); // delete the file from the staging area
-		this.updateTaskStatus(this.taskStatus);
+		try (TaskTrace.Span span = TaskTrace.span("upload.updateStatus")) {
+			this.updateTaskStatus(this.taskStatus);
+		}
+	}
+
+	/*
+	 * parse a SIF file, resuming from the last committed batch if a previous
+	 * run was interrupted or a batch failed to commit on a transient conflict
+	 */
+	private void parseSifFile(File file, String networkName) throws Exception {
+		BatchRetryPolicy retryPolicy = null;
+		for (int retry = 1; ; retry++) {
+			final SifParser sifParser = new SifParser(
+					file.getAbsolutePath(), this.getTaskOwnerAccount(),db, networkName, true);
+			try {
+				sifParser.parseFile();
+				return;
+			} catch (RetryableImportException e) {
+				if (retryPolicy == null) {
+					retryPolicy = BatchRetryPolicy.fromSettings(TaskEngineSettings.current());
+				}
+				if (!retryPolicy.allows(retry)) {
+					// remove the partially loaded network like any other failed import
+					sifParser.abort();
+					throw e;
+				}
+				sifParser.close();
+				logger.warn(e.getMessage() + " Resuming from the last committed batch, retry " + retry);
+				TaskMetrics.INSTANCE.recordBatchRetry("SIF");
+				retryPolicy.awaitRetry(retry);
+			}
+		}
 	}
 
 }
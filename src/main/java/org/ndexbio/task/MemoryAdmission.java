@@ -0,0 +1,330 @@
+package org.ndexbio.task;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/*
+ * Represents the memory admission control of network imports. Several parsers
+ * hold a whole network in memory (ExcelParser loads the HSSFWorkbook, the
+ * XGMML and BioPAX parsers build the complete model), so a few concurrent
+ * large uploads could exhaust the heap. Before an upload is started its heap
+ * footprint is estimated from the staged file size and a per-format ratio of
+ * heap bytes per file byte; the upload is delayed while the estimate does not
+ * fit in the headroom left under Task-Memory-Admission-Heap-Percent (default 70)
+ * of the maximum heap. An upload is always admitted when no other upload is
+ * running, so a file larger than the budget is still attempted alone.
+ *
+ * The ratios start from conservative defaults and are calibrated from past
+ * runs: for an upload of at least CALIBRATION_MIN_FILE_BYTES that ran without
+ * another upload, the peak heap growth over its run is folded into the ratio
+ * of its format by an exponentially weighted average. The peak includes the
+ * garbage not collected yet, so an observation is capped at
+ * CALIBRATION_MAX_MULTIPLE times the default ratio of the format; without the
+ * cap a run with a lazy collector would inflate the ratio until uploads of
+ * that format could only run alone. The calibrated model is
+ * saved to Task-Memory-Model-File (default <NdexRoot>/task-memory-model.properties)
+ * so it survives restarts. Setting the heap percentage to 0 disables admission control.
+ * This class is thread safe.
+ */
+class MemoryAdmission {
+
+	static final String MODEL_FILE_PROPERTY = "Task-Memory-Model-File";
+	static final String DEFAULT_MODEL_FILE_NAME = "task-memory-model.properties";
+
+	// the heap used by a parser regardless of the file size
+	static final long BASE_FOOTPRINT_BYTES = 16L * 1024L * 1024L;
+	static final long CALIBRATION_MIN_FILE_BYTES = 1024L * 1024L;
+	static final double CALIBRATION_WEIGHT = 0.3;
+	static final double CALIBRATION_MAX_MULTIPLE = 3.0;
+	static final double MIN_RATIO = 1.0;
+	static final double MAX_RATIO = 500.0;
+
+	/*
+	 * heap bytes per byte of the staged file before any calibration; the
+	 * formats parsed in memory are the most expensive
+	 */
+	private static final ImmutableMap<String, Double> DEFAULT_RATIOS = ImmutableMap.<String, Double>builder()
+			.put("SIF", 4.0)
+			.put("XBEL", 10.0)
+			.put("XGMML", 12.0)
+			.put("OWL", 30.0)
+			.put("XLS", 40.0)
+			.put("XLSX", 60.0)
+			.build();
+	private static final double DEFAULT_RATIO = 20.0;
+
+	private static final Logger logger = LoggerFactory.getLogger(MemoryAdmission.class);
+
+	/*
+	 * the view of the heap the admission decisions are based on
+	 */
+	interface HeapProbe {
+		long getMaxBytes();
+		long getUsedBytes();
+		// the peak heap use since the last reset
+		long getPeakUsedBytes();
+		void resetPeak();
+	}
+
+	private static final class Reservation {
+		final String format;
+		final long fileSize;
+		final long estimate;
+		final long startUsed;
+		// no other upload ran at any time during this one
+		boolean solo;
+
+		Reservation(String format, long fileSize, long estimate, long startUsed, boolean solo) {
+			this.format = format;
+			this.fileSize = fileSize;
+			this.estimate = estimate;
+			this.startUsed = startUsed;
+			this.solo = solo;
+		}
+	}
+
+	private final HeapProbe heap;
+	private final int heapPercent;
+	private final File modelFile;
+	private final Map<String, Double> ratios = Maps.newHashMap();
+	private final Map<Task, Reservation> running = Maps.newIdentityHashMap();
+	private long reservedBytes;
+
+	MemoryAdmission(HeapProbe heap, int heapPercent, File modelFile) {
+		Preconditions.checkArgument(null != heap, "A heap probe is required");
+		Preconditions.checkArgument(heapPercent >= 0 && heapPercent <= 100,
+				"The heap percentage must be between 0 and 100");
+		this.heap = heap;
+		this.heapPercent = heapPercent;
+		this.modelFile = modelFile;
+		this.ratios.putAll(DEFAULT_RATIOS);
+		this.loadModel();
+	}
+
+	/*
+	 * no admission control; every upload is started as soon as a worker is free
+	 */
+	static MemoryAdmission disabled() {
+		return new MemoryAdmission(new PlatformHeapProbe(), 0, null);
+	}
+
+	static MemoryAdmission fromConfiguration(Configuration configuration) {
+		int percent = configuration.getSettings().getMemoryHeapPercent();
+		String modelFile = configuration.getProperty(MODEL_FILE_PROPERTY);
+		File file = modelFile != null ? new File(modelFile)
+				: new File(configuration.getNdexRoot(), DEFAULT_MODEL_FILE_NAME);
+		logger.info("Uploads are admitted within " + percent + "% of the heap, memory model " + file);
+		return new MemoryAdmission(new PlatformHeapProbe(), percent, file);
+	}
+
+	boolean isEnabled() {
+		return this.heapPercent > 0;
+	}
+
+	private static boolean applies(Task task) {
+		return task.getTaskType() == TaskType.PROCESS_UPLOADED_NETWORK;
+	}
+
+	synchronized double getRatio(String format) {
+		Double ratio = format == null ? null : this.ratios.get(format);
+		return ratio == null ? DEFAULT_RATIO : ratio;
+	}
+
+	/*
+	 * the estimated heap footprint of the task in bytes
+	 */
+	long estimateFootprint(Task task) {
+		long fileSize = TaskCostEstimator.stagedFileSize(task);
+		return BASE_FOOTPRINT_BYTES + (long) (fileSize * this.getRatio(NdexTaskCategory.formatOf(task)));
+	}
+
+	synchronized long getReservedBytes() {
+		return this.reservedBytes;
+	}
+
+	/*
+	 * the heap the running uploads have not claimed yet: the budget less the
+	 * larger of the heap in use and the reservations, since a reservation
+	 * is only filled up as its upload progresses
+	 */
+	private long availableBytes() {
+		long budget = this.heap.getMaxBytes() / 100L * this.heapPercent;
+		return budget - Math.max(this.heap.getUsedBytes(), this.reservedBytes);
+	}
+
+	/*
+	 * whether tryAdmit would admit the task now; nothing is reserved
+	 */
+	synchronized boolean canAdmit(Task task) {
+		if (!this.isEnabled() || !applies(task)) {
+			return true;
+		}
+		return this.running.isEmpty() || this.estimateFootprint(task) <= this.availableBytes();
+	}
+
+	/*
+	 * reserve the estimated footprint of an upload; returns false if the upload
+	 * must wait for more headroom. Other tasks are always admitted.
+	 */
+	synchronized boolean tryAdmit(Task task) {
+		if (!this.isEnabled() || !applies(task)) {
+			return true;
+		}
+		long estimate = this.estimateFootprint(task);
+		long available = this.availableBytes();
+		if (estimate > available) {
+			if (!this.running.isEmpty()) {
+				logger.debug("Delaying upload " + task.getExternalId() + ", estimated at "
+						+ megabytes(estimate) + " MB with " + megabytes(available) + " MB available");
+				return false;
+			}
+			logger.warn("Upload " + task.getExternalId() + " is estimated at " + megabytes(estimate)
+					+ " MB, more than the " + megabytes(available) + " MB available. Running it alone.");
+		}
+		boolean solo = this.running.isEmpty();
+		for (Reservation reservation : this.running.values()) {
+			reservation.solo = false;
+		}
+		if (solo) {
+			this.heap.resetPeak();
+		}
+		this.running.put(task, new Reservation(NdexTaskCategory.formatOf(task),
+				TaskCostEstimator.stagedFileSize(task), estimate, this.heap.getUsedBytes(), solo));
+		this.reservedBytes += estimate;
+		return true;
+	}
+
+	/*
+	 * release the reservation of a finished upload and calibrate its format
+	 * ratio when the upload ran alone
+	 */
+	synchronized void release(Task task) {
+		Reservation reservation = this.running.remove(task);
+		if (null == reservation) {
+			return;
+		}
+		this.reservedBytes -= reservation.estimate;
+		if (reservation.solo && reservation.format != null
+				&& reservation.fileSize >= CALIBRATION_MIN_FILE_BYTES) {
+			long growth = this.heap.getPeakUsedBytes() - reservation.startUsed - BASE_FOOTPRINT_BYTES;
+			this.calibrate(reservation.format, growth / (double) reservation.fileSize);
+		}
+	}
+
+	private void calibrate(String format, double observedRatio) {
+		double previous = this.getRatio(format);
+		Double defaultRatio = DEFAULT_RATIOS.get(format);
+		double maxObserved = Math.min(MAX_RATIO, 
+				CALIBRATION_MAX_MULTIPLE * (defaultRatio == null ? DEFAULT_RATIO : defaultRatio));
+		double observed = Math.min(maxObserved, Math.max(MIN_RATIO, observedRatio));
+		double ratio = previous * (1 - CALIBRATION_WEIGHT) + observed * CALIBRATION_WEIGHT;
+		this.ratios.put(format, ratio);
+		logger.info("Heap per file byte of " + format + " calibrated from " + String.format("%.1f", previous)
+				+ " to " + String.format("%.1f", ratio) + " (observed " + String.format("%.1f", observedRatio) + ")");
+		this.saveModel();
+	}
+
+	private void loadModel() {
+		if (null == this.modelFile || !this.modelFile.isFile()) {
+			return;
+		}
+		Properties model = new Properties();
+		try (BufferedReader reader = Files.newBufferedReader(this.modelFile.toPath(),
+				StandardCharsets.UTF_8)) {
+			model.load(reader);
+			for (String format : model.stringPropertyNames()) {
+				this.ratios.put(format, Double.valueOf(model.getProperty(format)));
+			}
+		} catch (IOException | NumberFormatException e) {
+			logger.warn("Ignoring unreadable memory model " + this.modelFile + ". " + e.getMessage());
+		}
+	}
+
+	/*
+	 * the model is replaced atomically so a crash leaves the previous one
+	 */
+	private void saveModel() {
+		if (null == this.modelFile) {
+			return;
+		}
+		Properties model = new Properties();
+		for (Map.Entry<String, Double> entry : this.ratios.entrySet()) {
+			model.setProperty(entry.getKey(), entry.getValue().toString());
+		}
+		File tmpFile = new File(this.modelFile.getPath() + ".tmp");
+		try {
+			try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile),
+					StandardCharsets.UTF_8)) {
+				model.store(writer, "heap bytes per file byte of the network imports by format");
+			}
+			Files.move(tmpFile.toPath(), this.modelFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.warn("Failed to save the memory model " + this.modelFile + ". " + e.getMessage());
+		}
+	}
+
+	private static long megabytes(long bytes) {
+		return bytes / (1024L * 1024L);
+	}
+
+	/*
+	 * the heap of this JVM; the peak is the sum of the peaks of the heap memory
+	 * pools, which can only overestimate the footprint: the pools peak at
+	 * different times and hold garbage until it is collected
+	 */
+	static final class PlatformHeapProbe implements HeapProbe {
+
+		@Override
+		public long getMaxBytes() {
+			return Runtime.getRuntime().maxMemory();
+		}
+
+		@Override
+		public long getUsedBytes() {
+			return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		}
+
+		@Override
+		public long getPeakUsedBytes() {
+			long peak = 0L;
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP) {
+					peak += pool.getPeakUsage().getUsed();
+				}
+			}
+			return peak;
+		}
+
+		@Override
+		public void resetPeak() {
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP) {
+					pool.resetPeakUsage();
+				}
+			}
+		}
+	}
+
+}
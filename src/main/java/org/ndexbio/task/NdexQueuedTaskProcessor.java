@@ -1,20 +1,24 @@
 package org.ndexbio.task;
 
+import java.util.Collections;
+import java.util.UUID;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.ndexbio.common.access.NdexDatabase;
 import org.ndexbio.model.exceptions.NdexException;
-import org.ndexbio.model.object.Status;
 import org.ndexbio.model.object.Task;
-import org.ndexbio.common.persistence.orientdb.NdexTaskService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+
 import java.util.List;
 
 public class NdexQueuedTaskProcessor {
@@ -23,147 +27,398 @@ public class NdexQueuedTaskProcessor {
 	 * Represents a java application responsible for processing Ndex tasks
 	 * persisted in the database with a status of QUEUED. The application
 	 * is intended to be invoked on a scheduled basis as a UNIX/Linx cron task.
-	 * Each invocation of this application will select all queued tasks from the
-	 * orientdb database. The status of these tasks will be updated to STAGED and 
-	 * the task ids placed in FIFO queue. The application will process all the STAGED
-	 * entries, the level of concurrency will be set by a parameter value. As each task
-	 * is removed from the queue, an appropriate task handler will be invoked.
+	 * Each invocation of this application claims a bounded batch of queued tasks
+	 * from the orientdb database with an expiring lease (see TaskLeases). The status
+	 * of these tasks is updated to STAGED and the tasks placed in the task queue. The
+	 * application will process all the STAGED entries using a pool of NdexTaskExecutor
+	 * workers and claim the next batch until no queued task is left. The size of the pool is set by
+	 * the Task-Worker-Count property (default: the number of available processors), the
+	 * workers run on platform or virtual threads per Task-Execution-Mode and
+	 * the number of concurrent tasks of a given task type/file format can be capped with 
+	 * Task-Concurrency-Limit.<TaskType>[.<FileFormat>] properties.
+	 * As each task is removed from the queue, an appropriate task handler will be invoked
+	 * on the worker thread. Every worker takes its own connections from the 
+	 * NdexAOrientDBConnectionPool, so the pool should be sized to at least the worker count.
 	 * The individual task handlers are responsible for update the task status in the
 	 * orientdb database from STAGED to PROCESSING and then to a final completion status.
 	 * 
-	 * Because a number of tasks may be processed by a single cron invocation of this
-	 * application. The application is responsible for checking if any tasks in the database
-	 * have a status of STAGED or PROVESSING. If so, that invocation will log the tasks found
-	 * with those statuses and terminate. The intent is to have only one invocation running at a time.
+	 * The leases are renewed while the tasks are queued or running and released as
+	 * each task finishes. Because a task is only ever held by one lease, any number of
+	 * invocations or task daemons, on one or several hosts, can process the same
+	 * database concurrently. The tasks of an invocation that died are claimed again
+	 * by any instance once their lease expired.
+	 * 
+	 * The continuous workers of the daemon mode are stopped with drain(): no new
+	 * task is claimed, the staged tasks are requeued and the running tasks may
+	 * finish until the drain deadline. The tasks still running then are suspended
+	 * and requeued when they can be resumed or restarted, failed otherwise.
 	 * 
-	 * New tasks queued to the database while this application is running will not
-	 * be processed until the next cron invocation of the application.
+	 * A task queued in the database can also be submitted to the continuous workers
+	 * right away instead of waiting to be claimed by the next poll (see submit).
 	 * 
 	 */
 	private static final Logger logger = LoggerFactory.getLogger(NdexQueuedTaskProcessor.class);
-	private static final Integer MAX_THREADS = 1;
-	private final NdexTaskService taskService ;
+	private static final long LEASE_CHECK_MILLIS = 1000L;
+	static final long QUEUE_METRICS_INTERVAL_MILLIS = 15000L;
+	// the time a suspended task has to reach its next cancellation check point
+	static final long DRAIN_GRACE_MILLIS = 60000L;
+	private final int workerCount;
+	private final NdexTaskConcurrencyLimits limits;
+	private final TaskDeadlines deadlines;
+	private final TaskTracing tracing;
+	private final int microBatchSize;
+	private final TaskLeases leases;
 	private   final CompletionService<Integer> taskCompletionService;
 	private final ExecutorService taskExecutor;
+	private final List<NdexTaskExecutor> workers = Lists.newArrayList();
+	private volatile boolean draining;
 	private NdexDatabase db ;
+	private long queueMetricsTime;
 	
 	
 	public NdexQueuedTaskProcessor(NdexDatabase db) {
-		 this.taskService = new NdexTaskService();
-		 taskExecutor = Executors.newFixedThreadPool(MAX_THREADS);
+		this(db, defaultWorkerCount());
+		configureTaskQueue();
+		configureWriteRates();
+	}
+	
+	private NdexQueuedTaskProcessor(NdexDatabase db, int workerCount) {
+		this(db, workerCount, defaultConcurrencyLimits(), defaultDeadlines(), 
+				defaultTracing(), TaskEngineSettings.current().getMicroBatchSize(), defaultLeases(workerCount), 
+				TaskThreads.configuredMode());
+	}
+	
+	NdexQueuedTaskProcessor(NdexDatabase db, int workerCount, NdexTaskConcurrencyLimits limits,
+			TaskDeadlines deadlines, TaskTracing tracing, int microBatchSize, TaskLeases leases, 
+			TaskThreads.ExecutionMode executionMode) {
+		Preconditions.checkArgument(workerCount > 0, "The worker count must be > 0");
+		Preconditions.checkArgument(null != leases, "Task leases are required");
+		 this.workerCount = workerCount;
+		 this.limits = limits;
+		 this.deadlines = deadlines;
+		 this.tracing = tracing;
+		 this.microBatchSize = microBatchSize;
+		 this.leases = leases;
+		 taskExecutor = TaskThreads.newWorkerPool(executionMode, workerCount, "ndex-task-worker-");
 	       this.taskCompletionService =
 	           new ExecutorCompletionService<>(taskExecutor);  
 	     this.db = db;   
+	     logger.info("Task processor configured with " + workerCount + " workers on " 
+	    		 + executionMode + " threads as " + leases.getInstanceId());
 	}
 	
+	/*
+	 * the worker pool size is read from the configuration; it defaults to the
+	 * number of available processors, or a multiple of it in the virtual thread
+	 * execution mode (see TaskThreads)
+	 */
+	static int defaultWorkerCount() {
+		int workers = TaskThreads.defaultWorkerCount(TaskThreads.configuredMode());
+		try {
+			int configured = Configuration.getInstance().getSettings().getWorkerCount();
+			return configured > 0 ? configured : workers;
+		} catch (NdexException e) {
+			logger.warn("Unable to read " + TaskEngineSettings.WORKER_COUNT_PROPERTY 
+					+ " from configuration, using " + workers + " workers. " + e.getMessage());
+			return workers;
+		}
+	}
 	
+	/*
+	 * apply the configured lane and starvation thresholds to the task queue
+	 */
+	private static void configureTaskQueue() {
+		try {
+			TaskEngineSettings settings = Configuration.getInstance().getSettings();
+			NdexTaskQueueService.INSTANCE.configure(new TaskCostEstimator(settings.getSmallUploadMaxBytes()),
+					settings.getStarvationThresholdSeconds() * 1000L);
+		} catch (NdexException e) {
+			logger.warn("Unable to read the task scheduling settings from configuration, "
+					+ "using the defaults. " + e.getMessage());
+		}
+	}
 	
 	/*
-	 * private method to process all the tasks current persisted with a 
-	 * QUEUED status
+	 * pace the batch commits of the parsers (see WriteRateGovernor)
 	 */
-	//TODO: need to handle stale tasks 
-	private void processQueuedTasks() {
-		List<Task> stagedTasks = null;
+	private static void configureWriteRates() {
 		try {
-			/*
-			 * obtain a List of queued tasks and update their status to staged
-			 */
-			stagedTasks = taskService.stageQueuedTasks();
+			WriteRateGovernor.INSTANCE.configure(Configuration.getInstance().getSettings());
 		} catch (NdexException e) {
-			logger.error(e.getMessage());
-			e.printStackTrace();
-			return;
+			logger.warn("Unable to read the write rates from configuration, "
+					+ "the parser commits are not paced. " + e.getMessage());
 		}
-
-		if(!stagedTasks.isEmpty()){
-				NdexTaskQueueService.INSTANCE.addCollection(stagedTasks);		
-				logger.info("The task queue contains" +NdexTaskQueueService.INSTANCE.getTaskQueueSize()
-						+" staged tasks");
-			
+	}
+	
+	private static NdexTaskConcurrencyLimits defaultConcurrencyLimits() {
+		try {
+			return NdexTaskConcurrencyLimits.fromConfiguration(Configuration.getInstance());
+		} catch (NdexException e) {
+			logger.warn("Unable to read task concurrency limits from configuration, "
+					+ "no limits are applied. " + e.getMessage());
+			return NdexTaskConcurrencyLimits.unlimited();
+		}
+	}
+	
+	private static TaskDeadlines defaultDeadlines() {
+		try {
+			return TaskDeadlines.fromConfiguration(Configuration.getInstance());
+		} catch (NdexException e) {
+			logger.warn("Unable to read task deadlines from configuration, using a deadline of "
+					+ TaskDeadlines.DEFAULT_DEADLINE_MINUTES + " minutes. " + e.getMessage());
+			return TaskDeadlines.defaults();
+		}
+	}
+	
+	private static TaskTracing defaultTracing() {
+		try {
+			return TaskTracing.fromConfiguration(Configuration.getInstance());
+		} catch (NdexException e) {
+			logger.warn("Unable to read the task tracing settings from configuration, "
+					+ "no task is traced. " + e.getMessage());
+			return TaskTracing.disabled();
+		}
+	}
+	
+	private static TaskLeases defaultLeases(int workerCount) {
+		try {
+			return TaskLeases.fromSettings(Configuration.getInstance().getSettings(), workerCount);
+		} catch (NdexException | IllegalArgumentException e) {
+			logger.warn("Unable to read the task lease settings from configuration, "
+					+ "using the defaults. " + e.getMessage());
+			return TaskLeases.defaults(workerCount);
+		}
+	}
+	
+	TaskDeadlines getDeadlines() {
+		return this.deadlines;
+	}
+	
+	
+	
+	/*
+	 * private method to process all the tasks current persisted with a 
+	 * QUEUED status, one claimed batch at a time
+	 */
+	private void processQueuedTasks() {
+		TaskWatchdog watchdog = null;
+		while (this.stageQueuedTasks() > 0) {
+				if (null == watchdog) {
+					// cancel the tasks that run past their deadline
+					watchdog = new TaskWatchdog();
+					watchdog.startAsync();
+				}
 				int threadCount = Math.min(NdexTaskQueueService.INSTANCE.getTaskQueueSize(), 
-						MAX_THREADS);
+						this.workerCount);
 				int startedThreads = 0;
 				for ( int i = 0 ; i < threadCount ; i++ ){
 					
-					NdexTaskExecutor executor  = new NdexTaskExecutor(startedThreads, db);
+					NdexTaskExecutor executor  = new NdexTaskExecutor(startedThreads, db, this.limits, 
+							this.deadlines, this.tracing, this.microBatchSize, this.leases, false);
 					this.taskCompletionService.submit(executor);
 					logger.info("A NdexTaskExecutor thread started");
 					startedThreads++;
 					
 				}
-				// monitor submitted jobs until completion
+				// monitor submitted jobs until completion, renewing the task leases meanwhile
 				Integer totalCompletedTasks = 0;
-				for(int threadsCompletd=0;threadsCompletd<startedThreads;threadsCompletd++){
+				int threadsCompleted = 0;
+				while (threadsCompleted < startedThreads) {
 			        try {
 			            logger.debug("trying to take from Completion service");
-			            Future<Integer> result = taskCompletionService.take();
-			            totalCompletedTasks += result.get();
-			            
-			            System.out.println("Thread completed " +result.get() +" tasks" 
-			            		+" Total tasks completed = " +totalCompletedTasks);
-			            result.cancel(true);
-			            
+			            Future<Integer> result = taskCompletionService.poll(LEASE_CHECK_MILLIS, 
+			            		TimeUnit.MILLISECONDS);
+			            this.renewLeases();
+			            this.refreshQueueMetrics();
+			            if (null == result) {
+			            	continue;
+			            }
+			            threadsCompleted++;
+			            int completed = result.get();
+			            totalCompletedTasks += completed;
+			            logger.info("Executor thread completed " + completed + " tasks, total tasks completed = "
+			            		+ totalCompletedTasks);
 			        } catch (InterruptedException e) {
-			            
-			            logger.error("Error Interrupted exception");
-			            e.printStackTrace();
+			            logger.error("Interrupted while waiting for the NdexTaskExecutor threads");
+			            Thread.currentThread().interrupt();
+			            if (null != watchdog) {
+			            	watchdog.stopAsync();
+			            }
+			            return;
 			        } catch (ExecutionException e) {
-			            // Something went wrong with the result
-			            e.printStackTrace();
-			            logger.error("Error get() threw exception");
+			            // a worker failed outside of its tasks
+			            logger.error("A NdexTaskExecutor thread failed. " + e.getCause().getMessage(), e.getCause());
 			        }
 			        
 			    }
-				// clear the stage flags in case error occurs.
-			   	try {
-	//				Thread.sleep(5000);
-					for ( Task t : taskService.getActiveTasks()) {
-						taskService.updateTaskStatus ( Status.COMPLETED_WITH_ERRORS, t);
-						logger.error ("Setting status of stale task " + t.getExternalId() + " from " + t.getStatus()
-							+" to "	+ Status.COMPLETED_WITH_ERRORS);
-					}
-				} catch (NdexException  e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-					logger.error("Failed to cleanup the unfinished tasks: "  + e.getMessage());
-				} 
-		 
-				
 		}
-			
+		if (null != watchdog) {
+			watchdog.stopAsync();
+		}
 	}
 	
-	private void shutdown() {
-		this.taskExecutor.shutdownNow();
+	/*
+	 * claim queued tasks, and tasks whose lease expired, until the task queue
+	 * holds a claim batch and add them to the task queue. Returns the number of 
+	 * tasks staged.
+	 */
+	int stageQueuedTasks() {
+		if (this.draining) {
+			return 0;
+		}
+		List<Task> stagedTasks = this.leases.claim(this.leases.getClaimBatchSize() 
+				- NdexTaskQueueService.INSTANCE.getTaskQueueSize());
+		if (!stagedTasks.isEmpty()) {
+			NdexTaskQueueService.INSTANCE.addCollection(stagedTasks);
+			logger.info("The task queue contains" +NdexTaskQueueService.INSTANCE.getTaskQueueSize()
+					+" staged tasks");
+		}
+		return stagedTasks.size();
 	}
 	
 	/*
-	 * method to determine the number of tasks that are currently marked
-	 * as STAGED or PROCESSING. If >0, it's an indication that an previous 
-	 * invocation of this application is still running
+	 * claim a QUEUED task by its id and add it to the task queue of the
+	 * continuous workers; returns a future completed with the task once it
+	 * reached its final status (see TaskSubmissions). A task already claimed
+	 * by this instance is not claimed again.
 	 */
-	private  Integer determineActiveTasks() throws NdexException {
-		List<Task> taskList = taskService.getActiveTasks();
-		Integer activeTasks = taskList.size();
-		// for now just print out the in progress tasks
-		for ( Task task : taskList){
-			//TODO check running time and terminate job if necessary
-			// decrement activeTasks 
-			logger.info("Task id " + task.getExternalId() +" has an active status of " 
-					+task.getStatus());
+	ListenableFuture<Task> submit(UUID taskId, TaskProgressListener listener) throws NdexException {
+		Preconditions.checkState(!this.workers.isEmpty(), "The continuous workers are not started");
+		if (this.draining) {
+			throw new NdexException("The task processor is shutting down");
 		}
-		return activeTasks;
+		// registered first, the task may be run as soon as it is claimed
+		ListenableFuture<Task> result = TaskSubmissions.INSTANCE.register(taskId, listener);
+		Task task;
+		try {
+			task = this.leases.claim(taskId);
+		} catch (NdexException e) {
+			TaskSubmissions.INSTANCE.withdraw(taskId);
+			throw e;
+		}
+		if (null == task) {
+			if (this.leases.isHeld(taskId)) {
+				// claimed by a poll of this instance meanwhile
+				return result;
+			}
+			TaskSubmissions.INSTANCE.withdraw(taskId);
+			throw new NdexException("Task " + taskId + " is not queued or was claimed by another task processor");
+		}
+		NdexTaskQueueService.INSTANCE.addCollection(Collections.singletonList(task));
+		if (this.draining) {
+			// the drain started meanwhile and may have missed the task
+			this.requeueStagedTasks();
+		}
+		return result;
+	}
+	
+	/*
+	 * renew the leases of the queued and running tasks when due
+	 */
+	void renewLeases() {
+		this.leases.renewIfDue(System.currentTimeMillis());
+	}
+	
+	/*
+	 * count the tasks of the shared queue by status for the TaskMetrics, at most
+	 * once per QUEUE_METRICS_INTERVAL_MILLIS
+	 */
+	void refreshQueueMetrics() {
+		long now = System.currentTimeMillis();
+		if (now - this.queueMetricsTime >= QUEUE_METRICS_INTERVAL_MILLIS) {
+			this.queueMetricsTime = now;
+			this.leases.publishQueueDepths();
+		}
+	}
+	
+	/*
+	 * start the worker pool in continuous mode: the workers wait for tasks
+	 * added to the queue by stageQueuedTasks until drain is called
+	 */
+	void startWorkers() {
+		for (int i = 0; i < this.workerCount; i++) {
+			NdexTaskExecutor worker = new NdexTaskExecutor(i, db, this.limits, this.deadlines, 
+					this.tracing, this.microBatchSize, this.leases, true);
+			this.workers.add(worker);
+			this.taskExecutor.submit(worker);
+		}
+		logger.info(this.workerCount + " continuous NdexTaskExecutor threads started");
+	}
+	
+	/*
+	 * stop the continuous workers: stop claiming tasks, requeue the staged ones
+	 * and wait up to timeoutMillis for the running tasks to finish. The tasks
+	 * still running are then suspended and given DRAIN_GRACE_MILLIS to stop
+	 * before the workers are interrupted.
+	 */
+	void drain(long timeoutMillis) {
+		this.draining = true;
+		for (NdexTaskExecutor worker : this.workers) {
+			worker.stop();
+		}
+		int requeued = this.requeueStagedTasks();
+		logger.info("Draining the task processor, " + requeued + " staged tasks requeued, "
+				+ TaskExecutionContext.getRunningContexts().size() + " tasks running");
+		this.taskExecutor.shutdown();
+		try {
+			if (!this.awaitWorkers(timeoutMillis)) {
+				for (TaskExecutionContext context : TaskExecutionContext.getRunningContexts()) {
+					context.suspend("the task processor is shutting down");
+				}
+				logger.warn("Drain deadline reached, suspended "
+						+ TaskExecutionContext.getRunningContexts().size() + " running tasks");
+				if (!this.awaitWorkers(DRAIN_GRACE_MILLIS)) {
+					logger.error("Interrupting the task workers that did not stop");
+					this.taskExecutor.shutdownNow();
+				}
+			}
+		} catch (InterruptedException e) {
+			logger.error("Interrupted while draining the task processor");
+			this.taskExecutor.shutdownNow();
+			Thread.currentThread().interrupt();
+			return;
+		}
+		logger.info("Task processor drained");
+	}
+	
+	/*
+	 * return the tasks staged but not started to the shared queue
+	 */
+	int requeueStagedTasks() {
+		int requeued = 0;
+		for (Task task : NdexTaskQueueService.INSTANCE.removeAll()) {
+			if (this.leases.requeue(task, false)) {
+				requeued++;
+			}
+			TaskSubmissions.INSTANCE.abandoned(task, NdexTaskExecutor.REQUEUED);
+		}
+		return requeued;
+	}
+	
+	/*
+	 * wait for the workers to terminate, renewing the leases of the running
+	 * tasks meanwhile
+	 */
+	private boolean awaitWorkers(long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (!this.taskExecutor.isTerminated()) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return false;
+			}
+			this.taskExecutor.awaitTermination(Math.min(remaining, LEASE_CHECK_MILLIS), 
+					TimeUnit.MILLISECONDS);
+			this.renewLeases();
+		}
+		return true;
 	}
 	
-
 /*	public static void main(String[] args) {
 		
 		try {
 			processAll();
 		} catch (NdexException e) {
-			e.printStackTrace();
-			logger.error(e.getMessage());
+			logger.error(e.getMessage(), e);
 			System.exit(-1);
 		} 
 	} */
@@ -172,9 +427,15 @@ public class NdexQueuedTaskProcessor {
 	public void processAll () throws NdexException {
 			logger.info("Task processer invoked");
 
-			if (determineActiveTasks() < 1){
+			try {
 				processQueuedTasks();
+			} finally {
+				// nothing is left to write the status changes behind a single run
+				int updated = TaskStatusService.INSTANCE.flush();
+				logger.info(updated + " task status changes written");
 			}
+			logger.info("Task queue wait statistics:" 
+					+ NdexTaskQueueService.INSTANCE.describeWaitStatistics());
 
 			logger.info(this.getClass().getSimpleName() + " completed.");
 		
@@ -6,19 +6,24 @@ import org.ndexbio.common.exceptions.ObjectNotFoundException;
 import org.ndexbio.model.exceptions.NdexException;
 import org.ndexbio.model.object.Task;
 import org.ndexbio.model.object.Status;
-import org.ndexbio.common.persistence.orientdb.NdexTaskService;
 
 
 public abstract class NdexTask implements Callable<Task> {
 	
-	private final NdexTaskService taskService;
 	private  Task task;
 	private String taskOwnerAccount;
 	
 	public NdexTask(Task itask) throws NdexException {
-		this.taskService = new NdexTaskService();
+		this(itask, new TaskSession());
+	}
+
+	/*
+	 * a task run in the session of a worker, sharing its task service and
+	 * the owner accounts looked up by the earlier tasks of the session
+	 */
+	NdexTask(Task itask, TaskSession session) throws NdexException {
 		this.task = itask;
-		this.taskOwnerAccount = taskService.getTaskOwnerAccount(itask);
+		this.taskOwnerAccount = session.getTaskOwnerAccount(itask);
 	}
 
 	protected Task getTask() { return this.task;}
@@ -30,14 +35,15 @@ public abstract class NdexTask implements Callable<Task> {
 	}
 	
 	/*
-	 * update the actual itask in the task service which is responsible for database connections
+	 * update the actual itask in the task status service which is responsible for database connections
 	 * refresh the itask instancce to reflect the updated status
 	 * do not set the status directly since the database connection may be closed
-	 * 
+	 * a completion status is written before this method returns, any other status is
+	 * written behind with the progress of the task (see TaskStatusService)
 	 */
 	protected final void updateTaskStatus(Status status) throws IllegalArgumentException, 
 		ObjectNotFoundException, SecurityException, NdexException{
-		this.task = this.taskService.updateTaskStatus(status, this.task);
+		this.task = TaskStatusService.INSTANCE.updateTaskStatus(status, this.task);
 	}
 
 	@Override
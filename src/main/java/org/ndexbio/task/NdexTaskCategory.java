@@ -0,0 +1,44 @@
+package org.ndexbio.task;
+
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+
+import com.google.common.base.Strings;
+import com.google.common.io.Files;
+
+/*
+ * Utility methods to classify a Task by its task type and file format.
+ * The resulting category string (e.g. PROCESS_UPLOADED_NETWORK.XBEL) is
+ * used as the key for the per-category concurrency caps.
+ * Upload tasks do not carry a format, so it is derived from the extension of
+ * the staged file, the same way FileUploadTask selects a parser.
+ */
+final class NdexTaskCategory {
+
+	private NdexTaskCategory() {}
+
+	/*
+	 * returns the upper case file format of the task or null if it
+	 * cannot be determined
+	 */
+	static String formatOf(Task task) {
+		if (task.getTaskType() == TaskType.PROCESS_UPLOADED_NETWORK) {
+			if (Strings.isNullOrEmpty(task.getResource())) {
+				return null;
+			}
+			String extension = Files.getFileExtension(task.getResource()).toUpperCase().trim();
+			return extension.isEmpty() ? null : extension;
+		}
+		return task.getFormat() == null ? null : task.getFormat().toString();
+	}
+
+	static String typeOf(Task task) {
+		return String.valueOf(task.getTaskType());
+	}
+
+	static String of(Task task) {
+		String format = formatOf(task);
+		return format == null ? typeOf(task) : typeOf(task) + "." + format;
+	}
+
+}
@@ -0,0 +1,158 @@
+package org.ndexbio.task;
+
+import java.util.Map;
+
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/*
+ * Represents the per-category concurrency caps enforced by the task workers.
+ * A category is a task type optionally qualified by a file format
+ * (see NdexTaskCategory). Caps are read from the ndex configuration file
+ * using properties of the form:
+ * 
+ *   Task-Concurrency-Limit.PROCESS_UPLOADED_NETWORK.XBEL=2
+ *   Task-Concurrency-Limit.EXPORT_NETWORK_TO_FILE=8
+ * 
+ * The most specific entry wins. Categories without a cap are only limited by
+ * the size of the worker pool. The per-owner import caps and fair share
+ * accounting (see OwnerFairShare) and the memory admission of uploads
+ * (see MemoryAdmission) are applied here as well.
+ * This class is thread safe; workers block on it while every queued task
+ * belongs to a category or owner that is at its cap or waits for heap headroom.
+ */
+class NdexTaskConcurrencyLimits {
+
+	static final String LIMIT_PROPERTY_PREFIX = "Task-Concurrency-Limit.";
+
+	private static final Logger logger = LoggerFactory.getLogger(NdexTaskConcurrencyLimits.class);
+
+	private final Map<String, Integer> limits;
+	private final OwnerFairShare ownerShares;
+	private final MemoryAdmission memory;
+	private final Map<String, Integer> runningTasks = Maps.newHashMap();
+
+	NdexTaskConcurrencyLimits(Map<String, Integer> limits) {
+		this(limits, OwnerFairShare.equalShares());
+	}
+
+	NdexTaskConcurrencyLimits(Map<String, Integer> limits, OwnerFairShare ownerShares) {
+		this(limits, ownerShares, MemoryAdmission.disabled());
+	}
+
+	NdexTaskConcurrencyLimits(Map<String, Integer> limits, OwnerFairShare ownerShares,
+			MemoryAdmission memory) {
+		Preconditions.checkArgument(null != ownerShares, "Owner shares are required");
+		Preconditions.checkArgument(null != memory, "A memory admission control is required");
+		Preconditions.checkArgument(null != limits, "A map of concurrency limits is required");
+		for (Map.Entry<String, Integer> entry : limits.entrySet()) {
+			Preconditions.checkArgument(entry.getValue() != null && entry.getValue() > 0,
+					"The concurrency limit for " + entry.getKey() + " must be > 0");
+		}
+		this.limits = ImmutableMap.copyOf(limits);
+		this.ownerShares = ownerShares;
+		this.memory = memory;
+	}
+
+	/*
+	 * no caps; every category is only limited by the worker pool
+	 */
+	static NdexTaskConcurrencyLimits unlimited() {
+		return new NdexTaskConcurrencyLimits(ImmutableMap.<String, Integer>of());
+	}
+
+	static NdexTaskConcurrencyLimits fromConfiguration(Configuration configuration) throws NdexException {
+		Map<String, Integer> limits = Maps.newHashMap();
+		for (String name : configuration.getPropertyNames()) {
+			if (name.startsWith(LIMIT_PROPERTY_PREFIX)) {
+				String category = name.substring(LIMIT_PROPERTY_PREFIX.length()).toUpperCase();
+				int limit = configuration.getIntProperty(name, 0);
+				if (limit < 1) {
+					throw new NdexException("property " + name + " must be a positive integer.");
+				}
+				limits.put(category, limit);
+				logger.info("At most " + limit + " concurrent tasks of category " + category);
+			}
+		}
+		return new NdexTaskConcurrencyLimits(limits, OwnerFairShare.fromConfiguration(configuration),
+				MemoryAdmission.fromConfiguration(configuration));
+	}
+
+	/*
+	 * returns the cap that applies to the category or null if it is unlimited
+	 */
+	Integer getLimit(String category) {
+		Integer limit = this.limits.get(category);
+		if (limit == null && category.indexOf('.') > 0) {
+			limit = this.limits.get(category.substring(0, category.indexOf('.')));
+		}
+		return limit;
+	}
+
+	OwnerFairShare getOwnerShares() {
+		return this.ownerShares;
+	}
+
+	MemoryAdmission getMemoryAdmission() {
+		return this.memory;
+	}
+
+	/*
+	 * whether tryAcquire would succeed now; nothing is claimed
+	 */
+	synchronized boolean canStart(Task task) {
+		String category = NdexTaskCategory.of(task);
+		Integer limit = this.getLimit(category);
+		return (limit == null || this.getRunningCount(category) < limit)
+				&& this.ownerShares.canStart(task) && this.memory.canAdmit(task);
+	}
+
+	/*
+	 * claim a slot for the task's category and owner and reserve the heap of an
+	 * upload; returns false if either is at its cap or the heap has no room for the upload
+	 */
+	synchronized boolean tryAcquire(Task task) {
+		String category = NdexTaskCategory.of(task);
+		Integer limit = this.getLimit(category);
+		int running = this.getRunningCount(category);
+		if ((limit != null && running >= limit) || !this.ownerShares.canStart(task)
+				|| !this.memory.tryAdmit(task)) {
+			return false;
+		}
+		this.runningTasks.put(category, running + 1);
+		this.ownerShares.started(task);
+		return true;
+	}
+
+	synchronized void release(Task task) {
+		String category = NdexTaskCategory.of(task);
+		int running = this.getRunningCount(category);
+		if (running <= 1) {
+			this.runningTasks.remove(category);
+		} else {
+			this.runningTasks.put(category, running - 1);
+		}
+		this.ownerShares.finished(task);
+		this.memory.release(task);
+		this.notifyAll();
+	}
+
+	/*
+	 * wait until a slot is released or the timeout expires
+	 */
+	synchronized void awaitRelease(long timeoutMillis) throws InterruptedException {
+		this.wait(timeoutMillis);
+	}
+
+	synchronized int getRunningCount(String category) {
+		Integer running = this.runningTasks.get(category);
+		return running == null ? 0 : running;
+	}
+
+}
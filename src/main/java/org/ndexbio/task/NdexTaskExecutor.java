@@ -1,54 +1,92 @@
 package org.ndexbio.task;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CompletionService;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.ndexbio.common.access.NdexDatabase;
 import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Status;
 import org.ndexbio.model.object.Task;
 import org.ndexbio.model.object.TaskType;
 import org.ndexbio.model.object.network.FileFormat;
-import org.ndexbio.common.persistence.orientdb.NdexTaskService;
+import org.ndexbio.task.metrics.TaskMetrics;
 import org.slf4j.*;
 
-import java.util.concurrent.Future;
+import com.google.common.base.Preconditions;
 
 import org.ndexbio.common.exceptions.ObjectNotFoundException;
 
 /*
- * Represents a class responsible for pulling itasks off the task queue,
- * instantiating and invoking the appropriate type of NdexTask subclass,
- * and updating the the completion status of the task. The NdexTask instances 
- * were formally the level of application concurrency. This implementation has
- * been retained to minimize refactoring but the concurrency level is fixed a one.
- * The NdexTaskExecutor is now where concurrency is supported. The callable will
- * run until the task queue is empty and return the number of tasks completed.
+ * Represents a worker responsible for pulling tasks off the task queue,
+ * instantiating the appropriate type of NdexTask subclass, running it and
+ * updating the completion status of the task. 
+ * The NdexTask is invoked directly on the worker thread, so the level of 
+ * application concurrency is the size of the worker pool. Each task acquires
+ * its own database connection from the pool on the worker thread.
+ * A task is only taken from the queue when its category (task type and file
+ * format) is below its concurrency cap; if every queued task is capped the
+ * worker waits for a running task to finish.
+ * Every task runs within a TaskExecutionContext carrying its deadline; a task
+ * cancelled by the TaskWatchdog is marked as COMPLETED_WITH_ERRORS.
+ * The resources used by every task run are recorded (see TaskAccounting).
+ * With task leases (see TaskLeases) a task whose lease was lost while it was
+ * queued is skipped and the lease of every task run is released once it is done.
+ * Small uploads are taken in micro-batches of up to Task-Micro-Batch-Size
+ * (default 8) tasks run one after another in one TaskSession; each task keeps
+ * its own context, transaction and status, and acquires its concurrency limits
+ * when it starts.
+ * The future of a task submitted in process (see TaskSubmissions) is completed
+ * once the task reached its final status, and failed when the task was given up.
+ * The callable will run until the task queue is empty and return the number 
+ * of tasks completed. A continuous executor, used by the task daemon, waits
+ * for new tasks instead and only returns when it is stopped or interrupted.
+ * A stopped executor finishes its current task first; a task suspended
+ * meanwhile by a draining processor is requeued when it can be resumed.
  * 
  */
 public class NdexTaskExecutor implements Callable<Integer> {
 
+	private static final long CAPPED_TASK_WAIT_MILLIS = 1000L;
+	private static final long IDLE_WAIT_MILLIS = 1000L;
+	// the outcomes of a task that did not reach a final status
+	private static final String LEASE_LOST = "LEASE_LOST";
+	static final String REQUEUED = "REQUEUED";
+	private static final String INTERRUPTED = "INTERRUPTED";
+
 	private Integer completionCount = 0;
 	private static final Logger logger = LoggerFactory
 			.getLogger(NdexTaskExecutor.class);
-	private  final CompletionService<Task> taskCompletionService;
-	private final Integer MAX_THREADS = 1;
-	private final NdexTaskService taskService;
+	private final TaskAccounting accounting;
 	private final Integer threadIdentifier;
-	private final ExecutorService taskExecutor;
+	private final NdexTaskConcurrencyLimits limits;
+	private final TaskDeadlines deadlines;
+	private final TaskTracing tracing;
+	private final int microBatchSize;
+	private final boolean continuous;
+	private final TaskLeases leases;
+	private volatile boolean stopped;
 	private NdexDatabase db;
 
 	public NdexTaskExecutor(Integer id, NdexDatabase db) {
-		 taskExecutor = Executors
-				.newFixedThreadPool(MAX_THREADS);
-		this.taskCompletionService = new ExecutorCompletionService<>(
-				taskExecutor);
-		this.taskService = new NdexTaskService();
+		this(id, db, NdexTaskConcurrencyLimits.unlimited(), TaskDeadlines.defaults(), 
+				TaskTracing.disabled(), TaskEngineSettings.DEFAULT_MICRO_BATCH_SIZE, null, false);
+	}
+
+	NdexTaskExecutor(Integer id, NdexDatabase db, NdexTaskConcurrencyLimits limits,
+			TaskDeadlines deadlines, TaskTracing tracing, int microBatchSize, TaskLeases leases, 
+			boolean continuous) {
+		Preconditions.checkArgument(microBatchSize > 0, "The micro-batch size must be > 0");
+		this.accounting = new TaskAccounting();
 		this.threadIdentifier = id;
 		this.db = db;
+		this.limits = limits;
+		this.deadlines = deadlines;
+		this.tracing = tracing;
+		this.microBatchSize = microBatchSize;
+		this.leases = leases;
+		this.continuous = continuous;
 	}
 	
 	public Integer getThreadIdentifier() { return this.threadIdentifier;}
@@ -56,47 +94,195 @@ public class NdexTaskExecutor implements Callable<Integer> {
 	@Override
 	public Integer call() throws Exception {
 		logger.info("Executor " + this.getThreadIdentifier() +" invoked");
-		while (!NdexTaskQueueService.INSTANCE.isTaskQueueEmpty()) {
-			try {
-				Task itask = NdexTaskQueueService.INSTANCE.getNextTask();
-				NdexTask ndexTask = getNdexTaskByTaskType(itask);
-				this.taskCompletionService.submit(ndexTask);
-				// now wait for completion of child task
-				logger.info("Invoking Ndextask type: " + ndexTask.getClass().getName()
-						+" for task id: " +ndexTask.getTask().getExternalId());
-				Future<Task> result = taskCompletionService.take();
-				// post completion status
-				this.postTaskCompletion(result.get());
-				this.incrementCompletionCount();
-				result.cancel(true);
-
-			} catch (  IllegalArgumentException
-					| SecurityException
-					| NdexException | ExecutionException e) {
-				
-				logger.error(e.getMessage());
-				e.printStackTrace();
-				throw new Exception ("Error occured when executing task. " + e.getMessage());
-			} catch (InterruptedException e){
+		while (!this.stopped 
+				&& (this.continuous || !NdexTaskQueueService.INSTANCE.isTaskQueueEmpty())) {
+			if (Thread.currentThread().isInterrupted()) {
 				logger.info("Thread is interrupted");
 				return this.getCompletionCount();
 			}
-
+			List<Task> batch = NdexTaskQueueService.INSTANCE.getNextTasks(this.limits, this.microBatchSize);
+			if (batch.isEmpty()) {
+				try {
+					if (NdexTaskQueueService.INSTANCE.isTaskQueueEmpty()) {
+						// the queue was drained meanwhile; wait for newly staged tasks
+						NdexTaskQueueService.INSTANCE.awaitTasks(IDLE_WAIT_MILLIS);
+					} else {
+						// every queued task belongs to a category that is at its cap
+						this.limits.awaitRelease(CAPPED_TASK_WAIT_MILLIS);
+					}
+				} catch (InterruptedException e) {
+					logger.info("Thread is interrupted");
+					return this.getCompletionCount();
+				}
+				continue;
+			}
+			// the tasks of a micro-batch share one session
+			TaskSession session = new TaskSession();
+			for (int i = 0; i < batch.size(); i++) {
+				Task itask = batch.get(i);
+				// the queue acquired the limits of the first task, the others are acquired as they start
+				if (i > 0 && (this.stopped || Thread.currentThread().isInterrupted()
+						|| !this.limits.tryAcquire(itask))) {
+					this.returnUnstarted(batch.subList(i, batch.size()));
+					break;
+				}
+				if (null != this.leases && !this.leases.isHeld(itask)) {
+					logger.warn("Skipping task " + itask.getExternalId() + ", its lease was lost");
+					this.limits.release(itask);
+					TaskSubmissions.INSTANCE.abandoned(itask, LEASE_LOST);
+					continue;
+				}
+				try {
+					if (!this.runTask(itask, session)) {
+						this.returnUnstarted(batch.subList(i + 1, batch.size()));
+						logger.info("Thread is interrupted");
+						return this.getCompletionCount();
+					}
+				} finally {
+					this.limits.release(itask);
+					if (null != this.leases) {
+						this.leases.release(itask);
+					}
+				}
+			}
 		}
 		logger.info("Executor " +this.getThreadIdentifier() +" completed.");
-		this.taskExecutor.shutdownNow();
 		return this.getCompletionCount();
 	}
 
+	/*
+	 * the tasks of a micro-batch left when the worker stops, or when the limits
+	 * no longer admit the next one, are returned to the shared queue, or to the
+	 * local queue without task leases; their limits were not acquired
+	 */
+	private void returnUnstarted(List<Task> tasks) {
+		for (Task task : tasks) {
+			if (null != this.leases) {
+				this.leases.requeue(task, false);
+				TaskSubmissions.INSTANCE.abandoned(task, REQUEUED);
+			}
+		}
+		if (null == this.leases) {
+			NdexTaskQueueService.INSTANCE.addCollection(tasks);
+		}
+	}
+
+	/*
+	 * run a single task on the current thread; returns false if the task
+	 * was interrupted
+	 */
+	private boolean runTask(Task itask, TaskSession session) {
+		TaskExecutionContext context = TaskExecutionContext.begin(itask, 
+				this.deadlines.getDeadlineMillis(itask), this.tracing.shouldTrace(itask));
+		TaskMetrics.INSTANCE.taskStarted();
+		TaskSubmissions.INSTANCE.started(context);
+		String outcome = Status.COMPLETED_WITH_ERRORS.toString();
+		try {
+			NdexTask ndexTask = getNdexTaskByTaskType(itask, session);
+			logger.info("Invoking Ndextask type: " + ndexTask.getClass().getName()
+					+" for task id: " +ndexTask.getTask().getExternalId());
+			Task completedTask = ndexTask.call();
+			if (context.isCancelled()) {
+				// the parsers report errors in different ways, make sure the task is not reported as completed
+				logger.warn("Task " + itask.getExternalId() + " cancelled: " + context.getCancelReason());
+				if (null != this.leases && !this.leases.isHeld(itask)) {
+					// the task belongs to the instance that reclaimed it now
+					outcome = LEASE_LOST;
+					return true;
+				}
+				if (this.requeueSuspended(context, itask)) {
+					outcome = REQUEUED;
+					return true;
+				}
+				TaskStatusService.INSTANCE.updateTaskStatus(Status.COMPLETED_WITH_ERRORS, 
+						null == completedTask ? itask : completedTask);
+				return true;
+			}
+			if (null == completedTask) {
+				outcome = INTERRUPTED;
+				return false;
+			}
+			// post completion status
+			this.postTaskCompletion(completedTask);
+			outcome = String.valueOf(completedTask.getStatus());
+			this.incrementCompletionCount();
+		} catch (Exception e) {
+			// a failed task must not take the worker down with it
+			logger.error("Error occured when executing task " + itask.getExternalId()
+					+ ". " + e.getMessage(), e);
+			if (this.requeueSuspended(context, itask)) {
+				outcome = REQUEUED;
+				return true;
+			}
+			try {
+				TaskStatusService.INSTANCE.updateTaskStatus(Status.COMPLETED_WITH_ERRORS, itask);
+			} catch (NdexException e1) {
+				logger.error("Failed to update the status of task " + itask.getExternalId()
+						+ ". " + e1.getMessage());
+			}
+		} finally {
+			context.end();
+			long elapsedMillis = context.getElapsedMillis(System.currentTimeMillis());
+			TaskMetrics.INSTANCE.taskFinished(NdexTaskCategory.typeOf(itask), 
+					NdexTaskCategory.formatOf(itask), elapsedMillis);
+			// a task given up is no longer this instance's to update
+			boolean givenUp = LEASE_LOST.equals(outcome) || REQUEUED.equals(outcome);
+			if (givenUp) {
+				TaskStatusService.INSTANCE.discard(itask);
+			}
+			this.accounting.record(itask, outcome, elapsedMillis, context.getResourceUsage(), !givenUp);
+			this.writeTrace(context);
+			if (givenUp || INTERRUPTED.equals(outcome)) {
+				TaskSubmissions.INSTANCE.abandoned(itask, outcome);
+			} else {
+				TaskSubmissions.INSTANCE.completed(itask);
+			}
+		}
+		return true;
+	}
+
+	private void writeTrace(TaskExecutionContext context) {
+		if (null == context.getTrace()) {
+			return;
+		}
+		try {
+			File traceFile = this.tracing.write(context.getTrace());
+			logger.info("Trace of task " + context.getTask().getExternalId() + " written to " + traceFile);
+		} catch (IOException e) {
+			// tracing must never fail the task
+			logger.warn("Unable to write the trace of task " + context.getTask().getExternalId() 
+					+ ". " + e.getMessage());
+		}
+	}
+
+	/*
+	 * a task suspended by a draining processor is returned to the shared queue
+	 * instead of failed when it can be resumed or restarted
+	 */
+	private boolean requeueSuspended(TaskExecutionContext context, Task itask) {
+		return context.isSuspended() && null != this.leases && this.leases.requeue(itask, true);
+	}
+
 	private void postTaskCompletion(Task completedTask) throws 
 	IllegalArgumentException, ObjectNotFoundException, SecurityException, NdexException {
 	
-		taskService.updateTaskStatus( completedTask.getStatus(),completedTask);
+		// the tasks store their final status themselves, it is only written if they did not
+		if (completedTask.getStatus() != Status.COMPLETED 
+				&& completedTask.getStatus() != Status.COMPLETED_WITH_ERRORS) {
+			TaskStatusService.INSTANCE.updateTaskStatus( completedTask.getStatus(),completedTask);
+		}
 		logger.info("Completion status for task id: " +completedTask.getExternalId() +
 				"is " +completedTask.getStatus().toString());
 	
 }
 
+	/*
+	 * stop taking tasks from the queue; the current task runs to its end
+	 */
+	void stop() {
+		this.stopped = true;
+	}
+
 	Integer getCompletionCount() {
 		return completionCount;
 	}
@@ -106,11 +292,11 @@ public class NdexTaskExecutor implements Callable<Integer> {
 	}
 	
 	
-	private NdexTask getNdexTaskByTaskType(Task task) throws NdexException{
+	private NdexTask getNdexTaskByTaskType(Task task, TaskSession session) throws NdexException{
 		
 		try {
 			if( task.getTaskType() == TaskType.PROCESS_UPLOADED_NETWORK) {
-				return new FileUploadTask(task, db);
+				return new FileUploadTask(task, db, session);
 			}
 			if( task.getTaskType() == TaskType.EXPORT_NETWORK_TO_FILE) {
 				if ( task.getFormat() == FileFormat.XBEL)
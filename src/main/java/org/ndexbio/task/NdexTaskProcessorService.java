@@ -0,0 +1,107 @@
+package org.ndexbio.task;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.ndexbio.common.access.NdexDatabase;
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/*
+ * Represents the daemon mode of the task processor. Instead of a cron job
+ * starting a new JVM for every NdexQueuedTaskProcessor.processAll() call, this
+ * service keeps a pool of warm, continuous NdexTaskExecutor workers and polls
+ * the database for QUEUED tasks on a short adaptive interval: every poll that
+ * finds work resets the interval to the minimum, every empty poll doubles it up
+ * to the maximum of one second. A task queued while the daemon is running is
+ * therefore picked up within a second.
+ * 
+ * Tasks are claimed with leases (see TaskLeases) that are renewed on every
+ * iteration when due, so several daemons and cron invoked processors can share
+ * the same database; the tasks left behind by a stopped instance are claimed
+ * again once their lease expired.
+ * Stopping the service drains the processor (see NdexQueuedTaskProcessor.drain):
+ * the running tasks may finish within Task-Drain-Timeout-Seconds (default 300)
+ * before they are suspended and requeued.
+ * An application embedding the service, e.g. the NDEx REST server, can submit
+ * a task it queued to the workers right away with submit(): the task skips the
+ * poll but is scheduled, leased and has its status written like any other.
+ * This service is invoked by registering an instance of this class with a Google
+ * Service Manager
+ */
+public class NdexTaskProcessorService extends AbstractScheduledService {
+
+	private static final Logger logger = LoggerFactory.getLogger(NdexTaskProcessorService.class);
+
+	static final long MIN_POLL_INTERVAL_MILLIS = 100L;
+	static final long MAX_POLL_INTERVAL_MILLIS = 1000L;
+
+	private final NdexQueuedTaskProcessor processor;
+	private volatile long pollInterval = MIN_POLL_INTERVAL_MILLIS;
+
+	public NdexTaskProcessorService(NdexDatabase db) {
+		Preconditions.checkArgument(null != db, "A database is required");
+		this.processor = new NdexQueuedTaskProcessor(db);
+	}
+
+	@Override
+	protected void startUp() {
+		logger.info("NdexTaskProcessorService started");
+		this.processor.startWorkers();
+	}
+
+	@Override
+	protected void shutDown() {
+		this.processor.drain(TaskEngineSettings.current().getDrainTimeoutSeconds() * 1000L);
+		logger.info("NdexTaskProcessorService stopped");
+	}
+
+	/*
+	 * stage the tasks queued since the last iteration; the continuous workers
+	 * pick them up from the task queue
+	 */
+	@Override
+	protected void runOneIteration() throws Exception {
+		this.processor.renewLeases();
+		this.processor.refreshQueueMetrics();
+		int staged = this.processor.stageQueuedTasks();
+		this.pollInterval = nextPollInterval(this.pollInterval, staged);
+	}
+
+	/*
+	 * run a QUEUED task without waiting for the next poll; the listener, which
+	 * may be null, is notified of its status and progress changes and the
+	 * future is completed with the task once it reached its final status
+	 */
+	public ListenableFuture<Task> submit(UUID taskId, TaskProgressListener listener) throws NdexException {
+		Preconditions.checkState(this.isRunning(), "The task processor service is not running");
+		return this.processor.submit(taskId, listener);
+	}
+
+	static long nextPollInterval(long currentInterval, int stagedTasks) {
+		if (stagedTasks > 0) {
+			return MIN_POLL_INTERVAL_MILLIS;
+		}
+		return Math.min(currentInterval * 2, MAX_POLL_INTERVAL_MILLIS);
+	}
+
+	/*
+	 * the delay before the next poll is recomputed after every iteration
+	 */
+	@Override
+	protected Scheduler scheduler() {
+		return new CustomScheduler() {
+			@Override
+			protected Schedule getNextSchedule() {
+				return new Schedule(pollInterval, TimeUnit.MILLISECONDS);
+			}
+		};
+	}
+
+}
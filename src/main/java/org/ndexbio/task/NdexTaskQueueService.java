@@ -1,43 +1,293 @@
 package org.ndexbio.task;
 
 import java.util.Collection;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
 import org.ndexbio.model.object.Task;
+import org.ndexbio.task.metrics.TaskMetrics;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Queues;
+import com.google.common.collect.Lists;
 
 /*
  * a singleton implemented as an enum to make the task queue avilable to
  * multiple threads within the application
  * Access is limited to classes within the same package
+ *
+ * The queue is split into scheduling lanes (see TaskLane). A task is dispatched
+ * from the highest priority lane that has a runnable task and, within a lane,
+ * shortest-job-first by the cost estimated from its staged file size and format.
+ * Across owners, the tasks of a lane are served by weighted fair share (see
+ * OwnerFairShare) so one owner's bulk upload cannot monopolize the workers.
+ * To protect the lower lanes from starvation, any task that has waited longer
+ * than the starvation threshold is dispatched first, oldest first.
+ * Small uploads are dispatched in micro-batches a worker runs in one session
+ * (see getNextTasks and TaskSession).
+ * The queue wait of every dispatched task is recorded per lane and, with the
+ * lane depths, published to the TaskMetrics.
  */
 
 enum NdexTaskQueueService {
 	INSTANCE;
-	
-	private final ConcurrentLinkedQueue<Task> taskQueue =
-			Queues.newConcurrentLinkedQueue();
-	
-	void addCollection(Collection<Task> iTasks){
+
+	static final long DEFAULT_STARVATION_THRESHOLD_MILLIS =
+			TaskEngineSettings.DEFAULT_STARVATION_THRESHOLD_SECONDS * 1000L;
+
+	/*
+	 * a staged task with its scheduling attributes
+	 */
+	static final class QueuedTask {
+		final Task task;
+		final TaskLane lane;
+		final long cost;
+		final long enqueueTime;
+
+		QueuedTask(Task task, TaskLane lane, long cost, long enqueueTime) {
+			this.task = task;
+			this.lane = lane;
+			this.cost = cost;
+			this.enqueueTime = enqueueTime;
+		}
+	}
+
+	private final Map<TaskLane, List<QueuedTask>> lanes = new EnumMap<>(TaskLane.class);
+	private final Map<TaskLane, QueueWaitStatistics> waitStatistics = new EnumMap<>(TaskLane.class);
+	private TaskCostEstimator costEstimator = new TaskCostEstimator();
+	private long starvationThresholdMillis = DEFAULT_STARVATION_THRESHOLD_MILLIS;
+	private int size;
+
+	private NdexTaskQueueService() {
+		for (TaskLane lane : TaskLane.values()) {
+			this.lanes.put(lane, Lists.<QueuedTask>newArrayList());
+			this.waitStatistics.put(lane, new QueueWaitStatistics());
+		}
+	}
+
+	synchronized void configure(TaskCostEstimator estimator, long starvationThresholdMillis) {
+		Preconditions.checkArgument(null != estimator, "A cost estimator is required");
+		Preconditions.checkArgument(starvationThresholdMillis > 0,
+				"The starvation threshold must be > 0");
+		this.costEstimator = estimator;
+		this.starvationThresholdMillis = starvationThresholdMillis;
+	}
+
+	/*
+	 * the scheduling lane of a task with the configured thresholds
+	 */
+	synchronized TaskLane laneOf(Task task) {
+		return this.costEstimator.laneOf(task);
+	}
+
+	synchronized void addCollection(Collection<Task> iTasks){
 		Preconditions.checkArgument(null != iTasks,
 				"a collection if ITasks is required");
-		this.taskQueue.addAll(iTasks);
+		long now = System.currentTimeMillis();
+		for (Task task : iTasks) {
+			QueuedTask queued = new QueuedTask(task, this.costEstimator.laneOf(task),
+					this.costEstimator.estimateCost(task), now);
+			this.insertByCost(this.lanes.get(queued.lane), queued);
+			this.size++;
+		}
+		this.publishLaneDepths();
+		this.notifyAll();
 	}
-	
+
+	/*
+	 * keep every lane ordered by cost; tasks of equal cost stay in arrival order
+	 */
+	private void insertByCost(List<QueuedTask> lane, QueuedTask queued) {
+		int index = lane.size();
+		while (index > 0 && lane.get(index - 1).cost > queued.cost) {
+			index--;
+		}
+		lane.add(index, queued);
+	}
+
+	/*
+	 * block until the queue has a task or the timeout expires; used by
+	 * long running workers while the queue is empty
+	 */
+	synchronized void awaitTasks(long timeoutMillis) throws InterruptedException {
+		if (this.size == 0) {
+			this.wait(timeoutMillis);
+		}
+	}
+
 	/*
 	 * encapsulate direct access to queue
 	 */
 	Task getNextTask() {
-		return this.taskQueue.poll();
+		return this.getNextTask(NdexTaskConcurrencyLimits.unlimited());
+	}
+
+	/*
+	 * return the next task to run or null if every queued task belongs to a
+	 * category at its concurrency cap. The slot is claimed before the task is
+	 * removed from the queue so the caller must release it once the task is finished.
+	 */
+	synchronized Task getNextTask(NdexTaskConcurrencyLimits limits) {
+		List<Task> next = this.getNextTasks(limits, 1);
+		return next.isEmpty() ? null : next.get(0);
+	}
+
+	/*
+	 * the next task and, if it is a small upload, up to maxBatchSize - 1 more
+	 * small uploads to run in the same worker session. The concurrency limits
+	 * are only acquired for the first task; the others are added if the limits
+	 * would admit them now and are acquired by the worker as each one starts, so
+	 * a batch holds the slot and heap of the task it runs only.
+	 */
+	synchronized List<Task> getNextTasks(NdexTaskConcurrencyLimits limits, int maxBatchSize) {
+		Preconditions.checkArgument(maxBatchSize > 0, "The batch size must be > 0");
+		long now = System.currentTimeMillis();
+		QueuedTask next = this.nextStarvedTask(limits, now);
+		if (null == next) {
+			next = this.nextByPriority(limits);
+		}
+		if (null == next) {
+			return Collections.emptyList();
+		}
+		List<Task> batch = Lists.newArrayList();
+		while (null != next) {
+			this.take(next, now);
+			batch.add(next.task);
+			next = next.lane == TaskLane.SMALL_UPLOAD && batch.size() < maxBatchSize
+					? this.nextInLane(limits, TaskLane.SMALL_UPLOAD, false) : null;
+		}
+		this.publishLaneDepths();
+		return batch;
+	}
+
+	private void take(QueuedTask queued, long now) {
+		this.lanes.get(queued.lane).remove(queued);
+		this.size--;
+		this.waitStatistics.get(queued.lane).record(now - queued.enqueueTime);
+		TaskMetrics.INSTANCE.recordQueueWait(NdexTaskCategory.typeOf(queued.task),
+				NdexTaskCategory.formatOf(queued.task), now - queued.enqueueTime);
+	}
+
+	private void publishLaneDepths() {
+		for (Map.Entry<TaskLane, List<QueuedTask>> lane : this.lanes.entrySet()) {
+			TaskMetrics.INSTANCE.setLocalQueueDepth(lane.getKey().name(), lane.getValue().size());
+		}
+	}
+
+	/*
+	 * the oldest runnable task that has waited longer than the starvation threshold
+	 */
+	private QueuedTask nextStarvedTask(NdexTaskConcurrencyLimits limits, long now) {
+		List<QueuedTask> starved = Lists.newArrayList();
+		for (List<QueuedTask> lane : this.lanes.values()) {
+			for (QueuedTask queued : lane) {
+				if (now - queued.enqueueTime > this.starvationThresholdMillis) {
+					starved.add(queued);
+				}
+			}
+		}
+		while (!starved.isEmpty()) {
+			QueuedTask oldest = starved.get(0);
+			for (QueuedTask queued : starved) {
+				if (queued.enqueueTime < oldest.enqueueTime) {
+					oldest = queued;
+				}
+			}
+			if (limits.tryAcquire(oldest.task)) {
+				return oldest;
+			}
+			starved.remove(oldest);
+		}
+		return null;
+	}
+
+	/*
+	 * the runnable task of the highest priority lane whose owner holds the
+	 * smallest share of the workers; cheapest first for tasks of the same owner
+	 */
+	private QueuedTask nextByPriority(NdexTaskConcurrencyLimits limits) {
+		for (TaskLane lane : TaskLane.values()) {
+			QueuedTask queued = this.nextInLane(limits, lane, true);
+			if (null != queued) {
+				return queued;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * the runnable task of a lane whose owner holds the smallest share of the
+	 * workers; its limits are acquired or, for the rest of a batch, only checked
+	 */
+	private QueuedTask nextInLane(NdexTaskConcurrencyLimits limits, TaskLane lane, boolean acquire) {
+		final Map<String, OwnerFairShare.Share> shares = limits.getOwnerShares().snapshot();
+		Comparator<QueuedTask> byOwnerShare = new Comparator<QueuedTask>() {
+			@Override
+			public int compare(QueuedTask a, QueuedTask b) {
+				return shareOf(shares, a).compareTo(shareOf(shares, b));
+			}
+		};
+		List<QueuedTask> candidates = Lists.newArrayList(this.lanes.get(lane));
+		// the sort is stable, so each owner's tasks stay in cost order
+		Collections.sort(candidates, byOwnerShare);
+		for (QueuedTask queued : candidates) {
+			if (acquire ? limits.tryAcquire(queued.task) : limits.canStart(queued.task)) {
+				return queued;
+			}
+		}
+		return null;
+	}
+
+	private static OwnerFairShare.Share shareOf(Map<String, OwnerFairShare.Share> shares, 
+			QueuedTask queued) {
+		OwnerFairShare.Share share = shares.get(OwnerFairShare.ownerOf(queued.task));
+		return share == null ? OwnerFairShare.Share.NONE : share;
+	}
+
+	/*
+	 * remove and return every queued task, e.g. to requeue them in the
+	 * database when the task processor drains
+	 */
+	synchronized List<Task> removeAll() {
+		List<Task> tasks = Lists.newArrayList();
+		for (List<QueuedTask> lane : this.lanes.values()) {
+			for (QueuedTask queued : lane) {
+				tasks.add(queued.task);
+			}
+			lane.clear();
+		}
+		this.size = 0;
+		this.publishLaneDepths();
+		return tasks;
+	}
+
+	synchronized boolean isTaskQueueEmpty() {
+		return this.size == 0;
+	}
+
+	synchronized int getTaskQueueSize() {
+		return this.size;
+	}
+
+	synchronized int getLaneSize(TaskLane lane) {
+		return this.lanes.get(lane).size();
 	}
-	
-	boolean isTaskQueueEmpty() {
-		return this.taskQueue.isEmpty();
+
+	QueueWaitStatistics getWaitStatistics(TaskLane lane) {
+		return this.waitStatistics.get(lane);
 	}
 
-	int getTaskQueueSize() {
-		return this.taskQueue.size();
+	/*
+	 * one line per lane with its current depth and queue wait percentiles
+	 */
+	synchronized String describeWaitStatistics() {
+		StringBuilder sb = new StringBuilder();
+		for (TaskLane lane : TaskLane.values()) {
+			sb.append("\nLane: " + lane + " queued=" + this.lanes.get(lane).size()
+					+ " wait " + this.waitStatistics.get(lane));
+		}
+		return sb.toString();
 	}
 }
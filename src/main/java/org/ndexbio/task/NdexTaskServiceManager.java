@@ -1,7 +1,14 @@
 package org.ndexbio.task;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.ndexbio.common.access.NdexAOrientDBConnectionPool;
+import org.ndexbio.common.access.NdexDatabase;
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.task.metrics.MetricsHttpService;
+import org.ndexbio.task.metrics.TaskMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,6 +23,10 @@ import com.google.common.util.concurrent.ServiceManager;
  * implement the Google Guava Service interface
  * This application is designed to run continuously, preferably as a 
  * UNIX/Linux daemon and to be automatically started by an /etc/init.d script
+ * On SIGTERM the services are stopped, which drains the task processor before
+ * the database connections are closed. The TaskStatusFlushService is stopped
+ * only once the other services have terminated, so it writes the changes of
+ * the drained tasks.
  * 
  * Re: registerServices method for instructions on how to add a new Service
  * 
@@ -24,25 +35,50 @@ public class NdexTaskServiceManager {
 	
 	
 	private final ServiceManager manager;
+	private final Service statusFlushService;
+	private final NdexDatabase db;
 	private static final Logger logger = LoggerFactory.getLogger(NdexTaskServiceManager.class);
 	
-	public NdexTaskServiceManager() {
+	public NdexTaskServiceManager(NdexDatabase db) {
+		this.db = db;
 	    this.manager = new ServiceManager(this.registerServices());
+	    // write the task status and progress behind the workers
+	    this.statusFlushService = new TaskStatusFlushService(
+	    		TaskEngineSettings.current().getStatusFlushMillis());
+	    TaskMetrics.INSTANCE.registerMBean();
 	}
 	
 	private void startTasks() {
+		this.statusFlushService.startAsync().awaitRunning();
 		this.manager.startAsync();
 		logger.info("NDEx service tasks started");
 		
 	}
 	
+	/*
+	 * stop the services and wait for the task processor to drain, then write
+	 * the remaining task status changes
+	 */
 	private void stopTasks() {
 		this.manager.stopAsync();
-		logger.info("Service tasks stopped");
+		long timeoutMillis = TaskEngineSettings.current().getDrainTimeoutSeconds() * 1000L
+				+ NdexQueuedTaskProcessor.DRAIN_GRACE_MILLIS;
+		try {
+			this.manager.awaitStopped(timeoutMillis, TimeUnit.MILLISECONDS);
+			logger.info("Service tasks stopped");
+		} catch (TimeoutException e) {
+			logger.error("Service tasks did not stop within " + timeoutMillis + " ms:" 
+					+ this.displayServiceStatus());
+		}
+		try {
+			this.statusFlushService.stopAsync().awaitTerminated();
+		} catch (IllegalStateException e) {
+			logger.error("TaskStatusFlushService failed, task status changes may be lost. " + e.getMessage());
+		}
 	}
 	
 	private boolean isHealthy() { 
-		return this.manager.isHealthy();
+		return this.manager.isHealthy() && this.statusFlushService.isRunning();
 	}
 	
 	/*
@@ -54,6 +90,8 @@ public class NdexTaskServiceManager {
 		for (java.util.Map.Entry<State, Service> entry : this.manager.servicesByState().entries()) {
 			sb.append("\nService: " +entry.getValue().getClass().getName() +" state " +entry.getKey().toString());
 		}
+		sb.append("\nService: " +this.statusFlushService.getClass().getName() +" state " 
+				+this.statusFlushService.state().toString());
 				
 		return sb.toString();
 	}
@@ -64,21 +102,42 @@ public class NdexTaskServiceManager {
 	 * If any task isn't running, the application will log the status of all tasks
 	 */
 	public static void main(String[] args) {
-		NdexTaskServiceManager taskManager = new NdexTaskServiceManager();
+		NdexDatabase db = null;
+		try {
+			db = initializeDatabase();
+		} catch (NdexException e) {
+			logger.error("Failed to initialize the database connections. " + e.getMessage());
+			ExportConnectionPool.INSTANCE.close();
+			NdexAOrientDBConnectionPool.close();
+			return;
+		}
+		final NdexTaskServiceManager taskManager = new NdexTaskServiceManager(db);
+		final NdexDatabase database = db;
+		Runtime.getRuntime().addShutdownHook(new Thread("ndex-task-drain") {
+			@Override
+			public void run() {
+				logger.info("Shutdown requested, draining the service tasks");
+				taskManager.stopTasks();
+				database.close();
+				ExportConnectionPool.INSTANCE.close();
+				NdexAOrientDBConnectionPool.close();
+			}
+		});
 		taskManager.startTasks();
 		// run an infinite loop
 		while (true){
 			try {
 				Thread.sleep(600000L);  // 
 				if(taskManager.isHealthy()){
-					logger.info("All service tasks are running");
+					logger.info("All service tasks are running. Task queue wait statistics:"
+							+ NdexTaskQueueService.INSTANCE.describeWaitStatistics());
 				} else {
 					logger.info(taskManager.displayServiceStatus());
 				}
 				
 			} catch (InterruptedException e) {
+				// the shutdown hook stops the services and closes the database
 				logger.error(e.getMessage());
-				taskManager.stopTasks();
 				return;
 			} 
 		
@@ -86,6 +145,27 @@ public class NdexTaskServiceManager {
 		
 	}
 	
+	/*
+	 * The connection pool is shared by all the services; it is sized to give every
+	 * task worker its own connection plus one for staging, one for housekeeping
+	 * and one for the task status writes. The exports read through their own
+	 * pool, see ExportConnectionPool.
+	 */
+	private static NdexDatabase initializeDatabase() throws NdexException {
+		Configuration configuration = Configuration.getInstance();
+		ExportConnectionPool.INSTANCE.open(
+				configuration.getDBURL(),
+				configuration.getDBUser(),
+				configuration.getDBPasswd(),
+				configuration.getSettings().getExportPoolSize());
+		NdexAOrientDBConnectionPool.createOrientDBConnectionPool(
+    			configuration.getDBURL(),
+    			configuration.getDBUser(),
+    			configuration.getDBPasswd(), 
+    			NdexQueuedTaskProcessor.defaultWorkerCount() + 3);
+		return new NdexDatabase(configuration.getHostURI());
+	}
+	
 	/*
 	 * Private method to register a new Service implementation
 	 * The invocation frequency is determined by the Service's scheduler
@@ -96,6 +176,22 @@ public class NdexTaskServiceManager {
 		List<Service> list = Lists.newArrayList();
 		// register the task deletion service 
 		list.add(new TaskDeletionService());
+		// register the task processor daemon
+		list.add(new NdexTaskProcessorService(this.db));
+		// register the watchdog cancelling the tasks running past their deadline
+		list.add(new TaskWatchdog());
+		// keep the export artifact cache within its disk budget
+		list.add(new ExportCacheHousekeepingService());
+		// apply the changes of the configuration file without a restart
+		int reloadSeconds = TaskEngineSettings.current().getReloadIntervalSeconds();
+		if (reloadSeconds > 0) {
+			list.add(new ConfigurationReloadService(reloadSeconds));
+		}
+		// publish the task metrics over HTTP when a port is configured
+		int metricsPort = TaskEngineSettings.current().getMetricsPort();
+		if (metricsPort > 0) {
+			list.add(new MetricsHttpService(metricsPort));
+		}
 		return list;
 	}
 
@@ -0,0 +1,195 @@
+package org.ndexbio.task;
+
+import java.util.Map;
+
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/*
+ * Represents the weighted fair sharing of worker slots between task owners.
+ * Owners are identified by the task owner id. Each owner has a weight 
+ * (default 1) and, optionally, a cap on the number of concurrent imports:
+ * 
+ *   Task-Owner-Weight.<owner UUID>=2
+ *   Task-Owner-Max-Concurrent-Imports=4
+ *   Task-Owner-Max-Concurrent-Imports.<owner UUID>=1
+ * 
+ * The task queue orders the tasks of a lane by the share of the owner, i.e. the
+ * owner's running tasks divided by its weight, then by the number of tasks it
+ * has been served divided by its weight. An owner with thousands of staged
+ * files therefore only gets its weighted share of the workers while others
+ * have work queued.
+ * This class is thread safe.
+ */
+class OwnerFairShare {
+
+	static final String WEIGHT_PROPERTY_PREFIX = "Task-Owner-Weight.";
+	static final String IMPORT_LIMIT_PROPERTY = "Task-Owner-Max-Concurrent-Imports";
+
+	private static final String UNKNOWN_OWNER = "unknown";
+	private static final Logger logger = LoggerFactory.getLogger(OwnerFairShare.class);
+
+	/*
+	 * a snapshot of the share an owner currently holds; lower shares are served first
+	 */
+	static final class Share implements Comparable<Share> {
+		static final Share NONE = new Share(0, 0);
+
+		final double runningShare;
+		final double servedShare;
+
+		Share(double runningShare, double servedShare) {
+			this.runningShare = runningShare;
+			this.servedShare = servedShare;
+		}
+
+		@Override
+		public int compareTo(Share other) {
+			int result = Double.compare(this.runningShare, other.runningShare);
+			return result != 0 ? result : Double.compare(this.servedShare, other.servedShare);
+		}
+	}
+
+	private final Map<String, Integer> weights;
+	private final Map<String, Integer> importLimits;
+	private final Integer defaultImportLimit;
+	private final Map<String, Integer> runningTasks = Maps.newHashMap();
+	private final Map<String, Integer> runningImports = Maps.newHashMap();
+	private final Map<String, Long> servedTasks = Maps.newHashMap();
+
+	OwnerFairShare(Map<String, Integer> weights, Map<String, Integer> importLimits, 
+			Integer defaultImportLimit) {
+		Preconditions.checkArgument(null != weights && null != importLimits,
+				"Owner weights and import limits are required");
+		Preconditions.checkArgument(null == defaultImportLimit || defaultImportLimit > 0,
+				"The default owner import limit must be > 0");
+		this.weights = ImmutableMap.copyOf(weights);
+		this.importLimits = ImmutableMap.copyOf(importLimits);
+		this.defaultImportLimit = defaultImportLimit;
+	}
+
+	/*
+	 * every owner has the same weight and no import caps
+	 */
+	static OwnerFairShare equalShares() {
+		return new OwnerFairShare(ImmutableMap.<String, Integer>of(), 
+				ImmutableMap.<String, Integer>of(), null);
+	}
+
+	static OwnerFairShare fromConfiguration(Configuration configuration) throws NdexException {
+		Map<String, Integer> weights = Maps.newHashMap();
+		Map<String, Integer> importLimits = Maps.newHashMap();
+		for (String name : configuration.getPropertyNames()) {
+			if (name.startsWith(WEIGHT_PROPERTY_PREFIX)) {
+				weights.put(name.substring(WEIGHT_PROPERTY_PREFIX.length()), 
+						positiveIntProperty(configuration, name));
+			} else if (name.startsWith(IMPORT_LIMIT_PROPERTY + ".")) {
+				importLimits.put(name.substring(IMPORT_LIMIT_PROPERTY.length() + 1),
+						positiveIntProperty(configuration, name));
+			}
+		}
+		Integer defaultImportLimit = null;
+		if (configuration.getProperty(IMPORT_LIMIT_PROPERTY) != null) {
+			defaultImportLimit = positiveIntProperty(configuration, IMPORT_LIMIT_PROPERTY);
+		}
+		logger.info("Owner fair share configured with " + weights.size() + " weights, " 
+				+ importLimits.size() + " import caps and a default import cap of " + defaultImportLimit);
+		return new OwnerFairShare(weights, importLimits, defaultImportLimit);
+	}
+
+	private static int positiveIntProperty(Configuration configuration, String name) throws NdexException {
+		int value = configuration.getIntProperty(name, 0);
+		if (value < 1) {
+			throw new NdexException("property " + name + " must be a positive integer.");
+		}
+		return value;
+	}
+
+	static String ownerOf(Task task) {
+		return task.getTaskOwnerId() == null ? UNKNOWN_OWNER : task.getTaskOwnerId().toString();
+	}
+
+	private static boolean isImport(Task task) {
+		return task.getTaskType() == TaskType.PROCESS_UPLOADED_NETWORK;
+	}
+
+	int getWeight(String owner) {
+		Integer weight = this.weights.get(owner);
+		return weight == null ? 1 : weight;
+	}
+
+	Integer getImportLimit(String owner) {
+		Integer limit = this.importLimits.get(owner);
+		return limit == null ? this.defaultImportLimit : limit;
+	}
+
+	/*
+	 * returns false if the task is an import and its owner is at its import cap
+	 */
+	synchronized boolean canStart(Task task) {
+		if (!isImport(task)) {
+			return true;
+		}
+		String owner = ownerOf(task);
+		Integer limit = this.getImportLimit(owner);
+		return limit == null || count(this.runningImports, owner) < limit;
+	}
+
+	synchronized void started(Task task) {
+		String owner = ownerOf(task);
+		increment(this.runningTasks, owner, 1);
+		if (isImport(task)) {
+			increment(this.runningImports, owner, 1);
+		}
+		Long served = this.servedTasks.get(owner);
+		this.servedTasks.put(owner, served == null ? 1L : served + 1L);
+	}
+
+	synchronized void finished(Task task) {
+		String owner = ownerOf(task);
+		increment(this.runningTasks, owner, -1);
+		if (isImport(task)) {
+			increment(this.runningImports, owner, -1);
+		}
+	}
+
+	synchronized int getRunningCount(String owner) {
+		return count(this.runningTasks, owner);
+	}
+
+	/*
+	 * a consistent copy of the current shares so the queue can sort by them
+	 * while workers keep starting and finishing tasks
+	 */
+	synchronized Map<String, Share> snapshot() {
+		Map<String, Share> shares = Maps.newHashMap();
+		for (Map.Entry<String, Long> entry : this.servedTasks.entrySet()) {
+			double weight = this.getWeight(entry.getKey());
+			shares.put(entry.getKey(), new Share(count(this.runningTasks, entry.getKey()) / weight,
+					entry.getValue() / weight));
+		}
+		return shares;
+	}
+
+	private static int count(Map<String, Integer> counts, String owner) {
+		Integer count = counts.get(owner);
+		return count == null ? 0 : count;
+	}
+
+	private static void increment(Map<String, Integer> counts, String owner, int delta) {
+		int count = count(counts, owner) + delta;
+		if (count <= 0) {
+			counts.remove(owner);
+		} else {
+			counts.put(owner, count);
+		}
+	}
+
+}
@@ -0,0 +1,68 @@
+package org.ndexbio.task;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/*
+ * Represents the queue wait times of the tasks dispatched from one scheduling
+ * lane. Percentiles are computed over a sliding window of the most recent 
+ * samples; the count covers every task dispatched since startup.
+ * This class is thread safe.
+ */
+class QueueWaitStatistics {
+
+	static final int DEFAULT_WINDOW_SIZE = 1024;
+
+	private final long[] window;
+	private int next;
+	private int size;
+	private long count;
+
+	QueueWaitStatistics(int windowSize) {
+		Preconditions.checkArgument(windowSize > 0, "The window size must be > 0");
+		this.window = new long[windowSize];
+	}
+
+	QueueWaitStatistics() {
+		this(DEFAULT_WINDOW_SIZE);
+	}
+
+	synchronized void record(long waitMillis) {
+		this.window[this.next] = waitMillis;
+		this.next = (this.next + 1) % this.window.length;
+		this.size = Math.min(this.size + 1, this.window.length);
+		this.count++;
+	}
+
+	synchronized long getCount() {
+		return this.count;
+	}
+
+	/*
+	 * returns the wait time in milliseconds at the given percentile (0-100)
+	 * of the current window, 0 if nothing has been recorded
+	 */
+	synchronized long getPercentile(double percentile) {
+		Preconditions.checkArgument(percentile >= 0 && percentile <= 100,
+				"The percentile must be between 0 and 100");
+		if (this.size == 0) {
+			return 0L;
+		}
+		long[] samples = Arrays.copyOf(this.window, this.size);
+		Arrays.sort(samples);
+		int rank = (int) Math.ceil(percentile / 100.0 * samples.length);
+		return samples[Math.max(0, rank - 1)];
+	}
+
+	synchronized long getMax() {
+		return this.getPercentile(100);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "count=" + this.count + " p50=" + this.getPercentile(50) 
+				+ "ms p95=" + this.getPercentile(95) + "ms max=" + this.getMax() + "ms";
+	}
+
+}
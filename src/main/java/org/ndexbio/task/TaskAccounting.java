@@ -0,0 +1,74 @@
+package org.ndexbio.task;
+
+import java.util.Map;
+
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Task;
+import org.ndexbio.task.service.TaskAccountingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/*
+ * Records the resources used by every task a worker ran (see TaskResourceUsage)
+ * as one line in the accounting log, the org.ndexbio.task.accounting logger
+ * that logback.xml writes to its own file, and with the task record. The lines
+ * carry the task type, format and owner, so the cost of the uploads can be
+ * profiled per format and owner and pathological files found.
+ */
+class TaskAccounting {
+
+	static final String ACCOUNTING_LOG = "org.ndexbio.task.accounting";
+
+	private static final Logger logger = LoggerFactory.getLogger(TaskAccounting.class);
+	private static final Logger accountingLog = LoggerFactory.getLogger(ACCOUNTING_LOG);
+
+	private final TaskAccountingService accountingService;
+
+	TaskAccounting() {
+		this(new TaskAccountingService());
+	}
+
+	TaskAccounting(TaskAccountingService accountingService) {
+		Preconditions.checkArgument(null != accountingService, "An accounting service is required");
+		this.accountingService = accountingService;
+	}
+
+	/*
+	 * record the usage of a finished task; the outcome is its final status or
+	 * what else became of it. The task record is only updated while this
+	 * instance still owns the task.
+	 */
+	void record(Task task, String outcome, long elapsedMillis, TaskResourceUsage usage, boolean store) {
+		accountingLog.info(describe(task, outcome, elapsedMillis, usage));
+		if (!store) {
+			return;
+		}
+		try {
+			this.accountingService.storeResourceUsage(task.getExternalId(), usage.toMap());
+		} catch (NdexException e) {
+			// the accounting log still has the usage
+			logger.warn("Failed to store the resource usage of task " + task.getExternalId()
+					+ ". " + e.getMessage());
+		}
+	}
+
+	/*
+	 * the accounting log line: space separated key=value pairs
+	 */
+	static String describe(Task task, String outcome, long elapsedMillis, TaskResourceUsage usage) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("task=").append(task.getExternalId());
+		sb.append(" type=").append(NdexTaskCategory.typeOf(task));
+		sb.append(" format=").append(NdexTaskCategory.formatOf(task));
+		sb.append(" owner=").append(task.getTaskOwnerId());
+		sb.append(" outcome=").append(outcome);
+		sb.append(" elapsedMillis=").append(elapsedMillis);
+		for (Map.Entry<String, Long> entry : usage.toMap().entrySet()) {
+			sb.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+		}
+		return sb.toString();
+	}
+
+}
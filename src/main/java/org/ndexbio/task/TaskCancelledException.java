@@ -0,0 +1,18 @@
+package org.ndexbio.task;
+
+/*
+ * Thrown from a cancellation check point when the task running on the
+ * current thread has been cancelled, e.g. by the TaskWatchdog because it
+ * ran past its deadline. It is unchecked so it can cross the SAX and JAXB
+ * callbacks of the parsers; the parsers' existing error handling aborts the
+ * current transaction and removes the partially loaded network.
+ */
+public class TaskCancelledException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public TaskCancelledException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,77 @@
+package org.ndexbio.task;
+
+import java.io.File;
+
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+
+/*
+ * Represents the estimate of the relative cost of a task used to order the
+ * task queue shortest-job-first and to assign a task to a scheduling lane.
+ * The cost of an upload is the size of the staged file weighted by how
+ * expensive its format is to parse; exports have a fixed nominal cost since
+ * their size is not known before the network is read.
+ */
+class TaskCostEstimator {
+
+	static final long EXPORT_COST = 1L;
+
+	/*
+	 * relative parsing cost per byte; XBEL is parsed in four passes
+	 * plus schema validation
+	 */
+	private static final ImmutableMap<String, Long> FORMAT_WEIGHTS = ImmutableMap.of(
+			"SIF", 1L,
+			"XGMML", 2L,
+			"XLS", 2L,
+			"XLSX", 2L,
+			"XBEL", 4L);
+	private static final long DEFAULT_FORMAT_WEIGHT = 2L;
+
+	private final long smallUploadMaxBytes;
+
+	TaskCostEstimator(long smallUploadMaxBytes) {
+		Preconditions.checkArgument(smallUploadMaxBytes >= 0, 
+				"The small upload size threshold must be >= 0");
+		this.smallUploadMaxBytes = smallUploadMaxBytes;
+	}
+
+	TaskCostEstimator() {
+		this(TaskEngineSettings.DEFAULT_SMALL_UPLOAD_MAX_BYTES);
+	}
+
+	long estimateCost(Task task) {
+		if (task.getTaskType() != TaskType.PROCESS_UPLOADED_NETWORK) {
+			return EXPORT_COST;
+		}
+		return Math.max(1L, stagedFileSize(task)) * formatWeight(NdexTaskCategory.formatOf(task));
+	}
+
+	TaskLane laneOf(Task task) {
+		if (task.getTaskType() != TaskType.PROCESS_UPLOADED_NETWORK) {
+			return TaskLane.INTERACTIVE_EXPORT;
+		}
+		return stagedFileSize(task) <= this.smallUploadMaxBytes 
+				? TaskLane.SMALL_UPLOAD : TaskLane.BULK_UPLOAD;
+	}
+
+	static long formatWeight(String format) {
+		Long weight = format == null ? null : FORMAT_WEIGHTS.get(format);
+		return weight == null ? DEFAULT_FORMAT_WEIGHT : weight;
+	}
+
+	/*
+	 * size of the staged upload file in bytes; 0 if it does not exist
+	 */
+	static long stagedFileSize(Task task) {
+		if (Strings.isNullOrEmpty(task.getResource())) {
+			return 0L;
+		}
+		return new File(task.getResource()).length();
+	}
+
+}
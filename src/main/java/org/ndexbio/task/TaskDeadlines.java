@@ -0,0 +1,84 @@
+package org.ndexbio.task;
+
+import java.util.Map;
+
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/*
+ * Represents the maximum running time of a task by category (see 
+ * NdexTaskCategory). Deadlines are read from the ndex configuration file:
+ * 
+ *   Task-Deadline-Minutes=240
+ *   Task-Deadline-Minutes.PROCESS_UPLOADED_NETWORK.XBEL=600
+ *   Task-Deadline-Minutes.EXPORT_NETWORK_TO_FILE=60
+ * 
+ * The most specific entry wins and the unqualified property is the default
+ * for all other categories. The categories are not case sensitive, as those
+ * of NdexTaskConcurrencyLimits. A task running past its deadline is cancelled by
+ * the TaskWatchdog.
+ */
+class TaskDeadlines {
+
+	static final String DEADLINE_PROPERTY = "Task-Deadline-Minutes";
+	static final int DEFAULT_DEADLINE_MINUTES = 240;
+
+	private static final Logger logger = LoggerFactory.getLogger(TaskDeadlines.class);
+
+	private final Map<String, Integer> deadlines;
+	private final int defaultDeadlineMinutes;
+
+	TaskDeadlines(Map<String, Integer> deadlines, int defaultDeadlineMinutes) {
+		Preconditions.checkArgument(null != deadlines, "A map of deadlines is required");
+		Preconditions.checkArgument(defaultDeadlineMinutes > 0, "The default deadline must be > 0");
+		Map<String, Integer> categories = Maps.newHashMap();
+		for (Map.Entry<String, Integer> entry : deadlines.entrySet()) {
+			Preconditions.checkArgument(entry.getValue() != null && entry.getValue() > 0,
+					"The deadline for " + entry.getKey() + " must be > 0");
+			categories.put(entry.getKey().toUpperCase(), entry.getValue());
+		}
+		this.deadlines = ImmutableMap.copyOf(categories);
+		this.defaultDeadlineMinutes = defaultDeadlineMinutes;
+	}
+
+	static TaskDeadlines defaults() {
+		return new TaskDeadlines(ImmutableMap.<String, Integer>of(), DEFAULT_DEADLINE_MINUTES);
+	}
+
+	static TaskDeadlines fromConfiguration(Configuration configuration) throws NdexException {
+		Map<String, Integer> deadlines = Maps.newHashMap();
+		String prefix = DEADLINE_PROPERTY + ".";
+		for (String name : configuration.getPropertyNames()) {
+			if (name.startsWith(prefix)) {
+				deadlines.put(name.substring(prefix.length()), configuration.getIntProperty(name, 0));
+			}
+		}
+		int defaultMinutes = configuration.getIntProperty(DEADLINE_PROPERTY, DEFAULT_DEADLINE_MINUTES);
+		try {
+			TaskDeadlines result = new TaskDeadlines(deadlines, defaultMinutes);
+			logger.info("Task deadlines configured: " + deadlines + " default " + defaultMinutes + " minutes");
+			return result;
+		} catch (IllegalArgumentException e) {
+			throw new NdexException("Invalid " + DEADLINE_PROPERTY + " configuration. " + e.getMessage());
+		}
+	}
+
+	int getDeadlineMinutes(Task task) {
+		Integer minutes = this.deadlines.get(NdexTaskCategory.of(task));
+		if (minutes == null) {
+			minutes = this.deadlines.get(NdexTaskCategory.typeOf(task));
+		}
+		return minutes == null ? this.defaultDeadlineMinutes : minutes;
+	}
+
+	long getDeadlineMillis(Task task) {
+		return this.getDeadlineMinutes(task) * 60L * 1000L;
+	}
+
+}
@@ -2,34 +2,58 @@ package org.ndexbio.task;
 
 import java.util.concurrent.TimeUnit;
 
-import org.ndexbio.common.persistence.orientdb.NdexTaskService;
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.task.metrics.TaskMetrics;
+import org.ndexbio.task.service.TaskPurgeService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.AbstractScheduledService;
 
 /*
  * Represents a scheduled task that runs  on a periodic basis to scan for
  * database Task entries that have been marked for deletion.
- * The scheduler method determines the frequency of invocation
+ * The tasks are deleted in chunks of Task-Deletion-Batch-Size (default 500)
+ * until none is left or the scan spent Task-Deletion-Time-Budget-Millis
+ * (default 2000), so a mass deletion is spread over several short scans
+ * instead of one long transaction contending with the imports.
+ * The scheduler adapts the frequency of invocation: while a backlog is left
+ * the next scan runs after a second, otherwise the interval doubles up to
+ * Task-Deletion-Interval-Seconds (default 60). The tasks deleted and the time
+ * spent are recorded in the TaskMetrics.
  * This service is invoked by registering an instance of this class with a Google
  * Service Manager
  */
 
 public class TaskDeletionService extends AbstractScheduledService {
-	
+
 	private static final Logger logger = LoggerFactory.getLogger(TaskDeletionService.class);
-	private  NdexTaskService ndexService; 
-	
-	protected void startup() {
+
+	static final long MIN_INTERVAL_MILLIS = 1000L;
+
+	private final TaskPurgeService purgeService;
+	private volatile long interval = MIN_INTERVAL_MILLIS;
+
+	public TaskDeletionService() {
+		this(new TaskPurgeService());
+	}
+
+	TaskDeletionService(TaskPurgeService purgeService) {
+		Preconditions.checkArgument(null != purgeService, "A purge service is required");
+		this.purgeService = purgeService;
+	}
+
+	@Override
+	protected void startUp() {
 		logger.info("TaskDeletionService started");
-		ndexService = new NdexTaskService();
 	}
-	
+
 	/*
 	 * This task should run on a continuous basis so stopping it is an error
 	 */
-	protected void shutdown() {
+	@Override
+	protected void shutDown() {
 		logger.error("TaskDeletionService stopped");
 	}
 
@@ -38,21 +62,60 @@ public class TaskDeletionService extends AbstractScheduledService {
 	 * work of the Service
 	 * the runOneIteration really means one iteration per time interval
 	 * scan the Tasks for those marked for deletion and remove them from the database
+	 * a chunk at a time within the time budget
 	 */
 	@Override
-	protected void runOneIteration() throws Exception {
-		this.ndexService.deleteTasksQueuedForDeletion();
+	protected void runOneIteration() {
+		TaskEngineSettings settings = TaskEngineSettings.current();
+		long maxInterval = settings.getDeletionIntervalSeconds() * 1000L;
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(settings.getDeletionTimeBudgetMillis());
+		long deleted = 0L;
+		boolean backlog = false;
+		try {
+			do {
+				int chunk = this.purgeService.deleteTasksQueuedForDeletion(settings.getDeletionBatchSize());
+				deleted += chunk;
+				// a full chunk may have left more tasks behind
+				backlog = chunk >= settings.getDeletionBatchSize();
+			} while (backlog && System.nanoTime() < deadline);
+		} catch (NdexException e) {
+			logger.error("Failed to delete the tasks queued for deletion. " + e.getMessage());
+			this.interval = maxInterval;
+			return;
+		} finally {
+			TaskMetrics.INSTANCE.recordTaskDeletion(deleted, System.nanoTime() - start);
+		}
+		if (deleted > 0) {
+			logger.info("Deleted " + deleted + " tasks in "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms"
+					+ (backlog ? ", more are queued for deletion" : ""));
+		}
+		this.interval = nextInterval(this.interval, backlog, maxInterval);
+	}
+
+	static long nextInterval(long currentInterval, boolean backlog, long maxInterval) {
+		if (backlog) {
+			return MIN_INTERVAL_MILLIS;
+		}
+		return Math.max(MIN_INTERVAL_MILLIS, Math.min(currentInterval * 2, maxInterval));
+	}
 
+	long getInterval() {
+		return this.interval;
 	}
-	
 
 	/*
-	 * schedule a scan for every minute
-	 * TODO: make the time interval a property
+	 * the delay before the next scan is recomputed after every scan
 	 */
 	@Override
 	protected Scheduler scheduler() {
-		return Scheduler.newFixedRateSchedule(0, 1, TimeUnit.MINUTES);
+		return new CustomScheduler() {
+			@Override
+			protected Schedule getNextSchedule() {
+				return new Schedule(interval, TimeUnit.MILLISECONDS);
+			}
+		};
 	}
 
 }
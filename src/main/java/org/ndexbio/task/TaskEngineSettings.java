@@ -0,0 +1,494 @@
+package org.ndexbio.task;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.ndexbio.model.exceptions.NdexException;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/*
+ * Represents the typed and validated performance settings of the task engine,
+ * read from the ndex configuration file:
+ *
+ *   Task-Commit-Batch-Size=2000                   elements committed per transaction by the parsers
+ *   Task-Worker-Count=8                           task workers (default: see TaskThreads)
+ *   Task-Deletion-Interval-Seconds=60             longest scan interval of the TaskDeletionService
+ *   Task-Deletion-Batch-Size=500                  tasks deleted per statement
+ *   Task-Deletion-Time-Budget-Millis=2000         time a deletion scan may spend deleting
+ *   Task-Drain-Timeout-Seconds=300                time running tasks may finish in at shutdown
+ *   Task-Loader-Connection-Pool-Size=1            connections of the sequential NetworkFileLoader
+ *   Task-Export-Path=/opt/ndex/exported-networks  directory of the exported network files
+ *   Task-Configuration-Reload-Seconds=30          how often the daemon checks the file for changes
+ *   Task-Micro-Batch-Size=8                       small uploads a worker takes at once
+ *   Task-Status-Flush-Millis=1000                 how often the task progress is written
+ *   Task-Export-Connection-Pool-Size=2            connections the exports read through
+ *   Task-Batch-Retry-Attempts=5                   replays of a SIF batch failing on a conflict
+ *   Task-Batch-Retry-Base-Millis=200              delay before the first replay
+ *   Task-Metrics-Port=9400                        port of the Prometheus endpoint (default 0: off)
+ *   Task-Small-Upload-Max-Bytes=10485760          largest upload dispatched in the small upload lane
+ *   Task-Starvation-Threshold-Seconds=600         queue wait after which a task is dispatched first
+ *   Task-Lease-Seconds=120                        lease of a claimed task, renewed while it runs
+ *   Task-Claim-Batch-Size=16                      tasks claimed at once (default 0: twice the workers)
+ *   Task-Max-Attempts=3                           claims of a task before it is given up
+ *   Task-Write-Rate-Bulk=20000                    elements per second committed by bulk imports
+ *   Task-Write-Rate-Interactive=0                 elements per second committed by interactive imports
+ *   Task-Write-Target-Commit-Millis=500           commit latency the write rates adapt to
+ *   Task-Memory-Admission-Heap-Percent=70         heap the admitted uploads may use (0: no admission control)
+ *   Task-Export-Cache-Max-MB=1024                 size of the export artifact cache
+ *
+ * An instance is immutable. Configuration publishes a new one every time the
+ * file is loaded or reloaded, and current() returns the last one published, or
+ * the defaults when no configuration was loaded (tools and tests). Running
+ * parsers read the commit batch size at every batch boundary (see BatchCounter),
+ * the deletion, export and batch retry settings are read on every use and the
+ * write rates are applied by ConfigurationReloadService, so changes to them
+ * apply without a restart. The other settings are only read at startup, and a
+ * reload changing them logs their names (see restartRequiredChanges).
+ *
+ * The other task properties of the configuration file are not settings:
+ * the keyed families Task-Concurrency-Limit.*, Task-Deadline-Minutes[.*],
+ * Task-Trace-Percent[.*], Task-Owner-Weight.* and
+ * Task-Owner-Max-Concurrent-Imports[.*] are maps over categories or owners that
+ * NdexTaskConcurrencyLimits, TaskDeadlines, TaskTracing and OwnerFairShare
+ * validate when they are built at startup; the paths Task-Trace-Path,
+ * Task-Memory-Model-File and Task-Export-Cache-Path default to directories
+ * under the NDEx root of their owner; and Task-Execution-Mode is resolved
+ * against the running JVM by TaskThreads before the configuration is needed.
+ */
+public final class TaskEngineSettings {
+
+	public static final String COMMIT_BATCH_SIZE_PROPERTY = "Task-Commit-Batch-Size";
+	public static final String WORKER_COUNT_PROPERTY = "Task-Worker-Count";
+	public static final String DELETION_INTERVAL_PROPERTY = "Task-Deletion-Interval-Seconds";
+	public static final String DELETION_BATCH_SIZE_PROPERTY = "Task-Deletion-Batch-Size";
+	public static final String DELETION_TIME_BUDGET_PROPERTY = "Task-Deletion-Time-Budget-Millis";
+	public static final String DRAIN_TIMEOUT_PROPERTY = "Task-Drain-Timeout-Seconds";
+	public static final String LOADER_POOL_SIZE_PROPERTY = "Task-Loader-Connection-Pool-Size";
+	public static final String EXPORT_PATH_PROPERTY = "Task-Export-Path";
+	public static final String RELOAD_INTERVAL_PROPERTY = "Task-Configuration-Reload-Seconds";
+	public static final String MICRO_BATCH_SIZE_PROPERTY = "Task-Micro-Batch-Size";
+	public static final String STATUS_FLUSH_INTERVAL_PROPERTY = "Task-Status-Flush-Millis";
+	public static final String EXPORT_POOL_SIZE_PROPERTY = "Task-Export-Connection-Pool-Size";
+	public static final String BATCH_RETRY_ATTEMPTS_PROPERTY = "Task-Batch-Retry-Attempts";
+	public static final String BATCH_RETRY_BASE_MILLIS_PROPERTY = "Task-Batch-Retry-Base-Millis";
+	public static final String METRICS_PORT_PROPERTY = "Task-Metrics-Port";
+	public static final String SMALL_UPLOAD_MAX_BYTES_PROPERTY = "Task-Small-Upload-Max-Bytes";
+	public static final String STARVATION_THRESHOLD_PROPERTY = "Task-Starvation-Threshold-Seconds";
+	public static final String LEASE_SECONDS_PROPERTY = "Task-Lease-Seconds";
+	public static final String CLAIM_BATCH_SIZE_PROPERTY = "Task-Claim-Batch-Size";
+	public static final String MAX_ATTEMPTS_PROPERTY = "Task-Max-Attempts";
+	public static final String BULK_WRITE_RATE_PROPERTY = "Task-Write-Rate-Bulk";
+	public static final String INTERACTIVE_WRITE_RATE_PROPERTY = "Task-Write-Rate-Interactive";
+	public static final String TARGET_COMMIT_MILLIS_PROPERTY = "Task-Write-Target-Commit-Millis";
+	public static final String MEMORY_HEAP_PERCENT_PROPERTY = "Task-Memory-Admission-Heap-Percent";
+	public static final String EXPORT_CACHE_MAX_MB_PROPERTY = "Task-Export-Cache-Max-MB";
+
+	static final int DEFAULT_COMMIT_BATCH_SIZE = 2000;
+	static final int MAX_COMMIT_BATCH_SIZE = 1000000;
+	static final int DEFAULT_DELETION_INTERVAL_SECONDS = 60;
+	static final int DEFAULT_DELETION_BATCH_SIZE = 500;
+	static final int DEFAULT_DELETION_TIME_BUDGET_MILLIS = 2000;
+	static final int DEFAULT_DRAIN_TIMEOUT_SECONDS = 300;
+	static final int DEFAULT_LOADER_POOL_SIZE = 1;
+	static final int DEFAULT_RELOAD_INTERVAL_SECONDS = 30;
+	static final int DEFAULT_MICRO_BATCH_SIZE = 8;
+	static final int DEFAULT_STATUS_FLUSH_MILLIS = 1000;
+	static final int DEFAULT_EXPORT_POOL_SIZE = 2;
+	static final int DEFAULT_BATCH_RETRY_ATTEMPTS = 5;
+	static final int DEFAULT_BATCH_RETRY_BASE_MILLIS = 200;
+	static final int DEFAULT_METRICS_PORT = 0;
+	static final int DEFAULT_SMALL_UPLOAD_MAX_BYTES = 10 * 1024 * 1024;
+	static final int DEFAULT_STARVATION_THRESHOLD_SECONDS = 600;
+	static final int DEFAULT_LEASE_SECONDS = 120;
+	static final int DEFAULT_CLAIM_BATCH_SIZE = 0;
+	static final int DEFAULT_MAX_ATTEMPTS = 3;
+	static final int DEFAULT_BULK_WRITE_RATE = 20000;
+	static final int DEFAULT_INTERACTIVE_WRITE_RATE = 0;
+	static final int DEFAULT_TARGET_COMMIT_MILLIS = 500;
+	static final int DEFAULT_MEMORY_HEAP_PERCENT = 70;
+	static final int DEFAULT_EXPORT_CACHE_MAX_MB = 1024;
+	static final String DEFAULT_EXPORT_DIRECTORY = "exported-networks";
+	private static final String DEFAULT_NDEX_ROOT = "/opt/ndex";
+
+	private static volatile TaskEngineSettings current = defaults(DEFAULT_NDEX_ROOT);
+
+	private final int commitBatchSize;
+	// 0 selects the default of the execution mode
+	private final int workerCount;
+	private final int deletionIntervalSeconds;
+	private final int deletionBatchSize;
+	private final int deletionTimeBudgetMillis;
+	// 0 suspends the running tasks at once
+	private final int drainTimeoutSeconds;
+	private final int loaderPoolSize;
+	private final String exportPath;
+	// 0 disables the reload
+	private final int reloadIntervalSeconds;
+	private final int microBatchSize;
+	private final int statusFlushMillis;
+	private final int exportPoolSize;
+	private final int batchRetryAttempts;
+	private final int batchRetryBaseMillis;
+	// 0 disables the metrics endpoint
+	private final int metricsPort;
+	private final int smallUploadMaxBytes;
+	private final int starvationThresholdSeconds;
+	private final int leaseSeconds;
+	// 0 claims twice the worker count
+	private final int claimBatchSize;
+	private final int maxAttempts;
+	// 0 does not pace the budget
+	private final int bulkWriteRate;
+	private final int interactiveWriteRate;
+	private final int targetCommitMillis;
+	// 0 disables the memory admission control
+	private final int memoryHeapPercent;
+	private final int exportCacheMaxMb;
+
+	TaskEngineSettings(int commitBatchSize, int workerCount, int deletionIntervalSeconds,
+			int deletionBatchSize, int deletionTimeBudgetMillis, int drainTimeoutSeconds, int loaderPoolSize,
+			String exportPath, int reloadIntervalSeconds, int microBatchSize, int statusFlushMillis,
+			int exportPoolSize, int batchRetryAttempts, int batchRetryBaseMillis, int metricsPort,
+			int smallUploadMaxBytes, int starvationThresholdSeconds, int leaseSeconds, int claimBatchSize,
+			int maxAttempts, int bulkWriteRate, int interactiveWriteRate, int targetCommitMillis,
+			int memoryHeapPercent, int exportCacheMaxMb) {
+		Preconditions.checkArgument(commitBatchSize > 0 && commitBatchSize <= MAX_COMMIT_BATCH_SIZE,
+				COMMIT_BATCH_SIZE_PROPERTY + " must be between 1 and " + MAX_COMMIT_BATCH_SIZE);
+		Preconditions.checkArgument(workerCount >= 0, WORKER_COUNT_PROPERTY + " must be >= 0");
+		Preconditions.checkArgument(deletionIntervalSeconds > 0, DELETION_INTERVAL_PROPERTY + " must be > 0");
+		Preconditions.checkArgument(deletionBatchSize > 0, DELETION_BATCH_SIZE_PROPERTY + " must be > 0");
+		Preconditions.checkArgument(deletionTimeBudgetMillis > 0, DELETION_TIME_BUDGET_PROPERTY + " must be > 0");
+		Preconditions.checkArgument(drainTimeoutSeconds >= 0, DRAIN_TIMEOUT_PROPERTY + " must be >= 0");
+		Preconditions.checkArgument(loaderPoolSize > 0, LOADER_POOL_SIZE_PROPERTY + " must be > 0");
+		Preconditions.checkArgument(exportPath != null && !exportPath.trim().isEmpty(),
+				EXPORT_PATH_PROPERTY + " is required");
+		Preconditions.checkArgument(reloadIntervalSeconds >= 0, RELOAD_INTERVAL_PROPERTY + " must be >= 0");
+		Preconditions.checkArgument(microBatchSize > 0, MICRO_BATCH_SIZE_PROPERTY + " must be > 0");
+		Preconditions.checkArgument(statusFlushMillis > 0, STATUS_FLUSH_INTERVAL_PROPERTY + " must be > 0");
+		Preconditions.checkArgument(exportPoolSize > 0, EXPORT_POOL_SIZE_PROPERTY + " must be > 0");
+		Preconditions.checkArgument(batchRetryAttempts >= 0, BATCH_RETRY_ATTEMPTS_PROPERTY + " must be >= 0");
+		Preconditions.checkArgument(batchRetryBaseMillis > 0, BATCH_RETRY_BASE_MILLIS_PROPERTY + " must be > 0");
+		Preconditions.checkArgument(metricsPort >= 0 && metricsPort <= 65535,
+				METRICS_PORT_PROPERTY + " must be between 0 and 65535");
+		Preconditions.checkArgument(smallUploadMaxBytes >= 0, SMALL_UPLOAD_MAX_BYTES_PROPERTY + " must be >= 0");
+		Preconditions.checkArgument(starvationThresholdSeconds > 0, STARVATION_THRESHOLD_PROPERTY + " must be > 0");
+		Preconditions.checkArgument(leaseSeconds > 0, LEASE_SECONDS_PROPERTY + " must be > 0");
+		Preconditions.checkArgument(claimBatchSize >= 0, CLAIM_BATCH_SIZE_PROPERTY + " must be >= 0");
+		Preconditions.checkArgument(maxAttempts > 0, MAX_ATTEMPTS_PROPERTY + " must be > 0");
+		Preconditions.checkArgument(bulkWriteRate >= 0, BULK_WRITE_RATE_PROPERTY + " must be >= 0");
+		Preconditions.checkArgument(interactiveWriteRate >= 0, INTERACTIVE_WRITE_RATE_PROPERTY + " must be >= 0");
+		Preconditions.checkArgument(targetCommitMillis > 0, TARGET_COMMIT_MILLIS_PROPERTY + " must be > 0");
+		Preconditions.checkArgument(memoryHeapPercent >= 0 && memoryHeapPercent <= 100,
+				MEMORY_HEAP_PERCENT_PROPERTY + " must be between 0 and 100");
+		Preconditions.checkArgument(exportCacheMaxMb >= 0, EXPORT_CACHE_MAX_MB_PROPERTY + " must be >= 0");
+		this.commitBatchSize = commitBatchSize;
+		this.workerCount = workerCount;
+		this.deletionIntervalSeconds = deletionIntervalSeconds;
+		this.deletionBatchSize = deletionBatchSize;
+		this.deletionTimeBudgetMillis = deletionTimeBudgetMillis;
+		this.drainTimeoutSeconds = drainTimeoutSeconds;
+		this.loaderPoolSize = loaderPoolSize;
+		this.exportPath = exportPath.trim();
+		this.reloadIntervalSeconds = reloadIntervalSeconds;
+		this.microBatchSize = microBatchSize;
+		this.statusFlushMillis = statusFlushMillis;
+		this.exportPoolSize = exportPoolSize;
+		this.batchRetryAttempts = batchRetryAttempts;
+		this.batchRetryBaseMillis = batchRetryBaseMillis;
+		this.metricsPort = metricsPort;
+		this.smallUploadMaxBytes = smallUploadMaxBytes;
+		this.starvationThresholdSeconds = starvationThresholdSeconds;
+		this.leaseSeconds = leaseSeconds;
+		this.claimBatchSize = claimBatchSize;
+		this.maxAttempts = maxAttempts;
+		this.bulkWriteRate = bulkWriteRate;
+		this.interactiveWriteRate = interactiveWriteRate;
+		this.targetCommitMillis = targetCommitMillis;
+		this.memoryHeapPercent = memoryHeapPercent;
+		this.exportCacheMaxMb = exportCacheMaxMb;
+	}
+
+	static TaskEngineSettings defaults(String ndexRoot) {
+		return new TaskEngineSettings(DEFAULT_COMMIT_BATCH_SIZE, 0, DEFAULT_DELETION_INTERVAL_SECONDS,
+				DEFAULT_DELETION_BATCH_SIZE, DEFAULT_DELETION_TIME_BUDGET_MILLIS, DEFAULT_DRAIN_TIMEOUT_SECONDS,
+				DEFAULT_LOADER_POOL_SIZE, new File(ndexRoot, DEFAULT_EXPORT_DIRECTORY).getPath(),
+				DEFAULT_RELOAD_INTERVAL_SECONDS, DEFAULT_MICRO_BATCH_SIZE, DEFAULT_STATUS_FLUSH_MILLIS,
+				DEFAULT_EXPORT_POOL_SIZE, DEFAULT_BATCH_RETRY_ATTEMPTS, DEFAULT_BATCH_RETRY_BASE_MILLIS,
+				DEFAULT_METRICS_PORT, DEFAULT_SMALL_UPLOAD_MAX_BYTES, DEFAULT_STARVATION_THRESHOLD_SECONDS,
+				DEFAULT_LEASE_SECONDS, DEFAULT_CLAIM_BATCH_SIZE, DEFAULT_MAX_ATTEMPTS, DEFAULT_BULK_WRITE_RATE,
+				DEFAULT_INTERACTIVE_WRITE_RATE, DEFAULT_TARGET_COMMIT_MILLIS, DEFAULT_MEMORY_HEAP_PERCENT,
+				DEFAULT_EXPORT_CACHE_MAX_MB);
+	}
+
+	/*
+	 * parse and validate the settings; a missing property takes its default
+	 */
+	static TaskEngineSettings fromProperties(Properties properties, String ndexRoot) throws NdexException {
+		String exportPath = properties.getProperty(EXPORT_PATH_PROPERTY);
+		try {
+			return new TaskEngineSettings(
+					intProperty(properties, COMMIT_BATCH_SIZE_PROPERTY, DEFAULT_COMMIT_BATCH_SIZE),
+					intProperty(properties, WORKER_COUNT_PROPERTY, 0),
+					intProperty(properties, DELETION_INTERVAL_PROPERTY, DEFAULT_DELETION_INTERVAL_SECONDS),
+					intProperty(properties, DELETION_BATCH_SIZE_PROPERTY, DEFAULT_DELETION_BATCH_SIZE),
+					intProperty(properties, DELETION_TIME_BUDGET_PROPERTY, DEFAULT_DELETION_TIME_BUDGET_MILLIS),
+					intProperty(properties, DRAIN_TIMEOUT_PROPERTY, DEFAULT_DRAIN_TIMEOUT_SECONDS),
+					intProperty(properties, LOADER_POOL_SIZE_PROPERTY, DEFAULT_LOADER_POOL_SIZE),
+					exportPath != null ? exportPath : new File(ndexRoot, DEFAULT_EXPORT_DIRECTORY).getPath(),
+					intProperty(properties, RELOAD_INTERVAL_PROPERTY, DEFAULT_RELOAD_INTERVAL_SECONDS),
+					intProperty(properties, MICRO_BATCH_SIZE_PROPERTY, DEFAULT_MICRO_BATCH_SIZE),
+					intProperty(properties, STATUS_FLUSH_INTERVAL_PROPERTY, DEFAULT_STATUS_FLUSH_MILLIS),
+					intProperty(properties, EXPORT_POOL_SIZE_PROPERTY, DEFAULT_EXPORT_POOL_SIZE),
+					intProperty(properties, BATCH_RETRY_ATTEMPTS_PROPERTY, DEFAULT_BATCH_RETRY_ATTEMPTS),
+					intProperty(properties, BATCH_RETRY_BASE_MILLIS_PROPERTY, DEFAULT_BATCH_RETRY_BASE_MILLIS),
+					intProperty(properties, METRICS_PORT_PROPERTY, DEFAULT_METRICS_PORT),
+					intProperty(properties, SMALL_UPLOAD_MAX_BYTES_PROPERTY, DEFAULT_SMALL_UPLOAD_MAX_BYTES),
+					intProperty(properties, STARVATION_THRESHOLD_PROPERTY, DEFAULT_STARVATION_THRESHOLD_SECONDS),
+					intProperty(properties, LEASE_SECONDS_PROPERTY, DEFAULT_LEASE_SECONDS),
+					intProperty(properties, CLAIM_BATCH_SIZE_PROPERTY, DEFAULT_CLAIM_BATCH_SIZE),
+					intProperty(properties, MAX_ATTEMPTS_PROPERTY, DEFAULT_MAX_ATTEMPTS),
+					intProperty(properties, BULK_WRITE_RATE_PROPERTY, DEFAULT_BULK_WRITE_RATE),
+					intProperty(properties, INTERACTIVE_WRITE_RATE_PROPERTY, DEFAULT_INTERACTIVE_WRITE_RATE),
+					intProperty(properties, TARGET_COMMIT_MILLIS_PROPERTY, DEFAULT_TARGET_COMMIT_MILLIS),
+					intProperty(properties, MEMORY_HEAP_PERCENT_PROPERTY, DEFAULT_MEMORY_HEAP_PERCENT),
+					intProperty(properties, EXPORT_CACHE_MAX_MB_PROPERTY, DEFAULT_EXPORT_CACHE_MAX_MB));
+		} catch (IllegalArgumentException e) {
+			throw new NdexException("Invalid task engine settings: " + e.getMessage());
+		}
+	}
+
+	private static int intProperty(Properties properties, String name, int defaultValue) throws NdexException {
+		String value = properties.getProperty(name);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new NdexException("property " + name + " is not an integer: " + value);
+		}
+	}
+
+	/*
+	 * the settings of the configuration loaded last
+	 */
+	public static TaskEngineSettings current() {
+		return current;
+	}
+
+	static void publish(TaskEngineSettings settings) {
+		Preconditions.checkArgument(null != settings, "Settings are required");
+		current = settings;
+	}
+
+	public int getCommitBatchSize() {
+		return this.commitBatchSize;
+	}
+
+	public int getWorkerCount() {
+		return this.workerCount;
+	}
+
+	public int getDeletionIntervalSeconds() {
+		return this.deletionIntervalSeconds;
+	}
+
+	public int getDeletionBatchSize() {
+		return this.deletionBatchSize;
+	}
+
+	public int getDeletionTimeBudgetMillis() {
+		return this.deletionTimeBudgetMillis;
+	}
+
+	public int getDrainTimeoutSeconds() {
+		return this.drainTimeoutSeconds;
+	}
+
+	public int getLoaderPoolSize() {
+		return this.loaderPoolSize;
+	}
+
+	public String getExportPath() {
+		return this.exportPath;
+	}
+
+	public int getReloadIntervalSeconds() {
+		return this.reloadIntervalSeconds;
+	}
+
+	public int getMicroBatchSize() {
+		return this.microBatchSize;
+	}
+
+	public int getStatusFlushMillis() {
+		return this.statusFlushMillis;
+	}
+
+	public int getExportPoolSize() {
+		return this.exportPoolSize;
+	}
+
+	public int getBatchRetryAttempts() {
+		return this.batchRetryAttempts;
+	}
+
+	public int getBatchRetryBaseMillis() {
+		return this.batchRetryBaseMillis;
+	}
+
+	public int getMetricsPort() {
+		return this.metricsPort;
+	}
+
+	public int getSmallUploadMaxBytes() {
+		return this.smallUploadMaxBytes;
+	}
+
+	public int getStarvationThresholdSeconds() {
+		return this.starvationThresholdSeconds;
+	}
+
+	public int getLeaseSeconds() {
+		return this.leaseSeconds;
+	}
+
+	public int getClaimBatchSize() {
+		return this.claimBatchSize;
+	}
+
+	public int getMaxAttempts() {
+		return this.maxAttempts;
+	}
+
+	public int getBulkWriteRate() {
+		return this.bulkWriteRate;
+	}
+
+	public int getInteractiveWriteRate() {
+		return this.interactiveWriteRate;
+	}
+
+	public int getTargetCommitMillis() {
+		return this.targetCommitMillis;
+	}
+
+	public int getMemoryHeapPercent() {
+		return this.memoryHeapPercent;
+	}
+
+	public int getExportCacheMaxMb() {
+		return this.exportCacheMaxMb;
+	}
+
+	/*
+	 * the properties of the settings only read at startup that differ from the
+	 * other settings, in the order of the file documentation
+	 */
+	List<String> restartRequiredChanges(TaskEngineSettings other) {
+		List<String> changed = new ArrayList<>();
+		addIfChanged(changed, WORKER_COUNT_PROPERTY, this.workerCount, other.workerCount);
+		addIfChanged(changed, LOADER_POOL_SIZE_PROPERTY, this.loaderPoolSize, other.loaderPoolSize);
+		addIfChanged(changed, RELOAD_INTERVAL_PROPERTY, this.reloadIntervalSeconds, other.reloadIntervalSeconds);
+		addIfChanged(changed, MICRO_BATCH_SIZE_PROPERTY, this.microBatchSize, other.microBatchSize);
+		addIfChanged(changed, STATUS_FLUSH_INTERVAL_PROPERTY, this.statusFlushMillis, other.statusFlushMillis);
+		addIfChanged(changed, EXPORT_POOL_SIZE_PROPERTY, this.exportPoolSize, other.exportPoolSize);
+		addIfChanged(changed, METRICS_PORT_PROPERTY, this.metricsPort, other.metricsPort);
+		addIfChanged(changed, SMALL_UPLOAD_MAX_BYTES_PROPERTY, this.smallUploadMaxBytes, other.smallUploadMaxBytes);
+		addIfChanged(changed, STARVATION_THRESHOLD_PROPERTY, this.starvationThresholdSeconds,
+				other.starvationThresholdSeconds);
+		addIfChanged(changed, LEASE_SECONDS_PROPERTY, this.leaseSeconds, other.leaseSeconds);
+		addIfChanged(changed, CLAIM_BATCH_SIZE_PROPERTY, this.claimBatchSize, other.claimBatchSize);
+		addIfChanged(changed, MAX_ATTEMPTS_PROPERTY, this.maxAttempts, other.maxAttempts);
+		addIfChanged(changed, MEMORY_HEAP_PERCENT_PROPERTY, this.memoryHeapPercent, other.memoryHeapPercent);
+		addIfChanged(changed, EXPORT_CACHE_MAX_MB_PROPERTY, this.exportCacheMaxMb, other.exportCacheMaxMb);
+		return changed;
+	}
+
+	private static void addIfChanged(List<String> changed, String property, int value, int otherValue) {
+		if (value != otherValue) {
+			changed.add(property);
+		}
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof TaskEngineSettings)) {
+			return false;
+		}
+		TaskEngineSettings other = (TaskEngineSettings) obj;
+		return this.commitBatchSize == other.commitBatchSize
+				&& this.workerCount == other.workerCount
+				&& this.deletionIntervalSeconds == other.deletionIntervalSeconds
+				&& this.deletionBatchSize == other.deletionBatchSize
+				&& this.deletionTimeBudgetMillis == other.deletionTimeBudgetMillis
+				&& this.drainTimeoutSeconds == other.drainTimeoutSeconds
+				&& this.loaderPoolSize == other.loaderPoolSize
+				&& this.exportPath.equals(other.exportPath)
+				&& this.reloadIntervalSeconds == other.reloadIntervalSeconds
+				&& this.microBatchSize == other.microBatchSize
+				&& this.statusFlushMillis == other.statusFlushMillis
+				&& this.exportPoolSize == other.exportPoolSize
+				&& this.batchRetryAttempts == other.batchRetryAttempts
+				&& this.batchRetryBaseMillis == other.batchRetryBaseMillis
+				&& this.metricsPort == other.metricsPort
+				&& this.smallUploadMaxBytes == other.smallUploadMaxBytes
+				&& this.starvationThresholdSeconds == other.starvationThresholdSeconds
+				&& this.leaseSeconds == other.leaseSeconds
+				&& this.claimBatchSize == other.claimBatchSize
+				&& this.maxAttempts == other.maxAttempts
+				&& this.bulkWriteRate == other.bulkWriteRate
+				&& this.interactiveWriteRate == other.interactiveWriteRate
+				&& this.targetCommitMillis == other.targetCommitMillis
+				&& this.memoryHeapPercent == other.memoryHeapPercent
+				&& this.exportCacheMaxMb == other.exportCacheMaxMb;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hashCode(this.commitBatchSize, this.workerCount, this.deletionIntervalSeconds,
+				this.deletionBatchSize, this.deletionTimeBudgetMillis, this.drainTimeoutSeconds, this.loaderPoolSize,
+				this.exportPath, this.reloadIntervalSeconds, this.microBatchSize, this.statusFlushMillis,
+				this.exportPoolSize, this.batchRetryAttempts, this.batchRetryBaseMillis, this.metricsPort,
+				this.smallUploadMaxBytes, this.starvationThresholdSeconds, this.leaseSeconds, this.claimBatchSize,
+				this.maxAttempts, this.bulkWriteRate, this.interactiveWriteRate, this.targetCommitMillis,
+				this.memoryHeapPercent, this.exportCacheMaxMb);
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("commitBatchSize", this.commitBatchSize)
+				.add("workerCount", this.workerCount)
+				.add("deletionIntervalSeconds", this.deletionIntervalSeconds)
+				.add("deletionBatchSize", this.deletionBatchSize)
+				.add("deletionTimeBudgetMillis", this.deletionTimeBudgetMillis)
+				.add("drainTimeoutSeconds", this.drainTimeoutSeconds)
+				.add("loaderPoolSize", this.loaderPoolSize)
+				.add("exportPath", this.exportPath)
+				.add("reloadIntervalSeconds", this.reloadIntervalSeconds)
+				.add("microBatchSize", this.microBatchSize)
+				.add("statusFlushMillis", this.statusFlushMillis)
+				.add("exportPoolSize", this.exportPoolSize)
+				.add("batchRetryAttempts", this.batchRetryAttempts)
+				.add("batchRetryBaseMillis", this.batchRetryBaseMillis)
+				.add("metricsPort", this.metricsPort)
+				.add("smallUploadMaxBytes", this.smallUploadMaxBytes)
+				.add("starvationThresholdSeconds", this.starvationThresholdSeconds)
+				.add("leaseSeconds", this.leaseSeconds)
+				.add("claimBatchSize", this.claimBatchSize)
+				.add("maxAttempts", this.maxAttempts)
+				.add("bulkWriteRate", this.bulkWriteRate)
+				.add("interactiveWriteRate", this.interactiveWriteRate)
+				.add("targetCommitMillis", this.targetCommitMillis)
+				.add("memoryHeapPercent", this.memoryHeapPercent)
+				.add("exportCacheMaxMb", this.exportCacheMaxMb)
+				.toString();
+	}
+
+}
@@ -0,0 +1,179 @@
+package org.ndexbio.task;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ndexbio.model.object.Task;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+/*
+ * Represents a task while it runs on a worker thread. The context is bound to
+ * the worker thread for the duration of the task so that code deep inside the
+ * parsers can reach it without having it passed through every constructor.
+ * 
+ * Cancellation is cooperative: cancel() only records the reason and the
+ * parsers call checkCancelled() at their batch boundaries. The worker thread
+ * is deliberately not interrupted because an interrupt during a file channel
+ * operation closes the channel of the OrientDB storage.
+ * A task suspended by a draining task processor is cancelled the same way but
+ * is requeued instead of failed when it can be resumed or restarted.
+ * The context also measures the resources the task uses (see TaskResourceUsage)
+ * and, for a traced task, records the spans of its phases (see TaskTrace).
+ */
+public final class TaskExecutionContext {
+
+	private static final ThreadLocal<TaskExecutionContext> current = new ThreadLocal<>();
+	private static final Set<TaskExecutionContext> running = 
+			Collections.newSetFromMap(new ConcurrentHashMap<TaskExecutionContext, Boolean>());
+
+	private final Task task;
+	private final Thread thread;
+	private final long startTime;
+	private final long deadline;
+	private volatile String cancelReason;
+	private volatile boolean suspended;
+	private final TaskResourceUsage resourceUsage = TaskResourceUsage.start();
+	private final TaskTrace trace;
+
+	private TaskExecutionContext(Task task, long startTime, long deadline, boolean traced) {
+		this.task = task;
+		this.thread = Thread.currentThread();
+		this.startTime = startTime;
+		this.deadline = deadline;
+		this.trace = traced ? new TaskTrace(task) : null;
+	}
+
+	/*
+	 * bind a new context to the current thread; a deadline of 0 means the task
+	 * has no deadline
+	 */
+	static TaskExecutionContext begin(Task task, long deadlineMillis) {
+		return begin(task, deadlineMillis, false);
+	}
+
+	/*
+	 * bind a new context to the current thread, recording the spans of the
+	 * task when traced is true
+	 */
+	static TaskExecutionContext begin(Task task, long deadlineMillis, boolean traced) {
+		Preconditions.checkArgument(null != task, "A task is required");
+		Preconditions.checkState(current.get() == null, "A task is already running on this thread");
+		long now = System.currentTimeMillis();
+		TaskExecutionContext context = new TaskExecutionContext(task, now,
+				deadlineMillis > 0 ? now + deadlineMillis : Long.MAX_VALUE, traced);
+		current.set(context);
+		running.add(context);
+		return context;
+	}
+
+	/*
+	 * unbind the context from its thread once the task is finished
+	 */
+	void end() {
+		running.remove(this);
+		if (current.get() == this) {
+			this.resourceUsage.finish();
+			if (this.trace != null) {
+				this.trace.finish();
+			}
+			current.remove();
+		}
+	}
+
+	/*
+	 * the context of the task running on the current thread or null
+	 */
+	public static TaskExecutionContext current() {
+		return current.get();
+	}
+
+	static Set<TaskExecutionContext> getRunningContexts() {
+		return ImmutableSet.copyOf(running);
+	}
+
+	/*
+	 * cancellation check point for the parsers; throws TaskCancelledException if
+	 * the task on this thread was cancelled or the thread was interrupted.
+	 * It is a no-op outside of a task, e.g. when a parser is run by a utility.
+	 */
+	public static void checkCancelled() {
+		TaskExecutionContext context = current.get();
+		if (context != null && context.cancelReason != null) {
+			throw new TaskCancelledException("Task " + context.task.getExternalId() 
+					+ " cancelled: " + context.cancelReason);
+		}
+		if (Thread.currentThread().isInterrupted()) {
+			throw new TaskCancelledException("Task thread " + Thread.currentThread().getName() 
+					+ " interrupted");
+		}
+	}
+
+	synchronized void cancel(String reason) {
+		Preconditions.checkArgument(null != reason, "A cancellation reason is required");
+		if (this.cancelReason == null) {
+			this.cancelReason = reason;
+		}
+	}
+
+	/*
+	 * cancel the task so it can be requeued
+	 */
+	synchronized void suspend(String reason) {
+		Preconditions.checkArgument(null != reason, "A suspension reason is required");
+		if (this.cancelReason == null) {
+			this.suspended = true;
+			this.cancelReason = reason;
+		}
+	}
+
+	/*
+	 * whether the task was cancelled by a suspension rather than a deadline
+	 * or a lost lease
+	 */
+	public boolean isSuspended() {
+		return this.suspended && this.cancelReason != null;
+	}
+
+	public boolean isCancelled() {
+		return this.cancelReason != null;
+	}
+
+	public String getCancelReason() {
+		return this.cancelReason;
+	}
+
+	public Task getTask() {
+		return this.task;
+	}
+
+	public TaskResourceUsage getResourceUsage() {
+		return this.resourceUsage;
+	}
+
+	/*
+	 * the trace of the task or null if the task is not traced
+	 */
+	public TaskTrace getTrace() {
+		return this.trace;
+	}
+
+	Thread getThread() {
+		return this.thread;
+	}
+
+	public long getStartTime() {
+		return this.startTime;
+	}
+
+	boolean isOverdue(long now) {
+		return now > this.deadline;
+	}
+
+	long getElapsedMillis(long now) {
+		return now - this.startTime;
+	}
+
+}
@@ -0,0 +1,13 @@
+package org.ndexbio.task;
+
+/*
+ * Represents the scheduling lanes of the task queue in priority order.
+ * Interactive exports are served before small uploads and small uploads before
+ * bulk uploads; starvation protection in NdexTaskQueueService makes sure the
+ * lower lanes still make progress.
+ */
+enum TaskLane {
+	INTERACTIVE_EXPORT,
+	SMALL_UPLOAD,
+	BULK_UPLOAD
+}
@@ -0,0 +1,312 @@
+package org.ndexbio.task;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Status;
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+import org.ndexbio.task.metrics.TaskMetrics;
+import org.ndexbio.task.parsingengines.ImportCheckpoint;
+import org.ndexbio.task.service.TaskLeaseService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Sets;
+
+/*
+ * Represents the task leases held by this task processor instance (see
+ * TaskLeaseService). Tasks are claimed in bounded batches of
+ * Task-Claim-Batch-Size (default: twice the worker count) with a lease of
+ * Task-Lease-Seconds (default: 120) that is renewed every third of its
+ * duration while the tasks are queued or running, and released when a task
+ * is finished.
+ * The tasks of a batch are chosen by lane and owner (see ClaimSelection) among
+ * the oldest claimable tasks, CLAIM_WINDOW_FACTOR times the batch size, and a
+ * page of the same size further down the queue that moves on with every claim,
+ * so the tasks queued behind a long backlog of one owner are seen as well.
+ * When a lease is lost, because this instance could not renew it in time and
+ * another instance reclaimed the task, the task is cancelled here so it does not
+ * run twice. A task is given up after Task-Max-Attempts claims (default: 3).
+ * An interrupted task is only restarted by another instance when it can
+ * resume from an import checkpoint or, for an export, be run again; it is
+ * failed otherwise. A draining instance requeues its tasks (see requeue).
+ */
+final class TaskLeases {
+
+	private static final Logger logger = LoggerFactory.getLogger(TaskLeases.class);
+
+	static final int CLAIM_WINDOW_FACTOR = 8;
+
+	/*
+	 * an interrupted upload can only be restarted from its checkpoint, an
+	 * export writes its file from scratch and can always be run again
+	 */
+	private static final Predicate<Task> RESUMABLE = new Predicate<Task>() {
+		@Override
+		public boolean apply(Task task) {
+			if (task.getTaskType() == TaskType.EXPORT_NETWORK_TO_FILE) {
+				return true;
+			}
+			return task.getTaskType() == TaskType.PROCESS_UPLOADED_NETWORK
+					&& task.getResource() != null
+					&& ImportCheckpoint.exists(new File(task.getResource()));
+		}
+	};
+
+	private static final Function<Task, TaskLane> LANES = new Function<Task, TaskLane>() {
+		@Override
+		public TaskLane apply(Task task) {
+			return NdexTaskQueueService.INSTANCE.laneOf(task);
+		}
+	};
+
+	private final TaskLeaseService leaseService;
+	private final String instanceId;
+	private final long leaseMillis;
+	private final int claimBatchSize;
+	private final int maxAttempts;
+	private final Set<UUID> heldTaskIds = Sets.newConcurrentHashSet();
+	// the start of the page of candidates beyond the oldest ones
+	private int scanOffset;
+	private volatile long lastRenewal;
+
+	TaskLeases(TaskLeaseService leaseService, String instanceId, long leaseMillis,
+			int claimBatchSize, int maxAttempts) {
+		Preconditions.checkArgument(null != leaseService, "A lease service is required");
+		Preconditions.checkArgument(null != instanceId, "An instance id is required");
+		Preconditions.checkArgument(leaseMillis > 0, "The lease duration must be > 0");
+		Preconditions.checkArgument(claimBatchSize > 0, "The claim batch size must be > 0");
+		Preconditions.checkArgument(maxAttempts > 0, "The maximum number of attempts must be > 0");
+		this.leaseService = leaseService;
+		this.instanceId = instanceId;
+		this.leaseMillis = leaseMillis;
+		this.claimBatchSize = claimBatchSize;
+		this.maxAttempts = maxAttempts;
+		this.scanOffset = claimBatchSize * CLAIM_WINDOW_FACTOR;
+	}
+
+	static TaskLeases fromSettings(TaskEngineSettings settings, int workerCount) {
+		int claimBatchSize = settings.getClaimBatchSize();
+		return new TaskLeases(new TaskLeaseService(), newInstanceId(), settings.getLeaseSeconds() * 1000L,
+				claimBatchSize > 0 ? claimBatchSize : 2 * workerCount, settings.getMaxAttempts());
+	}
+
+	static TaskLeases defaults(int workerCount) {
+		return new TaskLeases(new TaskLeaseService(), newInstanceId(),
+				TaskEngineSettings.DEFAULT_LEASE_SECONDS * 1000L, 2 * workerCount,
+				TaskEngineSettings.DEFAULT_MAX_ATTEMPTS);
+	}
+
+	/*
+	 * pid@host of the JVM plus a random suffix, so a restarted process
+	 * never renews the leases of its predecessor
+	 */
+	static String newInstanceId() {
+		return ManagementFactory.getRuntimeMXBean().getName() + "-"
+				+ UUID.randomUUID().toString().substring(0, 8);
+	}
+
+	String getInstanceId() {
+		return this.instanceId;
+	}
+
+	int getClaimBatchSize() {
+		return this.claimBatchSize;
+	}
+
+	long getLeaseMillis() {
+		return this.leaseMillis;
+	}
+
+	int getHeldCount() {
+		return this.heldTaskIds.size();
+	}
+
+	/*
+	 * claim up to limit tasks, at most a claim batch; returns the tasks now
+	 * leased by this instance with a status of STAGED
+	 */
+	List<Task> claim(int limit) {
+		int batch = Math.min(limit, this.claimBatchSize);
+		if (batch < 1) {
+			return Collections.emptyList();
+		}
+		try {
+			List<UUID> selected = ClaimSelection.select(this.findCandidates(), batch, LANES);
+			List<Task> claimed = this.leaseService.claimTasks(this.instanceId, selected,
+					this.leaseMillis, this.maxAttempts, RESUMABLE);
+			for (Task task : claimed) {
+				this.heldTaskIds.add(task.getExternalId());
+			}
+			if (!claimed.isEmpty()) {
+				logger.info(this.instanceId + " claimed " + claimed.size() + " tasks");
+			}
+			return claimed;
+		} catch (NdexException e) {
+			logger.error("Failed to claim tasks. " + e.getMessage());
+			return Collections.emptyList();
+		}
+	}
+
+	/*
+	 * the oldest claimable tasks and, when there are more, a page of the
+	 * tasks further down the queue
+	 */
+	private synchronized List<Task> findCandidates() throws NdexException {
+		int window = this.claimBatchSize * CLAIM_WINDOW_FACTOR;
+		List<Task> candidates = this.leaseService.findClaimableTasks(0, window);
+		if (candidates.size() < window) {
+			this.scanOffset = window;
+			return candidates;
+		}
+		List<Task> further = this.leaseService.findClaimableTasks(this.scanOffset, window);
+		this.scanOffset = further.size() < window ? window : this.scanOffset + window;
+		// the pages overlap when tasks were claimed in between
+		Set<UUID> seen = Sets.newHashSet();
+		for (Task task : candidates) {
+			seen.add(task.getExternalId());
+		}
+		for (Task task : further) {
+			if (seen.add(task.getExternalId())) {
+				candidates.add(task);
+			}
+		}
+		return candidates;
+	}
+
+	/*
+	 * claim a QUEUED task by its id; returns the task now leased by this
+	 * instance with a status of STAGED or null if it could not be claimed
+	 */
+	Task claim(UUID taskId) throws NdexException {
+		Task task = this.leaseService.claimTask(taskId, this.instanceId, this.leaseMillis,
+				this.maxAttempts, RESUMABLE);
+		if (null != task) {
+			this.heldTaskIds.add(task.getExternalId());
+			logger.info(this.instanceId + " claimed submitted task " + taskId);
+		}
+		return task;
+	}
+
+	/*
+	 * renew the held leases once a third of the lease duration has passed since
+	 * the last renewal and cancel the running tasks whose lease was lost;
+	 * returns the number of leases lost
+	 */
+	int renewIfDue(long now) {
+		if (this.heldTaskIds.isEmpty() || now - this.lastRenewal < this.leaseMillis / 3) {
+			return 0;
+		}
+		this.lastRenewal = now;
+		Set<UUID> held = Sets.newHashSet(this.heldTaskIds);
+		Set<UUID> leased;
+		try {
+			this.leaseService.renewLeases(this.instanceId, held, this.leaseMillis);
+			leased = this.leaseService.getLeasedTaskIds(this.instanceId);
+		} catch (NdexException e) {
+			// keep working, the leases are retried on the next renewal
+			logger.error("Failed to renew the task leases. " + e.getMessage());
+			return 0;
+		}
+		int lost = 0;
+		for (UUID taskId : Sets.difference(held, leased)) {
+			// a task released meanwhile is no longer held either
+			if (this.heldTaskIds.remove(taskId)) {
+				lost++;
+				this.cancelLocally(taskId);
+			}
+		}
+		return lost;
+	}
+
+	private void cancelLocally(UUID taskId) {
+		for (TaskExecutionContext context : TaskExecutionContext.getRunningContexts()) {
+			if (taskId.equals(context.getTask().getExternalId())) {
+				context.cancel("lost its lease to another task processor");
+				logger.warn("Cancelling task " + taskId + ", its lease was lost");
+				return;
+			}
+		}
+		logger.warn("Lost the lease of queued task " + taskId);
+	}
+
+	/*
+	 * whether this instance still holds the lease of the task; a queued task
+	 * whose lease was lost must not be started
+	 */
+	boolean isHeld(Task task) {
+		return this.isHeld(task.getExternalId());
+	}
+
+	boolean isHeld(UUID taskId) {
+		return this.heldTaskIds.contains(taskId);
+	}
+
+	/*
+	 * publish the number of QUEUED, STAGED and PROCESSING tasks of the shared
+	 * queue to the TaskMetrics
+	 */
+	void publishQueueDepths() {
+		try {
+			for (Map.Entry<Status, Long> depth : this.leaseService.countTasksByStatus(
+					EnumSet.of(Status.QUEUED, Status.STAGED, Status.PROCESSING)).entrySet()) {
+				TaskMetrics.INSTANCE.setQueueDepth(depth.getKey().toString(), depth.getValue());
+			}
+		} catch (NdexException e) {
+			logger.warn("Failed to update the task queue depths. " + e.getMessage());
+		}
+	}
+
+	/*
+	 * give up the lease of a task this instance will not finish and return it
+	 * to the shared queue. A task that was started is only requeued when it
+	 * can be resumed or restarted. Returns true if the task was requeued.
+	 */
+	boolean requeue(Task task, boolean started) {
+		if (started && !RESUMABLE.apply(task)) {
+			return false;
+		}
+		if (!this.heldTaskIds.remove(task.getExternalId())) {
+			return false;
+		}
+		try {
+			if (this.leaseService.requeueTask(task.getExternalId(), this.instanceId)) {
+				logger.info("Requeued task " + task.getExternalId());
+				return true;
+			}
+		} catch (NdexException e) {
+			// the lease expires by itself and the task is reclaimed then
+			logger.error("Failed to requeue task " + task.getExternalId() + ". " + e.getMessage());
+		}
+		return false;
+	}
+
+	/*
+	 * give up the lease of a finished task; a task that did not reach a
+	 * completion status can then be claimed again by any instance
+	 */
+	void release(Task task) {
+		if (!this.heldTaskIds.remove(task.getExternalId())) {
+			return;
+		}
+		try {
+			this.leaseService.releaseLease(task.getExternalId(), this.instanceId);
+		} catch (NdexException e) {
+			// the lease expires by itself
+			logger.error("Failed to release the lease of task " + task.getExternalId()
+					+ ". " + e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,15 @@
+package org.ndexbio.task;
+
+import org.ndexbio.model.object.Task;
+
+/*
+ * Receives the status and progress changes of a task submitted in process
+ * (see NdexTaskProcessorService.submit). It is called on the worker thread
+ * running the task and must return quickly; the task passed is the one being
+ * run and must not be modified.
+ */
+public interface TaskProgressListener {
+
+	void progressChanged(Task task);
+
+}
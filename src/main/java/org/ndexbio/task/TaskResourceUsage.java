@@ -0,0 +1,219 @@
+package org.ndexbio.task;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+
+/*
+ * Represents the resources used by a task: the CPU time and the heap allocated
+ * by its worker thread, measured with the ThreadMXBean, the bytes read and
+ * written through the streams wrapped with countReads/countWrites, and the
+ * network elements parsed and the batches committed as reported by the parsers.
+ * A usage is started with the TaskExecutionContext of the task and finished
+ * when the task ends, both on the worker thread; the static methods charge the
+ * task running on the current thread and do nothing outside of a task.
+ * A thread time the JVM does not support is reported as -1.
+ */
+public final class TaskResourceUsage {
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private final long startCpuNanos;
+	private final long startAllocatedBytes;
+	private final AtomicLong bytesRead = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+	private final AtomicLong elements = new AtomicLong();
+	private final AtomicLong commits = new AtomicLong();
+	private volatile long cpuNanos = -1L;
+	private volatile long allocatedBytes = -1L;
+
+	private TaskResourceUsage(long startCpuNanos, long startAllocatedBytes) {
+		this.startCpuNanos = startCpuNanos;
+		this.startAllocatedBytes = startAllocatedBytes;
+	}
+
+	/*
+	 * start measuring the current thread
+	 */
+	static TaskResourceUsage start() {
+		return new TaskResourceUsage(currentThreadCpuNanos(), currentThreadAllocatedBytes());
+	}
+
+	/*
+	 * stop measuring; must be called on the thread the usage was started on
+	 */
+	void finish() {
+		long cpu = currentThreadCpuNanos();
+		if (cpu >= 0 && this.startCpuNanos >= 0) {
+			this.cpuNanos = cpu - this.startCpuNanos;
+		}
+		long allocated = currentThreadAllocatedBytes();
+		if (allocated >= 0 && this.startAllocatedBytes >= 0) {
+			this.allocatedBytes = allocated - this.startAllocatedBytes;
+		}
+	}
+
+	private static long currentThreadCpuNanos() {
+		if (!threads.isCurrentThreadCpuTimeSupported() || !threads.isThreadCpuTimeEnabled()) {
+			return -1L;
+		}
+		return threads.getCurrentThreadCpuTime();
+	}
+
+	private static long currentThreadAllocatedBytes() {
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return -1L;
+		}
+		com.sun.management.ThreadMXBean hotspotThreads = (com.sun.management.ThreadMXBean) threads;
+		if (!hotspotThreads.isThreadAllocatedMemorySupported() 
+				|| !hotspotThreads.isThreadAllocatedMemoryEnabled()) {
+			return -1L;
+		}
+		return hotspotThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static TaskResourceUsage current() {
+		TaskExecutionContext context = TaskExecutionContext.current();
+		return context == null ? null : context.getResourceUsage();
+	}
+
+	/*
+	 * charge the network elements parsed to the current task
+	 */
+	public static void recordElements(long count) {
+		TaskResourceUsage usage = current();
+		if (usage != null) {
+			usage.elements.addAndGet(count);
+		}
+	}
+
+	/*
+	 * charge a committed batch to the current task
+	 */
+	public static void recordCommit() {
+		TaskResourceUsage usage = current();
+		if (usage != null) {
+			usage.commits.incrementAndGet();
+		}
+	}
+
+	/*
+	 * wrap a stream read by the current task so its bytes are charged to the task
+	 */
+	public static InputStream countReads(InputStream in) {
+		final TaskResourceUsage usage = current();
+		if (usage == null) {
+			return in;
+		}
+		return new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0) {
+					usage.bytesRead.incrementAndGet();
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				if (n > 0) {
+					usage.bytesRead.addAndGet(n);
+				}
+				return n;
+			}
+
+			@Override
+			public long skip(long n) throws IOException {
+				long skipped = super.skip(n);
+				usage.bytesRead.addAndGet(skipped);
+				return skipped;
+			}
+		};
+	}
+
+	/*
+	 * wrap a stream written by the current task so its bytes are charged to the task
+	 */
+	public static OutputStream countWrites(OutputStream out) {
+		final TaskResourceUsage usage = current();
+		if (usage == null) {
+			return out;
+		}
+		return new FilterOutputStream(out) {
+			@Override
+			public void write(int b) throws IOException {
+				this.out.write(b);
+				usage.bytesWritten.incrementAndGet();
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				// FilterOutputStream writes an array a byte at a time
+				this.out.write(b, off, len);
+				usage.bytesWritten.addAndGet(len);
+			}
+		};
+	}
+
+	public long getCpuNanos() {
+		return this.cpuNanos;
+	}
+
+	public long getAllocatedBytes() {
+		return this.allocatedBytes;
+	}
+
+	public long getBytesRead() {
+		return this.bytesRead.get();
+	}
+
+	public long getBytesWritten() {
+		return this.bytesWritten.get();
+	}
+
+	public long getElements() {
+		return this.elements.get();
+	}
+
+	public long getCommits() {
+		return this.commits.get();
+	}
+
+	/*
+	 * the usage as stored with the task record
+	 */
+	public Map<String, Long> toMap() {
+		return ImmutableMap.<String, Long>builder()
+				.put("cpuMillis", this.cpuNanos < 0 ? -1L : this.cpuNanos / 1000000L)
+				.put("allocatedBytes", this.allocatedBytes)
+				.put("bytesRead", this.getBytesRead())
+				.put("bytesWritten", this.getBytesWritten())
+				.put("elements", this.getElements())
+				.put("commits", this.getCommits())
+				.build();
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("cpuNanos", this.cpuNanos)
+				.add("allocatedBytes", this.allocatedBytes)
+				.add("bytesRead", this.getBytesRead())
+				.add("bytesWritten", this.getBytesWritten())
+				.add("elements", this.getElements())
+				.add("commits", this.getCommits())
+				.toString();
+	}
+
+}
@@ -0,0 +1,57 @@
+package org.ndexbio.task;
+
+import java.util.Map;
+import java.util.UUID;
+
+import org.ndexbio.common.persistence.orientdb.NdexTaskService;
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Task;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/*
+ * Represents what the tasks run one after another by a worker share: the task
+ * service of the worker thread and the account names of their owners. A
+ * worker runs a micro-batch of small uploads (see
+ * NdexTaskQueueService.getNextTasks) in one session, so the owner of a batch
+ * is looked up once. Nothing else is shared: every import opens its own
+ * database connection and transaction through its parser, since a failed
+ * import deletes its network, and the XBEL JAXBContext is already shared by
+ * the whole process (see XbelJAXBContext). A session is used by a single
+ * worker thread.
+ */
+final class TaskSession {
+
+	private final NdexTaskService taskService;
+	private final Map<UUID, String> ownerAccounts = Maps.newHashMap();
+
+	TaskSession() {
+		this(TaskStatusService.INSTANCE.getTaskService());
+	}
+
+	TaskSession(NdexTaskService taskService) {
+		Preconditions.checkArgument(null != taskService, "A task service is required");
+		this.taskService = taskService;
+	}
+
+	NdexTaskService getTaskService() {
+		return this.taskService;
+	}
+
+	/*
+	 * the account name of the task owner, looked up once per owner and session
+	 */
+	String getTaskOwnerAccount(Task task) throws NdexException {
+		UUID ownerId = task.getTaskOwnerId();
+		String account = null == ownerId ? null : this.ownerAccounts.get(ownerId);
+		if (null == account) {
+			account = this.taskService.getTaskOwnerAccount(task);
+			if (null != ownerId && null != account) {
+				this.ownerAccounts.put(ownerId, account);
+			}
+		}
+		return account;
+	}
+
+}
@@ -0,0 +1,50 @@
+package org.ndexbio.task;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.AbstractScheduledService;
+
+/*
+ * Represents a scheduled task that writes the pending task status and progress
+ * changes of the TaskStatusService every Task-Status-Flush-Millis (default
+ * 1000), and once more when it is stopped. It must be stopped after the task
+ * processor, so the changes of the drained workers are written as well; the
+ * NdexTaskServiceManager therefore runs it outside of its Service Manager.
+ */
+public class TaskStatusFlushService extends AbstractScheduledService {
+
+	private static final Logger logger = LoggerFactory.getLogger(TaskStatusFlushService.class);
+
+	private final long intervalMillis;
+
+	public TaskStatusFlushService(long intervalMillis) {
+		Preconditions.checkArgument(intervalMillis > 0, "The flush interval must be > 0");
+		this.intervalMillis = intervalMillis;
+	}
+
+	@Override
+	protected void startUp() {
+		logger.info("TaskStatusFlushService started, writing every " + this.intervalMillis + " ms");
+	}
+
+	@Override
+	protected void runOneIteration() {
+		TaskStatusService.INSTANCE.flush();
+	}
+
+	@Override
+	protected void shutDown() {
+		int updated = TaskStatusService.INSTANCE.flush();
+		logger.info("TaskStatusFlushService stopped, " + updated + " task status changes written");
+	}
+
+	@Override
+	protected Scheduler scheduler() {
+		return Scheduler.newFixedDelaySchedule(this.intervalMillis, this.intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+}
@@ -0,0 +1,203 @@
+package org.ndexbio.task;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.ndexbio.common.exceptions.ObjectNotFoundException;
+import org.ndexbio.common.persistence.orientdb.NdexTaskService;
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Status;
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+import org.ndexbio.task.service.TaskStatusStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/*
+ * A singleton implemented as an enum through which the tasks update their
+ * status and progress. A completion status (COMPLETED, COMPLETED_WITH_ERRORS)
+ * is written before updateTaskStatus returns, so a finished task is durable.
+ * Any other transition and the progress are only recorded and written behind
+ * by the TaskStatusFlushService in batches of FLUSH_BATCH_SIZE, through the
+ * conditional UPDATE of the TaskStatusStore: a later change of a task replaces
+ * its pending one and a completion status discards it, so a task finishing
+ * within the flush interval costs a single status write.
+ * Pending changes are lost if the process dies; the task lease (see
+ * TaskLeases) then reclaims the task as it was staged.
+ * The listener of a task submitted in process (see TaskSubmissions) is
+ * notified of every change.
+ * A run of NdexQueuedTaskProcessor.processAll flushes the pending changes
+ * when it ends.
+ * The NdexTaskService is not shared between threads, every worker uses its own.
+ */
+public enum TaskStatusService {
+	INSTANCE;
+
+	static final int FLUSH_BATCH_SIZE = 100;
+
+	private static final Logger logger = LoggerFactory.getLogger(TaskStatusService.class);
+
+	// the pending changes in the order of their first update, guarded by this
+	private final Map<UUID, Task> pending = Maps.newLinkedHashMap();
+	private final Object flushLock = new Object();
+	private ThreadLocal<NdexTaskService> taskServices;
+	private volatile TaskStatusStore store;
+
+	private TaskStatusService() {
+		this.configure(new Supplier<NdexTaskService>() {
+			@Override
+			public NdexTaskService get() {
+				return new NdexTaskService();
+			}
+		}, new TaskStatusStore());
+	}
+
+	synchronized void configure(final Supplier<NdexTaskService> taskServiceFactory, TaskStatusStore statusStore) {
+		Preconditions.checkArgument(null != taskServiceFactory, "A task service factory is required");
+		Preconditions.checkArgument(null != statusStore, "A task status store is required");
+		this.taskServices = new ThreadLocal<NdexTaskService>() {
+			@Override
+			protected NdexTaskService initialValue() {
+				return taskServiceFactory.get();
+			}
+		};
+		this.store = statusStore;
+		this.pending.clear();
+	}
+
+	/*
+	 * the task service of the current thread
+	 */
+	synchronized NdexTaskService getTaskService() {
+		return this.taskServices.get();
+	}
+
+	static boolean isCompletion(Status status) {
+		return status == Status.COMPLETED || status == Status.COMPLETED_WITH_ERRORS;
+	}
+
+	/*
+	 * update the status of a task; returns the updated task
+	 */
+	public Task updateTaskStatus(Status status, Task task) throws ObjectNotFoundException, NdexException {
+		Preconditions.checkArgument(null != status, "A status is required");
+		Preconditions.checkArgument(null != task && null != task.getExternalId(), "A task is required");
+		if (isCompletion(status)) {
+			synchronized (this) {
+				this.pending.remove(task.getExternalId());
+			}
+			Task updated = this.getTaskService().updateTaskStatus(status, task);
+			task.setStatus(status);
+			TaskSubmissions.INSTANCE.progressChanged(task);
+			return updated;
+		}
+		task.setStatus(status);
+		this.record(task);
+		TaskSubmissions.INSTANCE.progressChanged(task);
+		return task;
+	}
+
+	/*
+	 * update the progress of a running task, in percent
+	 */
+	public void updateProgress(Task task, int progress) {
+		Preconditions.checkArgument(null != task && null != task.getExternalId(), "A task is required");
+		Preconditions.checkArgument(progress >= 0 && progress <= 100, "The progress must be between 0 and 100");
+		if (task.getProgress() == progress) {
+			return;
+		}
+		task.setProgress(progress);
+		this.record(task);
+		TaskSubmissions.INSTANCE.progressChanged(task);
+	}
+
+	/*
+	 * report the progress of the upload running on the current thread from the
+	 * share of its file read so far; a no-op outside of an upload task
+	 */
+	public static void reportUploadProgress() {
+		TaskExecutionContext context = TaskExecutionContext.current();
+		if (context == null || context.getTask().getTaskType() != TaskType.PROCESS_UPLOADED_NETWORK
+				|| context.getTask().getResource() == null) {
+			return;
+		}
+		long size = new File(context.getTask().getResource()).length();
+		if (size > 0) {
+			// a file read more than once is done only once it completed
+			long progress = Math.min(99L, context.getResourceUsage().getBytesRead() * 100L / size);
+			INSTANCE.updateProgress(context.getTask(), (int) progress);
+		}
+	}
+
+	/*
+	 * a snapshot of the status and progress of a task replaces its pending change
+	 */
+	private synchronized void record(Task task) {
+		Task change = new Task();
+		change.setExternalId(task.getExternalId());
+		change.setStatus(null == task.getStatus() ? Status.PROCESSING : task.getStatus());
+		change.setProgress(task.getProgress());
+		this.pending.put(task.getExternalId(), change);
+	}
+
+	/*
+	 * drop the pending change of a task, e.g. once it was requeued
+	 */
+	synchronized void discard(Task task) {
+		this.pending.remove(task.getExternalId());
+	}
+
+	synchronized int getPendingCount() {
+		return this.pending.size();
+	}
+
+	/*
+	 * write the pending changes in batches; returns the number of tasks
+	 * updated. Changes that failed to be written are kept for the next flush
+	 * unless the task changed again meanwhile.
+	 */
+	int flush() {
+		synchronized (this.flushLock) {
+			int updated = 0;
+			List<Task> batch;
+			while (!(batch = this.nextBatch()).isEmpty()) {
+				try {
+					updated += this.store.storeStatuses(batch);
+				} catch (NdexException e) {
+					logger.warn("Failed to write the status of " + batch.size() + " tasks, retrying at the next flush. "
+							+ e.getMessage());
+					this.restore(batch);
+					break;
+				}
+			}
+			return updated;
+		}
+	}
+
+	private synchronized List<Task> nextBatch() {
+		List<Task> batch = Lists.newArrayList();
+		Iterator<Task> changes = this.pending.values().iterator();
+		while (changes.hasNext() && batch.size() < FLUSH_BATCH_SIZE) {
+			batch.add(changes.next());
+			changes.remove();
+		}
+		return batch;
+	}
+
+	private synchronized void restore(List<Task> batch) {
+		for (Task change : batch) {
+			if (!this.pending.containsKey(change.getExternalId())) {
+				this.pending.put(change.getExternalId(), change);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,132 @@
+package org.ndexbio.task;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/*
+ * A singleton implemented as an enum holding the tasks submitted in process
+ * until they finish. The listener of a submitted task is notified of every
+ * status and progress change through the TaskStatusService, and its future is
+ * completed with the task by the worker once the final status was written.
+ * A submitted task that does not reach its final status on this instance,
+ * e.g. requeued by a draining processor or reclaimed by another instance after
+ * its lease was lost, fails its future with an NdexException while the task
+ * itself goes on through the shared queue.
+ * Cancelling the future cancels the task at its next cancellation check point;
+ * the task is then marked as COMPLETED_WITH_ERRORS.
+ */
+enum TaskSubmissions {
+	INSTANCE;
+
+	private static final Logger logger = LoggerFactory.getLogger(TaskSubmissions.class);
+
+	private static final class Submission {
+		private final SettableFuture<Task> future = SettableFuture.create();
+		private final TaskProgressListener listener;
+		// the context of the task once it started, guarded by this
+		private TaskExecutionContext context;
+
+		Submission(TaskProgressListener listener) {
+			this.listener = listener;
+		}
+
+		synchronized void started(TaskExecutionContext taskContext) {
+			this.context = taskContext;
+			if (this.future.isCancelled()) {
+				taskContext.cancel("the submission was cancelled");
+			}
+		}
+
+		synchronized void cancelled() {
+			if (null != this.context) {
+				this.context.cancel("the submission was cancelled");
+			}
+		}
+	}
+
+	private final ConcurrentMap<UUID, Submission> submissions = Maps.newConcurrentMap();
+
+	/*
+	 * returns the future of the task, the listener may be null
+	 */
+	ListenableFuture<Task> register(UUID taskId, TaskProgressListener listener) {
+		Preconditions.checkArgument(null != taskId, "A task id is required");
+		final Submission submission = new Submission(listener);
+		Preconditions.checkState(null == this.submissions.putIfAbsent(taskId, submission),
+				"Task " + taskId + " is already submitted");
+		submission.future.addListener(new Runnable() {
+			@Override
+			public void run() {
+				if (submission.future.isCancelled()) {
+					submission.cancelled();
+				}
+			}
+		}, MoreExecutors.directExecutor());
+		return submission.future;
+	}
+
+	/*
+	 * forget a submission whose task could not be staged
+	 */
+	void withdraw(UUID taskId) {
+		this.submissions.remove(taskId);
+	}
+
+	int getPendingCount() {
+		return this.submissions.size();
+	}
+
+	void started(TaskExecutionContext context) {
+		Submission submission = this.submissions.get(context.getTask().getExternalId());
+		if (null != submission) {
+			submission.started(context);
+		}
+	}
+
+	void progressChanged(Task task) {
+		Submission submission = this.submissions.get(task.getExternalId());
+		if (null == submission || null == submission.listener) {
+			return;
+		}
+		try {
+			submission.listener.progressChanged(task);
+		} catch (RuntimeException e) {
+			// a listener must never fail the task
+			logger.warn("The progress listener of task " + task.getExternalId() + " failed. "
+					+ e.getMessage());
+		}
+	}
+
+	/*
+	 * the task reached its final status
+	 */
+	void completed(Task task) {
+		Submission submission = this.submissions.remove(task.getExternalId());
+		if (null != submission) {
+			submission.future.set(task);
+		}
+	}
+
+	/*
+	 * the task was given up by this instance for the given reason
+	 */
+	void abandoned(Task task, String reason) {
+		Submission submission = this.submissions.remove(task.getExternalId());
+		if (null != submission) {
+			submission.future.setException(new NdexException("Task " + task.getExternalId()
+					+ " was given up by this task processor (" + reason + ")"));
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+package org.ndexbio.task;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ndexbio.model.exceptions.NdexException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/*
+ * Creates the thread pools of the task engine in one of two execution modes,
+ * selected with the Task-Execution-Mode property:
+ *
+ *   PLATFORM  (default) a fixed pool of platform threads per worker count
+ *   VIRTUAL   a new virtual thread per task worker and event handler
+ *
+ * Task workers spend nearly all their time blocked on OrientDB round trips and
+ * file I/O, so on a JDK with virtual threads (21+) the VIRTUAL mode can run
+ * many more concurrent workers without sizing a thread pool for them; the
+ * default worker count is raised accordingly (see defaultWorkerCount).
+ * The concurrency caps, deadlines and cancellation of the workers apply
+ * unchanged: a worker pool is shut down as a unit and every task on it
+ * stops at its next cancellation check point.
+ * Before JDK 24 a virtual thread blocked inside a synchronized block pins
+ * its carrier thread, which limits the gain for OrientDB calls.
+ *
+ * The project is compiled for Java 7, so the virtual thread API is reached
+ * through reflection. When it is not available the platform mode is used.
+ */
+public final class TaskThreads {
+
+	public enum ExecutionMode { PLATFORM, VIRTUAL }
+
+	static final String EXECUTION_MODE_PROPERTY = "Task-Execution-Mode";
+	static final int VIRTUAL_WORKERS_PER_PROCESSOR = 8;
+
+	private static final Logger logger = LoggerFactory.getLogger(TaskThreads.class);
+
+	private TaskThreads() {}
+
+	/*
+	 * the configured execution mode; VIRTUAL falls back to PLATFORM on a JDK
+	 * without virtual threads
+	 */
+	public static ExecutionMode configuredMode() {
+		String mode = null;
+		try {
+			mode = Configuration.getInstance().getProperty(EXECUTION_MODE_PROPERTY);
+		} catch (NdexException e) {
+			logger.warn("Unable to read " + EXECUTION_MODE_PROPERTY + " from configuration. "
+					+ e.getMessage());
+		}
+		if (mode == null || mode.trim().isEmpty()) {
+			return ExecutionMode.PLATFORM;
+		}
+		try {
+			return effectiveMode(ExecutionMode.valueOf(mode.trim().toUpperCase()));
+		} catch (IllegalArgumentException e) {
+			logger.warn("Unknown " + EXECUTION_MODE_PROPERTY + " " + mode + ", using "
+					+ ExecutionMode.PLATFORM);
+			return ExecutionMode.PLATFORM;
+		}
+	}
+
+	static ExecutionMode effectiveMode(ExecutionMode requested) {
+		if (requested == ExecutionMode.VIRTUAL && !isVirtualThreadSupported()) {
+			logger.warn("Virtual threads are not supported by this JVM ("
+					+ System.getProperty("java.version") + "), using platform threads");
+			return ExecutionMode.PLATFORM;
+		}
+		return requested;
+	}
+
+	public static boolean isVirtualThreadSupported() {
+		return virtualThreadFactory("probe-") != null;
+	}
+
+	/*
+	 * the default number of task workers in the given mode
+	 */
+	static int defaultWorkerCount(ExecutionMode mode) {
+		int processors = Runtime.getRuntime().availableProcessors();
+		return mode == ExecutionMode.VIRTUAL ? processors * VIRTUAL_WORKERS_PER_PROCESSOR : processors;
+	}
+
+	/*
+	 * a pool running at most the given number of workers; in VIRTUAL mode every
+	 * submitted worker gets its own virtual thread and the size is not enforced
+	 * by the pool, the callers bound it by the number of workers they submit
+	 */
+	public static ExecutorService newWorkerPool(ExecutionMode mode, int size, String namePrefix) {
+		Preconditions.checkArgument(size > 0, "The pool size must be > 0");
+		if (mode == ExecutionMode.VIRTUAL) {
+			ExecutorService pool = newVirtualThreadPerTaskExecutor(namePrefix);
+			if (pool != null) {
+				return pool;
+			}
+		}
+		return Executors.newFixedThreadPool(size, platformThreadFactory(namePrefix));
+	}
+
+	/*
+	 * an unbounded pool for short lived work such as event handlers
+	 */
+	public static ExecutorService newUnboundedPool(ExecutionMode mode, String namePrefix) {
+		if (mode == ExecutionMode.VIRTUAL) {
+			ExecutorService pool = newVirtualThreadPerTaskExecutor(namePrefix);
+			if (pool != null) {
+				return pool;
+			}
+		}
+		return Executors.newCachedThreadPool(platformThreadFactory(namePrefix));
+	}
+
+	static ThreadFactory platformThreadFactory(final String namePrefix) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				return new Thread(runnable, namePrefix + this.count.getAndIncrement());
+			}
+		};
+	}
+
+	/*
+	 * Thread.ofVirtual().name(namePrefix, 0).factory() or null before JDK 21
+	 */
+	static ThreadFactory virtualThreadFactory(String namePrefix) {
+		try {
+			// the builder implementation is not public, so go through the Thread.Builder interface
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method name = builderType.getMethod("name", String.class, long.class);
+			builder = name.invoke(builder, namePrefix, 0L);
+			return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/*
+	 * Executors.newThreadPerTaskExecutor(virtualThreadFactory) or null before JDK 21
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+		ThreadFactory factory = virtualThreadFactory(namePrefix);
+		if (factory == null) {
+			return null;
+		}
+		try {
+			return (ExecutorService) Executors.class
+					.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+					.invoke(null, factory);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			logger.warn("Unable to create a virtual thread executor. " + e.getMessage());
+			return null;
+		}
+	}
+
+}
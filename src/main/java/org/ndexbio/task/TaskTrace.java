@@ -0,0 +1,177 @@
+package org.ndexbio.task;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.ndexbio.model.object.Task;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/*
+ * Represents the trace of a task: the phases it went through as spans on the
+ * threads that ran them, written in the Chrome trace event format that
+ * chrome://tracing and ui.perfetto.dev display as a timeline.
+ *
+ *   try (TaskTrace.Span span = TaskTrace.span("xbel.namespaces")) {
+ *       ...
+ *   }
+ *
+ * A span is recorded for the task running on the current thread when the task
+ * is traced (see TaskTracing) and costs a thread local lookup otherwise. Spans
+ * nest by time, so a phase and its sub phases are displayed as a flame chart.
+ * A trace keeps at most MAX_EVENTS spans; later spans are counted as dropped.
+ */
+public final class TaskTrace {
+
+	static final int MAX_EVENTS = 100000;
+
+	private static final Span NO_SPAN = new Span(null, null);
+
+	private final String taskId;
+	private final String category;
+	private final long threadId;
+	private final long startNanos;
+	private final List<Event> events = Lists.newArrayList();
+	private long endNanos;
+	private int droppedEvents;
+
+	/*
+	 * a span ended by close(), e.g. with try-with-resources
+	 */
+	public static final class Span implements AutoCloseable {
+		private final TaskTrace trace;
+		private final String name;
+		private final long startNanos;
+
+		private Span(TaskTrace trace, String name) {
+			this.trace = trace;
+			this.name = name;
+			this.startNanos = trace == null ? 0L : System.nanoTime();
+		}
+
+		@Override
+		public void close() {
+			if (this.trace != null) {
+				this.trace.add(this.name, this.startNanos, System.nanoTime());
+			}
+		}
+	}
+
+	private static final class Event {
+		final String name;
+		final long startNanos;
+		final long endNanos;
+		final long threadId;
+		final String threadName;
+
+		Event(String name, long startNanos, long endNanos, Thread thread) {
+			this.name = name;
+			this.startNanos = startNanos;
+			this.endNanos = endNanos;
+			this.threadId = thread.getId();
+			this.threadName = thread.getName();
+		}
+	}
+
+	/*
+	 * start the trace of a task on its worker thread
+	 */
+	TaskTrace(Task task) {
+		Preconditions.checkArgument(null != task, "A task is required");
+		this.taskId = String.valueOf(task.getExternalId());
+		this.category = NdexTaskCategory.of(task);
+		this.threadId = Thread.currentThread().getId();
+		this.startNanos = System.nanoTime();
+	}
+
+	/*
+	 * start a span of the task running on the current thread
+	 */
+	public static Span span(String name) {
+		TaskExecutionContext context = TaskExecutionContext.current();
+		TaskTrace trace = context == null ? null : context.getTrace();
+		return trace == null ? NO_SPAN : new Span(trace, name);
+	}
+
+	private synchronized void add(String name, long startNanos, long endNanos) {
+		if (this.events.size() >= MAX_EVENTS) {
+			this.droppedEvents++;
+			return;
+		}
+		this.events.add(new Event(name, startNanos, endNanos, Thread.currentThread()));
+	}
+
+	/*
+	 * the task ended; its whole run is written as the outermost span
+	 */
+	synchronized void finish() {
+		this.endNanos = System.nanoTime();
+	}
+
+	String getTaskId() {
+		return this.taskId;
+	}
+
+	synchronized int getEventCount() {
+		return this.events.size();
+	}
+
+	synchronized int getDroppedEvents() {
+		return this.droppedEvents;
+	}
+
+	/*
+	 * write the trace as a JSON object with a traceEvents array of complete (X)
+	 * events; timestamps are microseconds since the start of the task
+	 */
+	synchronized void writeTo(Writer writer) throws IOException {
+		writer.write("{\"traceEvents\":[");
+		writeEvent(writer, this.category, this.startNanos,
+				this.endNanos > 0 ? this.endNanos : System.nanoTime(), this.threadId);
+		List<Long> namedThreads = Lists.newArrayList();
+		for (Event event : this.events) {
+			writer.write(',');
+			writeEvent(writer, event.name, event.startNanos, event.endNanos, event.threadId);
+			if (!namedThreads.contains(event.threadId)) {
+				namedThreads.add(event.threadId);
+				writer.write(",{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + event.threadId
+						+ ",\"args\":{\"name\":");
+				writeString(writer, event.threadName);
+				writer.write("}}");
+			}
+		}
+		writer.write("],\"displayTimeUnit\":\"ms\",\"otherData\":{\"taskId\":");
+		writeString(writer, this.taskId);
+		writer.write(",\"category\":");
+		writeString(writer, this.category);
+		writer.write(",\"droppedEvents\":" + this.droppedEvents + "}}");
+	}
+
+	private void writeEvent(Writer writer, String name, long startNanos, long endNanos, long threadId)
+			throws IOException {
+		writer.write("{\"name\":");
+		writeString(writer, name);
+		writer.write(",\"cat\":\"task\",\"ph\":\"X\",\"ts\":" + (startNanos - this.startNanos) / 1000L
+				+ ",\"dur\":" + (endNanos - startNanos) / 1000L + ",\"pid\":1,\"tid\":" + threadId + "}");
+	}
+
+	private static void writeString(Writer writer, String value) throws IOException {
+		writer.write('"');
+		String s = String.valueOf(value);
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				writer.write('\\');
+				writer.write(c);
+			} else if (c < 0x20) {
+				writer.write(String.format("\\u%04x", (int) c));
+			} else {
+				writer.write(c);
+			}
+		}
+		writer.write('"');
+	}
+
+}
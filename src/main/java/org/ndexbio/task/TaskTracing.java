@@ -0,0 +1,129 @@
+package org.ndexbio.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/*
+ * Represents which tasks are traced (see TaskTrace) by category (see 
+ * NdexTaskCategory) and where the traces are written. The share of the tasks
+ * traced is read from the ndex configuration file:
+ * 
+ *   Task-Trace-Percent=1
+ *   Task-Trace-Percent.PROCESS_UPLOADED_NETWORK.XBEL=100
+ *   Task-Trace-Path=/opt/ndex/task-traces
+ * 
+ * The most specific entry wins and the unqualified property is the default
+ * for all other categories: 0, the default, traces no task and 100 every task.
+ * The trace of a task is written to <taskId>.trace.json in Task-Trace-Path
+ * (default <NdexRoot>/task-traces) once the task ended.
+ */
+class TaskTracing {
+
+	static final String TRACE_PERCENT_PROPERTY = "Task-Trace-Percent";
+	static final String TRACE_PATH_PROPERTY = "Task-Trace-Path";
+	static final String DEFAULT_TRACE_DIRECTORY = "task-traces";
+	static final String TRACE_FILE_SUFFIX = ".trace.json";
+
+	private static final Logger logger = LoggerFactory.getLogger(TaskTracing.class);
+
+	private final Map<String, Integer> percents;
+	private final int defaultPercent;
+	private final File traceDirectory;
+
+	TaskTracing(Map<String, Integer> percents, int defaultPercent, File traceDirectory) {
+		Preconditions.checkArgument(null != percents, "A map of trace percentages is required");
+		Preconditions.checkArgument(null != traceDirectory, "A trace directory is required");
+		checkPercent("the default", defaultPercent);
+		for (Map.Entry<String, Integer> entry : percents.entrySet()) {
+			Preconditions.checkArgument(entry.getValue() != null, "The trace percentage for " 
+					+ entry.getKey() + " is required");
+			checkPercent(entry.getKey(), entry.getValue());
+		}
+		this.percents = ImmutableMap.copyOf(percents);
+		this.defaultPercent = defaultPercent;
+		this.traceDirectory = traceDirectory;
+	}
+
+	private static void checkPercent(String category, int percent) {
+		Preconditions.checkArgument(percent >= 0 && percent <= 100,
+				"The trace percentage for " + category + " must be between 0 and 100");
+	}
+
+	static TaskTracing disabled() {
+		return new TaskTracing(ImmutableMap.<String, Integer>of(), 0, 
+				new File(System.getProperty("java.io.tmpdir"), DEFAULT_TRACE_DIRECTORY));
+	}
+
+	static TaskTracing fromConfiguration(Configuration configuration) throws NdexException {
+		Map<String, Integer> percents = Maps.newHashMap();
+		String prefix = TRACE_PERCENT_PROPERTY + ".";
+		for (String name : configuration.getPropertyNames()) {
+			if (name.startsWith(prefix)) {
+				percents.put(name.substring(prefix.length()), configuration.getIntProperty(name, 0));
+			}
+		}
+		int defaultPercent = configuration.getIntProperty(TRACE_PERCENT_PROPERTY, 0);
+		String path = configuration.getProperty(TRACE_PATH_PROPERTY);
+		File traceDirectory = path != null ? new File(path.trim()) 
+				: new File(configuration.getNdexRoot(), DEFAULT_TRACE_DIRECTORY);
+		try {
+			TaskTracing result = new TaskTracing(percents, defaultPercent, traceDirectory);
+			if (defaultPercent > 0 || !percents.isEmpty()) {
+				logger.info("Task tracing configured: " + percents + " default " + defaultPercent 
+						+ "%, traces written to " + traceDirectory);
+			}
+			return result;
+		} catch (IllegalArgumentException e) {
+			throw new NdexException("Invalid " + TRACE_PERCENT_PROPERTY + " configuration. " + e.getMessage());
+		}
+	}
+
+	int getPercent(Task task) {
+		Integer percent = this.percents.get(NdexTaskCategory.of(task));
+		if (percent == null) {
+			percent = this.percents.get(NdexTaskCategory.typeOf(task));
+		}
+		return percent == null ? this.defaultPercent : percent;
+	}
+
+	/*
+	 * sample whether to trace the task
+	 */
+	boolean shouldTrace(Task task) {
+		int percent = this.getPercent(task);
+		return percent >= 100 || (percent > 0 && ThreadLocalRandom.current().nextInt(100) < percent);
+	}
+
+	/*
+	 * write the trace of a finished task; returns the trace file
+	 */
+	File write(TaskTrace trace) throws IOException {
+		if (!this.traceDirectory.isDirectory() && !this.traceDirectory.mkdirs()) {
+			throw new IOException("Unable to create the trace directory " + this.traceDirectory);
+		}
+		File traceFile = new File(this.traceDirectory, trace.getTaskId() + TRACE_FILE_SUFFIX);
+		try (Writer writer = Files.newWriter(traceFile, StandardCharsets.UTF_8)) {
+			trace.writeTo(writer);
+		}
+		return traceFile;
+	}
+
+	File getTraceDirectory() {
+		return this.traceDirectory;
+	}
+
+}
@@ -0,0 +1,64 @@
+package org.ndexbio.task;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+
+/*
+ * Represents a scheduled service that cancels the tasks that ran past their 
+ * deadline (see TaskDeadlines). The tasks stop at their next cancellation
+ * check point, their partial network is rolled back by the parser and the 
+ * worker marks them as COMPLETED_WITH_ERRORS, so a hung parse no longer 
+ * blocks the workers indefinitely.
+ * This service runs alongside the task workers, either registered with the
+ * Google Service Manager of the task daemon or for the duration of a
+ * NdexQueuedTaskProcessor.processAll() invocation.
+ */
+public class TaskWatchdog extends AbstractScheduledService {
+
+	private static final Logger logger = LoggerFactory.getLogger(TaskWatchdog.class);
+
+	static final long CHECK_INTERVAL_SECONDS = 30L;
+
+	@Override
+	protected void startUp() {
+		logger.info("TaskWatchdog started");
+	}
+
+	@Override
+	protected void shutDown() {
+		logger.info("TaskWatchdog stopped");
+	}
+
+	@Override
+	protected void runOneIteration() throws Exception {
+		this.cancelOverdueTasks(System.currentTimeMillis());
+	}
+
+	/*
+	 * returns the number of tasks cancelled by this check
+	 */
+	int cancelOverdueTasks(long now) {
+		int cancelled = 0;
+		for (TaskExecutionContext context : TaskExecutionContext.getRunningContexts()) {
+			if (!context.isCancelled() && context.isOverdue(now)) {
+				context.cancel("exceeded its deadline after " 
+						+ TimeUnit.MILLISECONDS.toMinutes(context.getElapsedMillis(now)) + " minutes");
+				logger.warn("Cancelling task " + context.getTask().getExternalId() + " on thread "
+						+ context.getThread().getName() + ", it " + context.getCancelReason());
+				cancelled++;
+			}
+		}
+		return cancelled;
+	}
+
+	@Override
+	protected Scheduler scheduler() {
+		return Scheduler.newFixedDelaySchedule(CHECK_INTERVAL_SECONDS, CHECK_INTERVAL_SECONDS,
+				TimeUnit.SECONDS);
+	}
+
+}
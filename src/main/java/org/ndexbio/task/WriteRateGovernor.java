@@ -0,0 +1,213 @@
+package org.ndexbio.task;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.ndexbio.task.metrics.TaskMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/*
+ * A singleton implemented as an enum pacing the batch commits of the parsers,
+ * so large imports leave capacity in the OrientDB database they share with the
+ * NDEx web application. Each budget is a token bucket of network elements per
+ * second, set by the Task-Write-Rate-Bulk, Task-Write-Rate-Interactive and
+ * Task-Write-Target-Commit-Millis TaskEngineSettings and reconfigured when a
+ * reload of the configuration file changes them.
+ * Bulk uploads (see TaskLane) and the utilities loading files directly use the
+ * bulk budget, all other tasks the interactive budget; a rate of 0 leaves a
+ * budget unlimited. A parser takes the elements of a batch before committing
+ * it (awaitPermit) and reports the commit latency afterwards (commitCompleted).
+ * The rate of a budget follows the observed latency: a commit slower than the
+ * target halves the rate, down to a twentieth of the configured rate, and a
+ * commit faster than half the target raises it by a tenth of the configured
+ * rate, up to the configured rate. The current rates and the time the parsers
+ * waited are published to the TaskMetrics.
+ */
+public enum WriteRateGovernor {
+	INSTANCE;
+
+	// a waiting parser checks for cancellation at least this often
+	private static final long WAIT_SLICE_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteRateGovernor.class);
+
+	public enum Budget {
+		BULK,
+		INTERACTIVE
+	}
+
+	/*
+	 * a token bucket holding at most one second of elements; a batch larger
+	 * than the tokens available is let through once the deficit is refilled
+	 */
+	static final class TokenBucket {
+		private final double maxRate;
+		private final double minRate;
+		private double rate;
+		private double available;
+		private long refillNanos;
+
+		TokenBucket(double maxRate, long now) {
+			Preconditions.checkArgument(maxRate > 0, "The write rate must be > 0");
+			this.maxRate = maxRate;
+			this.minRate = maxRate / 20;
+			this.rate = maxRate;
+			this.available = maxRate;
+			this.refillNanos = now;
+		}
+
+		/*
+		 * take the tokens of a batch; returns the nanoseconds to wait before
+		 * committing it
+		 */
+		synchronized long reserve(long elements, long now) {
+			this.refill(now);
+			this.available -= elements;
+			return this.available >= 0 ? 0L : (long) (-this.available / this.rate * 1.0e9);
+		}
+
+		/*
+		 * adapt the rate to the latency of a commit
+		 */
+		synchronized void adapt(long commitNanos, long targetNanos, long now) {
+			this.refill(now);
+			if (commitNanos > targetNanos) {
+				this.rate = Math.max(this.minRate, this.rate / 2);
+			} else if (commitNanos < targetNanos / 2) {
+				this.rate = Math.min(this.maxRate, this.rate + this.maxRate / 10);
+			}
+		}
+
+		private void refill(long now) {
+			this.available = Math.min(this.rate, this.available + (now - this.refillNanos) * this.rate / 1.0e9);
+			this.refillNanos = now;
+		}
+
+		synchronized double getRate() {
+			return this.rate;
+		}
+	}
+
+	// the buckets of the limited budgets; replaced as a whole by configure
+	private volatile Map<Budget, TokenBucket> buckets = Maps.newEnumMap(Budget.class);
+	private volatile long targetCommitNanos =
+			TimeUnit.MILLISECONDS.toNanos(TaskEngineSettings.DEFAULT_TARGET_COMMIT_MILLIS);
+	// the configured values, so a reload leaves the adapted rates alone unless they change
+	private int bulkRate = -1;
+	private int interactiveRate = -1;
+	private int targetCommitMillis = -1;
+
+	/*
+	 * set the rates in elements per second, 0 for an unlimited budget
+	 */
+	synchronized void configure(int bulkRate, int interactiveRate, int targetCommitMillis) {
+		Preconditions.checkArgument(bulkRate >= 0,
+				TaskEngineSettings.BULK_WRITE_RATE_PROPERTY + " must be >= 0");
+		Preconditions.checkArgument(interactiveRate >= 0,
+				TaskEngineSettings.INTERACTIVE_WRITE_RATE_PROPERTY + " must be >= 0");
+		Preconditions.checkArgument(targetCommitMillis > 0,
+				TaskEngineSettings.TARGET_COMMIT_MILLIS_PROPERTY + " must be > 0");
+		long now = System.nanoTime();
+		Map<Budget, TokenBucket> configured = Maps.newEnumMap(Budget.class);
+		if (bulkRate > 0) {
+			configured.put(Budget.BULK, new TokenBucket(bulkRate, now));
+		}
+		if (interactiveRate > 0) {
+			configured.put(Budget.INTERACTIVE, new TokenBucket(interactiveRate, now));
+		}
+		this.targetCommitNanos = TimeUnit.MILLISECONDS.toNanos(targetCommitMillis);
+		this.buckets = configured;
+		this.bulkRate = bulkRate;
+		this.interactiveRate = interactiveRate;
+		this.targetCommitMillis = targetCommitMillis;
+		for (Budget budget : Budget.values()) {
+			this.publishRate(budget, configured.get(budget));
+		}
+		logger.info("Write rates configured: bulk " + (bulkRate > 0 ? bulkRate : "unlimited")
+				+ ", interactive " + (interactiveRate > 0 ? interactiveRate : "unlimited")
+				+ " elements per second, commit latency target " + targetCommitMillis + " ms");
+	}
+
+	/*
+	 * apply the write rates of the task engine settings; the buckets are only
+	 * replaced when a rate or the latency target differs from the configured one
+	 */
+	public synchronized void configure(TaskEngineSettings settings) {
+		if (settings.getBulkWriteRate() != this.bulkRate
+				|| settings.getInteractiveWriteRate() != this.interactiveRate
+				|| settings.getTargetCommitMillis() != this.targetCommitMillis) {
+			this.configure(settings.getBulkWriteRate(), settings.getInteractiveWriteRate(),
+					settings.getTargetCommitMillis());
+		}
+	}
+
+	/*
+	 * wait until the elements of the next batch may be committed by the task
+	 * running on the current thread; throws TaskCancelledException if the task
+	 * is cancelled while waiting
+	 */
+	public void awaitPermit(long elements) {
+		Budget budget = currentBudget();
+		TokenBucket bucket = this.buckets.get(budget);
+		if (bucket == null || elements <= 0) {
+			return;
+		}
+		long waitNanos = bucket.reserve(elements, System.nanoTime());
+		if (waitNanos <= 0) {
+			return;
+		}
+		TaskMetrics.INSTANCE.recordWriteThrottle(budget.name(), waitNanos);
+		long deadline = System.nanoTime() + waitNanos;
+		for (long remaining = waitNanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+			TaskExecutionContext.checkCancelled();
+			try {
+				TimeUnit.NANOSECONDS.sleep(Math.min(remaining, WAIT_SLICE_NANOS));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				TaskExecutionContext.checkCancelled();
+			}
+		}
+	}
+
+	/*
+	 * a batch commit of the task running on the current thread took the given
+	 * time
+	 */
+	public void commitCompleted(long commitNanos) {
+		Budget budget = currentBudget();
+		TokenBucket bucket = this.buckets.get(budget);
+		if (bucket != null) {
+			bucket.adapt(commitNanos, this.targetCommitNanos, System.nanoTime());
+			this.publishRate(budget, bucket);
+		}
+	}
+
+	private void publishRate(Budget budget, TokenBucket bucket) {
+		TaskMetrics.INSTANCE.setWriteRateLimit(budget.name(), bucket == null ? 0L : (long) bucket.getRate());
+	}
+
+	/*
+	 * the budget of the task running on the current thread
+	 */
+	static Budget currentBudget() {
+		TaskExecutionContext context = TaskExecutionContext.current();
+		if (context == null) {
+			return Budget.BULK;
+		}
+		return NdexTaskQueueService.INSTANCE.laneOf(context.getTask()) == TaskLane.BULK_UPLOAD
+				? Budget.BULK : Budget.INTERACTIVE;
+	}
+
+	/*
+	 * the current rate of a budget in elements per second, 0 if unlimited
+	 */
+	double getRate(Budget budget) {
+		TokenBucket bucket = this.buckets.get(budget);
+		return bucket == null ? 0.0 : bucket.getRate();
+	}
+
+}
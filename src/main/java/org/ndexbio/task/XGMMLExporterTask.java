@@ -3,9 +3,9 @@ package org.ndexbio.task;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.UUID;
 
-import org.ndexbio.common.access.NdexAOrientDBConnectionPool;
 import org.ndexbio.model.exceptions.NdexException;
 import org.ndexbio.model.object.Task;
 import org.ndexbio.model.object.Status;
@@ -25,12 +25,13 @@ import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
  * XBEL schema. If the task type is KAMCOMPILE, the class is also responsible
  * for creating a new Task enrty in the database indicating that the new XML
  * file should be processed by the Kam compiler.
+ * The export is served from the ExportArtifactCache while the network is
+ * unchanged and concurrent exports of the same network are coalesced.
  * 
  */
 
 public class XGMMLExporterTask extends NdexTask {
 	
-	private static final String NETWORK_EXPORT_PATH = "/opt/ndex/exported-networks/";
 	private static final String NETWORK_EXPORT_EVENT_PATH = "/opt/ndex/exported-networks-events/";
 	private static final String XGMML_FILE_EXTENSION = ".xgmml";
 	private static final String EVENT_FILE_EXTENSION = ".csv";
@@ -73,19 +74,27 @@ public class XGMMLExporterTask extends NdexTask {
 	private void exportNetwork() throws Exception{
 		this.taskStatus = Status.PROCESSING;
 		this.startTask();
-		String exportFilename = this.resolveFilename(this.NETWORK_EXPORT_PATH, this.XGMML_FILE_EXTENSION);
+		String exportFilename = this.resolveFilename(
+				Configuration.getInstance().getSettings().getExportPath(), this.XGMML_FILE_EXTENSION);
 
-		FileOutputStream out = new FileOutputStream (exportFilename);
-		ODatabaseDocumentTx db = null; 
-		try {
-			db = NdexAOrientDBConnectionPool.getInstance().acquire();
-			XGMMLNetworkExporter exporter = new XGMMLNetworkExporter(db);
-			exporter.exportNetwork( UUID.fromString(getTask().getResource()), out );
+		// the network is read through the export connections, see ExportConnectionPool
+		try (ExportConnectionPool.ReadSession session = ExportConnectionPool.INSTANCE.openSession()) {
+			final ODatabaseDocumentTx exportDb = session.getDatabase();
+			final UUID networkId = UUID.fromString(getTask().getResource());
+			ExportArtifactCache.INSTANCE.export(networkId, 
+					ExportArtifactCache.versionOf(exportDb, networkId), 
+					this.XGMML_FILE_EXTENSION.substring(1), new File(exportFilename),
+					new ExportArtifactCache.Exporter() {
+						@Override
+						public void export(File target) throws Exception {
+							try (OutputStream out = TaskResourceUsage.countWrites(new FileOutputStream(target))) {
+								XGMMLNetworkExporter exporter = new XGMMLNetworkExporter(exportDb);
+								exporter.exportNetwork(networkId, out);
+							}
+						}
+					});
 			this.taskStatus = Status.COMPLETED;
 			this.updateTaskStatus(this.taskStatus);
-		} finally { 
-			if ( db !=null ) db.close();
-		    out.close();
 		}
 	}
 	
@@ -2,8 +2,8 @@ package org.ndexbio.task;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.UUID;
 
-import org.ndexbio.common.access.NdexAOrientDBConnectionPool;
 import org.ndexbio.model.exceptions.NdexException;
 import org.ndexbio.model.object.Task;
 import org.ndexbio.model.object.Status;
@@ -14,7 +14,6 @@ import org.ndexbio.xbel.exporter.XbelNetworkExporter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
 
 /*
  * Represents an NdexTask subclass responsible for exporting an XBEL network
@@ -22,6 +21,8 @@ import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
  * XBEL schema. If the task type is KAMCOMPILE, the class is also responsible
  * for creating a new Task enrty in the database indicating that the new XML
  * file should be processed by the Kam compiler.
+ * The export is served from the ExportArtifactCache while the network is
+ * unchanged and concurrent exports of the same network are coalesced.
  * 
  */
 
@@ -75,21 +76,26 @@ public class XbelExporterTask extends NdexTask {
 		this.taskStatus = Status.PROCESSING;
 		this.startTask();
 		String exportFilename = this.resolveFilename(
-				Configuration.getInstance().getNdexRoot() + "/exported-networks/", 
+				Configuration.getInstance().getSettings().getExportPath(), 
 				this.XBEL_FILE_EXTENSION);
 	
-		ODatabaseDocumentTx db = null; 
-		try {
-			db = NdexAOrientDBConnectionPool.getInstance().acquire();
-			NdexTaskModelService modelService = new NdexJVMDataModelService(db);
-			XbelNetworkExporter exporter = new XbelNetworkExporter(this.getTask().getTaskOwnerId().toString(),
-				this.networkId,
-				 modelService, exportFilename);
-			exporter.exportNetwork();
+		// the network is read through the export connections, see ExportConnectionPool
+		try (ExportConnectionPool.ReadSession session = ExportConnectionPool.INSTANCE.openSession()) {
+			final NdexTaskModelService modelService = new NdexJVMDataModelService(session.getDatabase());
+			ExportArtifactCache.INSTANCE.export(UUID.fromString(this.networkId),
+					ExportArtifactCache.versionOf(session.getDatabase(), UUID.fromString(this.networkId)),
+					this.XBEL_FILE_EXTENSION.substring(1), new File(exportFilename),
+					new ExportArtifactCache.Exporter() {
+						@Override
+						public void export(File target) throws Exception {
+							XbelNetworkExporter exporter = new XbelNetworkExporter(
+									getTask().getTaskOwnerId().toString(), networkId,
+									modelService, target.getPath());
+							exporter.exportNetwork();
+						}
+					});
 			this.taskStatus = Status.COMPLETED;
 			this.updateTaskStatus(this.taskStatus);
-		} finally { 
-			if ( db !=null ) db.close();
 		}
 	}
 	
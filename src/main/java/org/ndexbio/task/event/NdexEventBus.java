@@ -1,7 +1,8 @@
 package org.ndexbio.task.event;
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+
+import org.ndexbio.task.TaskThreads;
 
 import com.google.common.eventbus.AsyncEventBus;
 import com.google.common.eventbus.EventBus;
@@ -16,7 +17,9 @@ public enum NdexEventBus {
 	
 	INSTANCE;
 	
-	private final ExecutorService exec = Executors.newCachedThreadPool();
+	// event handlers run on virtual threads in the virtual thread execution mode
+	private final ExecutorService exec = TaskThreads.newUnboundedPool(
+			TaskThreads.configuredMode(), "ndex-event-");
 	private  EventBus eventBus = new AsyncEventBus(exec);
 	//private  EventBus eventBus = new EventBus();
 	
@@ -0,0 +1,71 @@
+package org.ndexbio.task.metrics;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/*
+ * Represents a cumulative histogram of observations in seconds with fixed
+ * bucket upper bounds, as exported in the Prometheus text format: the count of
+ * every bucket includes the observations of all smaller buckets and an
+ * implicit +Inf bucket holds the total count.
+ * This class is thread safe.
+ */
+final class Histogram {
+
+	static final double[] TASK_SECONDS = {0.1, 0.5, 1, 5, 10, 30, 60, 300, 600, 1800, 3600, 14400};
+	static final double[] COMMIT_SECONDS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+	private final double[] upperBounds;
+	private final long[] bucketCounts;
+	private long count;
+	private double sum;
+
+	Histogram(double[] upperBounds) {
+		Preconditions.checkArgument(upperBounds.length > 0, "At least one bucket is required");
+		for (int i = 1; i < upperBounds.length; i++) {
+			Preconditions.checkArgument(upperBounds[i] > upperBounds[i - 1],
+					"The bucket upper bounds must be increasing");
+		}
+		this.upperBounds = upperBounds.clone();
+		this.bucketCounts = new long[upperBounds.length];
+	}
+
+	synchronized void observe(double seconds) {
+		for (int i = 0; i < this.upperBounds.length; i++) {
+			if (seconds <= this.upperBounds[i]) {
+				this.bucketCounts[i]++;
+			}
+		}
+		this.count++;
+		this.sum += seconds;
+	}
+
+	void observeMillis(long millis) {
+		this.observe(millis / 1000.0);
+	}
+
+	double[] getUpperBounds() {
+		return this.upperBounds.clone();
+	}
+
+	synchronized long[] getBucketCounts() {
+		return Arrays.copyOf(this.bucketCounts, this.bucketCounts.length);
+	}
+
+	synchronized long getCount() {
+		return this.count;
+	}
+
+	synchronized double getSum() {
+		return this.sum;
+	}
+
+	/*
+	 * the mean observation in milliseconds, 0 if nothing has been observed
+	 */
+	synchronized double getMeanMillis() {
+		return this.count == 0 ? 0.0 : this.sum * 1000.0 / this.count;
+	}
+
+}
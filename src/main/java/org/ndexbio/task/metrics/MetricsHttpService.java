@@ -0,0 +1,90 @@
+package org.ndexbio.task.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * Represents a small embedded HTTP server publishing the TaskMetrics in the
+ * Prometheus text format at /metrics on the port set by the Task-Metrics-Port
+ * property (see TaskEngineSettings). The endpoint is not authenticated, so the port should only be
+ * reachable by the monitoring system.
+ * This service is invoked by registering an instance of this class with a Google
+ * Service Manager
+ */
+public class MetricsHttpService extends AbstractIdleService {
+
+	static final String PATH = "/metrics";
+	static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final Logger logger = LoggerFactory.getLogger(MetricsHttpService.class);
+
+	private final int port;
+	private HttpServer server;
+
+	public MetricsHttpService(int port) {
+		Preconditions.checkArgument(port >= 0 && port <= 65535, "Invalid metrics port " + port);
+		this.port = port;
+	}
+
+	@Override
+	protected void startUp() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress(this.port), 0);
+		this.server.createContext(PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					writeMetrics(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		this.server.start();
+		logger.info("Task metrics published at http://localhost:" + this.getPort() + PATH);
+	}
+
+	/*
+	 * the metrics are rendered before the headers are sent so the content
+	 * length is known
+	 */
+	private static void writeMetrics(HttpExchange exchange) throws IOException {
+		if (!"GET".equals(exchange.getRequestMethod())) {
+			exchange.sendResponseHeaders(405, -1);
+			return;
+		}
+		StringWriter text = new StringWriter();
+		TaskMetrics.INSTANCE.writePrometheus(text);
+		byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/*
+	 * the bound port, which differs from the configured one when that is 0
+	 */
+	int getPort() {
+		return this.server == null ? this.port : this.server.getAddress().getPort();
+	}
+
+	@Override
+	protected void shutDown() {
+		this.server.stop(0);
+		logger.info("Task metrics endpoint stopped");
+	}
+
+}
@@ -0,0 +1,45 @@
+package org.ndexbio.task.metrics;
+
+/*
+ * Represents a counter that also reports its rate per second over a sliding
+ * window of the last minute, kept in one bucket per second.
+ * This class is thread safe.
+ */
+final class RateMeter {
+
+	static final int WINDOW_SECONDS = 60;
+
+	private final long[] bucketCounts = new long[WINDOW_SECONDS];
+	private final long[] bucketSeconds = new long[WINDOW_SECONDS];
+	private long total;
+
+	synchronized void mark(long count, long nowMillis) {
+		long second = nowMillis / 1000L;
+		int index = (int) (second % WINDOW_SECONDS);
+		if (this.bucketSeconds[index] != second) {
+			this.bucketSeconds[index] = second;
+			this.bucketCounts[index] = 0L;
+		}
+		this.bucketCounts[index] += count;
+		this.total += count;
+	}
+
+	synchronized long getTotal() {
+		return this.total;
+	}
+
+	/*
+	 * the mean rate per second over the window ending now
+	 */
+	synchronized double getRatePerSecond(long nowMillis) {
+		long second = nowMillis / 1000L;
+		long count = 0L;
+		for (int i = 0; i < WINDOW_SECONDS; i++) {
+			if (second - this.bucketSeconds[i] < WINDOW_SECONDS) {
+				count += this.bucketCounts[i];
+			}
+		}
+		return count / (double) WINDOW_SECONDS;
+	}
+
+}
@@ -0,0 +1,377 @@
+package org.ndexbio.task.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
+
+/*
+ * A singleton implemented as an enum holding the metrics of the task processor:
+ *
+ *   ndex_task_queue_depth{status}               tasks per status in the shared queue
+ *   ndex_task_local_queue_depth{lane}           staged tasks waiting for a local worker
+ *   ndex_task_active_workers                    workers running a task
+ *   ndex_task_queue_wait_seconds{type,format}   histogram, staging to start of execution
+ *   ndex_task_execution_seconds{type,format}    histogram, start to end of execution
+ *   ndex_parser_elements_total{parser}          network elements parsed
+ *   ndex_parser_commit_seconds{parser}          histogram, batch commit latency
+ *   ndex_task_deletion_rows_total               tasks removed by the TaskDeletionService
+ *   ndex_task_deletion_seconds                  histogram, time spent per deletion scan
+ *   ndex_write_rate_limit{budget}               current parser write rate, elements per second
+ *   ndex_write_throttled_seconds_total{budget}  time the parsers waited for the write rate
+ *   ndex_parser_batch_retries_total{parser}     batches replayed after a transient commit failure
+ *
+ * The metrics are exposed as the TaskMetricsMXBean and in the Prometheus text
+ * format (see MetricsHttpService). Recording a metric is cheap and never throws,
+ * so it can be done on the task workers and in the parser loops.
+ */
+public enum TaskMetrics implements TaskMetricsMXBean {
+	INSTANCE;
+
+	public static final String OBJECT_NAME = "org.ndexbio.task:type=TaskMetrics";
+
+	private static final Logger logger = LoggerFactory.getLogger(TaskMetrics.class);
+
+	// keys of the per category metrics: <type> TAB <format>
+	private static final char KEY_SEPARATOR = '\t';
+
+	private final ConcurrentMap<String, AtomicLong> queueDepths = new ConcurrentSkipListMap<>();
+	private final ConcurrentMap<String, AtomicLong> localQueueDepths = new ConcurrentSkipListMap<>();
+	private final AtomicInteger activeWorkers = new AtomicInteger();
+	private final ConcurrentMap<String, Histogram> queueWaits = new ConcurrentSkipListMap<>();
+	private final ConcurrentMap<String, Histogram> executions = new ConcurrentSkipListMap<>();
+	private final ConcurrentMap<String, RateMeter> parsedElements = new ConcurrentSkipListMap<>();
+	private final ConcurrentMap<String, Histogram> commits = new ConcurrentSkipListMap<>();
+	private final AtomicLong deletedTasks = new AtomicLong();
+	private final Histogram deletionScans = new Histogram(Histogram.COMMIT_SECONDS);
+	private final ConcurrentMap<String, AtomicLong> writeRateLimits = new ConcurrentSkipListMap<>();
+	private final ConcurrentMap<String, AtomicLong> writeThrottleNanos = new ConcurrentSkipListMap<>();
+	private final ConcurrentMap<String, AtomicLong> batchRetries = new ConcurrentSkipListMap<>();
+
+	private static String categoryKey(String type, String format) {
+		return Strings.nullToEmpty(type) + KEY_SEPARATOR + Strings.nullToEmpty(format);
+	}
+
+	private static <V> V getOrCreate(ConcurrentMap<String, V> map, String key, V newValue) {
+		V existing = map.putIfAbsent(key, newValue);
+		return existing == null ? newValue : existing;
+	}
+
+	private Histogram histogram(ConcurrentMap<String, Histogram> map, String key, double[] buckets) {
+		Histogram histogram = map.get(key);
+		return histogram != null ? histogram : getOrCreate(map, key, new Histogram(buckets));
+	}
+
+	/*
+	 * the number of tasks with the given status in the shared task queue
+	 */
+	public void setQueueDepth(String status, long depth) {
+		getOrCreate(this.queueDepths, status, new AtomicLong()).set(depth);
+	}
+
+	public void setLocalQueueDepth(String lane, long depth) {
+		getOrCreate(this.localQueueDepths, lane, new AtomicLong()).set(depth);
+	}
+
+	public void recordQueueWait(String type, String format, long millis) {
+		this.histogram(this.queueWaits, categoryKey(type, format), Histogram.TASK_SECONDS)
+				.observeMillis(millis);
+	}
+
+	/*
+	 * a worker started a task; must be paired with taskFinished
+	 */
+	public void taskStarted() {
+		this.activeWorkers.incrementAndGet();
+	}
+
+	public void taskFinished(String type, String format, long executionMillis) {
+		this.activeWorkers.decrementAndGet();
+		this.histogram(this.executions, categoryKey(type, format), Histogram.TASK_SECONDS)
+				.observeMillis(executionMillis);
+	}
+
+	public void recordParsedElements(String parser, long count) {
+		RateMeter meter = this.parsedElements.get(parser);
+		if (meter == null) {
+			meter = getOrCreate(this.parsedElements, parser, new RateMeter());
+		}
+		meter.mark(count, System.currentTimeMillis());
+	}
+
+	public void recordCommit(String parser, long nanos) {
+		this.histogram(this.commits, parser, Histogram.COMMIT_SECONDS).observe(nanos / 1.0e9);
+	}
+
+	/*
+	 * a deletion scan removed the given number of tasks
+	 */
+	public void recordTaskDeletion(long rows, long nanos) {
+		this.deletedTasks.addAndGet(rows);
+		this.deletionScans.observe(nanos / 1.0e9);
+	}
+
+	/*
+	 * the current write rate of a budget of the WriteRateGovernor, 0 if unlimited
+	 */
+	public void setWriteRateLimit(String budget, long elementsPerSecond) {
+		getOrCreate(this.writeRateLimits, budget, new AtomicLong()).set(elementsPerSecond);
+	}
+
+	/*
+	 * a parser waited for the write rate of a budget
+	 */
+	public void recordWriteThrottle(String budget, long nanos) {
+		getOrCreate(this.writeThrottleNanos, budget, new AtomicLong()).addAndGet(nanos);
+	}
+
+	/*
+	 * a parser replays a batch that failed to commit on a transient conflict
+	 */
+	public void recordBatchRetry(String parser) {
+		getOrCreate(this.batchRetries, parser, new AtomicLong()).incrementAndGet();
+	}
+
+	/*
+	 * register the JMX view with the platform MBean server; registering twice is a no-op
+	 */
+	public void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(this, name);
+				logger.info("Task metrics registered as " + OBJECT_NAME);
+			}
+		} catch (JMException e) {
+			logger.error("Failed to register the task metrics MBean. " + e.getMessage());
+		}
+	}
+
+	@Override
+	public Map<String, Long> getQueueDepths() {
+		return values(this.queueDepths);
+	}
+
+	@Override
+	public Map<String, Long> getLocalQueueDepths() {
+		return values(this.localQueueDepths);
+	}
+
+	private static Map<String, Long> values(Map<String, AtomicLong> gauges) {
+		Map<String, Long> values = Maps.newTreeMap();
+		for (Map.Entry<String, AtomicLong> entry : gauges.entrySet()) {
+			values.put(entry.getKey(), entry.getValue().get());
+		}
+		return values;
+	}
+
+	@Override
+	public int getActiveWorkers() {
+		return this.activeWorkers.get();
+	}
+
+	@Override
+	public Map<String, Long> getCompletedTasks() {
+		Map<String, Long> counts = Maps.newTreeMap();
+		for (Map.Entry<String, Histogram> entry : this.executions.entrySet()) {
+			counts.put(categoryName(entry.getKey()), entry.getValue().getCount());
+		}
+		return counts;
+	}
+
+	@Override
+	public Map<String, Double> getMeanQueueWaitMillis() {
+		return meansByCategory(this.queueWaits);
+	}
+
+	@Override
+	public Map<String, Double> getMeanExecutionMillis() {
+		return meansByCategory(this.executions);
+	}
+
+	private static Map<String, Double> meansByCategory(Map<String, Histogram> histograms) {
+		Map<String, Double> means = Maps.newTreeMap();
+		for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+			means.put(categoryName(entry.getKey()), entry.getValue().getMeanMillis());
+		}
+		return means;
+	}
+
+	/*
+	 * <type>.<format>, or <type> for a task without a format
+	 */
+	private static String categoryName(String key) {
+		int separator = key.indexOf(KEY_SEPARATOR);
+		return separator == key.length() - 1 ? key.substring(0, separator)
+				: key.replace(KEY_SEPARATOR, '.');
+	}
+
+	@Override
+	public Map<String, Double> getElementsPerSecond() {
+		long now = System.currentTimeMillis();
+		Map<String, Double> rates = Maps.newTreeMap();
+		for (Map.Entry<String, RateMeter> entry : this.parsedElements.entrySet()) {
+			rates.put(entry.getKey(), entry.getValue().getRatePerSecond(now));
+		}
+		return rates;
+	}
+
+	@Override
+	public Map<String, Double> getMeanCommitMillis() {
+		Map<String, Double> means = Maps.newTreeMap();
+		for (Map.Entry<String, Histogram> entry : this.commits.entrySet()) {
+			means.put(entry.getKey(), entry.getValue().getMeanMillis());
+		}
+		return means;
+	}
+
+	@Override
+	public long getDeletedTasks() {
+		return this.deletedTasks.get();
+	}
+
+	@Override
+	public double getMeanDeletionScanMillis() {
+		return this.deletionScans.getMeanMillis();
+	}
+
+	@Override
+	public Map<String, Long> getWriteRateLimits() {
+		return values(this.writeRateLimits);
+	}
+
+	@Override
+	public Map<String, Long> getWriteThrottledMillis() {
+		Map<String, Long> millis = Maps.newTreeMap();
+		for (Map.Entry<String, AtomicLong> entry : this.writeThrottleNanos.entrySet()) {
+			millis.put(entry.getKey(), entry.getValue().get() / 1000000L);
+		}
+		return millis;
+	}
+
+	@Override
+	public Map<String, Long> getBatchRetries() {
+		return values(this.batchRetries);
+	}
+
+	/*
+	 * write all metrics in the Prometheus text exposition format (version 0.0.4)
+	 */
+	public void writePrometheus(Writer out) throws IOException {
+		writeHeader(out, "ndex_task_queue_depth", "gauge", "Tasks per status in the shared task queue.");
+		for (Map.Entry<String, AtomicLong> entry : this.queueDepths.entrySet()) {
+			out.write("ndex_task_queue_depth{status=\"" + escape(entry.getKey()) + "\"} "
+					+ entry.getValue().get() + "\n");
+		}
+		writeHeader(out, "ndex_task_local_queue_depth", "gauge",
+				"Staged tasks waiting for a worker of this instance per lane.");
+		for (Map.Entry<String, AtomicLong> entry : this.localQueueDepths.entrySet()) {
+			out.write("ndex_task_local_queue_depth{lane=\"" + escape(entry.getKey()) + "\"} "
+					+ entry.getValue().get() + "\n");
+		}
+		writeHeader(out, "ndex_task_active_workers", "gauge", "Task workers running a task.");
+		out.write("ndex_task_active_workers " + this.activeWorkers.get() + "\n");
+
+		writeHeader(out, "ndex_task_queue_wait_seconds", "histogram",
+				"Time from staging a task to the start of its execution.");
+		for (Map.Entry<String, Histogram> entry : this.queueWaits.entrySet()) {
+			writeHistogram(out, "ndex_task_queue_wait_seconds", categoryLabels(entry.getKey()),
+					entry.getValue());
+		}
+		writeHeader(out, "ndex_task_execution_seconds", "histogram", "Task execution time.");
+		for (Map.Entry<String, Histogram> entry : this.executions.entrySet()) {
+			writeHistogram(out, "ndex_task_execution_seconds", categoryLabels(entry.getKey()),
+					entry.getValue());
+		}
+
+		writeHeader(out, "ndex_parser_elements_total", "counter", "Network elements parsed.");
+		for (Map.Entry<String, RateMeter> entry : this.parsedElements.entrySet()) {
+			out.write("ndex_parser_elements_total{parser=\"" + escape(entry.getKey()) + "\"} "
+					+ entry.getValue().getTotal() + "\n");
+		}
+		writeHeader(out, "ndex_parser_commit_seconds", "histogram", "Latency of the parser batch commits.");
+		for (Map.Entry<String, Histogram> entry : this.commits.entrySet()) {
+			writeHistogram(out, "ndex_parser_commit_seconds",
+					"parser=\"" + escape(entry.getKey()) + "\"", entry.getValue());
+		}
+
+		writeHeader(out, "ndex_task_deletion_rows_total", "counter", "Tasks deleted by the housekeeping.");
+		out.write("ndex_task_deletion_rows_total " + this.deletedTasks.get() + "\n");
+		writeHeader(out, "ndex_task_deletion_seconds", "histogram", "Time spent per task deletion scan.");
+		writeHistogram(out, "ndex_task_deletion_seconds", "", this.deletionScans);
+
+		writeHeader(out, "ndex_write_rate_limit", "gauge",
+				"Current parser write rate per budget in elements per second, 0 if unlimited.");
+		for (Map.Entry<String, AtomicLong> entry : this.writeRateLimits.entrySet()) {
+			out.write("ndex_write_rate_limit{budget=\"" + escape(entry.getKey()) + "\"} "
+					+ entry.getValue().get() + "\n");
+		}
+		writeHeader(out, "ndex_write_throttled_seconds_total", "counter",
+				"Time the parsers waited for the write rate per budget.");
+		for (Map.Entry<String, AtomicLong> entry : this.writeThrottleNanos.entrySet()) {
+			out.write("ndex_write_throttled_seconds_total{budget=\"" + escape(entry.getKey()) + "\"} "
+					+ entry.getValue().get() / 1.0e9 + "\n");
+		}
+		writeHeader(out, "ndex_parser_batch_retries_total", "counter",
+				"Batches replayed after a transient commit failure per parser.");
+		for (Map.Entry<String, AtomicLong> entry : this.batchRetries.entrySet()) {
+			out.write("ndex_parser_batch_retries_total{parser=\"" + escape(entry.getKey()) + "\"} "
+					+ entry.getValue().get() + "\n");
+		}
+	}
+
+	private static void writeHeader(Writer out, String name, String type, String help)
+			throws IOException {
+		out.write("# HELP " + name + " " + help + "\n");
+		out.write("# TYPE " + name + " " + type + "\n");
+	}
+
+	private static void writeHistogram(Writer out, String name, String labels, Histogram histogram)
+			throws IOException {
+		double[] upperBounds = histogram.getUpperBounds();
+		long[] bucketCounts;
+		long count;
+		double sum;
+		// a consistent snapshot: no bucket may exceed the count
+		synchronized (histogram) {
+			bucketCounts = histogram.getBucketCounts();
+			count = histogram.getCount();
+			sum = histogram.getSum();
+		}
+		String bucketLabels = labels.isEmpty() ? "" : labels + ",";
+		String seriesLabels = labels.isEmpty() ? "" : "{" + labels + "}";
+		for (int i = 0; i < upperBounds.length; i++) {
+			out.write(name + "_bucket{" + bucketLabels + "le=\"" + upperBounds[i] + "\"} "
+					+ bucketCounts[i] + "\n");
+		}
+		out.write(name + "_bucket{" + bucketLabels + "le=\"+Inf\"} " + count + "\n");
+		out.write(name + "_sum" + seriesLabels + " " + sum + "\n");
+		out.write(name + "_count" + seriesLabels + " " + count + "\n");
+	}
+
+	private static String categoryLabels(String key) {
+		int separator = key.indexOf(KEY_SEPARATOR);
+		return "type=\"" + escape(key.substring(0, separator)) + "\",format=\""
+				+ escape(key.substring(separator + 1)) + "\"";
+	}
+
+	static String escape(String labelValue) {
+		return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+}
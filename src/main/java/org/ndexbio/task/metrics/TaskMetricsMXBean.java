@@ -0,0 +1,56 @@
+package org.ndexbio.task.metrics;
+
+import java.util.Map;
+
+/*
+ * The JMX view of the task processing metrics, registered as
+ * org.ndexbio.task:type=TaskMetrics. Task categories are keyed as
+ * <TaskType>.<FileFormat>, parsers by their file format.
+ */
+public interface TaskMetricsMXBean {
+
+	/*
+	 * the number of tasks per status in the shared task queue
+	 */
+	Map<String, Long> getQueueDepths();
+
+	/*
+	 * the number of staged tasks waiting for a worker of this instance per lane
+	 */
+	Map<String, Long> getLocalQueueDepths();
+
+	int getActiveWorkers();
+
+	Map<String, Long> getCompletedTasks();
+
+	Map<String, Double> getMeanQueueWaitMillis();
+
+	Map<String, Double> getMeanExecutionMillis();
+
+	/*
+	 * the network elements parsed per second over the last minute
+	 */
+	Map<String, Double> getElementsPerSecond();
+
+	Map<String, Double> getMeanCommitMillis();
+
+	/*
+	 * the tasks removed by the task deletion scans
+	 */
+	long getDeletedTasks();
+
+	double getMeanDeletionScanMillis();
+
+	/*
+	 * the current parser write rate per budget in elements per second, 0 if unlimited
+	 */
+	Map<String, Long> getWriteRateLimits();
+
+	Map<String, Long> getWriteThrottledMillis();
+
+	/*
+	 * the batches replayed per parser after a transient commit failure
+	 */
+	Map<String, Long> getBatchRetries();
+
+}
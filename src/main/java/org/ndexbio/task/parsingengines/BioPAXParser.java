@@ -6,6 +6,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -44,6 +45,7 @@ import org.ndexbio.model.object.network.NetworkSummary;
 import org.ndexbio.model.object.network.VisibilityType;
 import org.ndexbio.model.tools.PropertyHelpers;
 import org.ndexbio.model.tools.ProvenanceHelpers;
+import org.ndexbio.task.TaskResourceUsage;
 import org.ndexbio.task.parsingengines.IParsingEngine;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -168,7 +170,7 @@ public class BioPAXParser implements IParsingEngine {
 	}
 
 	private void processBioPAX(File f) throws Exception {
-		FileInputStream fin = new FileInputStream(f);
+		InputStream fin = TaskResourceUsage.countReads(new FileInputStream(f));
 		BioPAXIOHandler handler = new SimpleIOHandler();
 		Model model = handler.convertFromOWL(fin);
 		this.loadBioPAXModel(model);
@@ -3,6 +3,7 @@ package org.ndexbio.task.parsingengines;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -22,6 +23,9 @@ import org.ndexbio.common.util.TermUtilities;
 import org.ndexbio.model.exceptions.NdexException;
 import org.ndexbio.model.object.NdexPropertyValuePair;
 import org.ndexbio.model.object.network.Network;
+import org.ndexbio.task.TaskExecutionContext;
+import org.ndexbio.task.TaskResourceUsage;
+import org.ndexbio.task.metrics.TaskMetrics;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
@@ -75,12 +79,12 @@ public class ExcelParser implements IParsingEngine
 
         this.getMsgBuffer().add("Parsing lines from " + this.getExcelURI());
         // BufferedReader bufferedReader;
-        FileInputStream excelFileStream;
+        InputStream excelFileStream;
         try
         {
             // bufferedReader = new BufferedReader(new
             // FileReader(this.getExcelFile()));
-            excelFileStream = new FileInputStream(this.getExcelFile());
+            excelFileStream = TaskResourceUsage.countReads(new FileInputStream(this.getExcelFile()));
         }
         catch (FileNotFoundException e1)
         {
@@ -219,8 +223,14 @@ public class ExcelParser implements IParsingEngine
         // TODO add support for other columns
 
         // Iterate over the remaining rows to load each edge
+        int counter = 0;
         while (rowIterator.hasNext())
         {
+            if ( ++counter % 2000 == 0 ) {
+                TaskExecutionContext.checkCancelled();
+                TaskMetrics.INSTANCE.recordParsedElements("EXCEL", 2000);
+                TaskResourceUsage.recordElements(2000);
+            }
             Row row = rowIterator.next();
             String subjectIdentifier = getCellText(row.getCell(0));
             String predicateIdentifier = getCellText(row.getCell(1));
@@ -0,0 +1,278 @@
+package org.ndexbio.task.parsingengines;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.ndexbio.model.exceptions.NdexException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/*
+ * Represents the durable progress of a network import. A parser records a
+ * checkpoint after every committed batch: the network being built, the number
+ * of lines of the source file committed so far and the section of the file
+ * the parser was in. The ids of the network elements the parser looked up by
+ * name are appended to a journal so a resumed import reuses them instead of
+ * creating duplicates.
+ *
+ * The checkpoint is kept next to the source file as <file>.checkpoint and its
+ * journal as <file>.journal. The checkpoint is replaced atomically, so a crash
+ * leaves either the previous or the new checkpoint. It is discarded when the
+ * source file was modified after the checkpoint was taken.
+ *
+ * The commit of a batch and the checkpoint files cannot be written atomically.
+ * The parser therefore writes the checkpoint of a batch as <file>.pending
+ * before it commits the batch and confirms it once the batch is committed and
+ * journaled. A pending checkpoint found by a resumed import means a crash left
+ * the commit of its batch in doubt: replaying that batch could duplicate its
+ * nodes and edges, so the import starts over instead (see readPending).
+ */
+public final class ImportCheckpoint {
+
+	private static final Logger logger = LoggerFactory.getLogger(ImportCheckpoint.class);
+
+	private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+	private static final String JOURNAL_SUFFIX = ".journal";
+	private static final String PENDING_SUFFIX = ".pending";
+
+	private static final String NETWORK_ID = "networkId";
+	private static final String SECTION = "section";
+	private static final String ORDINAL = "ordinal";
+	private static final String BATCH = "batch";
+	private static final String FILE_LENGTH = "fileLength";
+	private static final String FILE_LAST_MODIFIED = "fileLastModified";
+
+	private final UUID networkId;
+	private final String section;
+	private final long ordinal;
+	private final int batch;
+	private final long fileLength;
+	private final long fileLastModified;
+
+	public ImportCheckpoint(UUID networkId, String section, long ordinal, int batch, File source) {
+		this(networkId, section, ordinal, batch, source.length(), source.lastModified());
+	}
+
+	private ImportCheckpoint(UUID networkId, String section, long ordinal, int batch,
+			long fileLength, long fileLastModified) {
+		Preconditions.checkArgument(null != networkId, "A network id is required");
+		Preconditions.checkArgument(null != section, "A section is required");
+		Preconditions.checkArgument(ordinal >= 0, "The ordinal must be >= 0");
+		this.networkId = networkId;
+		this.section = section;
+		this.ordinal = ordinal;
+		this.batch = batch;
+		this.fileLength = fileLength;
+		this.fileLastModified = fileLastModified;
+	}
+
+	public UUID getNetworkId() { return this.networkId; }
+
+	public String getSection() { return this.section; }
+
+	/*
+	 * the number of lines of the source file committed to the database
+	 */
+	public long getOrdinal() { return this.ordinal; }
+
+	public int getBatch() { return this.batch; }
+
+	private static File checkpointFileOf(File source) {
+		return new File(source.getPath() + CHECKPOINT_SUFFIX);
+	}
+
+	private static File journalFileOf(File source) {
+		return new File(source.getPath() + JOURNAL_SUFFIX);
+	}
+
+	private static File pendingFileOf(File source) {
+		return new File(source.getPath() + PENDING_SUFFIX);
+	}
+
+	public static boolean exists(File source) {
+		return checkpointFileOf(source).isFile();
+	}
+
+	/*
+	 * returns the last checkpoint of the import of the source file or null if
+	 * there is none or it no longer matches the source file
+	 */
+	public static ImportCheckpoint read(File source) {
+		return read(checkpointFileOf(source), source, true);
+	}
+
+	/*
+	 * returns the checkpoint written before a batch whose commit was not
+	 * confirmed, or null if there is none; its network may hold the batch or
+	 * not, whether or not the source file was modified since
+	 */
+	public static ImportCheckpoint readPending(File source) {
+		return read(pendingFileOf(source), source, false);
+	}
+
+	private static ImportCheckpoint read(File checkpointFile, File source, boolean matchSource) {
+		if (!checkpointFile.isFile()) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try (BufferedReader reader = Files.newBufferedReader(checkpointFile.toPath(),
+				StandardCharsets.UTF_8)) {
+			properties.load(reader);
+			ImportCheckpoint checkpoint = new ImportCheckpoint(
+					UUID.fromString(properties.getProperty(NETWORK_ID)),
+					properties.getProperty(SECTION),
+					Long.parseLong(properties.getProperty(ORDINAL)),
+					Integer.parseInt(properties.getProperty(BATCH)),
+					Long.parseLong(properties.getProperty(FILE_LENGTH)),
+					Long.parseLong(properties.getProperty(FILE_LAST_MODIFIED)));
+			if (matchSource && (checkpoint.fileLength != source.length()
+					|| checkpoint.fileLastModified != source.lastModified())) {
+				logger.warn("Ignoring checkpoint " + checkpointFile + ", " + source
+						+ " was modified after it was taken.");
+				return null;
+			}
+			return checkpoint;
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Ignoring unreadable checkpoint " + checkpointFile + ". " + e.getMessage());
+			return null;
+		}
+	}
+
+	/*
+	 * replace the checkpoint of the source file; the file is synced before
+	 * it is moved over the previous checkpoint
+	 */
+	public void write(File source) throws NdexException {
+		this.writeTo(checkpointFileOf(source), source);
+	}
+
+	/*
+	 * record the checkpoint of a batch that is about to be committed
+	 */
+	public void writePending(File source) throws NdexException {
+		this.writeTo(pendingFileOf(source), source);
+	}
+
+	/*
+	 * the batch of the pending checkpoint is committed, it replaces the
+	 * previous checkpoint
+	 */
+	public static void confirmPending(File source) throws NdexException {
+		File pendingFile = pendingFileOf(source);
+		try {
+			Files.move(pendingFile.toPath(), checkpointFileOf(source).toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new NdexException("Failed to confirm checkpoint " + pendingFile + ". " + e.getMessage());
+		}
+	}
+
+	/*
+	 * the batch of the pending checkpoint was not committed
+	 */
+	public static void discardPending(File source) {
+		pendingFileOf(source).delete();
+	}
+
+	private void writeTo(File checkpointFile, File source) throws NdexException {
+		Properties properties = new Properties();
+		properties.setProperty(NETWORK_ID, this.networkId.toString());
+		properties.setProperty(SECTION, this.section);
+		properties.setProperty(ORDINAL, Long.toString(this.ordinal));
+		properties.setProperty(BATCH, Integer.toString(this.batch));
+		properties.setProperty(FILE_LENGTH, Long.toString(this.fileLength));
+		properties.setProperty(FILE_LAST_MODIFIED, Long.toString(this.fileLastModified));
+
+		File tmpFile = new File(checkpointFile.getPath() + ".tmp");
+		try {
+			try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+				Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+				properties.store(writer, "import checkpoint of " + source.getName());
+				writer.flush();
+				out.getFD().sync();
+			}
+			Files.move(tmpFile.toPath(), checkpointFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new NdexException("Failed to write checkpoint " + checkpointFile + ". " + e.getMessage());
+		}
+	}
+
+	/*
+	 * append the element ids looked up since the last checkpoint to the journal;
+	 * a line is written as <id> TAB <key> TAB so a line cut short by a crash 
+	 * can be recognized
+	 */
+	public static void appendJournal(File source, Map<String, Long> elementIds) throws NdexException {
+		if (elementIds.isEmpty()) {
+			return;
+		}
+		File journalFile = journalFileOf(source);
+		try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+			Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+			for (Map.Entry<String, Long> entry : elementIds.entrySet()) {
+				writer.write(entry.getValue() + "\t" + entry.getKey().replace('\n', ' ') + "\t\n");
+			}
+			writer.flush();
+			out.getFD().sync();
+		} catch (IOException e) {
+			throw new NdexException("Failed to write journal " + journalFile + ". " + e.getMessage());
+		}
+	}
+
+	public static Map<String, Long> readJournal(File source) throws NdexException {
+		Map<String, Long> elementIds = Maps.newHashMap();
+		File journalFile = journalFileOf(source);
+		if (!journalFile.isFile()) {
+			return elementIds;
+		}
+		try (BufferedReader reader = Files.newBufferedReader(journalFile.toPath(),
+				StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				// a partially written last line is ignored
+				if (tab > 0 && line.length() > tab + 1 && line.endsWith("\t")) {
+					try {
+						elementIds.put(line.substring(tab + 1, line.length() - 1), 
+								Long.valueOf(line.substring(0, tab)));
+					} catch (NumberFormatException e) {
+						logger.warn("Skipping corrupt journal line in " + journalFile + ": " + line);
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new NdexException("Failed to read journal " + journalFile + ". " + e.getMessage());
+		}
+		return elementIds;
+	}
+
+	/*
+	 * remove the checkpoint and journal once the import is finished or abandoned
+	 */
+	public static void delete(File source) {
+		checkpointFileOf(source).delete();
+		pendingFileOf(source).delete();
+		journalFileOf(source).delete();
+	}
+
+	@Override
+	public String toString() {
+		return "network " + this.networkId + " section " + this.section + " line "
+				+ this.ordinal + " batch " + this.batch;
+	}
+
+}
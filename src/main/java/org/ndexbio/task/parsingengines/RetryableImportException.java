@@ -0,0 +1,19 @@
+package org.ndexbio.task.parsingengines;
+
+import org.ndexbio.model.exceptions.NdexException;
+
+/*
+ * Thrown by a parser when a batch failed to commit on a transient database
+ * conflict. The batches committed before it are kept with the checkpoint of
+ * the import (see ImportCheckpoint), so the import can be resumed by a new
+ * parser, which replays the failed batch only.
+ */
+public class RetryableImportException extends NdexException {
+
+	private static final long serialVersionUID = 1L;
+
+	public RetryableImportException(String message) {
+		super(message);
+	}
+
+}
@@ -3,12 +3,15 @@ package org.ndexbio.task.parsingengines;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
@@ -25,11 +28,21 @@ import org.ndexbio.common.util.TermStringType;
 import org.ndexbio.common.util.TermUtilities;
 import org.ndexbio.model.object.network.NetworkSummary;
 import org.ndexbio.model.tools.ProvenanceHelpers;
+import org.ndexbio.task.BatchCounter;
+import org.ndexbio.task.TaskCancelledException;
+import org.ndexbio.task.TaskExecutionContext;
+import org.ndexbio.task.TaskResourceUsage;
+import org.ndexbio.task.TaskStatusService;
+import org.ndexbio.task.WriteRateGovernor;
+import org.ndexbio.task.metrics.TaskMetrics;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.orientechnologies.common.concur.ONeedRetryException;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 
 
@@ -38,6 +51,24 @@ import com.google.common.io.Files;
  * (or edge type), and one or more target nodes.
  * 
  * see: http://wiki.cytoscape.org/Cytoscape_User_Manual/Network_Formats
+ * 
+ * The network is committed every Task-Commit-Batch-Size lines (default 2000,
+ * see BatchCounter). A resumable parser records an ImportCheckpoint after every
+ * commit and, when it is created for a file with a checkpoint, continues the
+ * network of the checkpoint from the line after the last committed batch.
+ * A checkpoint is only resumed when the commit of its batch was confirmed: the
+ * network of an import that crashed while a batch was committed is deleted and
+ * the file is imported again (see ImportCheckpoint).
+ * The last, partial batch is committed and checkpointed like the others
+ * before the network is persisted.
+ * When a batch of a resumable parser fails to commit on a transient conflict
+ * (an OrientDB ONeedRetryException) after a checkpoint was recorded, the
+ * network and its checkpoint are kept and RetryableImportException is thrown;
+ * the caller then either closes the parser and replays the failed batch with
+ * a new one, or gives up and aborts the parser.
+ * An import suspended by a draining processor after a checkpoint was recorded
+ * keeps its network and checkpoint as well and is resumed by the instance that
+ * claims it next.
  */
 
 public class SifParser implements IParsingEngine {
@@ -50,33 +81,95 @@ public class SifParser implements IParsingEngine {
 	
 	private static Logger logger = Logger.getLogger("SifParser");
 
+
+	/*
+	 * the part of the file being parsed, recorded with each checkpoint
+	 */
+	private enum Section { SIMPLE, EDGES, ALIASES }
+
 	private NdexPersistenceService persistenceService;
+
+	private final boolean resumable;
+	private final ImportCheckpoint resumeCheckpoint;
+	// ids of the elements looked up by name; only kept by a resumable parser
+	private final Map<String, Long> elementIds = Maps.newHashMap();
+	private final Map<String, Long> uncheckpointedElementIds = Maps.newHashMap();
+	private long lineNumber;
+	// the section the lines read last belong to
+	private Section currentSection = Section.SIMPLE;
+	// the last line counted in the parser metrics
+	private long measuredLines;
+	private int batch;
+	private final BatchCounter batchCounter = new BatchCounter();
 	
 //	private TreeSet<String> pubmedIdSet;
 
 	public SifParser(String fn, String ownerName, NdexDatabase db, String networkName) throws Exception {
-		Preconditions.checkArgument(!Strings.isNullOrEmpty(fn),
-				"A filename is required");
+		this(fn, ownerName, db, networkName, false);
+	}
+
+	public SifParser(String fn, String ownerName, NdexDatabase db, String networkName, 
+			boolean resumable) throws Exception {
+		this(sifFileOf(fn), ownerName, db, null, networkName, resumable);
+	}
+
+	/*
+	 * the persistence service is only given by tests, it is created from the
+	 * database otherwise
+	 */
+	SifParser(File sifFile, String ownerName, NdexDatabase db, NdexPersistenceService persistenceService,
+			String networkName, boolean resumable) throws Exception {
 		Preconditions.checkArgument(!Strings.isNullOrEmpty(ownerName),
 				"A network owner name is required");
 		this.msgBuffer = Lists.newArrayList();
-		if ( fn.startsWith("/") || fn.matches("^[a-zA-Z]:.*")) 
-			this.sifFile = new File(fn);
-		else
-		    this.sifFile = new File(getClass().getClassLoader().getResource(fn).toURI());
+		this.sifFile = sifFile;
 		this.sifURI = sifFile.toURI().toString();
-		this.persistenceService = new NdexPersistenceService(db);
+		this.resumable = resumable;
+		ImportCheckpoint inDoubt = resumable ? ImportCheckpoint.readPending(this.sifFile) : null;
+		if (inDoubt != null) {
+			// the batch may be committed or not, replaying it could duplicate its elements
+			logger.warning("The commit of batch " + inDoubt.getBatch() + " of " + this.sifFile.getName()
+					+ " was not confirmed, deleting network " + inDoubt.getNetworkId() 
+					+ " and importing the file again");
+			NdexPersistenceService inDoubtService = persistenceService != null ? persistenceService 
+					: new NdexPersistenceService(db, inDoubt.getNetworkId());
+			inDoubtService.abortTransaction();
+			ImportCheckpoint.delete(this.sifFile);
+		}
+		this.resumeCheckpoint = resumable ? ImportCheckpoint.read(this.sifFile) : null;
+
+		if (this.resumeCheckpoint != null) {
+			logger.info("Resuming the import of " + this.sifFile.getName() + " from " 
+					+ this.resumeCheckpoint);
+			this.persistenceService = persistenceService != null ? persistenceService 
+					: new NdexPersistenceService(db, this.resumeCheckpoint.getNetworkId());
+			this.elementIds.putAll(ImportCheckpoint.readJournal(this.sifFile));
+			this.batch = this.resumeCheckpoint.getBatch();
+			return;
+		}
+		// a stale journal would map names to elements of another network 
+		ImportCheckpoint.delete(this.sifFile);
+		this.persistenceService = persistenceService != null ? persistenceService 
+				: new NdexPersistenceService(db);
 		
 		String title = networkName;
 		if ( title == null) 
 			title = Files.getNameWithoutExtension(this.sifFile.getName());
 
-		persistenceService.createNewNetwork(ownerName, title, null);
+		this.persistenceService.createNewNetwork(ownerName, title, null);
 
 		addSystemDefaultNamespaces();
 		
 	}
 
+	private static File sifFileOf(String fn) throws URISyntaxException {
+		Preconditions.checkArgument(!Strings.isNullOrEmpty(fn),
+				"A filename is required");
+		if ( fn.startsWith("/") || fn.matches("^[a-zA-Z]:.*")) 
+			return new File(fn);
+		return new File(SifParser.class.getClassLoader().getResource(fn).toURI());
+	}
+
 	public List<String> getMsgBuffer() {
 		return this.msgBuffer;
 	}
@@ -104,12 +197,14 @@ public class SifParser implements IParsingEngine {
 	public void parseFile() throws  NdexException {
 
 		try (BufferedReader bufferedReader = 
-				new BufferedReader(new FileReader(this.getSifFile()))){
+				this.openSifFile()){
 
 			this.getMsgBuffer().add("Parsing lines from " + this.getSIFURI());
 
 			boolean extendedBinarySIF = checkForExtendedFormat();
-			if (extendedBinarySIF) {
+			if (this.resumeCheckpoint != null) {
+				this.resumeFromCheckpoint(bufferedReader);
+			} else if (extendedBinarySIF) {
 				this.processExtendedBinarySIF(bufferedReader);
 //				this.networkService.setFormat("EXTENDED_BINARY_SIF");
 			} else {
@@ -117,6 +212,8 @@ public class SifParser implements IParsingEngine {
 				this.processSimpleSIFLines(tabDelimited, bufferedReader);
 //				this.networkService.setFormat("BINARY_SIF");
 			}
+			// a conflict on the last batch is retried like on any other batch
+			this.commitBatch(this.currentSection, this.lineNumber);
 
 			//add provenance to network
 			NetworkSummary currentNetwork = this.persistenceService.getCurrentNetwork();
@@ -136,20 +233,191 @@ public class SifParser implements IParsingEngine {
 			this.persistenceService.setNetworkProvenance(provEntity);
 			
 			// close database connection
-			this.persistenceService.persistNetwork();
+			try {
+				this.persistenceService.persistNetwork();
+			} catch (RuntimeException e) {
+				RetryableImportException conflict = retryableConflict(e, 
+						"Persisting the network of " + this.sifFile.getName() + " failed. ");
+				if (conflict == null) {
+					throw e;
+				}
+				// every line is committed, a resumed parser only persists the network again
+				throw conflict;
+			}
+			if (this.resumable) {
+				ImportCheckpoint.delete(this.sifFile);
+			}
 			
+		} catch (RetryableImportException e) {
+			if (this.resumable && this.batch > 0) {
+				// the failed batch was rolled back, the committed ones are resumed from the checkpoint
+				// by a new parser after close(), or removed with abort() when the caller gives up
+				logger.warning(e.getMessage());
+				throw e;
+			}
+			// nothing was committed yet, the import starts over
+			this.persistenceService.abortTransaction();
+			ImportCheckpoint.delete(this.sifFile);
+			throw e;
+		} catch (TaskCancelledException e) {
+			TaskExecutionContext context = TaskExecutionContext.current();
+			if (this.resumable && this.batch > 0 && context != null && context.isSuspended()) {
+				// a draining processor requeues the import, it resumes from the checkpoint
+				logger.info("Import of " + this.sifFile.getName() + " suspended after batch " 
+						+ this.batch + ". " + e.getMessage());
+				this.persistenceService.close();
+				throw e;
+			}
+			this.persistenceService.abortTransaction();
+			if (this.resumable) {
+				ImportCheckpoint.delete(this.sifFile);
+			}
+			throw new NdexException("Loading file " + this.sifFile.getName() + " was cancelled. " 
+					+ e.getMessage());
 		} catch (Exception e) {
 			// delete network and close the database connection
 			e.printStackTrace();
 			this.persistenceService.abortTransaction();
+			if (this.resumable) {
+				ImportCheckpoint.delete(this.sifFile);
+			}
 			throw new NdexException("Error occurred when loading file " +
 					this.sifFile.getName() + ". " + e.getMessage() );
 		} 
 	}
 
+	/*
+	 * delete the network being imported and the checkpoint of the import
+	 */
+	public void abort() throws NdexException {
+		this.persistenceService.abortTransaction();
+		ImportCheckpoint.delete(this.sifFile);
+	}
+
+	/*
+	 * release the database connection of an import that failed with a
+	 * RetryableImportException, keeping its network and checkpoint for the
+	 * parser resuming it
+	 */
+	public void close() {
+		this.persistenceService.close();
+	}
+
+	/*
+	 * skip the lines committed before the checkpoint and continue in the
+	 * section the parser was in
+	 */
+	private void resumeFromCheckpoint(BufferedReader bufferedReader) 
+			throws IOException, ExecutionException, NdexException {
+		while (this.lineNumber < this.resumeCheckpoint.getOrdinal()) {
+			if (this.readLine(bufferedReader) == null) {
+				throw new NdexException("Checkpoint line " + this.resumeCheckpoint.getOrdinal() 
+						+ " is beyond the end of " + this.sifFile.getName());
+			}
+		}
+		this.measuredLines = this.lineNumber;
+		switch (Section.valueOf(this.resumeCheckpoint.getSection())) {
+		case SIMPLE:
+			this.processSimpleSIFLines(scanForTabs(), bufferedReader);
+			break;
+		case EDGES:
+			this.processExtendedBinarySIFEdges(bufferedReader);
+			break;
+		case ALIASES:
+			this.processExtendedBinarySIFAliases(bufferedReader);
+			break;
+		}
+	}
+
+	/*
+	 * the bytes read are charged to the task
+	 */
+	private BufferedReader openSifFile() throws FileNotFoundException {
+		return new BufferedReader(new InputStreamReader(
+				TaskResourceUsage.countReads(new FileInputStream(this.getSifFile()))));
+	}
+
+	private String readLine(BufferedReader bufferedReader) throws IOException {
+		String line = bufferedReader.readLine();
+		if (line != null) {
+			this.lineNumber++;
+		}
+		return line;
+	}
+
+	/*
+	 * commit the current batch and, for a resumable parser, record the number of
+	 * lines committed together with the element ids looked up in the batch; the
+	 * checkpoint is written as pending before the commit and confirmed after it
+	 */
+	private void commitBatch(Section section, long committedLines) throws NdexException {
+		TaskExecutionContext.checkCancelled();
+		WriteRateGovernor.INSTANCE.awaitPermit(this.lineNumber - this.measuredLines);
+		if (this.resumable) {
+			new ImportCheckpoint(this.getUUIDOfUploadedNetwork(), section.name(), committedLines,
+					this.batch + 1, this.sifFile).writePending(this.sifFile);
+		}
+		long commitStart = System.nanoTime();
+		try {
+			this.persistenceService.commit();
+		} catch (RuntimeException e) {
+			RetryableImportException conflict = retryableConflict(e, "Batch " + (this.batch + 1) + " of " 
+					+ this.sifFile.getName() + " failed to commit. ");
+			if (conflict == null) {
+				throw e;
+			}
+			// the batch was rolled back, the previous checkpoint is resumed
+			ImportCheckpoint.discardPending(this.sifFile);
+			throw conflict;
+		}
+		long commitNanos = System.nanoTime() - commitStart;
+		WriteRateGovernor.INSTANCE.commitCompleted(commitNanos);
+		TaskMetrics.INSTANCE.recordCommit("SIF", commitNanos);
+		TaskMetrics.INSTANCE.recordParsedElements("SIF", this.lineNumber - this.measuredLines);
+		TaskResourceUsage.recordCommit();
+		TaskResourceUsage.recordElements(this.lineNumber - this.measuredLines);
+		TaskStatusService.reportUploadProgress();
+		this.measuredLines = this.lineNumber;
+		this.batch++;
+		if (this.resumable) {
+			ImportCheckpoint.appendJournal(this.sifFile, this.uncheckpointedElementIds);
+			this.uncheckpointedElementIds.clear();
+			ImportCheckpoint.confirmPending(this.sifFile);
+		}
+	}
+
+	/*
+	 * the RetryableImportException to throw if the failure is a transient
+	 * conflict (an OrientDB ONeedRetryException), null otherwise
+	 */
+	private static RetryableImportException retryableConflict(RuntimeException e, String message) {
+		for (Throwable cause : Throwables.getCausalChain(e)) {
+			if (cause instanceof ONeedRetryException) {
+				return new RetryableImportException(message + cause.getMessage());
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * the id of an element looked up by name before, including the lookups
+	 * journaled by the import being resumed
+	 */
+	private Long knownElementId(String key) {
+		return this.resumable ? this.elementIds.get(key) : null;
+	}
+
+	private Long rememberElementId(String key, Long id) {
+		if (this.resumable && id != null) {
+			this.elementIds.put(key, id);
+			this.uncheckpointedElementIds.put(key, id);
+		}
+		return id;
+	}
+
 	private boolean checkForExtendedFormat() throws IOException {
 		try (BufferedReader bufferedReader = 
-				new BufferedReader(new FileReader(this.getSifFile()))){
+				this.openSifFile()){
 			String line = bufferedReader.readLine();
 			// Check the first line for the EBS header
 			if (extendedBinarySIFEdgeHeader.equals(line)) {
@@ -165,7 +433,7 @@ public class SifParser implements IParsingEngine {
 
 	private boolean scanForTabs() throws IOException {
 		try (BufferedReader bufferedReader
-					= new BufferedReader(new FileReader(this.getSifFile()))){
+					= this.openSifFile()){
 			String line;
 			int counter = 0;
 			// Check the first 20 lines for tabs
@@ -186,10 +454,12 @@ public class SifParser implements IParsingEngine {
 	private void processSimpleSIFLines(boolean tabDelimited,
 			BufferedReader bufferedReader) throws IOException, ExecutionException, NdexException {
 
+		this.currentSection = Section.SIMPLE;
 		try {
 
 			String line;
-			while ((line = bufferedReader.readLine()) != null) {
+			int counter = 0;
+			while ((line = this.readLine(bufferedReader)) != null) {
 				String[] tokens = null;
 				if (tabDelimited) {
 					tokens = line.split("\t");
@@ -207,6 +477,11 @@ public class SifParser implements IParsingEngine {
 				  for ( int i = 2 ; i < tokens.length; i++ )
 					  addEdge ( tokens[0], tokens[1],tokens[i]);
 				}
+				counter++;
+				if ( this.batchCounter.increment() ) {
+					logger.info("processed " + counter + " lines so far. commit this batch.");
+					this.commitBatch(Section.SIMPLE, this.lineNumber);
+				}
 			}
 		} catch (IOException e) {
 			this.getMsgBuffer().add(e.getMessage());
@@ -227,13 +502,18 @@ public class SifParser implements IParsingEngine {
 	 */
 	private void processExtendedBinarySIF(BufferedReader bufferedReader)
 			throws IOException, ExecutionException, NdexException {
-		try {
-			// skip the header line
-			bufferedReader.readLine();
+		// skip the header line
+		this.readLine(bufferedReader);
+		this.processExtendedBinarySIFEdges(bufferedReader);
+	}
 
+	private void processExtendedBinarySIFEdges(BufferedReader bufferedReader)
+			throws IOException, ExecutionException, NdexException {
+		this.currentSection = Section.EDGES;
+		try {
 			String line;
 			int counter = 0;
-			while ((line = bufferedReader.readLine()) != null) {
+			while ((line = this.readLine(bufferedReader)) != null) {
 				if (line.indexOf(extendedBinarySIFAliasHeader) != -1) {
 					processExtendedBinarySIFAliases(bufferedReader);  
 					break;
@@ -252,26 +532,19 @@ public class SifParser implements IParsingEngine {
 					}
 
 					Long edgeId = addEdge(subject, predicate, object);
-					counter ++;
-					if ( counter % 2000 == 0 ) {
-						logger.info("processed " + counter + " lines so far. commit this batch.");
-						this.persistenceService.commit();
-					}
 					
 					if (pubMedIds != null) {
 						for (String pubMedId : pubMedIds) {
 							String[] pubmedIdTokens = pubMedId.split(":");
 							if ( pubmedIdTokens.length ==2 ) {
 								if ( pubmedIdTokens[0].equals("Pubmed")) {
-									Long citationId = this.persistenceService.getCitationId(
-										"", NdexPersistenceService.defaultCitationType,
-										NdexPersistenceService.pmidPrefix + pubmedIdTokens[1], null);
+									Long citationId = this.getCitationId(
+										NdexPersistenceService.pmidPrefix + pubmedIdTokens[1]);
 								//	this.pubmedIdSet.add(pubmedIdTokens[1]);
 									this.persistenceService.addCitationToElement(edgeId, citationId, NdexClasses.Edge);
 								
 								} else if ( pubmedIdTokens[0].equals("ISBN")){
-									Long citationId = this.persistenceService.getCitationId(
-											"", NdexPersistenceService.defaultCitationType, pubMedId, null);
+									Long citationId = this.getCitationId(pubMedId);
 //										this.pubmedIdSet.add(pubmedIdTokens[1]);
 										this.persistenceService.addCitationToElement(edgeId, citationId, NdexClasses.Edge);
 								} else {	
@@ -282,6 +555,13 @@ public class SifParser implements IParsingEngine {
 						}
 					}
 
+					// commit once the edge and its citations are loaded so a 
+					// checkpoint never splits a line
+					counter ++;
+					if ( this.batchCounter.increment() ) {
+						logger.info("processed " + counter + " lines so far. commit this batch.");
+						this.commitBatch(Section.EDGES, this.lineNumber);
+					}
 				}
 			}
 		} catch (IOException e) {
@@ -298,9 +578,10 @@ public class SifParser implements IParsingEngine {
 
 		// "PARTICIPANT	PARTICIPANT_TYPE	PARTICIPANT_NAME	UNIFICATION_XREF	RELATIONSHIP_XREF";
 		System.out.println("Processing Aliases");
+		this.currentSection = Section.ALIASES;
 		String line;
 		int counter = 0;
-		while ((line = bufferedReader.readLine()) != null) {
+		while ((line = this.readLine(bufferedReader)) != null) {
 		//	System.out.println("-- " + line);
 			if (line.indexOf(extendedBinarySIFPropertiesHeader) != -1) {
 				System.out.println("found properties header");
@@ -314,15 +595,16 @@ public class SifParser implements IParsingEngine {
 				String[] tokens = null;
 				tokens = line.split("\t");
 				counter ++;
-				if ( counter % 2000 == 0 ) {
+				if ( this.batchCounter.increment() ) {
 					logger.info("Aliases processed " + counter + " lines. commit batch.");
-					this.persistenceService.commit();
+					// the line just read is processed after the commit
+					this.commitBatch(Section.ALIASES, this.lineNumber - 1);
 				}
 				if (tokens.length > 2) {
 					String participantIdentifier = tokens[0];
 					// find the node that represents the term specified by the
 					// participantIdentifier
-					Long participantNodeId = this.persistenceService.getNodeIdByBaseTerm(participantIdentifier);
+					Long participantNodeId = this.getNodeIdByBaseTerm(participantIdentifier);
 					if (participantNodeId == null)
 						break;
 					//String type = tokens[1];
@@ -357,7 +639,7 @@ public class SifParser implements IParsingEngine {
 		// this is currently one line of properties, but perhaps it would be
 		// better to have one property per line.
 		System.out.println("Processing one line of Network Properties");
-		String line = bufferedReader.readLine();
+		String line = this.readLine(bufferedReader);
 		if (line != null) {
 			String[] values = line.split("\t");
 			if (values.length > 0 && values[0] != null) {
@@ -394,18 +676,39 @@ public class SifParser implements IParsingEngine {
 	private Long addNode(String name) throws ExecutionException, NdexException {
 		TermStringType stype = TermUtilities.getTermType(name);
 		if ( stype == TermStringType.NAME) {
-			return persistenceService.getNodeIdByName(name);
+			Long nodeId = this.knownElementId("N:" + name);
+			return nodeId != null ? nodeId : 
+				this.rememberElementId("N:" + name, persistenceService.getNodeIdByName(name));
 		} 
-		return persistenceService.getNodeIdByBaseTerm(name);
+		return this.getNodeIdByBaseTerm(name);
 		
 	}
 
+	private Long getNodeIdByBaseTerm(String name) throws ExecutionException, NdexException {
+		Long nodeId = this.knownElementId("B:" + name);
+		return nodeId != null ? nodeId : 
+			this.rememberElementId("B:" + name, persistenceService.getNodeIdByBaseTerm(name));
+	}
+
+	private Long getBaseTermId(String name) throws ExecutionException, NdexException {
+		Long termId = this.knownElementId("T:" + name);
+		return termId != null ? termId : 
+			this.rememberElementId("T:" + name, persistenceService.getBaseTermId(name));
+	}
+
+	private Long getCitationId(String identifier) throws ExecutionException, NdexException {
+		Long citationId = this.knownElementId("C:" + identifier);
+		return citationId != null ? citationId : 
+			this.rememberElementId("C:" + identifier, persistenceService.getCitationId(
+					"", NdexPersistenceService.defaultCitationType, identifier, null));
+	}
+
 
 	private Long addEdge(String subject, String predicate, String object)
 			throws ExecutionException, NdexException {
 		Long subjectNodeId = addNode(subject);
 		Long objectNodeId = addNode(object);
-		Long predicateTermId = persistenceService.getBaseTermId(predicate);
+		Long predicateTermId = this.getBaseTermId(predicate);
 		return persistenceService.getEdge(subjectNodeId, objectNodeId,
 				predicateTermId, null,null,null);
 
@@ -434,6 +737,14 @@ public class SifParser implements IParsingEngine {
 		
 	}
 	
+	/*
+	 * the number of edges of the network loaded, 0 if it was not loaded
+	 */
+	public int getEdgeCount() {
+		NetworkSummary currentNetwork = persistenceService.getCurrentNetwork();
+		return currentNetwork == null ? 0 : currentNetwork.getEdgeCount();
+	}
+
 	@Override
 	public UUID getUUIDOfUploadedNetwork() {
 		try { 
@@ -29,6 +29,8 @@ import org.ndexbio.model.object.SimplePropertyValuePair;
 import org.ndexbio.model.object.network.NetworkSummary;
 import org.ndexbio.model.tools.ProvenanceHelpers;
 import org.ndexbio.task.parsingengines.XbelFileValidator.ValidationState;
+import org.ndexbio.task.TaskTrace;
+import org.ndexbio.xbel.XbelJAXBContext;
 import org.ndexbio.xbel.splitter.AnnotationDefinitionGroupSplitter;
 import org.ndexbio.xbel.splitter.HeaderSplitter;
 import org.ndexbio.xbel.splitter.NamespaceGroupSplitter;
@@ -85,9 +87,13 @@ public class XbelParser implements IParsingEngine
         }
         this.xmlFile = f.getAbsolutePath(); 
         this.setOwnerName(ownerName);
-        this.validationState = new XbelFileValidator(this.xmlFile).getValidationState();
+        try (TaskTrace.Span span = TaskTrace.span("xbel.validate")) {
+        	this.validationState = new XbelFileValidator(this.xmlFile).getValidationState();
+        }
         logger.info(this.validationState.getValidationMessage());
-        this.context = JAXBContext.newInstance("org.ndexbio.xbel.model");
+        try (TaskTrace.Span span = TaskTrace.span("xbel.jaxbContext")) {
+        	this.context = XbelJAXBContext.getInstance();
+        }
         this.networkService = new NdexPersistenceService(db);
         this.nsSplitter = new NamespaceGroupSplitter(context, this.networkService);
         this.adSplitter = new AnnotationDefinitionGroupSplitter(context, networkService);
@@ -102,10 +108,18 @@ public class XbelParser implements IParsingEngine
     {
         try
         {
-            this.processHeaderAndCreateNetwork();
-            this.processNamespaces();
-            this.processAnnotationDefinitions();
-            this.processStatementGroups();
+            try (TaskTrace.Span span = TaskTrace.span("xbel.header")) {
+            	this.processHeaderAndCreateNetwork();
+            }
+            try (TaskTrace.Span span = TaskTrace.span("xbel.namespaces")) {
+            	this.processNamespaces();
+            }
+            try (TaskTrace.Span span = TaskTrace.span("xbel.annotationDefinitions")) {
+            	this.processAnnotationDefinitions();
+            }
+            try (TaskTrace.Span span = TaskTrace.span("xbel.statementGroups")) {
+            	this.processStatementGroups();
+            }
             
 			//add provenance to network
 			NetworkSummary currentNetwork = this.networkService.getCurrentNetwork();
@@ -124,7 +138,9 @@ public class XbelParser implements IParsingEngine
             
             // set edge count and node count,
             // then close database connection
-            this.networkService.persistNetwork();
+            try (TaskTrace.Span span = TaskTrace.span("xbel.persist")) {
+            	this.networkService.persistNetwork();
+            }
         }
         catch (Exception e)
         {
@@ -293,6 +309,14 @@ public class XbelParser implements IParsingEngine
 		this.ownerName = ownerName;
 	}
 
+	/*
+	 * the number of edges of the network loaded, 0 if it was not loaded
+	 */
+	public int getEdgeCount() {
+		NetworkSummary currentNetwork = networkService.getCurrentNetwork();
+		return currentNetwork == null ? 0 : currentNetwork.getEdgeCount();
+	}
+
 	@Override
 	public UUID getUUIDOfUploadedNetwork() {
 		try { 
@@ -3,6 +3,7 @@ package org.ndexbio.task.parsingengines;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Timestamp;
 import java.util.Calendar;
 import java.util.List;
@@ -20,6 +21,7 @@ import org.ndexbio.model.object.ProvenanceEntity;
 import org.ndexbio.model.object.SimplePropertyValuePair;
 import org.ndexbio.model.object.network.NetworkSummary;
 import org.ndexbio.model.tools.ProvenanceHelpers;
+import org.ndexbio.task.TaskResourceUsage;
 import org.ndexbio.xgmml.parser.HandlerFactory;
 import org.ndexbio.xgmml.parser.XGMMLParser;
 import org.ndexbio.xgmml.parser.handler.ReadDataManager;
@@ -66,7 +68,8 @@ public class XgmmlParser implements IParsingEngine {
 	@Override
 	public void parseFile() throws NdexException {
         
-		try (FileInputStream xgmmlFileStream = new FileInputStream(this.getXgmmlFile())) { 
+		try (InputStream xgmmlFileStream = TaskResourceUsage.countReads(
+				new FileInputStream(this.getXgmmlFile()))) { 
 
 			try
 			{
@@ -121,7 +124,7 @@ public class XgmmlParser implements IParsingEngine {
 	 * @throws SAXException
 	 * @throws ParserConfigurationException
 	 */
-	private void readXGMML(FileInputStream xgmmlFileStream) throws SAXException, IOException {
+	private void readXGMML(InputStream xgmmlFileStream) throws SAXException, IOException {
 		final SAXParserFactory spf = SAXParserFactory.newInstance();
 
 		try {
@@ -174,6 +177,14 @@ public class XgmmlParser implements IParsingEngine {
 		return xgmmlFile;
 	}
 	
+	/*
+	 * the number of edges of the network loaded, 0 if it was not loaded
+	 */
+	public int getEdgeCount() {
+		NetworkSummary currentNetwork = networkService.getCurrentNetwork();
+		return currentNetwork == null ? 0 : currentNetwork.getEdgeCount();
+	}
+
 	@Override
 	public UUID getUUIDOfUploadedNetwork() {
 		try { 
@@ -0,0 +1,57 @@
+package org.ndexbio.task.service;
+
+import java.util.Map;
+import java.util.UUID;
+
+import org.ndexbio.common.NdexClasses;
+import org.ndexbio.common.persistence.orientdb.OrientDBNoTxConnectionService;
+import org.ndexbio.model.exceptions.NdexException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
+
+/*
+ * Represents the database operations of the task accounting: the resources a
+ * task used (see TaskResourceUsage) are stored with the task record as the
+ * embedded map resourceUsage, e.g. to be queried per format and owner.
+ * The usage is written with a single UPDATE rather than a read and save of the
+ * task record, which the lease renewal of the running task may have bumped
+ * the version of meanwhile.
+ */
+public class TaskAccountingService extends OrientDBNoTxConnectionService {
+
+	private static final Logger logger = LoggerFactory.getLogger(TaskAccountingService.class);
+
+	public static final String RESOURCE_USAGE = "resourceUsage";
+
+	private static final String UPDATE_RESOURCE_USAGE =
+			"UPDATE " + NdexClasses.Task + " SET " + RESOURCE_USAGE + " = ?"
+			+ " WHERE " + NdexClasses.ExternalObj_ID + " = ?";
+
+	public TaskAccountingService() {
+		super();
+	}
+
+	/*
+	 * store the resource usage with the task; returns false if the task no
+	 * longer exists
+	 */
+	public boolean storeResourceUsage(UUID taskId, Map<String, Long> usage) throws NdexException {
+		Preconditions.checkArgument(null != taskId, "A task id is required");
+		Preconditions.checkArgument(null != usage, "A resource usage is required");
+		try {
+			setupDatabase();
+			Integer count = this._ndexDatabase.command(new OCommandSQL(UPDATE_RESOURCE_USAGE))
+					.execute(usage, taskId.toString());
+			return null != count && count.intValue() > 0;
+		} catch (Exception e) {
+			logger.error("Failed to store the resource usage of task " + taskId, e);
+			throw new NdexException("Failed to store the resource usage of task. " + e.getMessage());
+		} finally {
+			teardownDatabase();
+		}
+	}
+
+}
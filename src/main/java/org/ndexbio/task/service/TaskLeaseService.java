@@ -0,0 +1,353 @@
+package org.ndexbio.task.service;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.ndexbio.common.NdexClasses;
+import org.ndexbio.common.models.dao.orientdb.TaskDAO;
+import org.ndexbio.common.persistence.orientdb.OrientDBNoTxConnectionService;
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Status;
+import org.ndexbio.model.object.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.orientechnologies.orient.core.exception.OConcurrentModificationException;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+
+/*
+ * Represents the database operations of lease based task claiming. A task
+ * processor instance claims a task by setting its status to STAGED together
+ * with a lease: the id of the instance and the time the lease expires. The
+ * instance renews the leases of its tasks while it works on them and releases
+ * a lease once the task is finished. A task whose lease expired, because the
+ * instance holding it died or hung, can be claimed again by any instance.
+ *
+ * A claim is an optimistic update of the task record: when two instances
+ * claim the same task, the record version check of OrientDB lets only the
+ * first save succeed and the other instance skips the task. Several processor
+ * instances can therefore share one task queue.
+ * An instance looks at the claimable tasks first and chooses which of them to
+ * claim (see findClaimableTasks and claimTasks).
+ */
+public class TaskLeaseService extends OrientDBNoTxConnectionService {
+
+	private static final Logger logger = LoggerFactory.getLogger(TaskLeaseService.class);
+
+	public static final String LEASE_OWNER = "leaseOwner";
+	public static final String LEASE_EXPIRATION = "leaseExpiration";
+	public static final String LEASE_ATTEMPTS = "leaseAttempts";
+
+	private static final String CLAIMABLE_TASKS_QUERY =
+			"SELECT FROM " + NdexClasses.Task
+			+ " WHERE (" + NdexClasses.Task_P_status + " = ?"
+			+ " OR ((" + NdexClasses.Task_P_status + " = ? OR " + NdexClasses.Task_P_status + " = ?)"
+			+ " AND (" + LEASE_EXPIRATION + " IS NULL OR " + LEASE_EXPIRATION + " < ?)))";
+	private static final String QUEUED_TASK_QUERY =
+			"SELECT FROM " + NdexClasses.Task
+			+ " WHERE " + NdexClasses.ExternalObj_ID + " = ? AND " + NdexClasses.Task_P_status + " = ?";
+
+	public TaskLeaseService() {
+		super();
+	}
+
+	/*
+	 * up to limit of the tasks that can be claimed, oldest first, after
+	 * skipping the first skip of them: QUEUED tasks and STAGED or PROCESSING
+	 * tasks whose lease expired. The tasks are not claimed, see claimTasks.
+	 */
+	public List<Task> findClaimableTasks(int skip, int limit) throws NdexException {
+		Preconditions.checkArgument(skip >= 0, "The number of tasks to skip must be >= 0");
+		List<Task> candidates = Lists.newArrayList();
+		if (limit < 1) {
+			return candidates;
+		}
+		try {
+			setupDatabase();
+			List<ODocument> docs = this._ndexDatabase.query(
+					new OSQLSynchQuery<ODocument>(CLAIMABLE_TASKS_QUERY 
+							+ " ORDER BY " + NdexClasses.ExternalObj_cTime + " SKIP " + skip + " LIMIT " + limit),
+					Status.QUEUED.toString(), Status.STAGED.toString(),
+					Status.PROCESSING.toString(), new Date());
+			for (ODocument doc : docs) {
+				candidates.add(TaskDAO.getTaskFromDocument(doc));
+			}
+			return candidates;
+		} catch (Exception e) {
+			logger.error("Failed to find the claimable tasks", e);
+			throw new NdexException("Failed to find claimable tasks. " + e.getMessage());
+		} finally {
+			teardownDatabase();
+		}
+	}
+
+	/*
+	 * claim the given tasks for the owner, in the given order, that can still
+	 * be claimed. A reclaimed task that was already PROCESSING is only claimed
+	 * again when restartable accepts it, otherwise it is set to
+	 * COMPLETED_WITH_ERRORS, as is a task that was claimed maxAttempts times
+	 * already.
+	 * Returns the claimed tasks with a status of STAGED.
+	 */
+	public List<Task> claimTasks(String owner, List<UUID> taskIds, long leaseMillis, int maxAttempts,
+			Predicate<Task> restartable) throws NdexException {
+		Preconditions.checkArgument(null != owner, "A lease owner is required");
+		Preconditions.checkArgument(leaseMillis > 0, "The lease duration must be > 0");
+		List<Task> claimed = Lists.newArrayList();
+		if (taskIds.isEmpty()) {
+			return claimed;
+		}
+		List<String> ids = Lists.newArrayList();
+		for (UUID id : taskIds) {
+			ids.add(id.toString());
+		}
+		try {
+			setupDatabase();
+			Date now = new Date();
+			List<ODocument> docs = this._ndexDatabase.query(
+					new OSQLSynchQuery<ODocument>(CLAIMABLE_TASKS_QUERY 
+							+ " AND " + NdexClasses.ExternalObj_ID + " IN ?"),
+					Status.QUEUED.toString(), Status.STAGED.toString(),
+					Status.PROCESSING.toString(), now, ids);
+			Map<String, ODocument> candidates = Maps.newHashMap();
+			for (ODocument doc : docs) {
+				String id = doc.field(NdexClasses.ExternalObj_ID);
+				candidates.put(id, doc);
+			}
+			for (String id : ids) {
+				ODocument doc = candidates.get(id);
+				if (null == doc) {
+					// claimed by another instance since it was found
+					continue;
+				}
+				Task task = this.claim(doc, owner, new Date(now.getTime() + leaseMillis),
+						maxAttempts, restartable);
+				if (null != task) {
+					claimed.add(task);
+				}
+			}
+			return claimed;
+		} catch (Exception e) {
+			logger.error("Failed to claim tasks for " + owner, e);
+			throw new NdexException("Failed to claim tasks. " + e.getMessage());
+		} finally {
+			teardownDatabase();
+		}
+	}
+
+	/*
+	 * claim a QUEUED task by its id for the owner, e.g. a task submitted in
+	 * process; returns the task with a status of STAGED or null if it is not
+	 * queued or another instance claimed it first
+	 */
+	public Task claimTask(UUID taskId, String owner, long leaseMillis, int maxAttempts,
+			Predicate<Task> restartable) throws NdexException {
+		Preconditions.checkArgument(null != taskId, "A task id is required");
+		Preconditions.checkArgument(null != owner, "A lease owner is required");
+		Preconditions.checkArgument(leaseMillis > 0, "The lease duration must be > 0");
+		try {
+			setupDatabase();
+			List<ODocument> docs = this._ndexDatabase.query(
+					new OSQLSynchQuery<ODocument>(QUEUED_TASK_QUERY),
+					taskId.toString(), Status.QUEUED.toString());
+			if (docs.isEmpty()) {
+				return null;
+			}
+			return this.claim(docs.get(0), owner, new Date(System.currentTimeMillis() + leaseMillis),
+					maxAttempts, restartable);
+		} catch (Exception e) {
+			logger.error("Failed to claim task " + taskId + " for " + owner, e);
+			throw new NdexException("Failed to claim task. " + e.getMessage());
+		} finally {
+			teardownDatabase();
+		}
+	}
+
+	/*
+	 * returns the claimed task or null if another instance claimed it first or
+	 * the task was given up on
+	 */
+	private Task claim(ODocument doc, String owner, Date expiration, int maxAttempts,
+			Predicate<Task> restartable) {
+		Task task = TaskDAO.getTaskFromDocument(doc);
+		Integer attempts = doc.field(LEASE_ATTEMPTS);
+		int previousAttempts = null == attempts ? 0 : attempts.intValue();
+		String previousOwner = doc.field(LEASE_OWNER);
+		boolean reclaimed = task.getStatus() != Status.QUEUED;
+		try {
+			if (previousAttempts >= maxAttempts
+					|| (task.getStatus() == Status.PROCESSING && !restartable.apply(task))) {
+				doc.field(NdexClasses.Task_P_status, Status.COMPLETED_WITH_ERRORS.toString());
+				doc.removeField(LEASE_OWNER);
+				doc.removeField(LEASE_EXPIRATION);
+				doc.save();
+				logger.error("Task " + task.getExternalId() + " was abandoned after "
+						+ previousAttempts + " attempts, last held by " + previousOwner
+						+ ". Setting its status to " + Status.COMPLETED_WITH_ERRORS);
+				return null;
+			}
+			doc.field(NdexClasses.Task_P_status, Status.STAGED.toString());
+			doc.field(LEASE_OWNER, owner);
+			doc.field(LEASE_EXPIRATION, expiration);
+			doc.field(LEASE_ATTEMPTS, previousAttempts + 1);
+			doc.field(NdexClasses.ExternalObj_mTime, new Date());
+			doc.save();
+		} catch (OConcurrentModificationException e) {
+			logger.debug("Task " + task.getExternalId() + " was claimed by another instance");
+			return null;
+		}
+		if (reclaimed) {
+			logger.warn("Reclaimed task " + task.getExternalId() + " with an expired lease, attempt "
+					+ (previousAttempts + 1) + " of " + maxAttempts);
+		}
+		task.setStatus(Status.STAGED);
+		return task;
+	}
+
+	/*
+	 * extend the leases the owner holds on the given tasks; returns the number
+	 * of leases renewed
+	 */
+	public int renewLeases(String owner, Collection<UUID> taskIds, long leaseMillis)
+			throws NdexException {
+		if (taskIds.isEmpty()) {
+			return 0;
+		}
+		List<String> ids = Lists.newArrayList();
+		for (UUID id : taskIds) {
+			ids.add(id.toString());
+		}
+		try {
+			setupDatabase();
+			Integer renewed = this._ndexDatabase.command(new OCommandSQL(
+					"UPDATE " + NdexClasses.Task + " SET " + LEASE_EXPIRATION + " = ?"
+					+ " WHERE " + LEASE_OWNER + " = ? AND " + NdexClasses.ExternalObj_ID + " IN ?"))
+					.execute(new Date(System.currentTimeMillis() + leaseMillis), owner, ids);
+			return null == renewed ? 0 : renewed.intValue();
+		} catch (Exception e) {
+			logger.error("Failed to renew the task leases of " + owner, e);
+			throw new NdexException("Failed to renew task leases. " + e.getMessage());
+		} finally {
+			teardownDatabase();
+		}
+	}
+
+	/*
+	 * the ids of the tasks the owner currently holds a lease on
+	 */
+	public Set<UUID> getLeasedTaskIds(String owner) throws NdexException {
+		Set<UUID> taskIds = Sets.newHashSet();
+		try {
+			setupDatabase();
+			List<ODocument> docs = this._ndexDatabase.query(new OSQLSynchQuery<ODocument>(
+					"SELECT " + NdexClasses.ExternalObj_ID + " FROM " + NdexClasses.Task
+					+ " WHERE " + LEASE_OWNER + " = ?"), owner);
+			for (ODocument doc : docs) {
+				String id = doc.field(NdexClasses.ExternalObj_ID);
+				taskIds.add(UUID.fromString(id));
+			}
+			return taskIds;
+		} catch (Exception e) {
+			logger.error("Failed to query the task leases of " + owner, e);
+			throw new NdexException("Failed to query task leases. " + e.getMessage());
+		} finally {
+			teardownDatabase();
+		}
+	}
+
+	/*
+	 * the number of tasks with each of the given statuses; a status without
+	 * tasks is reported as 0
+	 */
+	public Map<Status, Long> countTasksByStatus(Collection<Status> statuses) throws NdexException {
+		Map<Status, Long> counts = Maps.newEnumMap(Status.class);
+		List<String> names = Lists.newArrayList();
+		for (Status status : statuses) {
+			counts.put(status, 0L);
+			names.add(status.toString());
+		}
+		try {
+			setupDatabase();
+			List<ODocument> docs = this._ndexDatabase.query(new OSQLSynchQuery<ODocument>(
+					"SELECT " + NdexClasses.Task_P_status + " AS status, count(*) AS tasks FROM "
+					+ NdexClasses.Task + " WHERE " + NdexClasses.Task_P_status + " IN ?"
+					+ " GROUP BY " + NdexClasses.Task_P_status), names);
+			for (ODocument doc : docs) {
+				String status = doc.field("status");
+				Number tasks = doc.field("tasks");
+				counts.put(Status.valueOf(status), tasks.longValue());
+			}
+			return counts;
+		} catch (Exception e) {
+			logger.error("Failed to count the tasks by status", e);
+			throw new NdexException("Failed to count tasks. " + e.getMessage());
+		} finally {
+			teardownDatabase();
+		}
+	}
+
+	/*
+	 * return a task the owner holds to the QUEUED status without its lease, so
+	 * any instance can claim it again; the claim of the owner is not counted as
+	 * an attempt. Returns false if the owner no longer holds the task.
+	 */
+	public boolean requeueTask(UUID taskId, String owner) throws NdexException {
+		try {
+			setupDatabase();
+			List<ODocument> docs = this._ndexDatabase.query(new OSQLSynchQuery<ODocument>(
+					"SELECT FROM " + NdexClasses.Task + " WHERE " + NdexClasses.ExternalObj_ID + " = ?"
+					+ " AND " + LEASE_OWNER + " = ?"), taskId.toString(), owner);
+			if (docs.isEmpty()) {
+				return false;
+			}
+			ODocument doc = docs.get(0);
+			Integer attempts = doc.field(LEASE_ATTEMPTS);
+			doc.field(NdexClasses.Task_P_status, Status.QUEUED.toString());
+			doc.field(LEASE_ATTEMPTS, null == attempts ? 0 : Math.max(0, attempts.intValue() - 1));
+			doc.removeField(LEASE_OWNER);
+			doc.removeField(LEASE_EXPIRATION);
+			doc.field(NdexClasses.ExternalObj_mTime, new Date());
+			doc.save();
+			return true;
+		} catch (OConcurrentModificationException e) {
+			logger.warn("Task " + taskId + " was modified while it was requeued");
+			return false;
+		} catch (Exception e) {
+			logger.error("Failed to requeue task " + taskId, e);
+			throw new NdexException("Failed to requeue task. " + e.getMessage());
+		} finally {
+			teardownDatabase();
+		}
+	}
+
+	/*
+	 * give up the owner's lease on a task; a task released before it reached
+	 * a completion status can be claimed again immediately
+	 */
+	public void releaseLease(UUID taskId, String owner) throws NdexException {
+		try {
+			setupDatabase();
+			this._ndexDatabase.command(new OCommandSQL(
+					"UPDATE " + NdexClasses.Task + " REMOVE " + LEASE_OWNER + ", " + LEASE_EXPIRATION
+					+ " WHERE " + NdexClasses.ExternalObj_ID + " = ? AND " + LEASE_OWNER + " = ?"))
+					.execute(taskId.toString(), owner);
+		} catch (Exception e) {
+			logger.error("Failed to release the lease of task " + taskId, e);
+			throw new NdexException("Failed to release task lease. " + e.getMessage());
+		} finally {
+			teardownDatabase();
+		}
+	}
+
+}
@@ -0,0 +1,50 @@
+package org.ndexbio.task.service;
+
+import org.ndexbio.common.NdexClasses;
+import org.ndexbio.common.persistence.orientdb.OrientDBNoTxConnectionService;
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
+
+/*
+ * Represents the database operations of the task housekeeping. The tasks
+ * marked for deletion are removed in chunks of a bounded number of records,
+ * each one its own statement, so a large number of deleted tasks never holds
+ * the database for long and the imports running meanwhile are not blocked.
+ */
+public class TaskPurgeService extends OrientDBNoTxConnectionService {
+
+	private static final Logger logger = LoggerFactory.getLogger(TaskPurgeService.class);
+
+	private static final String DELETE_QUEUED_FOR_DELETION =
+			"DELETE VERTEX " + NdexClasses.Task
+			+ " WHERE " + NdexClasses.Task_P_status + " = ? LIMIT ";
+
+	public TaskPurgeService() {
+		super();
+	}
+
+	/*
+	 * delete at most limit tasks with a status of QUEUED_FOR_DELETION; returns
+	 * the number of tasks deleted
+	 */
+	public int deleteTasksQueuedForDeletion(int limit) throws NdexException {
+		Preconditions.checkArgument(limit > 0, "The deletion limit must be > 0");
+		try {
+			setupDatabase();
+			Integer deleted = this._ndexDatabase.command(new OCommandSQL(DELETE_QUEUED_FOR_DELETION + limit))
+					.execute(Status.QUEUED_FOR_DELETION.toString());
+			return null == deleted ? 0 : deleted.intValue();
+		} catch (Exception e) {
+			logger.error("Failed to delete the tasks queued for deletion", e);
+			throw new NdexException("Failed to delete the tasks queued for deletion. " + e.getMessage());
+		} finally {
+			teardownDatabase();
+		}
+	}
+
+}
@@ -0,0 +1,68 @@
+package org.ndexbio.task.service;
+
+import java.util.Date;
+import java.util.List;
+
+import org.ndexbio.common.NdexClasses;
+import org.ndexbio.common.persistence.orientdb.OrientDBNoTxConnectionService;
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Status;
+import org.ndexbio.model.object.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
+
+/*
+ * Represents the database operations of the write-behind task status updates
+ * (see TaskStatusService): the status and progress of a batch of tasks are
+ * written over one connection. A change is only applied while the task is
+ * STAGED or PROCESSING, so a late write never overrides a completion status,
+ * a requeue or a deletion written meanwhile.
+ */
+public class TaskStatusStore extends OrientDBNoTxConnectionService {
+
+	private static final Logger logger = LoggerFactory.getLogger(TaskStatusStore.class);
+
+	public static final String PROGRESS = "progress";
+
+	private static final String UPDATE_RUNNING_TASK =
+			"UPDATE " + NdexClasses.Task + " SET " + NdexClasses.Task_P_status + " = ?, "
+			+ PROGRESS + " = ?, " + NdexClasses.ExternalObj_mTime + " = ?"
+			+ " WHERE " + NdexClasses.ExternalObj_ID + " = ? AND " + NdexClasses.Task_P_status + " IN ?";
+
+	private static final List<String> RUNNING_STATUSES =
+			ImmutableList.of(Status.STAGED.toString(), Status.PROCESSING.toString());
+
+	public TaskStatusStore() {
+		super();
+	}
+
+	/*
+	 * write the status and progress of the given tasks; returns the number of
+	 * tasks updated
+	 */
+	public int storeStatuses(List<Task> tasks) throws NdexException {
+		Preconditions.checkArgument(null != tasks, "The tasks to update are required");
+		try {
+			setupDatabase();
+			Date now = new Date();
+			int updated = 0;
+			for (Task task : tasks) {
+				Integer count = this._ndexDatabase.command(new OCommandSQL(UPDATE_RUNNING_TASK))
+						.execute(task.getStatus().toString(), task.getProgress(), now,
+								task.getExternalId().toString(), RUNNING_STATUSES);
+				updated += null == count ? 0 : count.intValue();
+			}
+			return updated;
+		} catch (Exception e) {
+			logger.error("Failed to write the status of " + tasks.size() + " tasks", e);
+			throw new NdexException("Failed to write the task status. " + e.getMessage());
+		} finally {
+			teardownDatabase();
+		}
+	}
+
+}
@@ -2,15 +2,23 @@ package org.ndexbio.task.utility;
 
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.util.Date;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import org.ndexbio.common.exceptions.*;
 import org.ndexbio.common.models.dao.orientdb.TaskDAO;
 import org.ndexbio.common.persistence.orientdb.OrientDBNoTxConnectionService;
 import org.ndexbio.model.exceptions.NdexException;
@@ -21,7 +29,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
-import com.orientechnologies.orient.core.id.ORID;
+import com.google.common.collect.Lists;
 
 
 /*
@@ -29,65 +37,190 @@ import com.orientechnologies.orient.core.id.ORID;
  * for uploading into Ndex. The files must be an acceptable format (i.e. xbel, sif, xls, xlsx)
  * The input parameter is a directory location. All regular files within the specified directory 
  * are processed
+ * The files are staged into the upload directory by a pool of threads without
+ * copying their content when possible: a file is hard linked into the upload
+ * directory, or moved atomically when --move is given, if both directories are
+ * on the same file system, and copied through its file channel otherwise. The
+ * upload tasks are created TASK_BATCH_SIZE at a time, one transaction per batch.
+ * When a batch fails its staged files are put back, moved into the upload
+ * directory again with --move and removed from the staging directory
+ * otherwise, and their paths are logged so the utility can be run again for
+ * them; the other batches are still created.
  */
 @Deprecated
 public class BulkFileUploadUtility {
 	
 	private final Path uploadDir;
+	private final Path stagingDir;
+	private final boolean move;
 	private final LocalDataService ds;
 	
 	public BulkFileUploadUtility(String dir){
+		this(dir, NETWORK_UPLOAD_PATH, false);
+	}
+
+	BulkFileUploadUtility(String dir, String stagingDir, boolean move) {
 		this.uploadDir = Paths.get(dir);
+		this.stagingDir = Paths.get(stagingDir);
+		this.move = move;
 		this.ds = new LocalDataService();
 	}
 
 	private static final String DEFAULT_DIRECTORY = "/tmp/ndex/bulk";
 	private static final Logger logger = LoggerFactory.getLogger(BulkFileUploadUtility.class);
 	private static final String NETWORK_UPLOAD_PATH = "/opt/ndex/uploaded-networks/";
+	private static final String MOVE_OPTION = "--move";
+	static final int TASK_BATCH_SIZE = 500;
 	
 	public static void main(String[] args) {
 		String dir = DEFAULT_DIRECTORY;
-		if (args.length >0){
-			dir = args[0];
+		boolean move = false;
+		for (String arg : args) {
+			if (MOVE_OPTION.equals(arg)) {
+				move = true;
+			} else {
+				dir = arg;
+			}
 		}
 		logger.info("Processing network files in  " +dir);
-		BulkFileUploadUtility util = new BulkFileUploadUtility(dir);
+		BulkFileUploadUtility util = new BulkFileUploadUtility(dir, NETWORK_UPLOAD_PATH, move);
 		util.processFiles();
 
 	}
 	
+	/*
+	 * stage the files of the upload directory in parallel and queue a task for
+	 * every staged file as the files are staged
+	 */
 	private void processFiles() {
+		ExecutorService stagingPool = Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors());
+		CompletionService<Path> staged = new ExecutorCompletionService<>(stagingPool);
+		int fileCount = 0;
+		int taskCount = 0;
 		try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(this.uploadDir)) {
-            for (Path path : directoryStream) {
-              logger.info("Processing file " +path.toString());
-              String destFile = this.resolveFilename(path);
-              Path destPath = Paths.get(destFile);
-              Files.copy(path, destPath, StandardCopyOption.REPLACE_EXISTING);
-              logger.info("Copied " +path.toString() +" to " +destPath.toString() );
-              Task task = this.generateTask(destPath.toString());
-  			  this.ds.createTask(task);
-  			  logger.info("file upload task " +task.getExternalId() +" queued in database");
-            }
-        } catch (IOException | IllegalArgumentException | NdexException e) {
-        	logger.error(e.getMessage());
-        }
+			for (final Path path : directoryStream) {
+				staged.submit(new Callable<Path>() {
+					@Override
+					public Path call() throws IOException {
+						return stageFile(path, stagingDir, move);
+					}
+				});
+				fileCount++;
+			}
+			List<Task> batch = Lists.newArrayListWithCapacity(TASK_BATCH_SIZE);
+			List<Path> unqueued = Lists.newArrayList();
+			for (int i = 0; i < fileCount; i++) {
+				try {
+					batch.add(generateTask(staged.take().get().toString()));
+				} catch (ExecutionException e) {
+					logger.error("Failed to stage a file. " + e.getCause().getMessage());
+				}
+				if (batch.size() == TASK_BATCH_SIZE || (i == fileCount - 1 && !batch.isEmpty())) {
+					try {
+						taskCount += this.ds.createTasks(batch).size();
+						logger.info(taskCount + " of " + fileCount + " file upload tasks queued in database");
+					} catch (NdexException e) {
+						logger.error("Failed to queue " + batch.size() + " file upload tasks. " + e.getMessage());
+						unqueued.addAll(unstage(batch, this.uploadDir, this.move));
+					}
+					batch.clear();
+				}
+			}
+			if (!unqueued.isEmpty()) {
+				logger.error(unqueued.size() + " files have no upload task, run the utility again for them: "
+						+ unqueued);
+			}
+		} catch (InterruptedException e) {
+			logger.error("Interrupted while staging the files");
+			Thread.currentThread().interrupt();
+		} catch (IOException | IllegalArgumentException e) {
+			logger.error(e.getMessage());
+		} finally {
+			stagingPool.shutdownNow();
+		}
 	}
 	
-	private Task generateTask(String newFile) {
+	/*
+	 * undo the staging of the files of tasks that were not created; returns the
+	 * paths of the files to upload again
+	 */
+	static List<Path> unstage(List<Task> tasks, Path uploadDir, boolean move) {
+		List<Path> sources = Lists.newArrayListWithCapacity(tasks.size());
+		for (Task task : tasks) {
+			Path staged = Paths.get(task.getResource());
+			Path source = uploadDir.resolve(staged.getFileName());
+			try {
+				if (move) {
+					stageFile(staged, uploadDir, true);
+				} else {
+					Files.deleteIfExists(staged);
+				}
+				sources.add(source);
+			} catch (IOException e) {
+				logger.error("Failed to put back " + staged + ". " + e.getMessage());
+				sources.add(staged);
+			}
+		}
+		return sources;
+	}
+	
+	/*
+	 * stage a file into the staging directory and return its staged path. The
+	 * file is linked, or moved when move is true, within a file system and
+	 * copied across file systems.
+	 */
+	static Path stageFile(Path source, Path stagingDir, boolean move) throws IOException {
+		Path destPath = stagingDir.resolve(source.getFileName());
+		if (move) {
+			try {
+				Files.move(source, destPath, StandardCopyOption.ATOMIC_MOVE);
+				logger.info("Moved " + source + " to " + destPath);
+				return destPath;
+			} catch (AtomicMoveNotSupportedException e) {
+				copyFile(source, destPath);
+				Files.delete(source);
+				return destPath;
+			}
+		}
+		Files.deleteIfExists(destPath);
+		try {
+			Files.createLink(destPath, source);
+			logger.info("Linked " + source + " to " + destPath);
+		} catch (IOException | UnsupportedOperationException e) {
+			// another file system, or one without hard links
+			copyFile(source, destPath);
+		}
+		return destPath;
+	}
+	
+	/*
+	 * copy the file channel to channel so the kernel can transfer the content
+	 * without user space buffers
+	 */
+	private static void copyFile(Path source, Path destPath) throws IOException {
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(destPath, StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long size = in.size();
+			long position = 0L;
+			while (position < size) {
+				position += in.transferTo(position, size - position, out);
+			}
+		}
+		logger.info("Copied " + source + " to " + destPath);
+	}
+	
+	static Task generateTask(String newFile) {
 		Task task = new Task();
 		task.setResource(newFile);
 		task.setStatus(Status.QUEUED);
+		task.setProgress(0);
+		task.setTaskType(TaskType.PROCESS_UPLOADED_NETWORK);
 		
 		return task;
 	}
 	
-	private String resolveFilename(Path sourcePath) {
-		StringBuilder sb = new StringBuilder();
-		sb.append(NETWORK_UPLOAD_PATH);
-		sb.append(sourcePath.getFileName());
-		return sb.toString();
-	}
-	
 class LocalDataService extends OrientDBNoTxConnectionService {
 		
 		LocalDataService() {
@@ -95,34 +228,33 @@ class LocalDataService extends OrientDBNoTxConnectionService {
 			
 		}
 		
-		public Task createTask(final Task newTask) throws IllegalArgumentException, NdexException
+		/*
+		 * create the tasks in a single transaction; returns the created tasks
+		 */
+		public List<Task> createTasks(final List<Task> newTasks) throws IllegalArgumentException, NdexException
 	    {
-	        Preconditions.checkArgument(null!= newTask,"The task to create is empty.");
+	        Preconditions.checkArgument(null!= newTasks,"The tasks to create are empty.");
 
 	        try
 	        {
 	            setupDatabase();
+	            this._ndexDatabase.begin();
 	            
-	            final Task task = new Task();
-	            task.setStatus(newTask.getStatus());
-	            task.setResource(newTask.getResource());
-	            task.setProgress(0);
-	            task.setTaskType(TaskType.PROCESS_UPLOADED_NETWORK);
-
 	            TaskDAO dao = new TaskDAO(this._ndexDatabase);
-	            UUID taskId = dao.createTask(this.getLoggedInUser(), newTask);
+	            for (Task newTask : newTasks) {
+	            	UUID taskId = dao.createTask(this.getLoggedInUser(), newTask);
+	            	newTask.setExternalId(taskId);
+	            }
 	            this._ndexDatabase.commit();
-	            logger.info("file upload task for " + task.getResource() +" created");
-
-	            newTask.setExternalId(taskId);
+	            logger.info(newTasks.size() + " file upload tasks created");
 	            
-	            return newTask;
+	            return newTasks;
 	        }
 	        catch (Exception e)
 	        {
-	            logger.error("Failed to create a task : " , e);
+	            logger.error("Failed to create the tasks : " , e);
 	            this._ndexDatabase.rollback(); 
-	            throw new NdexException("Failed to create a task.");
+	            throw new NdexException("Failed to create the tasks.");
 	        }
 	        finally
 	        {
@@ -1,70 +1,307 @@
 package org.ndexbio.task.utility;
 
+import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.ndexbio.common.access.NdexAOrientDBConnectionPool;
 import org.ndexbio.common.access.NdexDatabase;
 import org.ndexbio.model.exceptions.NdexException;
 import org.ndexbio.task.Configuration;
+import org.ndexbio.task.WriteRateGovernor;
 import org.ndexbio.task.parsingengines.SifParser;
 import org.ndexbio.task.parsingengines.XbelParser;
 import org.ndexbio.task.parsingengines.XgmmlParser;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+
+/*
+ * Loads the network files of a directory into the database, one file at a
+ * time, stopping at the first file that fails to load.
+ * With --bulk[=N] the files are loaded by N workers (default: the number of
+ * processors) for seeding an instance while the NDEx web application is not
+ * running: the connection pool holds one connection per worker, the write
+ * ahead log and the transaction log of OrientDB are disabled for the duration
+ * of the load, a file that fails to load is reported and the others are still
+ * loaded, and the run ends with a summary of the throughput and the failures.
+ * The database is not recoverable if the process dies during a bulk load.
+ */
 public class NetworkFileLoader {
 
+	private static final Set<String> SUPPORTED_TYPES = ImmutableSet.of("sif", "xbel", "xgmml");
+	private static final String BULK_OPTION = "--bulk";
+
+	/*
+	 * loads a network file; returns the number of edges loaded
+	 */
+	interface FileLoad {
+		long load(Path path) throws Exception;
+	}
+
+	/*
+	 * the outcome of a bulk load
+	 */
+	static final class LoadSummary {
+		private final int fileCount;
+		private final long edgeCount;
+		private final Map<Path, String> failures;
+		private final long elapsedNanos;
+
+		LoadSummary(int fileCount, long edgeCount, Map<Path, String> failures, long elapsedNanos) {
+			this.fileCount = fileCount;
+			this.edgeCount = edgeCount;
+			this.failures = failures;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		int getLoadedCount() {
+			return this.fileCount - this.failures.size();
+		}
+
+		long getEdgeCount() {
+			return this.edgeCount;
+		}
+
+		Map<Path, String> getFailures() {
+			return this.failures;
+		}
+
+		double getFilesPerSecond() {
+			return perSecond(this.getLoadedCount());
+		}
+
+		double getEdgesPerSecond() {
+			return perSecond(this.edgeCount);
+		}
+
+		private double perSecond(long count) {
+			return this.elapsedNanos <= 0 ? 0.0 : count * 1.0e9 / this.elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder summary = new StringBuilder(String.format(
+					"%d of %d files loaded with %d edges in %.1f s: %.2f files/s, %.0f edges/s, %d failed",
+					this.getLoadedCount(), this.fileCount, this.edgeCount, this.elapsedNanos / 1.0e9,
+					this.getFilesPerSecond(), this.getEdgesPerSecond(), this.failures.size()));
+			for (Map.Entry<Path, String> failure : this.failures.entrySet()) {
+				summary.append(System.lineSeparator()).append("  failed: ").append(failure.getKey())
+						.append(": ").append(failure.getValue());
+			}
+			return summary.toString();
+		}
+	}
+
 	public static void main(String[] args) throws NdexException {
 
-		if ( args.length != 3) {
-			System.out.println("Usage: networkFileLoader <accountName> <fileType> <dir>");
+		int workers = 0;
+		List<String> arguments = Lists.newArrayList();
+		for (String arg : args) {
+			if (arg.startsWith(BULK_OPTION)) {
+				workers = bulkWorkers(arg);
+			} else {
+				arguments.add(arg);
+			}
+		}
+		if ( arguments.size() != 3 || workers < 0) {
+			System.out.println("Usage: networkFileLoader [--bulk[=<workers>]] <accountName> <fileType> <dir>");
 			System.out.println("       Supported file types are: sif, xbel, and xgmml.");
+			System.out.println("       --bulk loads the files in parallel while NDEx is offline.");
+			return;
 		}
-	
+		final String account = arguments.get(0);
+		final String type = arguments.get(1).toLowerCase();
+		// the parsers are only loaded for the file type given
+		if ( !SUPPORTED_TYPES.contains(type)) {
+			System.out.println ("Error: " + type + " is not a supported file type of this loader.");
+			System.exit(-1);
+		}
+
     	// read configuration
     	Configuration configuration = Configuration.getInstance();
-    	
-    	//and initialize the db connections
+
+    	// the massive insert settings only apply to the storage opened after them
+    	Map<OGlobalConfiguration, Object> replacedSettings = workers > 0
+    			? applyMassiveInsertSettings() : null;
+
+    	//and initialize the db connections, the NdexDatabase holds one of them
     	NdexAOrientDBConnectionPool.createOrientDBConnectionPool(
     			configuration.getDBURL(),
     			configuration.getDBUser(),
-    			configuration.getDBPasswd(), 1);
-    	
-    	
-		NdexDatabase db = new NdexDatabase(configuration.getHostURI());
-		String type = args[1].toLowerCase();
-		
-		try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(
-				Paths.get(args[2]))) 
-		{
-            for (Path path : directoryStream) {
-              System.out.println("Processing file " +path.toString());
-              
-      			if ( type.equals("xbel") ) {
-      				XbelParser parser = new XbelParser(path.toString(), args[0], db);
-      				parser.parseFile();
-      			} else if ( type.equals("sif")) {
-      				SifParser parser2 = new SifParser(path.toString(),args[0], db, 
-      						com.google.common.io.Files.getNameWithoutExtension(path.toString()));
-      				parser2.parseFile();
-      			} else if ( type.equals("xgmml")) {
-      				XgmmlParser parser = new XgmmlParser(path.toString(), args[0], db, path.toString());
-      				parser.parseFile();
-      			} else {
-      				System.out.println ("Error: " + type + " is not a supported file type of this loader.");
-      				System.exit(-1);
-      			}
-      		
-      			System.out.println("file upload for  " + path.toString() +" finished.");
-            }
+    			configuration.getDBPasswd(),
+    			workers > 0 ? workers + 1 : configuration.getSettings().getLoaderPoolSize());
+    	// the loader writes with the bulk budget, an offline bulk load is not paced
+    	if (workers == 0) {
+    		WriteRateGovernor.INSTANCE.configure(configuration.getSettings());
+    	}
+
+
+		final NdexDatabase db = new NdexDatabase(configuration.getHostURI());
+		FileLoad load = new FileLoad() {
+			@Override
+			public long load(Path path) throws Exception {
+				return loadFile(type, path, account, db);
+			}
+		};
+
+		int status = 0;
+		try {
+			List<Path> files = listFiles(Paths.get(arguments.get(2)));
+			if (workers > 0) {
+				LoadSummary summary = loadFiles(files, workers, load);
+				System.out.println(summary);
+				status = summary.getFailures().isEmpty() ? 0 : 1;
+			} else {
+				for (Path path : files) {
+					System.out.println("Processing file " +path.toString());
+					load.load(path);
+					System.out.println("file upload for  " + path.toString() +" finished.");
+				}
+			}
         } catch (Exception e) {
         	System.out.println( "Error:  " + e.getMessage());
-        	System.exit(-1);
+        	status = -1;
+        } finally {
+        	db.close();
+        	NdexAOrientDBConnectionPool.close();
+        	if (replacedSettings != null) {
+        		restoreSettings(replacedSettings);
+        	}
         }
-		
-		db.close();
-		NdexAOrientDBConnectionPool.close();
+		if (status != 0) {
+			System.exit(status);
+		}
+	}
+
+	/*
+	 * the number of workers of a --bulk[=N] option, -1 if it is invalid
+	 */
+	static int bulkWorkers(String option) {
+		if (option.equals(BULK_OPTION)) {
+			return Runtime.getRuntime().availableProcessors();
+		}
+		if (!option.startsWith(BULK_OPTION + "=")) {
+			return -1;
+		}
+		try {
+			int workers = Integer.parseInt(option.substring(BULK_OPTION.length() + 1));
+			return workers > 0 ? workers : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static List<Path> listFiles(Path dir) throws IOException {
+		List<Path> files = Lists.newArrayList();
+		try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(dir)) {
+			for (Path path : directoryStream) {
+				if (Files.isRegularFile(path)) {
+					files.add(path);
+				}
+			}
+		}
+		return files;
+	}
+
+	private static long loadFile(String type, Path path, String account, NdexDatabase db) throws Exception {
+		if ( type.equals("xbel") ) {
+			XbelParser parser = new XbelParser(path.toString(), account, db);
+			parser.parseFile();
+			return parser.getEdgeCount();
+		} else if ( type.equals("sif")) {
+			SifParser parser = new SifParser(path.toString(), account, db,
+					com.google.common.io.Files.getNameWithoutExtension(path.toString()));
+			parser.parseFile();
+			return parser.getEdgeCount();
+		} else if ( type.equals("xgmml")) {
+			XgmmlParser parser = new XgmmlParser(path.toString(), account, db, path.toString());
+			parser.parseFile();
+			return parser.getEdgeCount();
+		}
+		throw new NdexException(type + " is not a supported file type of this loader.");
+	}
+
+	/*
+	 * load the files with a pool of workers; a file failing to load is
+	 * recorded in the summary and does not stop the others
+	 */
+	static LoadSummary loadFiles(List<Path> files, int workers, final FileLoad load) throws InterruptedException {
+		Preconditions.checkArgument(workers > 0, "The number of workers must be > 0");
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		CompletionService<Long> loaded = new ExecutorCompletionService<>(pool);
+		Map<Future<Long>, Path> pending = Maps.newHashMap();
+		Map<Path, String> failures = Maps.newTreeMap();
+		long edgeCount = 0L;
+		try {
+			for (final Path path : files) {
+				pending.put(loaded.submit(new Callable<Long>() {
+					@Override
+					public Long call() throws Exception {
+						return load.load(path);
+					}
+				}), path);
+			}
+			for (int i = 0; i < files.size(); i++) {
+				Future<Long> result = loaded.take();
+				Path path = pending.remove(result);
+				try {
+					long edges = result.get();
+					edgeCount += edges;
+					System.out.println("Loaded " + path + " with " + edges + " edges ("
+							+ (i + 1) + " of " + files.size() + ")");
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					failures.put(path, cause.getClass().getSimpleName() + ": " + cause.getMessage());
+					System.out.println("Failed to load " + path + ": " + cause.getMessage());
+				}
+			}
+		} finally {
+			// the workers are not interrupted, an interrupt closes the file channels of the storage
+			for (Future<Long> result : pending.keySet()) {
+				result.cancel(false);
+			}
+			pool.shutdown();
+		}
+		pool.awaitTermination(1, TimeUnit.MINUTES);
+		return new LoadSummary(files.size(), edgeCount, failures, System.nanoTime() - start);
+	}
+
+	/*
+	 * disable the write ahead log and the transaction log; returns the
+	 * settings replaced
+	 */
+	private static Map<OGlobalConfiguration, Object> applyMassiveInsertSettings() {
+		Map<OGlobalConfiguration, Object> replaced = Maps.newEnumMap(OGlobalConfiguration.class);
+		for (OGlobalConfiguration setting : new OGlobalConfiguration[] {
+				OGlobalConfiguration.USE_WAL, OGlobalConfiguration.TX_USE_LOG }) {
+			replaced.put(setting, setting.getValue());
+			setting.setValue(Boolean.FALSE);
+		}
+		return replaced;
+	}
+
+	private static void restoreSettings(Map<OGlobalConfiguration, Object> settings) {
+		for (Map.Entry<OGlobalConfiguration, Object> setting : settings.entrySet()) {
+			setting.getKey().setValue(setting.getValue());
+		}
 	}
 
 }
@@ -28,6 +28,7 @@ import org.ndexbio.model.object.network.Edge;
 import org.ndexbio.model.object.network.Namespace;
 import org.ndexbio.model.object.network.Network;
 import org.ndexbio.model.object.network.Node;
+import org.ndexbio.task.TaskTrace;
 import org.ndexbio.xgmml.parser.handler.HandleGraph;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -64,9 +65,15 @@ public class XGMMLNetworkExporter {
 
 	public void exportNetwork(UUID networkId, OutputStream output) throws NdexException, 
 		TransformerException, ClassCastException, SAXException, IOException {
-		Network network = dao.getNetworkById(networkId);
+		Network network;
+		try (TaskTrace.Span span = TaskTrace.span("xgmml.export.fetchNetwork")) {
+			network = dao.getNetworkById(networkId);
+		}
 		
-		Document doc = buildXMLDocument(network);
+		Document doc;
+		try (TaskTrace.Span span = TaskTrace.span("xgmml.export.buildDocument")) {
+			doc = buildXMLDocument(network);
+		}
 		
 	/*	
 
@@ -87,7 +94,9 @@ public class XGMMLNetworkExporter {
 		transformer.setOutputProperty(OutputKeys.INDENT, "yes");
 		DOMSource source = new DOMSource(doc);
 		StreamResult result = new StreamResult(output);
-		transformer.transform(source, result); 
+		try (TaskTrace.Span span = TaskTrace.span("xgmml.export.write")) {
+			transformer.transform(source, result); 
+		}
 	}
 	
 	private Document buildXMLDocument(Network network) throws SAXException, IOException {
@@ -0,0 +1,29 @@
+package org.ndexbio.xbel;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
+/*
+ * Holds the JAXBContext of the XBEL model (org.ndexbio.xbel.model). Building
+ * the context introspects every model class and dominates the start of an XBEL
+ * import or export, so it is built once per JVM, by the first XBEL task, and
+ * shared by the parsers and exporters; a JAXBContext is thread safe. A JVM
+ * that never processes an XBEL file never loads JAXB.
+ */
+public final class XbelJAXBContext {
+
+	private static final String MODEL_PACKAGE = "org.ndexbio.xbel.model";
+
+	private static JAXBContext context;
+
+	private XbelJAXBContext() {
+	}
+
+	public static synchronized JAXBContext getInstance() throws JAXBException {
+		if (context == null) {
+			context = JAXBContext.newInstance(MODEL_PACKAGE);
+		}
+		return context;
+	}
+
+}
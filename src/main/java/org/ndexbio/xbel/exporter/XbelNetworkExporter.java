@@ -33,12 +33,15 @@ import org.ndexbio.model.object.network.ReifiedEdgeTerm;
 import org.ndexbio.model.object.network.Support;
 import org.ndexbio.model.object.network.Term;
 import org.ndexbio.model.object.network.BaseTerm;
+import org.ndexbio.task.TaskResourceUsage;
+import org.ndexbio.task.TaskTrace;
 import org.ndexbio.task.audit.NdexAuditService;
 import org.ndexbio.task.audit.NdexAuditServiceFactory;
 import org.ndexbio.task.audit.NdexAuditUtils;
 import org.ndexbio.task.audit.network.NdexObjectAuditor;
 import org.ndexbio.task.parsingengines.XbelParser;
 import org.ndexbio.task.service.NdexTaskModelService;
+import org.ndexbio.xbel.XbelJAXBContext;
 import org.ndexbio.xbel.model.AnnotationDefinitionGroup;
 import org.ndexbio.xbel.model.AnnotationGroup;
 import org.ndexbio.xbel.model.Annotation;
@@ -172,19 +175,27 @@ public class XbelNetworkExporter {
 		xm.open();
 
 		// export the header
-		this.createHeader();
+		try (TaskTrace.Span span = TaskTrace.span("xbel.export.header")) {
+			this.createHeader();
+		}
 		// export the namespaces
-		Iterable<Namespace> namespaces = this.modelService
-				.getNamespacesByNetworkId(networkId);
-		this.addNamespaceGroup(namespaces);
+		try (TaskTrace.Span span = TaskTrace.span("xbel.export.namespaces")) {
+			Iterable<Namespace> namespaces = this.modelService
+					.getNamespacesByNetworkId(networkId);
+			this.addNamespaceGroup(namespaces);
+		}
 		// process the annotation definition group
-				this.processAnnotationDefinitionGroup();
+		try (TaskTrace.Span span = TaskTrace.span("xbel.export.annotationDefinitions")) {
+			this.processAnnotationDefinitionGroup();
+		}
 		/*
 		 * process the network in segments to manage memory requirements each
 		 * citation within the network is treated as a subnetwork and represnts
 		 * an outer level statement group
 		 */
-		this.processCitationSubnetworks();
+		try (TaskTrace.Span span = TaskTrace.span("xbel.export.citations")) {
+			this.processCitationSubnetworks();
+		}
 		
 		// output the observed metrics
 		this.auditService.registerComment(this.edgeAuditor
@@ -279,8 +290,10 @@ public class XbelNetworkExporter {
 	  try {	
 		for (org.ndexbio.model.object.network.Citation citation : modelCitations) {
 
-			this.subNetwork = this.modelService.getSubnetworkByCitationId(
-					this.networkId, citation.getId());
+			try (TaskTrace.Span span = TaskTrace.span("xbel.export.fetchSubnetwork")) {
+				this.subNetwork = this.modelService.getSubnetworkByCitationId(
+						this.networkId, citation.getId());
+			}
 			if (null == subNetwork) {
 				continue;
 			}
@@ -298,10 +311,15 @@ public class XbelNetworkExporter {
 			this.functionTermAuditor.registerJdexIds(subNetwork.getFunctionTerms());
 			this.reifiedTermAuditor.registerJdexIds(subNetwork.getReifiedEdgeTerms());
 			this.supportAuditor.registerJdexIds(subNetwork.getSupports());
-			StatementGroup sg = this.processCitationStatementGroup(citation);
+			StatementGroup sg;
+			try (TaskTrace.Span span = TaskTrace.span("xbel.export.buildStatementGroup")) {
+				sg = this.processCitationStatementGroup(citation);
+			}
 	//		this.processCitationSupports(citation);
 
-			xm.writeStatementGroup(sg);
+			try (TaskTrace.Span span = TaskTrace.span("xbel.export.marshal")) {
+				xm.writeStatementGroup(sg);
+			}
 
 		}
 		
@@ -945,7 +963,7 @@ public class XbelNetworkExporter {
 
 			try {
 				
-				this.context = JAXBContext.newInstance(Document.class);
+				this.context = XbelJAXBContext.getInstance();
 				this.marshaller = context.createMarshaller();
 				this.marshaller.setProperty(Marshaller.JAXB_FRAGMENT,
 						Boolean.TRUE);
@@ -968,8 +986,8 @@ public class XbelNetworkExporter {
 						"javax.xml.stream.isRepairingNamespaces", Boolean.TRUE);
 				
 				this.writer = xmlFactory
-						.createXMLStreamWriter(new FileOutputStream(
-								this.exportedFilename));
+						.createXMLStreamWriter(TaskResourceUsage.countWrites(new FileOutputStream(
+								this.exportedFilename)));
 				 this.writer.setDefaultNamespace("http://belframework.org/schema/1.0/xbel");
 				this.writer.setPrefix("bel",
 						"http://belframework.org/schema/1.0/xbel");
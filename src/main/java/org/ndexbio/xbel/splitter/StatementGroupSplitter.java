@@ -11,6 +11,12 @@ import javax.xml.bind.JAXBException;
 
 import org.ndexbio.common.persistence.orientdb.NdexPersistenceService;
 import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.task.BatchCounter;
+import org.ndexbio.task.TaskExecutionContext;
+import org.ndexbio.task.TaskResourceUsage;
+import org.ndexbio.task.TaskTrace;
+import org.ndexbio.task.WriteRateGovernor;
+import org.ndexbio.task.metrics.TaskMetrics;
 import org.ndexbio.task.parsingengines.XbelParser;
 import org.ndexbio.xbel.model.Annotation;
 import org.ndexbio.xbel.model.AnnotationGroup;
@@ -40,6 +46,7 @@ public class StatementGroupSplitter extends XBelSplitter {
 	private NdexPersistenceService networkService;
 	
 	private int counter;
+	private final BatchCounter batchCounter = new BatchCounter();
 
 	public StatementGroupSplitter(JAXBContext jaxbContext,
 			NdexPersistenceService networkService) {
@@ -230,9 +237,20 @@ public class StatementGroupSplitter extends XBelSplitter {
 		for (Statement statement : statementList) {
 			processStatement(statement, supportId, citationId, annotations, 0, name, comment);
 			counter ++;
-			if ( counter %2000 == 0 ) {
+			if ( this.batchCounter.increment() ) {
+				TaskExecutionContext.checkCancelled();
 				logger.info("processed " + counter + " edges so far. commit this batch.");
-				this.networkService.commit();
+				WriteRateGovernor.INSTANCE.awaitPermit(this.batchCounter.getCompletedBatchSize());
+				long commitStart = System.nanoTime();
+				try (TaskTrace.Span span = TaskTrace.span("xbel.commit")) {
+					this.networkService.commit();
+				}
+				long commitNanos = System.nanoTime() - commitStart;
+				WriteRateGovernor.INSTANCE.commitCompleted(commitNanos);
+				TaskMetrics.INSTANCE.recordCommit("XBEL", commitNanos);
+				TaskMetrics.INSTANCE.recordParsedElements("XBEL", this.batchCounter.getCompletedBatchSize());
+				TaskResourceUsage.recordCommit();
+				TaskResourceUsage.recordElements(this.batchCounter.getCompletedBatchSize());
 			}
 		}
 	}
@@ -9,6 +9,7 @@ import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.UnmarshallerHandler;
 
 import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.task.TaskTrace;
 import org.xml.sax.Attributes;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
@@ -141,8 +142,7 @@ public abstract class XBelSplitter extends XMLFilterImpl {
 				setContentHandler(new DefaultHandler());
 
 				// then retrieve the fully unmarshalled object
-				try {
-
+				try (TaskTrace.Span span = TaskTrace.span("xbel." + this.xmlElement)) {
 					 process();
 				} catch (JAXBException | NdexException | ExecutionException je) {
 					// error was found during the unmarshalling.
@@ -47,6 +47,11 @@ import org.ndexbio.model.object.network.Citation;
 import org.ndexbio.model.object.network.NetworkSummary;
 import org.ndexbio.model.object.network.Namespace;
 import org.ndexbio.model.object.network.Support;
+import org.ndexbio.task.TaskExecutionContext;
+import org.ndexbio.task.TaskResourceUsage;
+import org.ndexbio.task.TaskStatusService;
+import org.ndexbio.task.WriteRateGovernor;
+import org.ndexbio.task.metrics.TaskMetrics;
 import org.ndexbio.xgmml.parser.ParseState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,6 +67,9 @@ public class ReadDataManager {
 	private String ownerName;
 	private String networkTitle;
 	private String networkDesc;
+	
+	// number of edges inserted, used to check for cancellation in batches
+	private int edgeCounter;
 
 	protected final static String XLINK = "http://www.w3.org/1999/xlink";
 	
@@ -391,6 +399,14 @@ public class ReadDataManager {
 	}
 	
 	public void insertCurrentEdge () throws NdexException, ExecutionException {
+		if ( ++this.edgeCounter % 2000 == 0 ) {
+			TaskExecutionContext.checkCancelled();
+			TaskMetrics.INSTANCE.recordParsedElements("XGMML", 2000);
+			TaskResourceUsage.recordElements(2000);
+			TaskStatusService.reportUploadProgress();
+			// the xgmml edges are written as they are parsed, pace them by the element
+			WriteRateGovernor.INSTANCE.awaitPermit(2000);
+		}
 		Long subjectNodeId = this.networkService.findOrCreateNodeIdByExternalId(
 				                 this.currentXGMMLEdge.getSubjectId(), null);
 		Long objectNodeId  = this.networkService.findOrCreateNodeIdByExternalId(
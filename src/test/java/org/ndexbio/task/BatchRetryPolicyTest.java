@@ -0,0 +1,56 @@
+package org.ndexbio.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.ndexbio.task.metrics.TaskMetrics;
+
+public class BatchRetryPolicyTest {
+
+	@Test
+	public void delayDoublesWithJitterUpToTheCap() {
+		BatchRetryPolicy policy = new BatchRetryPolicy(5, 200L);
+		Random random = new Random(42L);
+		for (int i = 0; i < 100; i++) {
+			long first = policy.delayMillis(1, random);
+			assertTrue(first >= 100L && first <= 200L);
+			long third = policy.delayMillis(3, random);
+			assertTrue(third >= 400L && third <= 800L);
+			long late = policy.delayMillis(40, random);
+			assertTrue(late >= BatchRetryPolicy.MAX_DELAY_MILLIS / 2 && late <= BatchRetryPolicy.MAX_DELAY_MILLIS);
+		}
+	}
+
+	@Test
+	public void retriesAreBoundedByTheAttempts() {
+		BatchRetryPolicy policy = new BatchRetryPolicy(2, 200L);
+		assertTrue(policy.allows(1));
+		assertTrue(policy.allows(2));
+		assertFalse(policy.allows(3));
+		assertFalse(new BatchRetryPolicy(0, 200L).allows(1));
+	}
+
+	@Test
+	public void invalidSettingsAreRejected() {
+		try {
+			new BatchRetryPolicy(3, 0L);
+			fail("a base delay of 0 must be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void retriesAreCounted() {
+		long before = TaskMetrics.INSTANCE.getBatchRetries().containsKey("SIF")
+				? TaskMetrics.INSTANCE.getBatchRetries().get("SIF") : 0L;
+		TaskMetrics.INSTANCE.recordBatchRetry("SIF");
+		assertEquals(before + 1, TaskMetrics.INSTANCE.getBatchRetries().get("SIF").longValue());
+	}
+
+}
@@ -0,0 +1,249 @@
+package org.ndexbio.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ndexbio.model.exceptions.NdexException;
+
+public class ExportArtifactCacheTest {
+
+	private static final ExportArtifactCache cache = ExportArtifactCache.INSTANCE;
+
+	/*
+	 * writes the content into the artifact and counts the exports
+	 */
+	private static class CountingExporter implements ExportArtifactCache.Exporter {
+		final AtomicInteger runs = new AtomicInteger();
+		final String content;
+
+		CountingExporter(String content) {
+			this.content = content;
+		}
+
+		@Override
+		public void export(File target) throws Exception {
+			this.runs.incrementAndGet();
+			Files.write(target.toPath(), this.content.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/*
+	 * a network modified by the tests
+	 */
+	private static class MutableVersion implements ExportArtifactCache.NetworkVersion {
+		volatile long modificationTime;
+
+		MutableVersion(long modificationTime) {
+			this.modificationTime = modificationTime;
+		}
+
+		@Override
+		public long getModificationTime() {
+			return this.modificationTime;
+		}
+	}
+
+	private File directory;
+	private File exports;
+
+	@Before
+	public void createDirectories() throws IOException {
+		this.directory = Files.createTempDirectory("export-cache").toFile();
+		this.exports = Files.createTempDirectory("exports").toFile();
+		cache.configure(this.directory, 1024L);
+	}
+
+	@After
+	public void deleteDirectories() {
+		for (File dir : new File[] {this.directory, this.exports}) {
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	private static ExportArtifactCache.NetworkVersion version(long modificationTime) {
+		return new MutableVersion(modificationTime);
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+	private static void writeArtifact(File file, int size, long lastModified) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(size);
+		}
+		file.setLastModified(lastModified);
+	}
+
+	@Test
+	public void unchangedNetworkIsServedFromTheCache() throws Exception {
+		UUID networkId = UUID.randomUUID();
+		CountingExporter exporter = new CountingExporter("<graph/>");
+		File first = new File(this.exports, "first.xgmml");
+		File second = new File(this.exports, "second.xgmml");
+		assertTrue(cache.export(networkId, version(1000L), "xgmml", first, exporter));
+		assertFalse(cache.export(networkId, version(1000L), "xgmml", second, exporter));
+		assertEquals(1, exporter.runs.get());
+		assertEquals("<graph/>", read(second));
+
+		// a modified network or another format is exported again
+		assertTrue(cache.export(networkId, version(2000L), "xgmml", second, exporter));
+		assertTrue(cache.export(networkId, version(2000L), "xbel", second, exporter));
+		assertEquals(3, exporter.runs.get());
+	}
+
+	@Test
+	public void concurrentExportsAreCoalesced() throws Exception {
+		final UUID networkId = UUID.randomUUID();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch proceed = new CountDownLatch(1);
+		final AtomicInteger runs = new AtomicInteger();
+		final ExportArtifactCache.Exporter slowExporter = new ExportArtifactCache.Exporter() {
+			@Override
+			public void export(File target) throws Exception {
+				runs.incrementAndGet();
+				started.countDown();
+				proceed.await();
+				Files.write(target.toPath(), "<document/>".getBytes(StandardCharsets.UTF_8));
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<Boolean> leader = executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					return cache.export(networkId, version(1L), "xbel", new File(exports, "leader.xbel"), slowExporter);
+				}
+			});
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			Future<Boolean> follower = executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					return cache.export(networkId, version(1L), "xbel", new File(exports, "follower.xbel"), slowExporter);
+				}
+			});
+			// let the follower find the running export before it completes
+			Thread.sleep(200L);
+			proceed.countDown();
+			assertTrue(leader.get(5, TimeUnit.SECONDS));
+			assertFalse(follower.get(5, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(1, runs.get());
+		assertEquals("<document/>", read(new File(this.exports, "follower.xbel")));
+	}
+
+	@Test
+	public void networkModifiedDuringItsExportIsExportedAgain() throws Exception {
+		UUID networkId = UUID.randomUUID();
+		final MutableVersion version = new MutableVersion(1000L);
+		final AtomicInteger runs = new AtomicInteger();
+		File first = new File(this.exports, "first.xgmml");
+		assertTrue(cache.export(networkId, version, "xgmml", first, new ExportArtifactCache.Exporter() {
+			@Override
+			public void export(File target) throws Exception {
+				Files.write(target.toPath(), ("<graph version=\"" + version.modificationTime + "\"/>")
+						.getBytes(StandardCharsets.UTF_8));
+				if (runs.incrementAndGet() == 1) {
+					version.modificationTime = 2000L;
+				}
+			}
+		}));
+		// the torn first export is discarded, the task gets the second one
+		assertEquals(2, runs.get());
+		assertEquals("<graph version=\"2000\"/>", read(first));
+		assertEquals(1, this.directory.listFiles().length);
+	}
+
+	@Test
+	public void networkModifiedDuringEveryExportFailsTheTask() throws Exception {
+		UUID networkId = UUID.randomUUID();
+		final MutableVersion version = new MutableVersion(1000L);
+		final AtomicInteger runs = new AtomicInteger();
+		File destination = new File(this.exports, "modified.xgmml");
+		try {
+			cache.export(networkId, version, "xgmml", destination, new ExportArtifactCache.Exporter() {
+				@Override
+				public void export(File target) throws Exception {
+					Files.write(target.toPath(), "<graph/>".getBytes(StandardCharsets.UTF_8));
+					runs.incrementAndGet();
+					version.modificationTime++;
+				}
+			});
+			fail("a network modified during every export fails the task");
+		} catch (NdexException e) {
+			assertTrue(e.getMessage().contains("was modified during each of its"));
+		}
+		assertEquals(ExportArtifactCache.EXPORT_ATTEMPTS, runs.get());
+		assertFalse(destination.exists());
+		assertEquals(0, this.directory.listFiles().length);
+	}
+
+	@Test
+	public void failedExportLeavesNoArtifact() throws Exception {
+		UUID networkId = UUID.randomUUID();
+		try {
+			cache.export(networkId, version(1L), "xgmml", new File(this.exports, "failed.xgmml"),
+					new ExportArtifactCache.Exporter() {
+						@Override
+						public void export(File target) throws Exception {
+							Files.write(target.toPath(), new byte[10]);
+							throw new IOException("disk full");
+						}
+					});
+			fail("the export failure is reported");
+		} catch (IOException e) {
+			assertEquals("disk full", e.getMessage());
+		}
+		assertEquals(0, this.directory.listFiles().length);
+		CountingExporter exporter = new CountingExporter("<graph/>");
+		assertTrue(cache.export(networkId, version(1L), "xgmml", new File(this.exports, "retry.xgmml"), exporter));
+	}
+
+	@Test
+	public void leastRecentlyUsedArtifactsAreEvicted() throws Exception {
+		long now = System.currentTimeMillis();
+		File oldest = new File(this.directory, "a.1.xgmml");
+		File recent = new File(this.directory, "b.1.xgmml");
+		File newest = new File(this.directory, "c.1.xgmml");
+		writeArtifact(oldest, 400, now - 30000L);
+		writeArtifact(recent, 400, now - 20000L);
+		writeArtifact(newest, 400, now - 10000L);
+		File abandoned = new File(this.directory, "d.1.xgmml." + UUID.randomUUID() + ExportArtifactCache.TEMP_SUFFIX);
+		File running = new File(this.directory, "e.1.xgmml." + UUID.randomUUID() + ExportArtifactCache.TEMP_SUFFIX);
+		writeArtifact(abandoned, 100, now - ExportArtifactCache.ABANDONED_TEMP_MILLIS - 1000L);
+		writeArtifact(running, 100, now);
+
+		assertEquals(500L, cache.evict(now));
+		assertFalse(oldest.exists());
+		assertTrue(recent.exists());
+		assertTrue(newest.exists());
+		assertFalse(abandoned.exists());
+		assertTrue(running.exists());
+		assertEquals(0L, cache.evict(now));
+	}
+
+}
@@ -0,0 +1,167 @@
+package org.ndexbio.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+
+import com.google.common.collect.ImmutableMap;
+
+public class MemoryAdmissionTest {
+
+	private static final long MB = 1024L * 1024L;
+
+	/*
+	 * a heap of 1000 MB whose use is set by the test
+	 */
+	private static class FixedHeap implements MemoryAdmission.HeapProbe {
+		long used = 100 * MB;
+		long peak = 100 * MB;
+
+		@Override
+		public long getMaxBytes() { return 1000 * MB; }
+
+		@Override
+		public long getUsedBytes() { return this.used; }
+
+		@Override
+		public long getPeakUsedBytes() { return this.peak; }
+
+		@Override
+		public void resetPeak() { this.peak = this.used; }
+	}
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		this.directory = Files.createTempDirectory("memory-admission").toFile();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (File file : this.directory.listFiles()) {
+			file.delete();
+		}
+		this.directory.delete();
+	}
+
+	private Task uploadTask(String fileName, long size) throws IOException {
+		File file = new File(this.directory, fileName);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(size);
+		}
+		Task task = new Task();
+		task.setTaskType(TaskType.PROCESS_UPLOADED_NETWORK);
+		task.setResource(file.getPath());
+		return task;
+	}
+
+	@Test
+	public void uploadWaitsForHeadroom() throws IOException {
+		MemoryAdmission admission = new MemoryAdmission(new FixedHeap(), 70, null);
+		// 5 MB of XLSX at 60 heap bytes per byte plus the base footprint: 316 MB
+		Task first = this.uploadTask("first.xlsx", 5 * MB);
+		Task second = this.uploadTask("second.xlsx", 5 * MB);
+		assertEquals(316 * MB, admission.estimateFootprint(first));
+		assertTrue(admission.tryAdmit(first));
+		// 700 MB budget - 316 MB reserved leaves room for one more
+		assertTrue(admission.tryAdmit(second));
+		assertFalse(admission.tryAdmit(this.uploadTask("third.xlsx", 5 * MB)));
+		// small uploads and exports still get through
+		assertTrue(admission.tryAdmit(this.uploadTask("small.sif", 1000)));
+		Task export = new Task();
+		export.setTaskType(TaskType.EXPORT_NETWORK_TO_FILE);
+		assertTrue(admission.tryAdmit(export));
+
+		admission.release(first);
+		assertTrue(admission.tryAdmit(this.uploadTask("third.xlsx", 5 * MB)));
+	}
+
+	@Test
+	public void oversizedUploadRunsAlone() throws IOException {
+		MemoryAdmission admission = new MemoryAdmission(new FixedHeap(), 70, null);
+		Task huge = this.uploadTask("huge.xls", 100 * MB);
+		assertTrue(admission.tryAdmit(huge));
+		assertFalse(admission.tryAdmit(this.uploadTask("small.xgmml", 1 * MB)));
+		admission.release(huge);
+		assertEquals(0L, admission.getReservedBytes());
+	}
+
+	@Test
+	public void soloRunCalibratesAndSavesTheModel() throws IOException {
+		FixedHeap heap = new FixedHeap();
+		File modelFile = new File(this.directory, "model.properties");
+		MemoryAdmission admission = new MemoryAdmission(heap, 70, modelFile);
+		Task task = this.uploadTask("network.xgmml", 10 * MB);
+		assertTrue(admission.tryAdmit(task));
+		// the parse grew the heap by 22 heap bytes per file byte
+		heap.peak = heap.used + MemoryAdmission.BASE_FOOTPRINT_BYTES + 220 * MB;
+		admission.release(task);
+		double calibrated = 12.0 * 0.7 + 22.0 * 0.3;
+		assertEquals(calibrated, admission.getRatio("XGMML"), 0.0001);
+
+		MemoryAdmission restarted = new MemoryAdmission(heap, 70, modelFile);
+		assertEquals(calibrated, restarted.getRatio("XGMML"), 0.0001);
+	}
+
+	@Test
+	public void garbageInflatedPeaksAreCapped() throws IOException {
+		FixedHeap heap = new FixedHeap();
+		MemoryAdmission admission = new MemoryAdmission(heap, 70, null);
+		double maxObserved = 12.0 * MemoryAdmission.CALIBRATION_MAX_MULTIPLE;
+		double expected = 12.0;
+		for (int i = 0; i < 20; i++) {
+			Task task = this.uploadTask("network" + i + ".xgmml", 10 * MB);
+			assertTrue(admission.tryAdmit(task));
+			// the collector left 85 heap bytes of garbage per file byte
+			heap.peak = heap.used + MemoryAdmission.BASE_FOOTPRINT_BYTES + 850 * MB;
+			admission.release(task);
+			expected = expected * 0.7 + maxObserved * 0.3;
+			assertEquals(expected, admission.getRatio("XGMML"), 0.0001);
+		}
+		assertTrue(admission.getRatio("XGMML") <= maxObserved);
+		// uncapped, a 10 MB XGMML upload would exceed the 600 MB available and run alone
+		Task next = this.uploadTask("next.xgmml", 10 * MB);
+		assertTrue(admission.estimateFootprint(next) < 600 * MB);
+		assertTrue(admission.tryAdmit(next));
+		assertTrue(admission.tryAdmit(this.uploadTask("small.xgmml", 1 * MB)));
+	}
+
+	@Test
+	public void concurrentRunsAreNotCalibrated() throws IOException {
+		FixedHeap heap = new FixedHeap();
+		MemoryAdmission admission = new MemoryAdmission(heap, 70, null);
+		Task first = this.uploadTask("first.sif", 10 * MB);
+		Task second = this.uploadTask("second.sif", 10 * MB);
+		assertTrue(admission.tryAdmit(first));
+		assertTrue(admission.tryAdmit(second));
+		heap.peak = 900 * MB;
+		admission.release(second);
+		admission.release(first);
+		assertEquals(4.0, admission.getRatio("SIF"), 0.0001);
+	}
+
+	@Test
+	public void limitsDelayUploadsWithoutHeadroom() throws IOException {
+		NdexTaskConcurrencyLimits limits = new NdexTaskConcurrencyLimits(
+				ImmutableMap.<String, Integer>of(), OwnerFairShare.equalShares(),
+				new MemoryAdmission(new FixedHeap(), 30, null));
+		Task large = this.uploadTask("large.xlsx", 3 * MB);
+		assertTrue(limits.tryAcquire(large));
+		assertFalse(limits.tryAcquire(this.uploadTask("next.xlsx", 3 * MB)));
+		limits.release(large);
+		assertEquals(0L, limits.getMemoryAdmission().getReservedBytes());
+	}
+
+}
@@ -0,0 +1,91 @@
+package org.ndexbio.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+
+import org.junit.Test;
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+import org.ndexbio.model.object.network.FileFormat;
+
+import com.google.common.collect.ImmutableMap;
+
+public class NdexTaskConcurrencyLimitsTest {
+
+	private static Task uploadTask(String fileName) {
+		Task task = new Task();
+		task.setTaskType(TaskType.PROCESS_UPLOADED_NETWORK);
+		task.setResource("/opt/ndex/uploaded-networks/" + fileName);
+		return task;
+	}
+
+	private static Task exportTask(FileFormat format) {
+		Task task = new Task();
+		task.setTaskType(TaskType.EXPORT_NETWORK_TO_FILE);
+		task.setFormat(format);
+		return task;
+	}
+
+	@Test
+	public void categoryUsesFileExtensionForUploads() {
+		assertEquals("PROCESS_UPLOADED_NETWORK.XBEL", NdexTaskCategory.of(uploadTask("corpus.xbel")));
+		assertEquals("EXPORT_NETWORK_TO_FILE.XGMML", NdexTaskCategory.of(exportTask(FileFormat.XGMML)));
+	}
+
+	@Test
+	public void mostSpecificLimitWins() {
+		NdexTaskConcurrencyLimits limits = new NdexTaskConcurrencyLimits(
+				ImmutableMap.of("PROCESS_UPLOADED_NETWORK.XBEL", 2, "PROCESS_UPLOADED_NETWORK", 4));
+		assertEquals(Integer.valueOf(2), limits.getLimit("PROCESS_UPLOADED_NETWORK.XBEL"));
+		assertEquals(Integer.valueOf(4), limits.getLimit("PROCESS_UPLOADED_NETWORK.SIF"));
+		assertNull(limits.getLimit("EXPORT_NETWORK_TO_FILE.XBEL"));
+	}
+
+	@Test
+	public void capIsEnforcedPerCategory() {
+		NdexTaskConcurrencyLimits limits = new NdexTaskConcurrencyLimits(
+				ImmutableMap.of("PROCESS_UPLOADED_NETWORK.XBEL", 2));
+		Task xbel = uploadTask("large.xbel");
+		assertTrue(limits.tryAcquire(xbel));
+		assertTrue(limits.tryAcquire(xbel));
+		assertFalse(limits.tryAcquire(xbel));
+		// other categories are not affected
+		assertTrue(limits.tryAcquire(uploadTask("small.sif")));
+		assertTrue(limits.tryAcquire(exportTask(FileFormat.XBEL)));
+
+		limits.release(xbel);
+		assertEquals(1, limits.getRunningCount("PROCESS_UPLOADED_NETWORK.XBEL"));
+		assertTrue(limits.tryAcquire(xbel));
+	}
+
+	@Test
+	public void ownerImportCapIsEnforced() {
+		UUID owner = UUID.randomUUID();
+		OwnerFairShare shares = new OwnerFairShare(ImmutableMap.<String, Integer>of(),
+				ImmutableMap.of(owner.toString(), 1), 3);
+		NdexTaskConcurrencyLimits limits = new NdexTaskConcurrencyLimits(
+				ImmutableMap.<String, Integer>of(), shares);
+		Task first = uploadTask("first.sif");
+		first.setTaskOwnerId(owner);
+		Task second = uploadTask("second.sif");
+		second.setTaskOwnerId(owner);
+		Task export = exportTask(FileFormat.XGMML);
+		export.setTaskOwnerId(owner);
+
+		assertTrue(limits.tryAcquire(first));
+		assertFalse(limits.tryAcquire(second));
+		// exports are not imports
+		assertTrue(limits.tryAcquire(export));
+		assertEquals(2, shares.getRunningCount(owner.toString()));
+		// other owners get the default cap
+		assertEquals(Integer.valueOf(3), shares.getImportLimit(UUID.randomUUID().toString()));
+
+		limits.release(first);
+		assertTrue(limits.tryAcquire(second));
+	}
+
+}
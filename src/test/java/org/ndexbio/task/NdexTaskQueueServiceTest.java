@@ -0,0 +1,193 @@
+package org.ndexbio.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+import org.ndexbio.model.object.network.FileFormat;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+public class NdexTaskQueueServiceTest {
+
+	private File stagingDir;
+
+	@Before
+	public void setUp() {
+		this.stagingDir = Files.createTempDir();
+		NdexTaskQueueService.INSTANCE.configure(new TaskCostEstimator(1000L),
+				NdexTaskQueueService.DEFAULT_STARVATION_THRESHOLD_MILLIS);
+		drainQueue();
+	}
+
+	@After
+	public void tearDown() {
+		drainQueue();
+		for (File f : this.stagingDir.listFiles()) {
+			f.delete();
+		}
+		this.stagingDir.delete();
+	}
+
+	private static void drainQueue() {
+		while (NdexTaskQueueService.INSTANCE.getNextTask() != null) {
+			// discard
+		}
+	}
+
+	private Task uploadTask(String fileName, int size) throws IOException {
+		File file = new File(this.stagingDir, fileName);
+		Files.write(Strings.repeat("a", size).getBytes(), file);
+		Task task = new Task();
+		task.setTaskType(TaskType.PROCESS_UPLOADED_NETWORK);
+		task.setResource(file.getAbsolutePath());
+		return task;
+	}
+
+	private static Task exportTask() {
+		Task task = new Task();
+		task.setTaskType(TaskType.EXPORT_NETWORK_TO_FILE);
+		task.setFormat(FileFormat.XGMML);
+		return task;
+	}
+
+	@Test
+	public void exportsAreDispatchedBeforeUploads() throws IOException {
+		Task bulk = uploadTask("bulk.sif", 5000);
+		Task small = uploadTask("small.sif", 10);
+		Task export = exportTask();
+		NdexTaskQueueService.INSTANCE.addCollection(Arrays.asList(bulk, small, export));
+		long exportsDispatched = NdexTaskQueueService.INSTANCE
+				.getWaitStatistics(TaskLane.INTERACTIVE_EXPORT).getCount();
+
+		assertSame(export, NdexTaskQueueService.INSTANCE.getNextTask());
+		assertSame(small, NdexTaskQueueService.INSTANCE.getNextTask());
+		assertSame(bulk, NdexTaskQueueService.INSTANCE.getNextTask());
+		assertNull(NdexTaskQueueService.INSTANCE.getNextTask());
+		assertEquals(exportsDispatched + 1, NdexTaskQueueService.INSTANCE
+				.getWaitStatistics(TaskLane.INTERACTIVE_EXPORT).getCount());
+	}
+
+	@Test
+	public void shortestJobFirstWithinLane() throws IOException {
+		Task largeSif = uploadTask("large.sif", 600);
+		Task mediumXbel = uploadTask("medium.xbel", 200);
+		Task smallSif = uploadTask("small.sif", 100);
+		NdexTaskQueueService.INSTANCE.addCollection(Arrays.asList(largeSif, mediumXbel, smallSif));
+
+		// xbel is weighted as four times as expensive to parse as sif
+		assertSame(smallSif, NdexTaskQueueService.INSTANCE.getNextTask());
+		assertSame(largeSif, NdexTaskQueueService.INSTANCE.getNextTask());
+		assertSame(mediumXbel, NdexTaskQueueService.INSTANCE.getNextTask());
+	}
+
+	@Test
+	public void starvedTasksAreDispatchedFirst() throws Exception {
+		NdexTaskQueueService.INSTANCE.configure(new TaskCostEstimator(1000L), 50L);
+		Task bulk = uploadTask("bulk.sif", 5000);
+		NdexTaskQueueService.INSTANCE.addCollection(Arrays.asList(bulk));
+		Thread.sleep(100L);
+		Task export = exportTask();
+		NdexTaskQueueService.INSTANCE.addCollection(Arrays.asList(export));
+
+		assertSame(bulk, NdexTaskQueueService.INSTANCE.getNextTask());
+		assertSame(export, NdexTaskQueueService.INSTANCE.getNextTask());
+	}
+
+	@Test
+	public void ownersShareTheWorkersFairly() throws IOException {
+		UUID bulkOwner = UUID.randomUUID();
+		UUID otherOwner = UUID.randomUUID();
+		Task bulk1 = uploadTask("bulk1.sif", 10);
+		Task bulk2 = uploadTask("bulk2.sif", 10);
+		Task bulk3 = uploadTask("bulk3.sif", 10);
+		Task other = uploadTask("other.sif", 20);
+		for (Task task : Arrays.asList(bulk1, bulk2, bulk3)) {
+			task.setTaskOwnerId(bulkOwner);
+		}
+		other.setTaskOwnerId(otherOwner);
+		NdexTaskQueueService.INSTANCE.addCollection(Arrays.asList(bulk1, bulk2, bulk3, other));
+
+		NdexTaskConcurrencyLimits limits = new NdexTaskConcurrencyLimits(
+				ImmutableMap.<String, Integer>of());
+		assertSame(bulk1, NdexTaskQueueService.INSTANCE.getNextTask(limits));
+		// the other owner is served next although its file is larger
+		assertSame(other, NdexTaskQueueService.INSTANCE.getNextTask(limits));
+		assertSame(bulk2, NdexTaskQueueService.INSTANCE.getNextTask(limits));
+		assertSame(bulk3, NdexTaskQueueService.INSTANCE.getNextTask(limits));
+	}
+
+	@Test
+	public void smallUploadsAreDispatchedInBatches() throws IOException {
+		Task export = exportTask();
+		Task small1 = uploadTask("small1.sif", 10);
+		Task small2 = uploadTask("small2.sif", 20);
+		Task small3 = uploadTask("small3.sif", 30);
+		Task bulk = uploadTask("bulk.sif", 5000);
+		NdexTaskQueueService.INSTANCE.addCollection(Arrays.asList(bulk, small3, small2, small1, export));
+		// an export is never batched
+		assertEquals(Arrays.asList(export), NdexTaskQueueService.INSTANCE.getNextTasks(
+				NdexTaskConcurrencyLimits.unlimited(), 8));
+		assertEquals(Arrays.asList(small1, small2), NdexTaskQueueService.INSTANCE.getNextTasks(
+				NdexTaskConcurrencyLimits.unlimited(), 2));
+		// bulk uploads are not added to a batch of small uploads
+		assertEquals(Arrays.asList(small3), NdexTaskQueueService.INSTANCE.getNextTasks(
+				NdexTaskConcurrencyLimits.unlimited(), 8));
+		assertEquals(Arrays.asList(bulk), NdexTaskQueueService.INSTANCE.getNextTasks(
+				NdexTaskConcurrencyLimits.unlimited(), 8));
+		assertTrue(NdexTaskQueueService.INSTANCE.getNextTasks(
+				NdexTaskConcurrencyLimits.unlimited(), 8).isEmpty());
+	}
+
+	@Test
+	public void batchesRespectTheConcurrencyCaps() throws IOException {
+		NdexTaskConcurrencyLimits limits = new NdexTaskConcurrencyLimits(
+				ImmutableMap.of("PROCESS_UPLOADED_NETWORK.SIF", 1));
+		Task small1 = uploadTask("small1.sif", 10);
+		Task small2 = uploadTask("small2.sif", 20);
+		Task small3 = uploadTask("small3.sif", 30);
+		NdexTaskQueueService.INSTANCE.addCollection(Arrays.asList(small1, small2, small3));
+		assertEquals(Arrays.asList(small1), NdexTaskQueueService.INSTANCE.getNextTasks(limits, 8));
+		assertTrue(NdexTaskQueueService.INSTANCE.getNextTasks(limits, 8).isEmpty());
+		limits.release(small1);
+		assertEquals(Arrays.asList(small2), NdexTaskQueueService.INSTANCE.getNextTasks(limits, 8));
+	}
+
+	@Test
+	public void batchHoldsTheSlotOfItsFirstTaskOnly() throws IOException {
+		NdexTaskConcurrencyLimits limits = new NdexTaskConcurrencyLimits(
+				ImmutableMap.of("PROCESS_UPLOADED_NETWORK.SIF", 2));
+		Task small1 = uploadTask("small1.sif", 10);
+		Task small2 = uploadTask("small2.sif", 20);
+		Task small3 = uploadTask("small3.sif", 30);
+		NdexTaskQueueService.INSTANCE.addCollection(Arrays.asList(small1, small2, small3));
+		// the batch runs one task at a time, the worker acquires the others as they start
+		assertEquals(Arrays.asList(small1, small2, small3), 
+				NdexTaskQueueService.INSTANCE.getNextTasks(limits, 8));
+		assertEquals(1, limits.getRunningCount("PROCESS_UPLOADED_NETWORK.SIF"));
+	}
+
+	@Test
+	public void removeAllEmptiesEveryLane() throws IOException {
+		Task bulk = uploadTask("bulk.sif", 5000);
+		Task export = exportTask();
+		NdexTaskQueueService.INSTANCE.addCollection(Arrays.asList(bulk, export));
+		assertEquals(2, NdexTaskQueueService.INSTANCE.removeAll().size());
+		assertTrue(NdexTaskQueueService.INSTANCE.isTaskQueueEmpty());
+		assertNull(NdexTaskQueueService.INSTANCE.getNextTask());
+	}
+
+}
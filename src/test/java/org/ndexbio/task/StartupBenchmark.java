@@ -0,0 +1,85 @@
+package org.ndexbio.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBException;
+
+import org.ndexbio.xbel.XbelJAXBContext;
+
+import com.google.common.collect.Lists;
+
+/*
+ * A stand alone benchmark of the startup of the short lived entry points. It
+ * starts a number of JVMs running a main class, by default the class data
+ * sharing training run that loads the task processor and every format stack,
+ * once without class data sharing and once with the archive of the fast-start
+ * build, and reports the median wall time of each. It then times building the
+ * XBEL JAXBContext once against getting the shared instance, the cost an XBEL
+ * import paid for every file before the context was shared.
+ *
+ *   mvn -Pfast-start package
+ *   java -cp <test classpath> org.ndexbio.task.StartupBenchmark target/ndex-task-0.0.1-SNAPSHOT-jar-with-dependencies.jar target/ndex-task.jsa [runs] [mainClass]
+ */
+public class StartupBenchmark {
+
+	private final String jar;
+	private final String archive;
+	private final int runs;
+	private final String mainClass;
+
+	public StartupBenchmark(String jar, String archive, int runs, String mainClass) {
+		this.jar = jar;
+		this.archive = archive;
+		this.runs = runs;
+		this.mainClass = mainClass;
+	}
+
+	private long medianStartupMillis(String... jvmOptions) throws IOException, InterruptedException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		List<Long> times = Lists.newArrayList();
+		for (int i = 0; i < this.runs; i++) {
+			List<String> command = Lists.newArrayList(java);
+			command.addAll(Arrays.asList(jvmOptions));
+			command.addAll(Arrays.asList("-cp", this.jar, this.mainClass));
+			long start = System.nanoTime();
+			Process process = new ProcessBuilder(command).redirectErrorStream(true)
+					.redirectOutput(ProcessBuilder.Redirect.INHERIT).start();
+			process.waitFor();
+			times.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		}
+		Collections.sort(times);
+		return times.get(times.size() / 2);
+	}
+
+	private void report() throws IOException, InterruptedException, JAXBException {
+		long withoutSharing = this.medianStartupMillis("-Xshare:off");
+		long withArchive = this.medianStartupMillis("-XX:SharedArchiveFile=" + this.archive, "-Xshare:auto");
+		System.out.println(this.mainClass + " median startup of " + this.runs + " runs: " 
+				+ withoutSharing + " ms without class data sharing, " + withArchive + " ms with " + this.archive);
+
+		long start = System.nanoTime();
+		XbelJAXBContext.getInstance();
+		long first = System.nanoTime() - start;
+		start = System.nanoTime();
+		XbelJAXBContext.getInstance();
+		long shared = System.nanoTime() - start;
+		System.out.println("XBEL JAXBContext: " + TimeUnit.NANOSECONDS.toMillis(first) + " ms to build, "
+				+ TimeUnit.NANOSECONDS.toMicros(shared) + " us when shared");
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("Usage: StartupBenchmark <jar> <archive> [runs] [mainClass]");
+			return;
+		}
+		int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		String mainClass = args.length > 3 ? args[3] : ClassDataSharingTraining.class.getName();
+		new StartupBenchmark(args[0], args[1], runs, mainClass).report();
+	}
+
+}
@@ -0,0 +1,107 @@
+package org.ndexbio.task;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Test;
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.task.service.TaskPurgeService;
+
+import com.google.common.collect.Lists;
+
+public class TaskDeletionServiceTest {
+
+	/*
+	 * a database holding a number of tasks queued for deletion
+	 */
+	private static class PendingTasks extends TaskPurgeService {
+		int pending;
+		final List<Integer> chunks = Lists.newArrayList();
+
+		PendingTasks(int pending) {
+			this.pending = pending;
+		}
+
+		@Override
+		public int deleteTasksQueuedForDeletion(int limit) throws NdexException {
+			int deleted = Math.min(limit, this.pending);
+			this.pending -= deleted;
+			this.chunks.add(deleted);
+			return deleted;
+		}
+	}
+
+	private final TaskEngineSettings initial = TaskEngineSettings.current();
+
+	@After
+	public void restoreSettings() {
+		TaskEngineSettings.publish(this.initial);
+	}
+
+	private static void publishDeletionSettings(int batchSize, int timeBudgetMillis) throws NdexException {
+		Properties properties = new Properties();
+		properties.setProperty(TaskEngineSettings.DELETION_BATCH_SIZE_PROPERTY, String.valueOf(batchSize));
+		properties.setProperty(TaskEngineSettings.DELETION_TIME_BUDGET_PROPERTY, String.valueOf(timeBudgetMillis));
+		TaskEngineSettings.publish(TaskEngineSettings.fromProperties(properties, "/opt/ndex"));
+	}
+
+	@Test
+	public void backlogIsDeletedInChunks() throws NdexException {
+		publishDeletionSettings(100, 60000);
+		PendingTasks tasks = new PendingTasks(250);
+		TaskDeletionService service = new TaskDeletionService(tasks);
+		service.runOneIteration();
+		assertEquals(Lists.newArrayList(100, 100, 50), tasks.chunks);
+		assertEquals(0, tasks.pending);
+		// nothing left, the next scan backs off
+		assertEquals(2 * TaskDeletionService.MIN_INTERVAL_MILLIS, service.getInterval());
+	}
+
+	@Test
+	public void scanStopsAtTheTimeBudget() throws NdexException {
+		publishDeletionSettings(10, 1);
+		PendingTasks tasks = new PendingTasks(100000) {
+			@Override
+			public int deleteTasksQueuedForDeletion(int limit) throws NdexException {
+				try {
+					Thread.sleep(5L);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.deleteTasksQueuedForDeletion(limit);
+			}
+		};
+		TaskDeletionService service = new TaskDeletionService(tasks);
+		service.runOneIteration();
+		assertEquals(1, tasks.chunks.size());
+		// the backlog is resumed soon
+		assertEquals(TaskDeletionService.MIN_INTERVAL_MILLIS, service.getInterval());
+	}
+
+	@Test
+	public void idleScansBackOffToTheConfiguredInterval() {
+		assertEquals(2000L, TaskDeletionService.nextInterval(1000L, false, 60000L));
+		assertEquals(60000L, TaskDeletionService.nextInterval(40000L, false, 60000L));
+		// a reload lowered the interval
+		assertEquals(5000L, TaskDeletionService.nextInterval(60000L, false, 5000L));
+		assertEquals(TaskDeletionService.MIN_INTERVAL_MILLIS,
+				TaskDeletionService.nextInterval(60000L, true, 60000L));
+	}
+
+	@Test
+	public void failedScanWaitsForTheLongestInterval() throws NdexException {
+		publishDeletionSettings(100, 60000);
+		TaskDeletionService service = new TaskDeletionService(new PendingTasks(0) {
+			@Override
+			public int deleteTasksQueuedForDeletion(int limit) throws NdexException {
+				throw new NdexException("database unavailable");
+			}
+		});
+		service.runOneIteration();
+		assertEquals(60000L, service.getInterval());
+	}
+
+}
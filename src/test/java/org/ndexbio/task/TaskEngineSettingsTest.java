@@ -0,0 +1,141 @@
+package org.ndexbio.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Test;
+import org.ndexbio.model.exceptions.NdexException;
+
+public class TaskEngineSettingsTest {
+
+	private final TaskEngineSettings initial = TaskEngineSettings.current();
+
+	@After
+	public void restoreSettings() {
+		TaskEngineSettings.publish(this.initial);
+	}
+
+	@Test
+	public void missingPropertiesTakeTheirDefaults() throws NdexException {
+		TaskEngineSettings settings = TaskEngineSettings.fromProperties(new Properties(), "/data/ndex");
+		assertEquals(TaskEngineSettings.defaults("/data/ndex"), settings);
+		assertEquals(2000, settings.getCommitBatchSize());
+		assertEquals(60, settings.getDeletionIntervalSeconds());
+		assertEquals(new File("/data/ndex", "exported-networks").getPath(), settings.getExportPath());
+	}
+
+	@Test
+	public void propertiesAreParsed() throws NdexException {
+		Properties properties = new Properties();
+		properties.setProperty(TaskEngineSettings.COMMIT_BATCH_SIZE_PROPERTY, " 500 ");
+		properties.setProperty(TaskEngineSettings.WORKER_COUNT_PROPERTY, "6");
+		properties.setProperty(TaskEngineSettings.DELETION_INTERVAL_PROPERTY, "300");
+		properties.setProperty(TaskEngineSettings.LOADER_POOL_SIZE_PROPERTY, "4");
+		properties.setProperty(TaskEngineSettings.EXPORT_PATH_PROPERTY, "/exports");
+		properties.setProperty(TaskEngineSettings.RELOAD_INTERVAL_PROPERTY, "0");
+		properties.setProperty(TaskEngineSettings.DRAIN_TIMEOUT_PROPERTY, "0");
+		properties.setProperty(TaskEngineSettings.MICRO_BATCH_SIZE_PROPERTY, "4");
+		properties.setProperty(TaskEngineSettings.STATUS_FLUSH_INTERVAL_PROPERTY, "250");
+		properties.setProperty(TaskEngineSettings.EXPORT_POOL_SIZE_PROPERTY, "3");
+		properties.setProperty(TaskEngineSettings.BATCH_RETRY_ATTEMPTS_PROPERTY, "0");
+		properties.setProperty(TaskEngineSettings.BATCH_RETRY_BASE_MILLIS_PROPERTY, "50");
+		properties.setProperty(TaskEngineSettings.METRICS_PORT_PROPERTY, "9400");
+		properties.setProperty(TaskEngineSettings.LEASE_SECONDS_PROPERTY, "60");
+		properties.setProperty(TaskEngineSettings.BULK_WRITE_RATE_PROPERTY, "5000");
+		properties.setProperty(TaskEngineSettings.MEMORY_HEAP_PERCENT_PROPERTY, "50");
+		TaskEngineSettings settings = TaskEngineSettings.fromProperties(properties, "/opt/ndex");
+		assertEquals(500, settings.getCommitBatchSize());
+		assertEquals(6, settings.getWorkerCount());
+		assertEquals(300, settings.getDeletionIntervalSeconds());
+		assertEquals(4, settings.getLoaderPoolSize());
+		assertEquals("/exports", settings.getExportPath());
+		assertEquals(0, settings.getReloadIntervalSeconds());
+		assertEquals(0, settings.getDrainTimeoutSeconds());
+		assertEquals(4, settings.getMicroBatchSize());
+		assertEquals(250, settings.getStatusFlushMillis());
+		assertEquals(3, settings.getExportPoolSize());
+		assertEquals(0, settings.getBatchRetryAttempts());
+		assertEquals(50, settings.getBatchRetryBaseMillis());
+		assertEquals(9400, settings.getMetricsPort());
+		assertEquals(60, settings.getLeaseSeconds());
+		assertEquals(5000, settings.getBulkWriteRate());
+		assertEquals(50, settings.getMemoryHeapPercent());
+		assertEquals(Arrays.asList(TaskEngineSettings.WORKER_COUNT_PROPERTY,
+				TaskEngineSettings.LOADER_POOL_SIZE_PROPERTY, TaskEngineSettings.RELOAD_INTERVAL_PROPERTY,
+				TaskEngineSettings.MICRO_BATCH_SIZE_PROPERTY, TaskEngineSettings.STATUS_FLUSH_INTERVAL_PROPERTY,
+				TaskEngineSettings.EXPORT_POOL_SIZE_PROPERTY, TaskEngineSettings.METRICS_PORT_PROPERTY,
+				TaskEngineSettings.LEASE_SECONDS_PROPERTY, TaskEngineSettings.MEMORY_HEAP_PERCENT_PROPERTY),
+				settings.restartRequiredChanges(TaskEngineSettings.defaults("/opt/ndex")));
+	}
+
+	@Test
+	public void liveSettingChangesDoNotRequireARestart() throws NdexException {
+		Properties properties = new Properties();
+		properties.setProperty(TaskEngineSettings.COMMIT_BATCH_SIZE_PROPERTY, "500");
+		properties.setProperty(TaskEngineSettings.BULK_WRITE_RATE_PROPERTY, "0");
+		properties.setProperty(TaskEngineSettings.TARGET_COMMIT_MILLIS_PROPERTY, "200");
+		TaskEngineSettings settings = TaskEngineSettings.fromProperties(properties, "/opt/ndex");
+		assertTrue(settings.restartRequiredChanges(TaskEngineSettings.defaults("/opt/ndex")).isEmpty());
+	}
+
+	@Test
+	public void invalidValuesAreRejected() {
+		String[][] invalid = {
+				{TaskEngineSettings.COMMIT_BATCH_SIZE_PROPERTY, "0"},
+				{TaskEngineSettings.COMMIT_BATCH_SIZE_PROPERTY, "many"},
+				{TaskEngineSettings.WORKER_COUNT_PROPERTY, "-1"},
+				{TaskEngineSettings.DELETION_INTERVAL_PROPERTY, "0"},
+				{TaskEngineSettings.DRAIN_TIMEOUT_PROPERTY, "-1"},
+				{TaskEngineSettings.MICRO_BATCH_SIZE_PROPERTY, "0"},
+				{TaskEngineSettings.STATUS_FLUSH_INTERVAL_PROPERTY, "0"},
+				{TaskEngineSettings.EXPORT_POOL_SIZE_PROPERTY, "0"},
+				{TaskEngineSettings.BATCH_RETRY_ATTEMPTS_PROPERTY, "-1"},
+				{TaskEngineSettings.BATCH_RETRY_BASE_MILLIS_PROPERTY, "0"},
+				{TaskEngineSettings.METRICS_PORT_PROPERTY, "65536"},
+				{TaskEngineSettings.LEASE_SECONDS_PROPERTY, "0"},
+				{TaskEngineSettings.INTERACTIVE_WRITE_RATE_PROPERTY, "-1"},
+				{TaskEngineSettings.TARGET_COMMIT_MILLIS_PROPERTY, "0"},
+				{TaskEngineSettings.MEMORY_HEAP_PERCENT_PROPERTY, "101"},
+				{TaskEngineSettings.EXPORT_CACHE_MAX_MB_PROPERTY, "-1"},
+				{TaskEngineSettings.EXPORT_PATH_PROPERTY, " "}};
+		for (String[] property : invalid) {
+			Properties properties = new Properties();
+			properties.setProperty(property[0], property[1]);
+			try {
+				TaskEngineSettings.fromProperties(properties, "/opt/ndex");
+				fail(property[0] + "=" + property[1] + " is accepted");
+			} catch (NdexException e) {
+				assertTrue(e.getMessage().contains(property[0]));
+			}
+		}
+	}
+
+	private static TaskEngineSettings withCommitBatchSize(int size) throws NdexException {
+		Properties properties = new Properties();
+		properties.setProperty(TaskEngineSettings.COMMIT_BATCH_SIZE_PROPERTY, String.valueOf(size));
+		return TaskEngineSettings.fromProperties(properties, "/opt/ndex");
+	}
+
+	@Test
+	public void batchSizeChangeAppliesAtTheNextBatch() throws NdexException {
+		TaskEngineSettings.publish(withCommitBatchSize(3));
+		BatchCounter counter = new BatchCounter();
+		assertFalse(counter.increment());
+		// reloaded while the batch is being parsed
+		TaskEngineSettings.publish(withCommitBatchSize(2));
+		assertFalse(counter.increment());
+		assertTrue(counter.increment());
+		assertEquals(3, counter.getCompletedBatchSize());
+		assertFalse(counter.increment());
+		assertTrue(counter.increment());
+		assertEquals(2, counter.getCompletedBatchSize());
+	}
+
+}
@@ -0,0 +1,30 @@
+package org.ndexbio.task;
+
+import org.ndexbio.model.object.Task;
+
+/*
+ * Gives the tests of other packages, e.g. the parsers, control over the
+ * context of the task running on the current thread.
+ */
+public final class TaskExecutionContexts {
+
+	private TaskExecutionContexts() {
+	}
+
+	public static TaskExecutionContext begin(Task task, long deadlineMillis) {
+		return TaskExecutionContext.begin(task, deadlineMillis);
+	}
+
+	public static void suspend(TaskExecutionContext context, String reason) {
+		context.suspend(reason);
+	}
+
+	public static void cancel(TaskExecutionContext context, String reason) {
+		context.cancel(reason);
+	}
+
+	public static void end(TaskExecutionContext context) {
+		context.end();
+	}
+
+}
@@ -0,0 +1,294 @@
+package org.ndexbio.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Status;
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+import org.ndexbio.task.parsingengines.ImportCheckpoint;
+import org.ndexbio.task.service.TaskLeaseService;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+public class TaskLeasesTest {
+
+	private static final long LEASE_MILLIS = 90000L;
+
+	/*
+	 * a lease service holding the queued tasks, oldest first, and the leases
+	 * in memory; it queues new uploads of one owner when it runs out of tasks
+	 */
+	private static class InMemoryLeaseService extends TaskLeaseService {
+		final List<Task> queued = Lists.newArrayList();
+		final Set<UUID> leased = Sets.newHashSet();
+		boolean refill = true;
+		int renewals;
+		int releases;
+		int requeues;
+
+		@Override
+		public List<Task> findClaimableTasks(int skip, int limit) {
+			while (this.refill && this.queued.size() < skip + limit) {
+				this.queued.add(task(null, TaskType.PROCESS_UPLOADED_NETWORK));
+			}
+			return Lists.newArrayList(this.queued.subList(Math.min(skip, this.queued.size()),
+					Math.min(skip + limit, this.queued.size())));
+		}
+
+		@Override
+		public List<Task> claimTasks(String owner, List<UUID> taskIds, long leaseMillis, int maxAttempts,
+				Predicate<Task> restartable) {
+			List<Task> tasks = Lists.newArrayList();
+			for (UUID id : taskIds) {
+				for (Task task : this.queued) {
+					if (task.getExternalId().equals(id)) {
+						task.setStatus(Status.STAGED);
+						this.leased.add(id);
+						tasks.add(task);
+					}
+				}
+			}
+			this.queued.removeAll(tasks);
+			return tasks;
+		}
+
+		@Override
+		public int renewLeases(String owner, Collection<UUID> taskIds, long leaseMillis) {
+			this.renewals++;
+			return Sets.intersection(this.leased, Sets.newHashSet(taskIds)).size();
+		}
+
+		@Override
+		public Set<UUID> getLeasedTaskIds(String owner) throws NdexException {
+			return Sets.newHashSet(this.leased);
+		}
+
+		@Override
+		public void releaseLease(UUID taskId, String owner) {
+			this.releases++;
+			this.leased.remove(taskId);
+		}
+
+		@Override
+		public boolean requeueTask(UUID taskId, String owner) {
+			this.requeues++;
+			return this.leased.remove(taskId);
+		}
+	}
+
+	private static Task task(UUID ownerId, TaskType type) {
+		Task task = new Task();
+		task.setExternalId(UUID.randomUUID());
+		task.setTaskOwnerId(ownerId);
+		task.setTaskType(type);
+		task.setStatus(Status.QUEUED);
+		return task;
+	}
+
+	private static int countOwnedBy(List<Task> tasks, UUID ownerId) {
+		int count = 0;
+		for (Task task : tasks) {
+			if (ownerId.equals(task.getTaskOwnerId())) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void claimIsBoundedByTheBatchSize() {
+		InMemoryLeaseService service = new InMemoryLeaseService();
+		TaskLeases leases = new TaskLeases(service, "test", LEASE_MILLIS, 4, 3);
+		assertEquals(4, leases.claim(100).size());
+		assertEquals(0, leases.claim(0).size());
+		assertEquals(4, leases.getHeldCount());
+	}
+
+	@Test
+	public void claimIsSharedBetweenOwnersAndLanes() {
+		InMemoryLeaseService service = new InMemoryLeaseService();
+		service.refill = false;
+		UUID bulkOwner = UUID.randomUUID();
+		UUID smallOwner = UUID.randomUUID();
+		UUID exportOwner = UUID.randomUUID();
+		for (int i = 0; i < 20; i++) {
+			service.queued.add(task(bulkOwner, TaskType.PROCESS_UPLOADED_NETWORK));
+		}
+		service.queued.add(task(smallOwner, TaskType.PROCESS_UPLOADED_NETWORK));
+		service.queued.add(task(smallOwner, TaskType.PROCESS_UPLOADED_NETWORK));
+		service.queued.add(task(exportOwner, TaskType.EXPORT_NETWORK_TO_FILE));
+		TaskLeases leases = new TaskLeases(service, "test", LEASE_MILLIS, 4, 3);
+
+		List<Task> claimed = leases.claim(4);
+		assertEquals(4, claimed.size());
+		// the interactive export first, then the uploads of both owners in turn
+		assertEquals(TaskType.EXPORT_NETWORK_TO_FILE, claimed.get(0).getTaskType());
+		assertEquals(2, countOwnedBy(claimed, bulkOwner));
+		assertEquals(1, countOwnedBy(claimed, smallOwner));
+		// once the others are served the backlog fills the batch
+		claimed = leases.claim(4);
+		assertEquals(1, countOwnedBy(claimed, smallOwner));
+		assertEquals(3, countOwnedBy(claimed, bulkOwner));
+		assertEquals(4, countOwnedBy(leases.claim(4), bulkOwner));
+	}
+
+	@Test
+	public void tasksBehindALongBacklogAreClaimed() {
+		InMemoryLeaseService service = new InMemoryLeaseService();
+		service.refill = false;
+		UUID bulkOwner = UUID.randomUUID();
+		UUID smallOwner = UUID.randomUUID();
+		int batch = 2;
+		for (int i = 0; i < 5 * batch * TaskLeases.CLAIM_WINDOW_FACTOR; i++) {
+			service.queued.add(task(bulkOwner, TaskType.PROCESS_UPLOADED_NETWORK));
+		}
+		service.queued.add(task(smallOwner, TaskType.PROCESS_UPLOADED_NETWORK));
+		TaskLeases leases = new TaskLeases(service, "test", LEASE_MILLIS, batch, 3);
+		int claims = 0;
+		int claimedBySmallOwner = 0;
+		while (claimedBySmallOwner == 0 && claims < 10) {
+			claimedBySmallOwner = countOwnedBy(leases.claim(batch), smallOwner);
+			claims++;
+		}
+		assertEquals(1, claimedBySmallOwner);
+		// the whole backlog would take 40 claims
+		assertTrue(claims <= 5);
+	}
+
+	@Test
+	public void renewalIsOnlyDoneWhenDue() {
+		InMemoryLeaseService service = new InMemoryLeaseService();
+		TaskLeases leases = new TaskLeases(service, "test", LEASE_MILLIS, 2, 3);
+		long now = System.currentTimeMillis();
+		// nothing to renew without leases
+		leases.renewIfDue(now);
+		assertEquals(0, service.renewals);
+		leases.claim(2);
+		leases.renewIfDue(now);
+		leases.renewIfDue(now + LEASE_MILLIS / 3 - 1);
+		assertEquals(1, service.renewals);
+		leases.renewIfDue(now + LEASE_MILLIS / 3);
+		assertEquals(2, service.renewals);
+	}
+
+	@Test
+	public void lostLeaseCancelsTheRunningTask() {
+		InMemoryLeaseService service = new InMemoryLeaseService();
+		TaskLeases leases = new TaskLeases(service, "test", LEASE_MILLIS, 2, 3);
+		List<Task> tasks = leases.claim(2);
+		Task running = tasks.get(0);
+		Task queued = tasks.get(1);
+		TaskExecutionContext context = TaskExecutionContext.begin(running, LEASE_MILLIS);
+		try {
+			// another instance reclaimed the running task
+			service.leased.remove(running.getExternalId());
+			assertEquals(1, leases.renewIfDue(System.currentTimeMillis()));
+			assertTrue(context.isCancelled());
+			assertFalse(leases.isHeld(running));
+			assertTrue(leases.isHeld(queued));
+		} finally {
+			context.end();
+		}
+	}
+
+	@Test
+	public void releasedLeaseIsNotReportedAsLost() {
+		InMemoryLeaseService service = new InMemoryLeaseService();
+		TaskLeases leases = new TaskLeases(service, "test", LEASE_MILLIS, 1, 3);
+		Task task = leases.claim(1).get(0);
+		leases.release(task);
+		leases.release(task);
+		assertEquals(1, service.releases);
+		assertEquals(0, leases.getHeldCount());
+		assertEquals(0, leases.renewIfDue(System.currentTimeMillis()));
+	}
+
+	@Test
+	public void stagedTaskIsRequeued() {
+		InMemoryLeaseService service = new InMemoryLeaseService();
+		TaskLeases leases = new TaskLeases(service, "test", LEASE_MILLIS, 1, 3);
+		Task task = leases.claim(1).get(0);
+		assertTrue(leases.requeue(task, false));
+		assertFalse(leases.isHeld(task));
+		// the lease was handed back with the task, there is nothing to release
+		leases.release(task);
+		assertEquals(0, service.releases);
+		assertEquals(1, service.requeues);
+	}
+
+	@Test
+	public void startedTaskIsOnlyRequeuedWhenRestartable() {
+		InMemoryLeaseService service = new InMemoryLeaseService();
+		TaskLeases leases = new TaskLeases(service, "test", LEASE_MILLIS, 2, 3);
+		List<Task> tasks = leases.claim(2);
+		Task upload = tasks.get(0);
+		Task export = tasks.get(1);
+		export.setTaskType(TaskType.EXPORT_NETWORK_TO_FILE);
+		// an upload without a checkpoint starts over and is failed instead
+		assertFalse(leases.requeue(upload, true));
+		assertTrue(leases.isHeld(upload));
+		assertTrue(leases.requeue(export, true));
+		assertEquals(1, service.requeues);
+	}
+
+	@Test
+	public void suspendedUploadWithACheckpointIsRequeued() throws IOException, NdexException {
+		InMemoryLeaseService service = new InMemoryLeaseService();
+		TaskLeases leases = new TaskLeases(service, "test", LEASE_MILLIS, 1, 3);
+		Task upload = leases.claim(1).get(0);
+		File dir = Files.createTempDir();
+		File source = new File(dir, "network.sif");
+		try {
+			Files.write("A\tinteracts\tB\n".getBytes(StandardCharsets.UTF_8), source);
+			upload.setResource(source.getAbsolutePath());
+			// what a SIF import leaves behind when it is suspended after its first batch
+			new ImportCheckpoint(UUID.randomUUID(), "SIMPLE", 1, 1, source).write(source);
+			assertTrue(leases.requeue(upload, true));
+			assertFalse(leases.isHeld(upload));
+			assertEquals(1, service.requeues);
+		} finally {
+			ImportCheckpoint.delete(source);
+			source.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void suspendedTaskIsCancelled() {
+		Task task = new Task();
+		task.setExternalId(UUID.randomUUID());
+		TaskExecutionContext context = TaskExecutionContext.begin(task, LEASE_MILLIS);
+		try {
+			context.suspend("the task processor is shutting down");
+			assertTrue(context.isCancelled());
+			assertTrue(context.isSuspended());
+		} finally {
+			context.end();
+		}
+		// a task cancelled for its deadline is not suspended afterwards
+		context = TaskExecutionContext.begin(task, LEASE_MILLIS);
+		try {
+			context.cancel("exceeded its deadline");
+			context.suspend("the task processor is shutting down");
+			assertFalse(context.isSuspended());
+		} finally {
+			context.end();
+		}
+	}
+
+}
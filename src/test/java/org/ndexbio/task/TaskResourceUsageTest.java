@@ -0,0 +1,109 @@
+package org.ndexbio.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+import org.ndexbio.task.service.TaskAccountingService;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+
+public class TaskResourceUsageTest {
+
+	private static Task uploadTask() {
+		Task task = new Task();
+		task.setExternalId(UUID.randomUUID());
+		task.setTaskType(TaskType.PROCESS_UPLOADED_NETWORK);
+		task.setResource("/opt/ndex/uploaded-networks/network.sif");
+		task.setTaskOwnerId(UUID.randomUUID());
+		return task;
+	}
+
+	/*
+	 * an accounting service keeping the stored usages in memory
+	 */
+	private static class InMemoryAccountingService extends TaskAccountingService {
+		final List<Map<String, Long>> stored = Lists.newArrayList();
+
+		@Override
+		public boolean storeResourceUsage(UUID taskId, Map<String, Long> usage) throws NdexException {
+			this.stored.add(usage);
+			return true;
+		}
+	}
+
+	@Test
+	public void usageIsChargedToTheRunningTask() throws IOException {
+		TaskExecutionContext context = TaskExecutionContext.begin(uploadTask(), 0L);
+		try {
+			try (InputStream in = TaskResourceUsage.countReads(new ByteArrayInputStream(new byte[5000]))) {
+				ByteStreams.toByteArray(in);
+			}
+			try (OutputStream out = TaskResourceUsage.countWrites(new ByteArrayOutputStream())) {
+				out.write(new byte[300]);
+				out.write(1);
+			}
+			TaskResourceUsage.recordElements(2000);
+			TaskResourceUsage.recordCommit();
+			// allocate and burn some CPU
+			long sum = 0;
+			for (int i = 0; i < 1000; i++) {
+				sum += new byte[1024].length;
+			}
+			assertEquals(1024000L, sum);
+		} finally {
+			context.end();
+		}
+		TaskResourceUsage usage = context.getResourceUsage();
+		assertEquals(5000L, usage.getBytesRead());
+		assertEquals(301L, usage.getBytesWritten());
+		assertEquals(2000L, usage.getElements());
+		assertEquals(1L, usage.getCommits());
+		assertTrue(usage.getCpuNanos() != 0L);
+		assertTrue(usage.getAllocatedBytes() == -1L || usage.getAllocatedBytes() >= 1024000L);
+	}
+
+	@Test
+	public void nothingIsChargedOutsideOfATask() {
+		InputStream in = new ByteArrayInputStream(new byte[1]);
+		assertSame(in, TaskResourceUsage.countReads(in));
+		// no task to charge
+		TaskResourceUsage.recordElements(10);
+	}
+
+	@Test
+	public void usageIsLoggedAndStored() {
+		Task task = uploadTask();
+		TaskExecutionContext context = TaskExecutionContext.begin(task, 0L);
+		TaskResourceUsage.recordElements(42);
+		context.end();
+		InMemoryAccountingService service = new InMemoryAccountingService();
+		TaskAccounting accounting = new TaskAccounting(service);
+		accounting.record(task, "COMPLETED", 10L, context.getResourceUsage(), true);
+		assertEquals(1, service.stored.size());
+		assertEquals(Long.valueOf(42L), service.stored.get(0).get("elements"));
+		// a task given up is only logged
+		accounting.record(task, "REQUEUED", 10L, context.getResourceUsage(), false);
+		assertEquals(1, service.stored.size());
+
+		String line = TaskAccounting.describe(task, "COMPLETED", 10L, context.getResourceUsage());
+		assertTrue(line, line.startsWith("task=" + task.getExternalId() + " type=PROCESS_UPLOADED_NETWORK"
+				+ " format=SIF owner=" + task.getTaskOwnerId() + " outcome=COMPLETED elapsedMillis=10"));
+		assertTrue(line, line.contains(" elements=42 "));
+	}
+
+}
@@ -0,0 +1,51 @@
+package org.ndexbio.task;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.UUID;
+
+import org.junit.Test;
+import org.ndexbio.common.persistence.orientdb.NdexTaskService;
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+
+public class TaskSessionTest {
+
+	/*
+	 * a task service counting the owner account lookups
+	 */
+	private static class CountingTaskService extends NdexTaskService {
+		int lookups;
+
+		@Override
+		public String getTaskOwnerAccount(Task task) throws NdexException {
+			this.lookups++;
+			return "owner-" + task.getTaskOwnerId();
+		}
+	}
+
+	private static Task uploadTask(UUID ownerId) {
+		Task task = new Task();
+		task.setExternalId(UUID.randomUUID());
+		task.setTaskType(TaskType.PROCESS_UPLOADED_NETWORK);
+		task.setTaskOwnerId(ownerId);
+		return task;
+	}
+
+	@Test
+	public void ownerAccountsAreLookedUpOncePerSession() throws NdexException {
+		CountingTaskService taskService = new CountingTaskService();
+		TaskSession session = new TaskSession(taskService);
+		UUID owner = UUID.randomUUID();
+		UUID other = UUID.randomUUID();
+		assertEquals("owner-" + owner, session.getTaskOwnerAccount(uploadTask(owner)));
+		assertEquals("owner-" + owner, session.getTaskOwnerAccount(uploadTask(owner)));
+		assertEquals("owner-" + other, session.getTaskOwnerAccount(uploadTask(other)));
+		assertEquals(2, taskService.lookups);
+		// a new batch looks the owner up again
+		new TaskSession(taskService).getTaskOwnerAccount(uploadTask(owner));
+		assertEquals(3, taskService.lookups);
+	}
+
+}
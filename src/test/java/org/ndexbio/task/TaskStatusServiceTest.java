@@ -0,0 +1,142 @@
+package org.ndexbio.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ndexbio.common.exceptions.ObjectNotFoundException;
+import org.ndexbio.common.persistence.orientdb.NdexTaskService;
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Status;
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+import org.ndexbio.task.service.TaskStatusStore;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
+
+public class TaskStatusServiceTest {
+
+	/*
+	 * a task service recording the statuses written synchronously
+	 */
+	private static class RecordingTaskService extends NdexTaskService {
+		final List<Status> written = Lists.newArrayList();
+
+		@Override
+		public Task updateTaskStatus(Status status, Task task) throws ObjectNotFoundException, NdexException {
+			this.written.add(status);
+			task.setStatus(status);
+			return task;
+		}
+	}
+
+	/*
+	 * a status store recording the batches written behind
+	 */
+	private static class RecordingStatusStore extends TaskStatusStore {
+		final List<List<Task>> batches = Lists.newArrayList();
+		boolean failing;
+
+		@Override
+		public int storeStatuses(List<Task> tasks) throws NdexException {
+			if (this.failing) {
+				throw new NdexException("database unavailable");
+			}
+			this.batches.add(tasks);
+			return tasks.size();
+		}
+	}
+
+	private RecordingTaskService taskService;
+	private RecordingStatusStore store;
+
+	@Before
+	public void setUp() {
+		this.taskService = new RecordingTaskService();
+		this.store = new RecordingStatusStore();
+		Supplier<NdexTaskService> taskServices = Suppliers.<NdexTaskService>ofInstance(this.taskService);
+		TaskStatusService.INSTANCE.configure(taskServices, this.store);
+	}
+
+	@After
+	public void tearDown() {
+		TaskStatusService.INSTANCE.configure(Suppliers.<NdexTaskService>ofInstance(new NdexTaskService()),
+				new TaskStatusStore());
+	}
+
+	private static Task uploadTask() {
+		Task task = new Task();
+		task.setExternalId(UUID.randomUUID());
+		task.setTaskType(TaskType.PROCESS_UPLOADED_NETWORK);
+		task.setStatus(Status.STAGED);
+		return task;
+	}
+
+	@Test
+	public void completionIsWrittenAtOnceAndDiscardsPendingChanges() throws NdexException {
+		Task task = uploadTask();
+		assertSame(task, TaskStatusService.INSTANCE.updateTaskStatus(Status.PROCESSING, task));
+		assertEquals(Status.PROCESSING, task.getStatus());
+		assertEquals(0, this.taskService.written.size());
+		TaskStatusService.INSTANCE.updateProgress(task, 40);
+		assertEquals(1, TaskStatusService.INSTANCE.getPendingCount());
+
+		TaskStatusService.INSTANCE.updateTaskStatus(Status.COMPLETED, task);
+		assertEquals(Lists.newArrayList(Status.COMPLETED), this.taskService.written);
+		// the task finished before the flush, PROCESSING is never written
+		assertEquals(0, TaskStatusService.INSTANCE.flush());
+		assertEquals(0, this.store.batches.size());
+	}
+
+	@Test
+	public void pendingChangesAreCoalescedAndFlushedInBatches() throws NdexException {
+		Task first = uploadTask();
+		TaskStatusService.INSTANCE.updateTaskStatus(Status.PROCESSING, first);
+		TaskStatusService.INSTANCE.updateProgress(first, 10);
+		TaskStatusService.INSTANCE.updateProgress(first, 20);
+		for (int i = 0; i < TaskStatusService.FLUSH_BATCH_SIZE; i++) {
+			Task task = uploadTask();
+			TaskStatusService.INSTANCE.updateTaskStatus(Status.PROCESSING, task);
+			TaskStatusService.INSTANCE.updateProgress(task, 5);
+		}
+		assertEquals(TaskStatusService.FLUSH_BATCH_SIZE + 1, TaskStatusService.INSTANCE.flush());
+		assertEquals(2, this.store.batches.size());
+		assertEquals(TaskStatusService.FLUSH_BATCH_SIZE, this.store.batches.get(0).size());
+		Task written = this.store.batches.get(0).get(0);
+		assertEquals(first.getExternalId(), written.getExternalId());
+		assertEquals(Status.PROCESSING, written.getStatus());
+		assertEquals(20, written.getProgress());
+		assertEquals(0, TaskStatusService.INSTANCE.getPendingCount());
+	}
+
+	@Test
+	public void failedFlushIsRetried() throws NdexException {
+		Task task = uploadTask();
+		TaskStatusService.INSTANCE.updateTaskStatus(Status.PROCESSING, task);
+		TaskStatusService.INSTANCE.updateProgress(task, 10);
+		this.store.failing = true;
+		assertEquals(0, TaskStatusService.INSTANCE.flush());
+		assertEquals(1, TaskStatusService.INSTANCE.getPendingCount());
+		// a newer change is not replaced by the retried one
+		TaskStatusService.INSTANCE.updateProgress(task, 50);
+		this.store.failing = false;
+		assertEquals(1, TaskStatusService.INSTANCE.flush());
+		assertEquals(50, this.store.batches.get(0).get(0).getProgress());
+	}
+
+	@Test
+	public void discardedTaskIsNotWritten() throws NdexException {
+		Task task = uploadTask();
+		TaskStatusService.INSTANCE.updateProgress(task, 10);
+		TaskStatusService.INSTANCE.discard(task);
+		assertEquals(0, TaskStatusService.INSTANCE.flush());
+	}
+
+}
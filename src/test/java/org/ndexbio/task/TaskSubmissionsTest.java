@@ -0,0 +1,143 @@
+package org.ndexbio.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ndexbio.common.exceptions.ObjectNotFoundException;
+import org.ndexbio.common.persistence.orientdb.NdexTaskService;
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Status;
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+import org.ndexbio.task.service.TaskStatusStore;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class TaskSubmissionsTest {
+
+	/*
+	 * a task service writing nothing
+	 */
+	private static class NoOpTaskService extends NdexTaskService {
+		@Override
+		public Task updateTaskStatus(Status status, Task task) throws ObjectNotFoundException, NdexException {
+			task.setStatus(status);
+			return task;
+		}
+	}
+
+	/*
+	 * a listener recording the status and progress it was notified of
+	 */
+	private static class RecordingListener implements TaskProgressListener {
+		final List<String> changes = Lists.newArrayList();
+
+		@Override
+		public void progressChanged(Task task) {
+			this.changes.add(task.getStatus() + " " + task.getProgress());
+		}
+	}
+
+	@Before
+	public void setUp() {
+		TaskStatusService.INSTANCE.configure(Suppliers.<NdexTaskService>ofInstance(new NoOpTaskService()),
+				new TaskStatusStore());
+	}
+
+	@After
+	public void tearDown() {
+		TaskStatusService.INSTANCE.configure(Suppliers.<NdexTaskService>ofInstance(new NdexTaskService()),
+				new TaskStatusStore());
+	}
+
+	private static Task exportTask() {
+		Task task = new Task();
+		task.setExternalId(UUID.randomUUID());
+		task.setTaskType(TaskType.EXPORT_NETWORK_TO_FILE);
+		task.setStatus(Status.STAGED);
+		return task;
+	}
+
+	@Test
+	public void listenerFollowsTheTaskUntilItsFutureCompletes() throws Exception {
+		Task task = exportTask();
+		RecordingListener listener = new RecordingListener();
+		ListenableFuture<Task> result = TaskSubmissions.INSTANCE.register(task.getExternalId(), listener);
+		TaskStatusService.INSTANCE.updateTaskStatus(Status.PROCESSING, task);
+		TaskStatusService.INSTANCE.updateProgress(task, 40);
+		TaskStatusService.INSTANCE.updateTaskStatus(Status.COMPLETED, task);
+		TaskSubmissions.INSTANCE.completed(task);
+
+		assertEquals(Lists.newArrayList("PROCESSING 0", "PROCESSING 40", "COMPLETED 40"), listener.changes);
+		assertSame(task, result.get());
+		assertEquals(0, TaskSubmissions.INSTANCE.getPendingCount());
+	}
+
+	@Test
+	public void givenUpTaskFailsItsFuture() throws InterruptedException {
+		Task task = exportTask();
+		ListenableFuture<Task> result = TaskSubmissions.INSTANCE.register(task.getExternalId(), null);
+		TaskSubmissions.INSTANCE.abandoned(task, NdexTaskExecutor.REQUEUED);
+		try {
+			result.get();
+			fail("the future of a requeued task must fail");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof NdexException);
+		}
+		assertEquals(0, TaskSubmissions.INSTANCE.getPendingCount());
+	}
+
+	@Test
+	public void failingListenerDoesNotFailTheTask() throws NdexException {
+		Task task = exportTask();
+		TaskSubmissions.INSTANCE.register(task.getExternalId(), new TaskProgressListener() {
+			@Override
+			public void progressChanged(Task changed) {
+				throw new IllegalStateException("listener failed");
+			}
+		});
+		TaskStatusService.INSTANCE.updateTaskStatus(Status.PROCESSING, task);
+		assertEquals(Status.PROCESSING, task.getStatus());
+		TaskSubmissions.INSTANCE.completed(task);
+	}
+
+	@Test
+	public void cancelledSubmissionCancelsTheTaskWhenItStarts() {
+		Task task = exportTask();
+		TaskSubmissions.INSTANCE.register(task.getExternalId(), null).cancel(false);
+		TaskExecutionContext context = TaskExecutionContext.begin(task, 60000L);
+		try {
+			TaskSubmissions.INSTANCE.started(context);
+			assertTrue(context.isCancelled());
+		} finally {
+			context.end();
+			TaskSubmissions.INSTANCE.completed(task);
+		}
+	}
+
+	@Test
+	public void taskIsOnlySubmittedOnce() {
+		Task task = exportTask();
+		TaskSubmissions.INSTANCE.register(task.getExternalId(), null);
+		try {
+			TaskSubmissions.INSTANCE.register(task.getExternalId(), null);
+			fail("a task must not be submitted twice");
+		} catch (IllegalStateException e) {
+			// expected
+		} finally {
+			TaskSubmissions.INSTANCE.withdraw(task.getExternalId());
+		}
+	}
+
+}
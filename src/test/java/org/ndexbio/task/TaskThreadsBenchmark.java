@@ -0,0 +1,86 @@
+package org.ndexbio.task;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ndexbio.task.TaskThreads.ExecutionMode;
+
+/*
+ * A stand alone benchmark of the task worker execution modes. Every simulated
+ * task makes a number of blocking round trips, the way an export is dominated
+ * by OrientDB queries, and the workers pull tasks from a shared counter like
+ * the continuous NdexTaskExecutors pull them from the task queue.
+ *
+ * Runs each mode with its default worker count and the platform mode with the
+ * virtual worker count as well, to separate the gain of more workers from the
+ * cost of platform threads. The virtual mode needs JDK 21+, e.g.
+ *
+ *   java -cp <test classpath> org.ndexbio.task.TaskThreadsBenchmark [tasks] [roundTrips] [roundTripMillis]
+ */
+public class TaskThreadsBenchmark {
+
+	private final int tasks;
+	private final int roundTrips;
+	private final long roundTripMillis;
+
+	public TaskThreadsBenchmark(int tasks, int roundTrips, long roundTripMillis) {
+		this.tasks = tasks;
+		this.roundTrips = roundTrips;
+		this.roundTripMillis = roundTripMillis;
+	}
+
+	private long run(ExecutionMode mode, int workers) throws InterruptedException {
+		final AtomicInteger remaining = new AtomicInteger(this.tasks);
+		ExecutorService pool = TaskThreads.newWorkerPool(mode, workers, "benchmark-" + mode + "-");
+		long start = System.nanoTime();
+		for (int i = 0; i < workers; i++) {
+			pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					while (remaining.getAndDecrement() > 0) {
+						for (int r = 0; r < roundTrips; r++) {
+							try {
+								Thread.sleep(roundTripMillis);
+							} catch (InterruptedException e) {
+								return;
+							}
+						}
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(1, TimeUnit.HOURS);
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	private void report(ExecutionMode mode, int workers) throws InterruptedException {
+		// warm up
+		this.run(mode, workers);
+		long millis = this.run(mode, workers);
+		System.out.println(String.format("%-8s workers=%5d tasks=%6d elapsed=%7d ms throughput=%8.1f tasks/s",
+				mode, workers, this.tasks, millis, this.tasks * 1000.0 / Math.max(1, millis)));
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int roundTrips = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		long roundTripMillis = args.length > 2 ? Long.parseLong(args[2]) : 2L;
+		TaskThreadsBenchmark benchmark = new TaskThreadsBenchmark(tasks, roundTrips, roundTripMillis);
+
+		int platformWorkers = TaskThreads.defaultWorkerCount(ExecutionMode.PLATFORM);
+		int virtualWorkers = TaskThreads.defaultWorkerCount(ExecutionMode.VIRTUAL);
+		System.out.println("java " + System.getProperty("java.version") + ", "
+				+ Runtime.getRuntime().availableProcessors() + " processors, " + roundTrips
+				+ " round trips of " + roundTripMillis + " ms per task");
+		benchmark.report(ExecutionMode.PLATFORM, platformWorkers);
+		benchmark.report(ExecutionMode.PLATFORM, virtualWorkers);
+		if (TaskThreads.isVirtualThreadSupported()) {
+			benchmark.report(ExecutionMode.VIRTUAL, virtualWorkers);
+		} else {
+			System.out.println("virtual threads are not supported by this JVM");
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+package org.ndexbio.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+public class TaskTraceTest {
+
+	private static Task uploadTask(String resource) {
+		Task task = new Task();
+		task.setExternalId(UUID.randomUUID());
+		task.setTaskType(TaskType.PROCESS_UPLOADED_NETWORK);
+		task.setResource(resource);
+		return task;
+	}
+
+	@Test
+	public void spansAreRecordedForTracedTasksOnly() {
+		TaskExecutionContext context = TaskExecutionContext.begin(uploadTask("network.xbel"), 0L, false);
+		try {
+			try (TaskTrace.Span span = TaskTrace.span("xbel.namespaces")) {
+				assertEquals(null, context.getTrace());
+			}
+		} finally {
+			context.end();
+		}
+		context = TaskExecutionContext.begin(uploadTask("network.xbel"), 0L, true);
+		try {
+			try (TaskTrace.Span outer = TaskTrace.span("xbel.statementGroups")) {
+				try (TaskTrace.Span inner = TaskTrace.span("xbel.commit")) {
+					// a nested phase
+				}
+			}
+		} finally {
+			context.end();
+		}
+		assertEquals(2, context.getTrace().getEventCount());
+		// no task is running on this thread any more
+		try (TaskTrace.Span span = TaskTrace.span("xbel.persist")) {
+			assertEquals(2, context.getTrace().getEventCount());
+		}
+		assertEquals(2, context.getTrace().getEventCount());
+	}
+
+	@Test
+	public void traceIsWrittenAsTraceEvents() throws IOException {
+		Task task = uploadTask("network.xbel");
+		TaskExecutionContext context = TaskExecutionContext.begin(task, 0L, true);
+		try {
+			try (TaskTrace.Span span = TaskTrace.span("xbel.\"quoted\"\n")) {
+				// an unusual phase name
+			}
+		} finally {
+			context.end();
+		}
+		StringWriter writer = new StringWriter();
+		context.getTrace().writeTo(writer);
+		String json = writer.toString();
+		assertTrue(json.startsWith("{\"traceEvents\":[{\"name\":\"PROCESS_UPLOADED_NETWORK.XBEL\""));
+		assertTrue(json.contains("{\"name\":\"xbel.\\\"quoted\\\"\\u000a\",\"cat\":\"task\",\"ph\":\"X\""));
+		assertTrue(json.contains("\"ph\":\"M\""));
+		assertTrue(json.endsWith("\"taskId\":\"" + task.getExternalId()
+				+ "\",\"category\":\"PROCESS_UPLOADED_NETWORK.XBEL\",\"droppedEvents\":0}}"));
+	}
+
+	@Test
+	public void eventsBeyondTheLimitAreDropped() {
+		TaskExecutionContext context = TaskExecutionContext.begin(uploadTask("network.sif"), 0L, true);
+		try {
+			for (int i = 0; i < TaskTrace.MAX_EVENTS + 10; i++) {
+				TaskTrace.span("sif.commit").close();
+			}
+		} finally {
+			context.end();
+		}
+		assertEquals(TaskTrace.MAX_EVENTS, context.getTrace().getEventCount());
+		assertEquals(10, context.getTrace().getDroppedEvents());
+	}
+
+	@Test
+	public void mostSpecificPercentApplies() {
+		Map<String, Integer> percents = ImmutableMap.of("PROCESS_UPLOADED_NETWORK", 50,
+				"PROCESS_UPLOADED_NETWORK.XBEL", 100);
+		TaskTracing tracing = new TaskTracing(percents, 0, new File("traces"));
+		assertEquals(100, tracing.getPercent(uploadTask("network.xbel")));
+		assertEquals(50, tracing.getPercent(uploadTask("network.sif")));
+		Task export = new Task();
+		export.setTaskType(TaskType.EXPORT_NETWORK_TO_FILE);
+		assertEquals(0, tracing.getPercent(export));
+		assertTrue(tracing.shouldTrace(uploadTask("network.xbel")));
+		assertFalse(tracing.shouldTrace(export));
+		assertFalse(TaskTracing.disabled().shouldTrace(uploadTask("network.xbel")));
+	}
+
+	@Test
+	public void percentAboveHundredIsRejected() {
+		try {
+			new TaskTracing(ImmutableMap.of("PROCESS_UPLOADED_NETWORK", 101), 0, new File("traces"));
+			fail("a trace percentage of 101 is accepted");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("PROCESS_UPLOADED_NETWORK"));
+		}
+	}
+
+	@Test
+	public void traceIsWrittenToTheTraceDirectory() throws IOException {
+		File directory = Files.createTempDir();
+		Task task = uploadTask("network.xgmml");
+		TaskExecutionContext context = TaskExecutionContext.begin(task, 0L, true);
+		context.end();
+		File traceFile = new TaskTracing(ImmutableMap.<String, Integer>of(), 100,
+				new File(directory, "traces")).write(context.getTrace());
+		assertEquals(task.getExternalId() + TaskTracing.TRACE_FILE_SUFFIX, traceFile.getName());
+		assertTrue(Files.toString(traceFile, StandardCharsets.UTF_8).contains("PROCESS_UPLOADED_NETWORK.XGMML"));
+		traceFile.delete();
+		traceFile.getParentFile().delete();
+		directory.delete();
+	}
+
+}
@@ -0,0 +1,76 @@
+package org.ndexbio.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+
+import com.google.common.collect.ImmutableMap;
+
+public class TaskWatchdogTest {
+
+	private static Task uploadTask(String fileName) {
+		Task task = new Task();
+		task.setTaskType(TaskType.PROCESS_UPLOADED_NETWORK);
+		task.setResource("/opt/ndex/uploaded-networks/" + fileName);
+		return task;
+	}
+
+	@Test
+	public void mostSpecificDeadlineWins() {
+		TaskDeadlines deadlines = new TaskDeadlines(
+				ImmutableMap.of("PROCESS_UPLOADED_NETWORK.XBEL", 600, "PROCESS_UPLOADED_NETWORK", 30), 240);
+		assertEquals(600, deadlines.getDeadlineMinutes(uploadTask("corpus.xbel")));
+		assertEquals(30, deadlines.getDeadlineMinutes(uploadTask("small.sif")));
+		Task export = new Task();
+		export.setTaskType(TaskType.EXPORT_NETWORK_TO_FILE);
+		assertEquals(240, deadlines.getDeadlineMinutes(export));
+	}
+
+	@Test
+	public void deadlineCategoriesAreNotCaseSensitive() {
+		TaskDeadlines deadlines = new TaskDeadlines(
+				ImmutableMap.of("process_uploaded_network.xbel", 600, "Export_Network_To_File", 60), 240);
+		assertEquals(600, deadlines.getDeadlineMinutes(uploadTask("corpus.xbel")));
+		Task export = new Task();
+		export.setTaskType(TaskType.EXPORT_NETWORK_TO_FILE);
+		assertEquals(60, deadlines.getDeadlineMinutes(export));
+	}
+
+	@Test
+	public void overdueTaskIsCancelledAtNextCheckPoint() throws InterruptedException {
+		TaskExecutionContext context = TaskExecutionContext.begin(uploadTask("hung.sif"), 1L);
+		try {
+			Thread.sleep(10L);
+			TaskExecutionContext.checkCancelled();
+			assertEquals(1, new TaskWatchdog().cancelOverdueTasks(System.currentTimeMillis()));
+			assertTrue(context.isCancelled());
+			try {
+				TaskExecutionContext.checkCancelled();
+				fail("the cancelled task must stop at its check point");
+			} catch (TaskCancelledException e) {
+				// expected
+			}
+		} finally {
+			context.end();
+		}
+		// outside of a task the check point is a no-op
+		TaskExecutionContext.checkCancelled();
+	}
+
+	@Test
+	public void taskWithinDeadlineIsNotCancelled() {
+		TaskExecutionContext context = TaskExecutionContext.begin(uploadTask("quick.sif"), 60000L);
+		try {
+			assertEquals(0, new TaskWatchdog().cancelOverdueTasks(System.currentTimeMillis()));
+			assertFalse(context.isCancelled());
+		} finally {
+			context.end();
+		}
+	}
+
+}
@@ -0,0 +1,124 @@
+package org.ndexbio.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Test;
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+
+public class WriteRateGovernorTest {
+
+	private static final long SECOND = 1000000000L;
+	private static final long TARGET = 500000000L;
+
+	@After
+	public void unlimitedRates() {
+		WriteRateGovernor.INSTANCE.configure(0, 0, TaskEngineSettings.DEFAULT_TARGET_COMMIT_MILLIS);
+	}
+
+	@Test
+	public void batchesBeyondTheRateWait() {
+		WriteRateGovernor.TokenBucket bucket = new WriteRateGovernor.TokenBucket(1000, 0L);
+		// a second worth of elements is available at once
+		assertEquals(0L, bucket.reserve(1000, 0L));
+		assertEquals(SECOND / 2, bucket.reserve(500, 0L));
+		// the deficit is refilled first
+		assertEquals(0L, bucket.reserve(500, SECOND));
+		assertEquals(0L, bucket.reserve(0, 3 * SECOND));
+		// idle time does not add up beyond one second
+		assertEquals(SECOND, bucket.reserve(2000, 3 * SECOND));
+	}
+
+	@Test
+	public void rateFollowsTheCommitLatency() {
+		WriteRateGovernor.TokenBucket bucket = new WriteRateGovernor.TokenBucket(1000, 0L);
+		bucket.adapt(TARGET * 2, TARGET, 0L);
+		assertEquals(500.0, bucket.getRate(), 0.001);
+		for (int i = 0; i < 10; i++) {
+			bucket.adapt(TARGET * 2, TARGET, 0L);
+		}
+		assertEquals(50.0, bucket.getRate(), 0.001);
+		// a latency between half the target and the target keeps the rate
+		bucket.adapt(TARGET * 3 / 4, TARGET, 0L);
+		assertEquals(50.0, bucket.getRate(), 0.001);
+		bucket.adapt(TARGET / 4, TARGET, 0L);
+		assertEquals(150.0, bucket.getRate(), 0.001);
+		for (int i = 0; i < 20; i++) {
+			bucket.adapt(TARGET / 4, TARGET, 0L);
+		}
+		assertEquals(1000.0, bucket.getRate(), 0.001);
+	}
+
+	@Test
+	public void bulkUploadsUseTheBulkBudget() {
+		WriteRateGovernor.INSTANCE.configure(1000, 0, 500);
+		assertEquals(WriteRateGovernor.Budget.BULK, WriteRateGovernor.currentBudget());
+		Task export = new Task();
+		export.setExternalId(UUID.randomUUID());
+		export.setTaskType(TaskType.EXPORT_NETWORK_TO_FILE);
+		TaskExecutionContext context = TaskExecutionContext.begin(export, 0L);
+		try {
+			assertEquals(WriteRateGovernor.Budget.INTERACTIVE, WriteRateGovernor.currentBudget());
+			// the interactive budget is unlimited
+			long start = System.nanoTime();
+			WriteRateGovernor.INSTANCE.awaitPermit(1000000);
+			assertTrue(System.nanoTime() - start < SECOND);
+			WriteRateGovernor.INSTANCE.commitCompleted(TARGET * 2);
+		} finally {
+			context.end();
+		}
+		assertEquals(1000.0, WriteRateGovernor.INSTANCE.getRate(WriteRateGovernor.Budget.BULK), 0.001);
+		WriteRateGovernor.INSTANCE.commitCompleted(TARGET * 2);
+		assertEquals(500.0, WriteRateGovernor.INSTANCE.getRate(WriteRateGovernor.Budget.BULK), 0.001);
+		assertEquals(0.0, WriteRateGovernor.INSTANCE.getRate(WriteRateGovernor.Budget.INTERACTIVE), 0.001);
+	}
+
+	private static TaskEngineSettings withBulkWriteRate(int rate) throws NdexException {
+		Properties properties = new Properties();
+		properties.setProperty(TaskEngineSettings.BULK_WRITE_RATE_PROPERTY, String.valueOf(rate));
+		return TaskEngineSettings.fromProperties(properties, "/opt/ndex");
+	}
+
+	@Test
+	public void reloadKeepsTheAdaptedRatesUnlessTheyChange() throws NdexException {
+		WriteRateGovernor.INSTANCE.configure(withBulkWriteRate(1000));
+		WriteRateGovernor.INSTANCE.commitCompleted(TARGET * 2);
+		assertEquals(500.0, WriteRateGovernor.INSTANCE.getRate(WriteRateGovernor.Budget.BULK), 0.001);
+		// a reload changing other settings
+		WriteRateGovernor.INSTANCE.configure(withBulkWriteRate(1000));
+		assertEquals(500.0, WriteRateGovernor.INSTANCE.getRate(WriteRateGovernor.Budget.BULK), 0.001);
+		WriteRateGovernor.INSTANCE.configure(withBulkWriteRate(2000));
+		assertEquals(2000.0, WriteRateGovernor.INSTANCE.getRate(WriteRateGovernor.Budget.BULK), 0.001);
+	}
+
+	@Test
+	public void cancelledTaskStopsWaiting() {
+		WriteRateGovernor.INSTANCE.configure(0, 10, 500);
+		Task export = new Task();
+		export.setExternalId(UUID.randomUUID());
+		export.setTaskType(TaskType.EXPORT_NETWORK_TO_FILE);
+		TaskExecutionContext context = TaskExecutionContext.begin(export, 0L);
+		try {
+			context.cancel("deadline exceeded");
+			long start = System.nanoTime();
+			try {
+				// waits 100 seconds unless cancelled
+				WriteRateGovernor.INSTANCE.awaitPermit(1000);
+				fail("the cancelled task is not stopped");
+			} catch (TaskCancelledException e) {
+				assertTrue(e.getMessage().contains("deadline exceeded"));
+			}
+			assertTrue(System.nanoTime() - start < SECOND);
+		} finally {
+			context.end();
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+package org.ndexbio.task.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class TaskMetricsTest {
+
+	@Test
+	public void histogramBucketsAreCumulative() {
+		Histogram histogram = new Histogram(new double[] {1, 10});
+		histogram.observeMillis(500);
+		histogram.observeMillis(5000);
+		histogram.observeMillis(50000);
+		long[] buckets = histogram.getBucketCounts();
+		assertEquals(1, buckets[0]);
+		assertEquals(2, buckets[1]);
+		assertEquals(3, histogram.getCount());
+		assertEquals(55500.0 / 3, histogram.getMeanMillis(), 0.001);
+	}
+
+	@Test
+	public void rateCoversTheLastMinute() {
+		RateMeter meter = new RateMeter();
+		long now = 1000000000L;
+		meter.mark(600, now - 120000L);
+		meter.mark(1200, now - 1000L);
+		meter.mark(1800, now);
+		assertEquals(3600, meter.getTotal());
+		assertEquals(50.0, meter.getRatePerSecond(now), 0.001);
+	}
+
+	@Test
+	public void prometheusTextHasHistogramSeries() throws IOException {
+		TaskMetrics.INSTANCE.recordQueueWait("EXPORT_NETWORK_TO_FILE", "XBEL", 250L);
+		TaskMetrics.INSTANCE.recordCommit("SIF", 20000000L);
+		TaskMetrics.INSTANCE.recordParsedElements("SIF", 2000);
+		TaskMetrics.INSTANCE.setQueueDepth("QUEUED", 7);
+		TaskMetrics.INSTANCE.recordTaskDeletion(500, 30000000L);
+		TaskMetrics.INSTANCE.setWriteRateLimit("BULK", 10000L);
+		StringWriter text = new StringWriter();
+		TaskMetrics.INSTANCE.writePrometheus(text);
+		String metrics = text.toString();
+		assertTrue(metrics.contains("# TYPE ndex_task_queue_wait_seconds histogram\n"));
+		assertTrue(metrics.contains("ndex_task_queue_wait_seconds_bucket{type=\"EXPORT_NETWORK_TO_FILE\","
+				+ "format=\"XBEL\",le=\"0.5\"}"));
+		assertTrue(metrics.contains("ndex_task_queue_wait_seconds_bucket{type=\"EXPORT_NETWORK_TO_FILE\","
+				+ "format=\"XBEL\",le=\"+Inf\"}"));
+		assertTrue(metrics.contains("ndex_parser_commit_seconds_count{parser=\"SIF\"}"));
+		assertTrue(metrics.contains("ndex_task_queue_depth{status=\"QUEUED\"} 7\n"));
+		assertTrue(metrics.contains("ndex_parser_elements_total{parser=\"SIF\"}"));
+		assertTrue(metrics.contains("ndex_task_deletion_seconds_bucket{le=\"0.05\"} "));
+		assertTrue(metrics.contains("ndex_task_deletion_seconds_count "));
+		assertTrue(metrics.contains("ndex_write_rate_limit{budget=\"BULK\"} 10000\n"));
+	}
+
+	@Test
+	public void labelValuesAreEscaped() {
+		assertEquals("a\\\"b\\\\c\\n", TaskMetrics.escape("a\"b\\c\n"));
+	}
+
+	@Test
+	public void metricsAreAvailableOverJmx() throws Exception {
+		TaskMetrics.INSTANCE.registerMBean();
+		TaskMetrics.INSTANCE.registerMBean();
+		Object workers = ManagementFactory.getPlatformMBeanServer().getAttribute(
+				new ObjectName(TaskMetrics.OBJECT_NAME), "ActiveWorkers");
+		assertEquals(TaskMetrics.INSTANCE.getActiveWorkers(), workers);
+	}
+
+	@Test
+	public void metricsAreServedOverHttp() throws IOException {
+		MetricsHttpService service = new MetricsHttpService(0);
+		service.startAsync().awaitRunning();
+		try {
+			URL url = new URL("http://localhost:" + service.getPort() + MetricsHttpService.PATH);
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			assertEquals(200, connection.getResponseCode());
+			assertEquals(MetricsHttpService.CONTENT_TYPE, connection.getContentType());
+			try (InputStream in = connection.getInputStream();
+					Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
+				String body = scanner.useDelimiter("\\A").next();
+				assertTrue(body.contains("# TYPE ndex_task_active_workers gauge"));
+			}
+		} finally {
+			service.stopAsync().awaitTerminated();
+		}
+	}
+
+}
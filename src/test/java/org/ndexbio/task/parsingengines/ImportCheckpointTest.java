@@ -0,0 +1,111 @@
+package org.ndexbio.task.parsingengines;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+public class ImportCheckpointTest {
+
+	private File dir;
+	private File source;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDir();
+		this.source = new File(this.dir, "network.sif");
+		Files.write("A\tinteracts\tB\n".getBytes(StandardCharsets.UTF_8), this.source);
+	}
+
+	@After
+	public void tearDown() {
+		for (File f : this.dir.listFiles()) {
+			f.delete();
+		}
+		this.dir.delete();
+	}
+
+	@Test
+	public void checkpointRoundTrip() throws Exception {
+		UUID networkId = UUID.randomUUID();
+		new ImportCheckpoint(networkId, "EDGES", 4000, 2, this.source).write(this.source);
+
+		assertTrue(ImportCheckpoint.exists(this.source));
+		ImportCheckpoint checkpoint = ImportCheckpoint.read(this.source);
+		assertNotNull(checkpoint);
+		assertEquals(networkId, checkpoint.getNetworkId());
+		assertEquals("EDGES", checkpoint.getSection());
+		assertEquals(4000, checkpoint.getOrdinal());
+		assertEquals(2, checkpoint.getBatch());
+
+		ImportCheckpoint.delete(this.source);
+		assertFalse(ImportCheckpoint.exists(this.source));
+		assertNull(ImportCheckpoint.read(this.source));
+	}
+
+	@Test
+	public void checkpointOfModifiedFileIsIgnored() throws Exception {
+		new ImportCheckpoint(UUID.randomUUID(), "SIMPLE", 2000, 1, this.source).write(this.source);
+		Files.append("B\tinteracts\tC\n", this.source, StandardCharsets.UTF_8);
+		assertNull(ImportCheckpoint.read(this.source));
+	}
+
+	@Test
+	public void pendingCheckpointReplacesTheCheckpointOnceConfirmed() throws Exception {
+		UUID networkId = UUID.randomUUID();
+		new ImportCheckpoint(networkId, "SIMPLE", 2000, 1, this.source).write(this.source);
+		new ImportCheckpoint(networkId, "SIMPLE", 4000, 2, this.source).writePending(this.source);
+		assertEquals(1, ImportCheckpoint.read(this.source).getBatch());
+		assertEquals(2, ImportCheckpoint.readPending(this.source).getBatch());
+
+		ImportCheckpoint.confirmPending(this.source);
+		assertNull(ImportCheckpoint.readPending(this.source));
+		assertEquals(4000, ImportCheckpoint.read(this.source).getOrdinal());
+
+		new ImportCheckpoint(networkId, "SIMPLE", 6000, 3, this.source).writePending(this.source);
+		ImportCheckpoint.discardPending(this.source);
+		assertNull(ImportCheckpoint.readPending(this.source));
+		assertEquals(2, ImportCheckpoint.read(this.source).getBatch());
+	}
+
+	@Test
+	public void pendingCheckpointOfModifiedFileIsStillRead() throws Exception {
+		new ImportCheckpoint(UUID.randomUUID(), "SIMPLE", 2000, 1, this.source).writePending(this.source);
+		Files.append("B\tinteracts\tC\n", this.source, StandardCharsets.UTF_8);
+		// its network must be deleted either way
+		assertNotNull(ImportCheckpoint.readPending(this.source));
+		ImportCheckpoint.delete(this.source);
+		assertNull(ImportCheckpoint.readPending(this.source));
+	}
+
+	@Test
+	public void journalIgnoresTruncatedLine() throws Exception {
+		ImportCheckpoint.appendJournal(this.source, ImmutableMap.of("N:A", 11L, "T:interacts", 12L));
+		ImportCheckpoint.appendJournal(this.source, ImmutableMap.of("N:B", 13L));
+		try (FileOutputStream out = new FileOutputStream(this.source.getPath() + ".journal", true)) {
+			out.write("14\tN:Cx".getBytes(StandardCharsets.UTF_8));
+		}
+
+		Map<String, Long> elementIds = ImportCheckpoint.readJournal(this.source);
+		assertEquals(3, elementIds.size());
+		assertEquals(Long.valueOf(11L), elementIds.get("N:A"));
+		assertEquals(Long.valueOf(12L), elementIds.get("T:interacts"));
+		assertEquals(Long.valueOf(13L), elementIds.get("N:B"));
+	}
+
+}
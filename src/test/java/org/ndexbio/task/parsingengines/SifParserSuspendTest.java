@@ -0,0 +1,202 @@
+package org.ndexbio.task.parsingengines;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.ndexbio.common.persistence.orientdb.NdexPersistenceService;
+import org.ndexbio.model.exceptions.NdexException;
+import org.ndexbio.model.object.Task;
+import org.ndexbio.model.object.TaskType;
+import org.ndexbio.model.object.network.NetworkSummary;
+import org.ndexbio.task.TaskCancelledException;
+import org.ndexbio.task.TaskEngineSettings;
+import org.ndexbio.task.TaskExecutionContext;
+import org.ndexbio.task.TaskExecutionContexts;
+
+import com.google.common.io.Files;
+import com.orientechnologies.common.concur.ONeedRetryException;
+
+public class SifParserSuspendTest {
+
+	private File dir;
+	private File source;
+	private NdexPersistenceService persistenceService;
+	private UUID networkId;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDir();
+		this.source = new File(this.dir, "network.sif");
+		// enough lines for two batches and a half
+		StringBuilder lines = new StringBuilder();
+		int batchSize = TaskEngineSettings.current().getCommitBatchSize();
+		for (int i = 0; i < 2 * batchSize + batchSize / 2; i++) {
+			lines.append("A").append(i).append("\tinteracts\tB").append(i).append('\n');
+		}
+		Files.write(lines.toString().getBytes(StandardCharsets.UTF_8), this.source);
+		this.networkId = UUID.randomUUID();
+		NetworkSummary network = new NetworkSummary();
+		network.setExternalId(this.networkId);
+		this.persistenceService = mock(NdexPersistenceService.class);
+		when(this.persistenceService.getCurrentNetwork()).thenReturn(network);
+	}
+
+	@After
+	public void tearDown() {
+		for (File f : this.dir.listFiles()) {
+			f.delete();
+		}
+		this.dir.delete();
+	}
+
+	private Task uploadTask() {
+		Task task = new Task();
+		task.setExternalId(UUID.randomUUID());
+		task.setTaskType(TaskType.PROCESS_UPLOADED_NETWORK);
+		task.setResource(this.source.getAbsolutePath());
+		return task;
+	}
+
+	/*
+	 * suspend or cancel the context once the first batch is committed
+	 */
+	private void stopAfterFirstCommit(final TaskExecutionContext context, final boolean suspend) throws Exception {
+		doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) {
+				if (suspend) {
+					TaskExecutionContexts.suspend(context, "the task processor is shutting down");
+				} else {
+					TaskExecutionContexts.cancel(context, "exceeded its deadline");
+				}
+				return null;
+			}
+		}).when(this.persistenceService).commit();
+	}
+
+	@Test
+	public void suspendedImportKeepsItsCheckpoint() throws Exception {
+		TaskExecutionContext context = TaskExecutionContexts.begin(this.uploadTask(), 60000L);
+		try {
+			SifParser parser = new SifParser(this.source, "owner", null, this.persistenceService,
+					"network", true);
+			this.stopAfterFirstCommit(context, true);
+			parser.parseFile();
+			fail("a suspended import must stop at its next batch");
+		} catch (TaskCancelledException e) {
+			// expected
+		} finally {
+			TaskExecutionContexts.end(context);
+		}
+		ImportCheckpoint checkpoint = ImportCheckpoint.read(this.source);
+		assertNotNull(checkpoint);
+		assertEquals(this.networkId, checkpoint.getNetworkId());
+		assertEquals(1, checkpoint.getBatch());
+		assertEquals(TaskEngineSettings.current().getCommitBatchSize(), checkpoint.getOrdinal());
+		assertNull(ImportCheckpoint.readPending(this.source));
+		verify(this.persistenceService).close();
+		verify(this.persistenceService, never()).abortTransaction();
+	}
+
+	@Test
+	public void cancelledImportIsDiscarded() throws Exception {
+		TaskExecutionContext context = TaskExecutionContexts.begin(this.uploadTask(), 60000L);
+		try {
+			SifParser parser = new SifParser(this.source, "owner", null, this.persistenceService,
+					"network", true);
+			this.stopAfterFirstCommit(context, false);
+			parser.parseFile();
+			fail("a cancelled import must fail");
+		} catch (NdexException e) {
+			// expected
+		} finally {
+			TaskExecutionContexts.end(context);
+		}
+		assertFalse(ImportCheckpoint.exists(this.source));
+		verify(this.persistenceService).abortTransaction();
+	}
+
+	@Test
+	public void conflictOnTheLastBatchKeepsTheCommittedBatches() throws Exception {
+		// the two full batches commit, the last, partial one conflicts
+		doAnswer(new Answer<Object>() {
+			private int commits;
+
+			@Override
+			public Object answer(InvocationOnMock invocation) {
+				if (++this.commits == 3) {
+					throw new ONeedRetryException("record version conflict") {
+						private static final long serialVersionUID = 1L;
+					};
+				}
+				return null;
+			}
+		}).when(this.persistenceService).commit();
+		SifParser parser = new SifParser(this.source, "owner", null, this.persistenceService,
+				"network", true);
+		try {
+			parser.parseFile();
+			fail("a conflict on the last batch must be retryable");
+		} catch (RetryableImportException e) {
+			// expected
+		}
+		ImportCheckpoint checkpoint = ImportCheckpoint.read(this.source);
+		assertNotNull(checkpoint);
+		assertEquals(2, checkpoint.getBatch());
+		assertEquals(2 * TaskEngineSettings.current().getCommitBatchSize(), checkpoint.getOrdinal());
+		assertNull(ImportCheckpoint.readPending(this.source));
+		verify(this.persistenceService, never()).persistNetwork();
+		verify(this.persistenceService, never()).abortTransaction();
+	}
+
+	@Test
+	public void importWithAnUnconfirmedCommitStartsOver() throws Exception {
+		// a crash between the commit of the second batch and its checkpoint
+		int batchSize = TaskEngineSettings.current().getCommitBatchSize();
+		new ImportCheckpoint(this.networkId, "SIMPLE", batchSize, 1, this.source).write(this.source);
+		new ImportCheckpoint(this.networkId, "SIMPLE", 2 * batchSize, 2, this.source).writePending(this.source);
+
+		new SifParser(this.source, "owner", null, this.persistenceService, "network", true);
+		verify(this.persistenceService).abortTransaction();
+		verify(this.persistenceService).createNewNetwork("owner", "network", null);
+		assertFalse(ImportCheckpoint.exists(this.source));
+		assertNull(ImportCheckpoint.readPending(this.source));
+	}
+
+	@Test
+	public void importSuspendedBeforeItsFirstCommitIsDiscarded() throws Exception {
+		TaskExecutionContext context = TaskExecutionContexts.begin(this.uploadTask(), 60000L);
+		try {
+			SifParser parser = new SifParser(this.source, "owner", null, this.persistenceService,
+					"network", true);
+			TaskExecutionContexts.suspend(context, "the task processor is shutting down");
+			parser.parseFile();
+			fail("a suspended import must stop at its next batch");
+		} catch (NdexException e) {
+			// expected, there is no checkpoint to resume from
+		} finally {
+			TaskExecutionContexts.end(context);
+		}
+		assertFalse(ImportCheckpoint.exists(this.source));
+		verify(this.persistenceService).abortTransaction();
+	}
+
+}
@@ -0,0 +1,98 @@
+package org.ndexbio.task.utility;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BulkFileUploadUtilityTest {
+
+	private File bulkDir;
+	private File stagingDir;
+
+	@Before
+	public void setUp() {
+		this.bulkDir = com.google.common.io.Files.createTempDir();
+		this.stagingDir = new File(this.bulkDir, "staged");
+		this.stagingDir.mkdir();
+	}
+
+	@After
+	public void tearDown() {
+		for (File dir : new File[] {this.stagingDir, this.bulkDir}) {
+			for (File f : dir.listFiles()) {
+				f.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	private Path networkFile(String name) throws IOException {
+		File file = new File(this.bulkDir, name);
+		com.google.common.io.Files.write("a\tpp\tb\n".getBytes(), file);
+		return file.toPath();
+	}
+
+	@Test
+	public void fileIsLinkedWithinAFileSystem() throws IOException {
+		Path source = networkFile("network.sif");
+		Path staged = BulkFileUploadUtility.stageFile(source, this.stagingDir.toPath(), false);
+		assertEquals(this.stagingDir.toPath().resolve("network.sif"), staged);
+		assertTrue(Files.exists(source));
+		assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(staged));
+	}
+
+	@Test
+	public void restagedFileReplacesTheStagedOne() throws IOException {
+		Path source = networkFile("network.sif");
+		BulkFileUploadUtility.stageFile(source, this.stagingDir.toPath(), false);
+		Path staged = BulkFileUploadUtility.stageFile(source, this.stagingDir.toPath(), false);
+		assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(staged));
+	}
+
+	@Test
+	public void fileIsMovedWhenRequested() throws IOException {
+		Path source = networkFile("network.sif");
+		byte[] content = Files.readAllBytes(source);
+		Path staged = BulkFileUploadUtility.stageFile(source, this.stagingDir.toPath(), true);
+		assertFalse(Files.exists(source));
+		assertArrayEquals(content, Files.readAllBytes(staged));
+	}
+
+	@Test
+	public void movedFileOfAFailedBatchIsPutBack() throws IOException {
+		Path source = networkFile("network.sif");
+		byte[] content = Files.readAllBytes(source);
+		Path staged = BulkFileUploadUtility.stageFile(source, this.stagingDir.toPath(), true);
+		List<Path> unqueued = BulkFileUploadUtility.unstage(
+				Collections.singletonList(BulkFileUploadUtility.generateTask(staged.toString())),
+				this.bulkDir.toPath(), true);
+		assertEquals(Collections.singletonList(source), unqueued);
+		assertFalse(Files.exists(staged));
+		assertArrayEquals(content, Files.readAllBytes(source));
+	}
+
+	@Test
+	public void linkedFileOfAFailedBatchIsRemoved() throws IOException {
+		Path source = networkFile("network.sif");
+		Path staged = BulkFileUploadUtility.stageFile(source, this.stagingDir.toPath(), false);
+		List<Path> unqueued = BulkFileUploadUtility.unstage(
+				Collections.singletonList(BulkFileUploadUtility.generateTask(staged.toString())),
+				this.bulkDir.toPath(), false);
+		assertEquals(Collections.singletonList(source), unqueued);
+		assertFalse(Files.exists(staged));
+		assertTrue(Files.exists(source));
+	}
+
+}
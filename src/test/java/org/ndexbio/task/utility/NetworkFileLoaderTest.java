@@ -0,0 +1,60 @@
+package org.ndexbio.task.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+import org.ndexbio.model.exceptions.NdexException;
+
+import com.google.common.collect.Lists;
+
+public class NetworkFileLoaderTest {
+
+	private static List<Path> networkFiles(int count) {
+		List<Path> files = Lists.newArrayList();
+		for (int i = 0; i < count; i++) {
+			files.add(Paths.get("network" + i + ".sif"));
+		}
+		return files;
+	}
+
+	@Test
+	public void failedFileDoesNotStopTheLoad() throws InterruptedException {
+		final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		NetworkFileLoader.LoadSummary summary = NetworkFileLoader.loadFiles(networkFiles(20), 4,
+				new NetworkFileLoader.FileLoad() {
+					@Override
+					public long load(Path path) throws Exception {
+						threads.add(Thread.currentThread().getName());
+						if (path.toString().equals("network7.sif")) {
+							throw new NdexException("bad file");
+						}
+						return 10L;
+					}
+				});
+		assertEquals(19, summary.getLoadedCount());
+		assertEquals(190L, summary.getEdgeCount());
+		assertEquals(1, summary.getFailures().size());
+		assertEquals("NdexException: bad file", summary.getFailures().get(Paths.get("network7.sif")));
+		assertTrue(threads.size() <= 4);
+		assertTrue(summary.getEdgesPerSecond() > 0.0);
+		assertTrue(summary.toString().contains("failed: network7.sif"));
+	}
+
+	@Test
+	public void bulkOptionGivesTheNumberOfWorkers() {
+		assertEquals(Runtime.getRuntime().availableProcessors(), NetworkFileLoader.bulkWorkers("--bulk"));
+		assertEquals(6, NetworkFileLoader.bulkWorkers("--bulk=6"));
+		assertEquals(-1, NetworkFileLoader.bulkWorkers("--bulk=0"));
+		assertEquals(-1, NetworkFileLoader.bulkWorkers("--bulk=many"));
+		assertEquals(-1, NetworkFileLoader.bulkWorkers("--bulky"));
+	}
+
+}